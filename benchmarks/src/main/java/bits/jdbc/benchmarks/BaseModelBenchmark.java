@@ -0,0 +1,72 @@
+package bits.jdbc.benchmarks;
+
+import bits.jdbc.content.ContentValues;
+import bits.jdbc.database.Database;
+import bits.jdbc.database.RowMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-row cost of mapping query results to {@link Person} models and back.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BaseModelBenchmark {
+    private static final int ROWS = 1000;
+    private static final RowMapper<Person> PERSON_MAPPER = new RowMapper<Person>() {
+        @Override
+        public Person mapRow(ResultSet resultSet) {
+            return new Person(resultSet);
+        }
+    };
+
+    private Database db;
+    private Person person;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        db = BenchmarkDatabase.newDatabase(1);
+        ContentValues[] rows = new ContentValues[ROWS];
+        for (int i = 0; i < ROWS; i++) {
+            rows[i] = BenchmarkDatabase.person(i);
+        }
+        db.bulkInsert(BenchmarkDatabase.TABLE, rows);
+        person = query().get(0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        db.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public List<Person> query() throws SQLException {
+        return db.query(BenchmarkDatabase.TABLE, null, null, null, null, 0, PERSON_MAPPER);
+    }
+
+    @Benchmark
+    public ContentValues assemble() {
+        return person.assemble();
+    }
+}
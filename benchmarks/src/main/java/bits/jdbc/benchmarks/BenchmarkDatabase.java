@@ -0,0 +1,54 @@
+package bits.jdbc.benchmarks;
+
+import bits.jdbc.Helper.ConnectionPool;
+import bits.jdbc.content.ContentValues;
+import bits.jdbc.database.Database;
+
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-memory H2 database with a {@code person} table shared by the benchmarks.
+ */
+public final class BenchmarkDatabase {
+    public static final String DRIVER_NAME = "org.h2.Driver";
+    public static final String TABLE = "person";
+    private static final AtomicInteger sCount = new AtomicInteger();
+
+    private BenchmarkDatabase() {
+    }
+
+    /**
+     * Creates a pool over a new, private in-memory database.
+     *
+     * @param numPooledCon Initial number of connections.
+     */
+    public static ConnectionPool newPool(int numPooledCon) {
+        String url = "jdbc:h2:mem:bench" + sCount.incrementAndGet() + ";DB_CLOSE_DELAY=-1";
+        return new ConnectionPool(numPooledCon, DRIVER_NAME, url, "sa", "");
+    }
+
+    /**
+     * Creates a database with an empty {@code person} table.
+     */
+    public static Database newDatabase(int numPooledCon) throws SQLException {
+        Database db = new Database(newPool(numPooledCon));
+        db.execSQL("CREATE TABLE " + TABLE + " (" + Person.ID + " BIGINT AUTO_INCREMENT PRIMARY KEY, "
+                + Person.NAME + " VARCHAR(64), " + Person.EMAIL + " VARCHAR(128), " + Person.AGE + " INT, "
+                + Person.SCORE + " DOUBLE, " + Person.ACTIVE + " BOOLEAN)");
+        return db;
+    }
+
+    /**
+     * Creates the values of the i-th sample person.
+     */
+    public static ContentValues person(int i) {
+        ContentValues values = new ContentValues();
+        values.put(Person.NAME, "name-" + i);
+        values.put(Person.EMAIL, "user" + i + "@example.com");
+        values.put(Person.AGE, 20 + i % 50);
+        values.put(Person.SCORE, i * 0.5);
+        values.put(Person.ACTIVE, i % 2 == 0);
+        return values;
+    }
+}
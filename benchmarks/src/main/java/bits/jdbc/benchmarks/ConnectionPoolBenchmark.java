@@ -0,0 +1,78 @@
+package bits.jdbc.benchmarks;
+
+import bits.jdbc.Helper.ConnectionPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of a {@link ConnectionPool#getConnection()} / {@link ConnectionPool#releaseConnection(Connection)}
+ * round trip under increasing contention.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConnectionPoolBenchmark {
+    @Param({"8"})
+    public int poolSize;
+
+    private ConnectionPool pool;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        pool = BenchmarkDatabase.newPool(poolSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.closeAllConnections();
+    }
+
+    private Connection acquireRelease() throws SQLException {
+        Connection connection = pool.getConnection();
+        pool.releaseConnection(connection);
+        return connection;
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Connection threads01() throws SQLException {
+        return acquireRelease();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Connection threads04() throws SQLException {
+        return acquireRelease();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public Connection threads16() throws SQLException {
+        return acquireRelease();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public Connection threads64() throws SQLException {
+        return acquireRelease();
+    }
+}
@@ -0,0 +1,68 @@
+package bits.jdbc.benchmarks;
+
+import bits.jdbc.content.ContentValues;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of building, reading and iterating a typical row of {@link ContentValues}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ContentValuesBenchmark {
+    private ContentValues values;
+    private String name;
+
+    @Setup
+    public void setUp() {
+        values = BenchmarkDatabase.person(7);
+        values.put(Person.ID, 7L);
+        name = "name-7";
+    }
+
+    @Benchmark
+    public ContentValues put() {
+        ContentValues row = new ContentValues();
+        row.put(Person.ID, 7L);
+        row.put(Person.NAME, name);
+        row.put(Person.EMAIL, name);
+        row.put(Person.AGE, 27);
+        row.put(Person.SCORE, 3.5);
+        row.put(Person.ACTIVE, Boolean.TRUE);
+        return row;
+    }
+
+    @Benchmark
+    public void get(Blackhole bh) {
+        bh.consume(values.getAsLong(Person.ID));
+        bh.consume(values.getAsString(Person.NAME));
+        bh.consume(values.getAsString(Person.EMAIL));
+        bh.consume(values.getAsInteger(Person.AGE));
+        bh.consume(values.getAsDouble(Person.SCORE));
+        bh.consume(values.getAsBoolean(Person.ACTIVE));
+    }
+
+    @Benchmark
+    public void iterate(Blackhole bh) {
+        for (Map.Entry<String, Object> entry : values.valueSet()) {
+            bh.consume(entry.getKey());
+            bh.consume(entry.getValue());
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package bits.jdbc.benchmarks;
+
+import bits.jdbc.content.ContentValues;
+import bits.jdbc.content.ContentValuesCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ContentValuesCodec} against Java serialization for a typical row, both one-shot and
+ * as a stream of rows sharing the column-name dictionary.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ContentValuesCodecBenchmark {
+    private ContentValues values;
+    private byte[] codecBytes;
+    private byte[] serializedBytes;
+    private ByteBuffer streamBuffer;
+    private ContentValuesCodec.Encoder encoder;
+    private ContentValuesCodec.Decoder decoder;
+
+    @Setup
+    public void setUp() throws IOException {
+        values = BenchmarkDatabase.person(7);
+        values.put(Person.ID, 7L);
+        codecBytes = ContentValuesCodec.encode(values);
+        serializedBytes = serialize(values);
+        streamBuffer = ByteBuffer.allocate(4096);
+        encoder = new ContentValuesCodec.Encoder();
+        decoder = new ContentValuesCodec.Decoder();
+        // send the column names once, as a long running stream would have
+        encoder.write(values, streamBuffer);
+        streamBuffer.flip();
+        decoder.read(streamBuffer);
+    }
+
+    @Benchmark
+    public byte[] codecEncode() {
+        return ContentValuesCodec.encode(values);
+    }
+
+    @Benchmark
+    public ContentValues codecDecode() {
+        return ContentValuesCodec.decode(codecBytes);
+    }
+
+    @Benchmark
+    public ContentValues codecStreamRoundTrip() {
+        streamBuffer.clear();
+        encoder.write(values, streamBuffer);
+        streamBuffer.flip();
+        return decoder.read(streamBuffer);
+    }
+
+    @Benchmark
+    public byte[] serializationEncode() throws IOException {
+        return serialize(values);
+    }
+
+    @Benchmark
+    public Object serializationDecode() throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serializedBytes))) {
+            return in.readObject();
+        }
+    }
+
+    private static byte[] serialize(ContentValues values) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(values);
+        }
+        return bytes.toByteArray();
+    }
+}
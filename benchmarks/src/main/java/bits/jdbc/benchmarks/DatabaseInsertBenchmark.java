@@ -0,0 +1,71 @@
+package bits.jdbc.benchmarks;
+
+import bits.jdbc.content.ContentValues;
+import bits.jdbc.database.Database;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-row cost of {@link Database#insert} one row at a time versus {@link Database#bulkInsert}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DatabaseInsertBenchmark {
+    private static final int ROWS = 100;
+
+    private Database db;
+    private ContentValues[] rows;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        db = BenchmarkDatabase.newDatabase(1);
+        rows = new ContentValues[ROWS];
+        for (int i = 0; i < ROWS; i++) {
+            rows[i] = BenchmarkDatabase.person(i);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void truncate() throws SQLException {
+        db.execSQL("TRUNCATE TABLE " + BenchmarkDatabase.TABLE);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        db.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public long single() throws SQLException {
+        long count = 0;
+        for (ContentValues row : rows) {
+            count += db.insert(BenchmarkDatabase.TABLE, null, row);
+        }
+        return count;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public int batched() throws SQLException {
+        return db.bulkInsert(BenchmarkDatabase.TABLE, rows);
+    }
+}
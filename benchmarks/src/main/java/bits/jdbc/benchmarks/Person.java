@@ -0,0 +1,68 @@
+package bits.jdbc.benchmarks;
+
+import bits.jdbc.content.ContentValues;
+import bits.jdbc.database.BaseColumns;
+import bits.jdbc.database.BaseModel;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Typical hand written model, mapped the way applications of this library do it.
+ */
+public class Person extends BaseModel implements BaseColumns {
+    public static final String ID = _ID;
+    public static final String NAME = "name";
+    public static final String EMAIL = "email";
+    public static final String AGE = "age";
+    public static final String SCORE = "score";
+    public static final String ACTIVE = "active";
+
+    private long id;
+    private String name;
+    private String email;
+    private int age;
+    private double score;
+    private boolean active;
+
+    public Person() {
+    }
+
+    public Person(ResultSet resultSet) {
+        super(resultSet);
+    }
+
+    @Override
+    public ContentValues assemble() {
+        ContentValues values = new ContentValues();
+        values.put(ID, id);
+        values.put(NAME, name);
+        values.put(EMAIL, email);
+        values.put(AGE, age);
+        values.put(SCORE, score);
+        values.put(ACTIVE, active);
+        return values;
+    }
+
+    @Override
+    public void resolve(ResultSet resultSet) {
+        try {
+            id = resultSet.getLong(ID);
+            name = resultSet.getString(NAME);
+            email = resultSet.getString(EMAIL);
+            age = resultSet.getInt(AGE);
+            score = resultSet.getDouble(SCORE);
+            active = resultSet.getBoolean(ACTIVE);
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+}
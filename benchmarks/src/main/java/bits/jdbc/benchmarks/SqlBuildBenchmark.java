@@ -0,0 +1,76 @@
+package bits.jdbc.benchmarks;
+
+import bits.jdbc.Helper.ConnectionPool;
+import bits.jdbc.content.ContentValues;
+import bits.jdbc.database.CompiledQuery;
+import bits.jdbc.database.Database;
+import bits.jdbc.fake.FakeDriver;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Client side cost of {@link Database#insert}, {@link Database#update} and {@link Database#query}:
+ * building the SQL text and binding the values. The statements go to a {@link FakeDriver}
+ * database without latency, so the server takes no time.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SqlBuildBenchmark {
+    private static final String[] COLUMNS = {Person.ID, Person.NAME, Person.EMAIL, Person.AGE};
+    private static final String[] WHERE_ARGS = {"42"};
+    private static final long[] IDS = {1, 2, 3, 4, 5, 6};
+
+    private Database db;
+    private ContentValues values;
+    private CompiledQuery byIds;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        db = new Database(new ConnectionPool(1, FakeDriver.class.getName(), "jdbc:fake:sqlbuild?rows=0", "", ""));
+        values = BenchmarkDatabase.person(42);
+        byIds = db.compileQuery("SELECT * FROM " + BenchmarkDatabase.TABLE + " WHERE " + Person.ID + " IN ("
+                + CompiledQuery.LIST_MARKER + ")");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        db.close();
+    }
+
+    @Benchmark
+    public long insert() throws SQLException {
+        return db.insert(BenchmarkDatabase.TABLE, null, values);
+    }
+
+    @Benchmark
+    public int update() throws SQLException {
+        return db.update(BenchmarkDatabase.TABLE, values, Person.ID + "=?", WHERE_ARGS);
+    }
+
+    @Benchmark
+    public Object query() throws SQLException {
+        return db.query(BenchmarkDatabase.TABLE, COLUMNS, Person.ID + "=?", WHERE_ARGS, null, 0, Person::new);
+    }
+
+    @Benchmark
+    public String expandInList() {
+        return byIds.getSql((Object) IDS);
+    }
+}
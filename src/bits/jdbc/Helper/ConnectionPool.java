@@ -4,10 +4,40 @@ import java.util.List;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
- * Manages JDBC connections to the database.
+ * Manages JDBC connections to the database. The pool may be shared between threads; checkout and
+ * release are serialised on a {@link ReentrantLock} which is only held to update the pool's
+ * bookkeeping, never while a connection is opened, reset or closed. Threads waiting for a
+ * connection wait on a {@link Condition}, so virtual threads unmount instead of pinning their
+ * carrier thread.
+ * <p>
+ * The pool grows on demand up to its {@link #setMaxPoolSize(int) maximum size}; once every
+ * connection is in use, {@link #getConnection()} waits for one to be released. The waits are
+ * counted in {@link #getStatistics()}, which a {@link PoolAutoTuner} uses to size the pool.
+ * <p>
+ * Workloads sharing the pool can be kept apart with {@link PoolLane lanes}: each lane has a
+ * guaranteed minimum, a maximum and a wait priority, and connections are checked out with
+ * {@link #getConnection(String)}.
+ * <p>
+ * When a new connection cannot be opened the pool's circuit breaker opens: checkouts which would
+ * need a new connection fail at once with SQLState 08001 instead of each waiting for the connect
+ * timeout, while a single background thread retries with exponential backoff and closes the
+ * breaker again once it succeeds.
+ * <p>
+ * Connections are handed out wrapped, so the pool knows which session properties (auto-commit,
+ * transaction isolation, read-only, catalog and schema) the borrower changed. On release it
+ * restores only those, and does not touch a connection whose session was left as it was.
  *
  * @author Jeff S Smith
  */
@@ -36,6 +66,79 @@ public class ConnectionPool {
      * DatabaseType (e.g. DatabaseType.SQLITE).
      */
     private int dbType;
+    /**
+     * Number of connections handed out by {@link #getConnection()} since the pool was created.
+     */
+    private long numAcquired;
+    /**
+     * Upper bound on the number of connections in the pool.
+     */
+    private int maxPoolSize = Integer.MAX_VALUE;
+    /**
+     * Number of connections currently handed out.
+     */
+    private int numInUse;
+    /**
+     * Highest numInUse since the last {@link #takePeakInUse()}.
+     */
+    private int peakInUse;
+    /**
+     * Number of threads currently waiting in {@link #getConnection()}.
+     */
+    private int numWaiting;
+    /**
+     * Number of checkouts which had to wait, and their total wait time.
+     */
+    private long numWaits;
+    private long totalWaitNanos;
+    /**
+     * Is the circuit breaker open, i.e. did the last attempt to open a connection fail?
+     */
+    private boolean circuitOpen;
+    /**
+     * Failure of the last attempt to open a connection.
+     */
+    private SQLException lastConnectFailure;
+    /**
+     * Number of failed attempts to open a connection since the pool was created.
+     */
+    private long numConnectFailures;
+    /**
+     * Number of released connections whose session state had to be reset.
+     */
+    private long numSessionResets;
+    /**
+     * Thread retrying to connect while the circuit breaker is open, or null.
+     */
+    private Thread reconnectThread;
+    /**
+     * First and longest delay between reconnect attempts.
+     */
+    private long reconnectInitialDelayNanos = TimeUnit.MILLISECONDS.toNanos(100);
+    private long reconnectMaxDelayNanos = TimeUnit.SECONDS.toNanos(30);
+    /**
+     * Lane of the connections checked out without a lane name.
+     */
+    private final Lane defaultLane = new Lane(new PoolLane("default", 0, Integer.MAX_VALUE, 0));
+    /**
+     * All lanes including the default one, and the named ones by name.
+     */
+    private final List<Lane> lanes = new ArrayList<>();
+    private final Map<String, Lane> lanesByName = new HashMap<>();
+    /**
+     * Guards the pool's state; {@link #changed} is signalled when a connection is released or
+     * added, or a waiter may have become eligible.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    /**
+     * Number of connections being opened outside the lock, counted against the maximum pool size.
+     */
+    private int numOpening;
+
+    {
+        lanes.add(defaultLane);
+    }
 
     /**
      * Constructor creates a JDBC connection using given parameters.
@@ -64,48 +167,413 @@ public class ConnectionPool {
         PooledConnection pc = new PooledConnection(conn, true);
         conPool.add(pc);
         this.dbType = DatabaseType.getDbType(conn);
+        //there is nothing to open more connections with, so wait for this one to be released
+        this.maxPoolSize = 1;
     }
 
     /**
-     * Creates database connection(s) and adds them to the pool.
+     * Creates database connection(s) and adds them to the pool. The connections are opened one by
+     * one outside the lock; the first failure opens the circuit breaker and stops.
      */
     private void addConnectionsToPool(int numPooledCon) {
+        List<PooledConnection> opened = new ArrayList<>();
         try {
-            Class.forName(driverName).newInstance();
             for (int i = 0; i < numPooledCon; i++) {
-                Connection con = DriverManager.getConnection(conURL, username, password);
-                PooledConnection pc = new PooledConnection(con, true);
-                conPool.add(pc);
+                lock.lock();
+                try {
+                    checkCircuit();
+                } finally {
+                    lock.unlock();
+                }
+                try {
+                    opened.add(openConnection());
+                } catch (SQLException e) {
+                    lock.lock();
+                    try {
+                        tripCircuit(e);
+                    } finally {
+                        lock.unlock();
+                    }
+                    throw e;
+                }
             }
         } catch (Exception e) {
             System.err.println("Exception: add connections to pool");
             e.printStackTrace();
         }
+        List<Connection> surplus = new ArrayList<>();
+        lock.lock();
+        try {
+            for (PooledConnection pc : opened) {
+                if (conPool.size() + numOpening < maxPoolSize) {
+                    conPool.add(pc);
+                } else {
+                    surplus.add(pc.getConnection());
+                }
+            }
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        for (Connection conn : surplus) {
+            closeConnection(conn);
+        }
+    }
+
+    /**
+     * Opens connections in the background, outside the pool lock, until the pool holds the given
+     * number of connections. One connection is opened first; only once it succeeds are the others
+     * opened in parallel. Checkouts can go on meanwhile; use this to overlap connecting with other
+     * startup work.
+     * <p>
+     * Nothing is opened while the circuit breaker is open, and a failed connect trips it like a
+     * failed checkout does, leaving the retries to the reconnect thread.
+     *
+     * @param size The number of connections to have, capped at the maximum pool size.
+     * @return Completes with the number of connections in the pool once every connect has
+     * finished or been skipped because the circuit breaker is open.
+     */
+    public CompletableFuture<Integer> warmUpAsync(final int size) {
+        final CompletableFuture<Integer> done = new CompletableFuture<>();
+        final int missing;
+        lock.lock();
+        try {
+            missing = circuitOpen ? 0 : Math.min(size, maxPoolSize) - conPool.size() - numOpening;
+        } finally {
+            lock.unlock();
+        }
+        if (missing <= 0 || conURL == null) {
+            done.complete(getNumConInPool());
+            return done;
+        }
+        final AtomicInteger pending = new AtomicInteger(missing);
+        final Runnable warmUp = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    warmUpConnection(size);
+                } finally {
+                    if (pending.decrementAndGet() == 0) {
+                        done.complete(getNumConInPool());
+                    }
+                }
+            }
+        };
+        Thread probe = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                if (warmUpConnection(size)) {
+                    for (int i = 1; i < missing; i++) {
+                        Thread thread = new Thread(warmUp, "connection-pool-warmup-" + i);
+                        thread.setDaemon(true);
+                        thread.start();
+                    }
+                    if (pending.decrementAndGet() == 0) {
+                        done.complete(getNumConInPool());
+                    }
+                } else {
+                    done.complete(getNumConInPool());
+                }
+            }
+        }, "connection-pool-warmup-0");
+        probe.setDaemon(true);
+        probe.start();
+        return done;
+    }
+
+    /**
+     * Opens one connection for {@link #warmUpAsync(int)} and adds it to the pool if it still has
+     * fewer than size connections.
+     *
+     * @return false if the circuit breaker is open or the connect failed and opened it.
+     */
+    private boolean warmUpConnection(int size) {
+        lock.lock();
+        try {
+            if (circuitOpen) {
+                return false;
+            }
+        } finally {
+            lock.unlock();
+        }
+        PooledConnection pc;
+        try {
+            pc = openConnection();
+        } catch (SQLException e) {
+            lock.lock();
+            try {
+                tripCircuit(e);
+            } finally {
+                lock.unlock();
+            }
+            return false;
+        }
+        lock.lock();
+        try {
+            if (conPool.size() + numOpening < Math.min(size, maxPoolSize)) {
+                conPool.add(pc);
+                pc = null;
+                changed.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (pc != null) {
+            closeConnection(pc.getConnection());
+        }
+        return true;
+    }
+
+    /**
+     * Fails at once while the circuit breaker is open. The caller must hold the lock.
+     *
+     * @throws SQLException with SQLState 08001 while the breaker is open.
+     */
+    private void checkCircuit() throws SQLException {
+        if (circuitOpen) {
+            throw new SQLException("Database unavailable, reconnecting in the background", "08001",
+                    lastConnectFailure);
+        }
+    }
+
+    /**
+     * Opens the circuit breaker after a failed connect, starting the reconnect thread unless the
+     * breaker is open already. The caller must hold the lock.
+     */
+    private void tripCircuit(SQLException e) {
+        if (conURL == null) {
+            return;
+        }
+        lastConnectFailure = e;
+        numConnectFailures++;
+        if (circuitOpen) {
+            return;
+        }
+        circuitOpen = true;
+        reconnectThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                reconnect();
+            }
+        }, "connection-pool-reconnect");
+        reconnectThread.setDaemon(true);
+        reconnectThread.start();
+    }
+
+    /**
+     * Retries to open a connection with jittered exponential backoff until it succeeds, then adds
+     * it to the pool and closes the circuit breaker. Runs on the reconnect thread; the connect
+     * itself happens outside the lock.
+     */
+    private void reconnect() {
+        long delayNanos;
+        lock.lock();
+        try {
+            delayNanos = reconnectInitialDelayNanos;
+        } finally {
+            lock.unlock();
+        }
+        while (true) {
+            try {
+                //sleep between half and all of the delay, so several pools do not retry in lockstep
+                TimeUnit.NANOSECONDS.sleep(ThreadLocalRandom.current().nextLong(delayNanos / 2, delayNanos + 1));
+            } catch (InterruptedException e) {
+                return;
+            }
+            PooledConnection pc;
+            try {
+                pc = openConnection();
+            } catch (SQLException e) {
+                lock.lock();
+                try {
+                    if (reconnectThread != Thread.currentThread()) {
+                        return;
+                    }
+                    lastConnectFailure = e;
+                    numConnectFailures++;
+                    delayNanos = Math.min(reconnectMaxDelayNanos, delayNanos * 2);
+                } finally {
+                    lock.unlock();
+                }
+                continue;
+            }
+            lock.lock();
+            try {
+                if (reconnectThread == Thread.currentThread()) {
+                    reconnectThread = null;
+                    circuitOpen = false;
+                    lastConnectFailure = null;
+                    if (conPool.size() + numOpening < maxPoolSize) {
+                        conPool.add(pc);
+                        pc = null;
+                    }
+                    changed.signalAll();
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (pc != null) {
+                closeConnection(pc.getConnection());
+            }
+            return;
+        }
+    }
+
+    /**
+     * Returns true while the circuit breaker is open because the database could not be reached.
+     */
+    public boolean isCircuitOpen() {
+        lock.lock();
+        try {
+            return circuitOpen;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sets the delay before the first reconnect attempt once the circuit breaker has opened, and
+     * the longest delay it doubles up to. Defaults 100 ms and 30 seconds.
+     */
+    public void setReconnectBackoff(long initialDelay, long maxDelay, TimeUnit unit) {
+        if (initialDelay <= 0 || maxDelay < initialDelay) {
+            throw new IllegalArgumentException("Need 0 < initialDelay <= maxDelay");
+        }
+        lock.lock();
+        try {
+            reconnectInitialDelayNanos = unit.toNanos(initialDelay);
+            reconnectMaxDelayNanos = unit.toNanos(maxDelay);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Opens a new, available connection without adding it to the pool.
+     */
+    private PooledConnection openConnection() throws SQLException {
+        if (conURL == null) {
+            throw new SQLException("Connection pool was created from a connection and cannot open more");
+        }
+        try {
+            Class.forName(driverName);
+        } catch (ClassNotFoundException e) {
+            throw new SQLException("JDBC driver not found: " + driverName, e);
+        }
+        return new PooledConnection(DriverManager.getConnection(conURL, username, password), true);
     }
 
     /**
      * Gets the number of connections in the pool.
      */
     public int getNumConInPool() {
-        return (conPool.size());
+        lock.lock();
+        try {
+            return (conPool.size());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of connections in the pool which are not in use.
+     */
+    public int getNumAvailableCon() {
+        lock.lock();
+        try {
+            int available = 0;
+            for (int i = 0; i < conPool.size(); i++) {
+                if (conPool.get(i).isAvailable())
+                    available++;
+            }
+            return (available);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets a snapshot of the pool usage counters.
+     *
+     * @return PoolStatistics
+     */
+    public PoolStatistics getStatistics() {
+        lock.lock();
+        try {
+            return new PoolStatistics(conPool.size(), numInUse, numAcquired, maxPoolSize, numWaiting, numWaits,
+                    totalWaitNanos, circuitOpen, numConnectFailures, numSessionResets);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the highest number of connections in use at once since the previous call, and starts a
+     * new period at the current number in use.
+     */
+    int takePeakInUse() {
+        lock.lock();
+        try {
+            int peak = peakInUse;
+            peakInUse = numInUse;
+            return peak;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the upper bound on the number of connections in the pool.
+     */
+    public int getMaxPoolSize() {
+        lock.lock();
+        try {
+            return maxPoolSize;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sets the upper bound on the number of connections in the pool. Lowering it below the current
+     * size does not close connections; {@link #retireIdleConnections(long, int)} and
+     * {@link #resizeConnectionPool(int)} do.
+     *
+     * @param maxPoolSize At least 1.
+     */
+    public void setMaxPoolSize(int maxPoolSize) {
+        if (maxPoolSize < 1) {
+            throw new IllegalArgumentException("Maximum pool size must be at least 1");
+        }
+        lock.lock();
+        try {
+            this.maxPoolSize = maxPoolSize;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
     }
 
+    /**
+     * Removes closed connections in one pass over the pool. The caller must hold the lock.
+     */
     private void removeAnyClosedConnections() {
         try {
-            boolean done = false;
-            while (!done) {
-                done = true;
-
-                for (int i = 0; i < conPool.size(); i++) {
-                    PooledConnection pc = (PooledConnection) conPool.get(i);
-                    if (pc.getConnection().isClosed())  //remove any closed connections
-                    {
-                        conPool.remove(i);
-                        done = false;
-                        break;
+            int kept = 0;
+            int size = conPool.size();
+            for (int i = 0; i < size; i++) {
+                PooledConnection pc = conPool.get(i);
+                if (pc.getConnection().isClosed()) {
+                    pc.setRemoved();
+                    if (!pc.isAvailable()) {
+                        numInUse--;
+                        pc.getLane().inUse--;
                     }
+                } else {
+                    conPool.set(kept++, pc);
                 }
             }
+            conPool.subList(kept, size).clear();
         } catch (SQLException e) {
             System.err.println("Exception: remove any closed connections");
             e.printStackTrace();
@@ -113,28 +581,235 @@ public class ConnectionPool {
     }
 
     /**
-     * Gets available connection from the pool
+     * Gets available connection from the pool. If every connection is in use and the pool has
+     * reached its maximum size, waits until one is released.
+     *
+     * @return Connection
+     * @throws SQLException if a new connection cannot be opened, or the thread is interrupted while
+     *                      waiting.
+     */
+    public Connection getConnection() throws SQLException {
+        return getConnection(null);
+    }
+
+    /**
+     * Gets available connection from the pool for the given lane. Waits while the lane holds its
+     * maximum, while the free connections are reserved for other lanes, or while lanes with a
+     * higher priority are waiting.
+     *
+     * @param laneName Name of a lane added with {@link #addLane(PoolLane)}, or null for none.
+     * @return Connection
+     * @throws SQLException if a new connection cannot be opened, or the thread is interrupted while
+     *                      waiting.
+     */
+    public Connection getConnection(String laneName) throws SQLException {
+        return getConnection(laneName, -1L, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Gets available connection from the pool for the given lane, waiting at most the given time.
      *
+     * @param laneName Name of a lane added with {@link #addLane(PoolLane)}, or null for none.
+     * @param timeout  The longest time to wait, or a negative value to wait as long as it takes.
      * @return Connection
+     * @throws SQLTimeoutException if no connection became available in time.
+     * @throws SQLException        if a new connection cannot be opened, or the thread is interrupted
+     *                             while waiting.
+     */
+    public Connection getConnection(String laneName, long timeout, TimeUnit unit) throws SQLException {
+        long timeoutNanos = timeout < 0 ? -1L : unit.toNanos(timeout);
+        long waitStart = 0L;
+        lock.lock();
+        try {
+            Lane lane = getLane(laneName);
+            while (true) {
+                //if any connections have been closed, remove them from the pool before we get the
+                //next available connection
+                removeAnyClosedConnections();
+
+                PooledConnection pc = null;
+                if (canAdmit(lane) && !isOutranked(lane)) {
+                    for (int i = 0; i < conPool.size(); i++) {
+                        if (conPool.get(i).isAvailable()) {
+                            pc = conPool.get(i);
+                            break;
+                        }
+                    }
+                    //didn't find a connection, so add one to the pool if there is room
+                    if (pc == null && conPool.size() + numOpening < maxPoolSize) {
+                        checkCircuit();
+                        pc = openConnectionUnlocked(lane);
+                        conPool.add(pc);
+                    }
+                }
+                if (pc != null) {
+                    if (waitStart != 0L) {
+                        numWaits++;
+                        totalWaitNanos += System.nanoTime() - waitStart;
+                    }
+                    pc.setAvailable(false);
+                    pc.setLane(lane);
+                    lane.inUse++;
+                    numAcquired++;
+                    numInUse++;
+                    peakInUse = Math.max(peakInUse, numInUse);
+                    return (pc.getConnection());
+                }
+
+                if (waitStart == 0L) {
+                    waitStart = System.nanoTime();
+                }
+                long remaining = timeoutNanos - (System.nanoTime() - waitStart);
+                if (timeoutNanos >= 0 && remaining <= 0) {
+                    numWaits++;
+                    totalWaitNanos += System.nanoTime() - waitStart;
+                    wakeOutrankedWaiters();
+                    throw new SQLTimeoutException("Timed out after " + TimeUnit.NANOSECONDS.toMillis(timeoutNanos)
+                            + " ms waiting for a connection");
+                }
+                numWaiting++;
+                lane.waiting++;
+                try {
+                    if (timeoutNanos >= 0) {
+                        changed.awaitNanos(remaining);
+                    } else {
+                        changed.await();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    wakeOutrankedWaiters();
+                    throw new SQLException("Interrupted while waiting for a connection", e);
+                } finally {
+                    numWaiting--;
+                    lane.waiting--;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Opens a new connection for the given lane with the lock released meanwhile. The slot is
+     * reserved while connecting, so neither the pool nor the lane can be overfilled by concurrent
+     * connects. Opens the circuit breaker if the connect fails. The caller must hold the lock,
+     * and holds it again when this returns.
+     */
+    private PooledConnection openConnectionUnlocked(Lane lane) throws SQLException {
+        SQLException failure;
+        numOpening++;
+        lane.opening++;
+        lock.unlock();
+        try {
+            return openConnection();
+        } catch (SQLException e) {
+            failure = e;
+        } finally {
+            lock.lock();
+            numOpening--;
+            lane.opening--;
+        }
+        tripCircuit(failure);
+        changed.signalAll();  //the reserved slot is free again
+        throw failure;
+    }
+
+    /**
+     * Called by a waiter giving up, which may have been holding back lanes of a lower priority.
+     */
+    private void wakeOutrankedWaiters() {
+        if (lanes.size() > 1) {
+            changed.signalAll();
+        }
+    }
+
+    /**
+     * Adds a lane to the pool.
+     *
+     * @throws IllegalArgumentException if a lane of the same name exists.
+     */
+    public void addLane(PoolLane lane) {
+        lock.lock();
+        try {
+            if (lanesByName.containsKey(lane.getName())) {
+                throw new IllegalArgumentException("Pool lane already exists: " + lane.getName());
+            }
+            Lane state = new Lane(lane);
+            lanes.add(state);
+            lanesByName.put(lane.getName(), state);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns true if a lane of the given name has been added.
+     */
+    public boolean hasLane(String laneName) {
+        lock.lock();
+        try {
+            return lanesByName.containsKey(laneName);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of connections the given lane currently holds.
+     *
+     * @param laneName Name of a lane, or null for the connections checked out without one.
      */
-    public Connection getConnection() {
-        //if any connections have been closed, remove them from the pool before we get the
-        //next available connection
-        removeAnyClosedConnections();
+    public int getNumInUse(String laneName) {
+        lock.lock();
+        try {
+            return getLane(laneName).inUse;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Lane getLane(String laneName) {
+        if (laneName == null) {
+            return defaultLane;
+        }
+        Lane lane = lanesByName.get(laneName);
+        if (lane == null) {
+            throw new IllegalArgumentException("Unknown pool lane: " + laneName);
+        }
+        return lane;
+    }
 
-        for (int i = 0; i < conPool.size(); i++) {
-            PooledConnection pc = (PooledConnection) conPool.get(i);
-            if (pc.isAvailable()) {
-                pc.setAvailable(false);
-                return (pc.getConnection());
+    /**
+     * Returns true if the lane is below its maximum and a connection slot is left which is not
+     * reserved for the minimum of another lane. The caller must hold the lock.
+     */
+    private boolean canAdmit(Lane lane) {
+        if (lane.inUse + lane.opening >= lane.config.getMaxConnections()) {
+            return false;
+        }
+        if (maxPoolSize == Integer.MAX_VALUE) {
+            return true;
+        }
+        long reserved = 0;
+        for (Lane other : lanes) {
+            if (other != lane) {
+                reserved += Math.max(0, other.config.getMinConnections() - other.inUse - other.opening);
             }
         }
+        return numInUse + numOpening + reserved < maxPoolSize;
+    }
 
-        //didn't find a connection, so add one to the pool
-        addConnectionsToPool(1);
-        PooledConnection pc = (PooledConnection) conPool.get(conPool.size() - 1);
-        pc.setAvailable(false);
-        return (pc.getConnection());
+    /**
+     * Returns true if a lane with a higher priority has waiters which could be served now. The
+     * caller must hold the lock.
+     */
+    private boolean isOutranked(Lane lane) {
+        for (Lane other : lanes) {
+            if (other.waiting > 0 && other.config.getPriority() > lane.config.getPriority() && canAdmit(other)) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
@@ -150,12 +825,30 @@ public class ConnectionPool {
      * Closes all connections in the connection pool.
      */
     public void closeAllConnections() {
-        for (int i = 0; i < conPool.size(); i++) {
-            PooledConnection pc = (PooledConnection) conPool.get(i);
+        List<PooledConnection> closing;
+        lock.lock();
+        try {
+            closing = new ArrayList<>(conPool);
+            conPool.clear();  //remove all PooledConnections from list
+            for (PooledConnection pc : closing) {
+                pc.setRemoved();
+            }
+            numInUse = 0;
+            for (Lane lane : lanes) {
+                lane.inUse = 0;
+            }
+            if (reconnectThread != null) {
+                reconnectThread.interrupt();
+                reconnectThread = null;
+            }
+            circuitOpen = false;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        for (PooledConnection pc : closing) {
             closeConnection(pc.getConnection());
         }
-
-        conPool.clear();  //remove all PooledConnections from list
     }
 
     /**
@@ -163,52 +856,142 @@ public class ConnectionPool {
      * connections which are not available (in use)--so it may not resize the pool. It will always
      * enlarge the connection pool if newSize > current size.
      *
-     * @param newSize
+     * @param newSize between 0 and the maximum pool size
      * @return int new size of connection pool
      */
     public int resizeConnectionPool(int newSize) throws SQLException {
-        if ((newSize < 0) || (newSize > 999))
-            throw new SQLException("Connection pool size must be between 0 and 999");
+        List<Connection> removed;
+        int size;
+        lock.lock();
+        try {
+            if ((newSize < 0) || (newSize > maxPoolSize))
+                throw new SQLException("Connection pool size must be between 0 and " + maxPoolSize);
 
-        removeAnyClosedConnections();
+            removeAnyClosedConnections();
 
-        if (newSize > conPool.size())  //add new connections to pool
-        {
-            int conToAdd = (newSize - conPool.size());
-            addConnectionsToPool(conToAdd);
-        } else if (newSize < conPool.size()) //try to remove available connections
+            size = conPool.size();
+            //try to remove available connections
+            removed = removeAvailableConnections(size - newSize, 0L);
+            size = conPool.size();
+        } finally {
+            lock.unlock();
+        }
+        if (newSize > size)  //add new connections to pool
         {
-            boolean done = false;
-            while ((newSize < conPool.size()) && (!done)) {
-                done = true;
-
-                for (int i = 0; i < conPool.size(); i++) {
-                    PooledConnection pc = (PooledConnection) conPool.get(i);
-                    if (pc.isAvailable()) {
-                        //found an available connection, so close and remove it
-                        closeConnection(pc.getConnection());
-                        conPool.remove(i);
-                        done = false;
-                        break;
-                    }
-                }
-            }
+            addConnectionsToPool(newSize - size);
+            return getNumConInPool();
+        }
+        for (Connection conn : removed) {
+            closeConnection(conn);
+        }
+        return (size);
+    }
 
+    /**
+     * Closes connections which have been available for at least the given time, keeping at least
+     * minSize connections in the pool. The connections are closed after they have been removed,
+     * outside the pool lock.
+     *
+     * @return The number of connections closed.
+     */
+    public int retireIdleConnections(long idleTime, TimeUnit unit, int minSize) {
+        List<Connection> removed;
+        lock.lock();
+        try {
+            removeAnyClosedConnections();
+            removed = removeAvailableConnections(conPool.size() - minSize, unit.toNanos(idleTime));
+        } finally {
+            lock.unlock();
+        }
+        for (Connection conn : removed) {
+            closeConnection(conn);
         }
+        return removed.size();
+    }
 
-        return (conPool.size());
+    /**
+     * Removes up to count available connections which have been idle for at least idleNanos in one
+     * pass over the pool, preferring the ones at the end which are handed out last. The caller must
+     * hold the lock and close the returned connections.
+     */
+    private List<Connection> removeAvailableConnections(int count, long idleNanos) {
+        List<Connection> removed = new ArrayList<>();
+        if (count <= 0) {
+            return removed;
+        }
+        long now = System.nanoTime();
+        int size = conPool.size();
+        int kept = size;
+        //walk backwards, shifting the kept connections towards the end
+        for (int i = size - 1; i >= 0; i--) {
+            PooledConnection pc = conPool.get(i);
+            if (removed.size() < count && pc.isAvailable() && now - pc.getLastReleased() >= idleNanos) {
+                pc.setRemoved();
+                removed.add(pc.getConnection());
+            } else {
+                conPool.set(--kept, pc);
+            }
+        }
+        conPool.subList(0, kept).clear();
+        return removed;
     }
 
     /**
-     * Makes a connection available for reuse (in the connection pool).
+     * Makes a connection available for reuse (in the connection pool). Session properties the
+     * borrower changed are restored first, outside the pool lock; a connection which cannot be
+     * restored is closed, and so dropped from the pool.
      *
      * @param conn connection
      */
     public void releaseConnection(Connection conn) {
-        for (int i = 0; i < conPool.size(); i++) {
-            PooledConnection pc = (PooledConnection) conPool.get(i);
-            if (pc.getConnection().equals(conn))
-                pc.setAvailable(true);
+        PooledConnection released = null;
+        lock.lock();
+        try {
+            for (int i = 0; i < conPool.size(); i++) {
+                PooledConnection pc = conPool.get(i);
+                if (pc.getConnection() == conn && !pc.isAvailable()) {
+                    released = pc;
+                    break;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (released == null) {
+            return;
+        }
+        SessionState session = released.getSession();
+        boolean reset = session.isDirty();
+        if (reset) {
+            try {
+                if (!conn.isClosed()) {
+                    session.reset();
+                }
+            } catch (SQLException e) {
+                System.err.println("Exception: reset connection session state");
+                e.printStackTrace();
+                closeConnection(conn);
+            }
+        }
+        lock.lock();
+        try {
+            if (reset) {
+                numSessionResets++;
+            }
+            //dropped from the pool while being reset, which already took it off the counters
+            if (released.isAvailable() || released.isRemoved()) {
+                return;
+            }
+            released.setAvailable(true);
+            released.getLane().inUse--;
+            numInUse--;
+            if (lanes.size() > 1) {
+                changed.signalAll();  //the waiters of some lanes may not be allowed to take it
+            } else {
+                changed.signal();
+            }
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -228,6 +1011,29 @@ public class ConnectionPool {
         }
     }
 
+    /**
+     * Usage counters of a lane.
+     */
+    private static class Lane {
+        final PoolLane config;
+        /**
+         * Number of connections held by this lane.
+         */
+        int inUse;
+        /**
+         * Number of threads waiting in this lane.
+         */
+        int waiting;
+        /**
+         * Number of connections being opened for this lane outside the lock.
+         */
+        int opening;
+
+        Lane(PoolLane config) {
+            this.config = config;
+        }
+    }
+
     /**
      * Pooled connection object.
      *
@@ -235,28 +1041,50 @@ public class ConnectionPool {
      */
     private class PooledConnection {
         /**
-         * Database connection.
+         * Session state tracker wrapping the database connection.
          */
-        private Connection con;
+        private final SessionState session;
 
         /**
          * Is this connection available?
          */
         private boolean available;
 
+        /**
+         * Has this connection been dropped from the pool?
+         */
+        private boolean removed;
+
+        /**
+         * System.nanoTime() when this connection was last made available.
+         */
+        private long lastReleased = System.nanoTime();
+
+        /**
+         * Lane this connection was last checked out for.
+         */
+        private Lane lane;
+
         /**
          * Constructor for PooledConnection object.
          */
         PooledConnection(Connection con, boolean available) {
-            this.con = con;
+            this.session = new SessionState(con);
             this.available = available;
         }
 
         /**
-         * Get the connection.
+         * Get the connection handed out to borrowers.
          */
         Connection getConnection() {
-            return con;
+            return session;
+        }
+
+        /**
+         * Get the tracker of the session properties the borrower changed.
+         */
+        SessionState getSession() {
+            return session;
         }
 
         /**
@@ -271,6 +1099,44 @@ public class ConnectionPool {
          */
         void setAvailable(boolean available) {
             this.available = available;
+            if (available) {
+                lastReleased = System.nanoTime();
+            }
+        }
+
+        /**
+         * Has this connection been dropped from the pool.
+         */
+        boolean isRemoved() {
+            return removed;
+        }
+
+        /**
+         * Mark this connection as dropped from the pool, and so from the usage counters.
+         */
+        void setRemoved() {
+            this.removed = true;
+        }
+
+        /**
+         * Get the lane this connection was last checked out for.
+         */
+        Lane getLane() {
+            return lane;
+        }
+
+        /**
+         * Set the lane this connection is checked out for.
+         */
+        void setLane(Lane lane) {
+            this.lane = lane;
+        }
+
+        /**
+         * Get the System.nanoTime() when this connection was last made available.
+         */
+        long getLastReleased() {
+            return lastReleased;
         }
     }
 }
\ No newline at end of file
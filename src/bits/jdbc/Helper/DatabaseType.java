@@ -68,4 +68,78 @@ public class DatabaseType {
             dbType = HSQL;
         return (dbType);
     }
-}
\ No newline at end of file
+
+    /**
+     * Gets the fetch size which makes the driver stream a large result instead of loading it
+     * into memory at once. PostgreSQL only streams when auto-commit is off.
+     *
+     * @param dbType type of database (e.g. MYSQL)
+     * @return int fetch size hint
+     */
+    public static int getStreamingFetchSize(int dbType) {
+        if (dbType == MYSQL)
+            return (Integer.MIN_VALUE);
+        return (1000);
+    }
+
+    /**
+     * Returns true if the driver only honours the streaming fetch size inside a transaction, so
+     * auto-commit has to be turned off for a large result not to be loaded at once. This is the
+     * case for PostgreSQL.
+     *
+     * @param dbType type of database (e.g. POSTGRESQL)
+     * @return boolean true if streaming needs auto-commit off
+     */
+    public static boolean isStreamingTransactional(int dbType) {
+        return (dbType == POSTGRESQL);
+    }
+
+    /**
+     * Gets the most bind parameters an IN list may safely hold. Oracle rejects lists of more than
+     * 1000 values (ORA-01795); for unknown databases the limit of SQLite and SQL Server applies.
+     *
+     * @param dbType type of database (e.g. ORACLE)
+     * @return int maximum number of values in an IN list
+     */
+    public static int getMaxInListSize(int dbType) {
+        if (dbType == ORACLE)
+            return (1000);
+        if (dbType == UNKNOWN)
+            return (999);
+        return (4096);
+    }
+
+    /**
+     * Returns true if the failure is a deadlock or serialization failure, after which the
+     * database has rolled back the statement or transaction and running it again may succeed.
+     * SQLState 40001 counts for every database; PostgreSQL adds 40P01, MySQL the error codes
+     * 1213 (deadlock) and 1205 (lock wait timeout), Oracle ORA-00060 (deadlock) and ORA-08177
+     * (cannot serialize). The causes and chained exceptions are checked as well.
+     *
+     * @param dbType type of database (e.g. MYSQL)
+     * @param e      the failure
+     * @return boolean true if retrying may help
+     */
+    public static boolean isTransientFailure(int dbType, SQLException e) {
+        int depth = 0;
+        for (Throwable t = e; t != null && depth < 16; depth++) {
+            if (t instanceof SQLException) {
+                SQLException sqlException = (SQLException) t;
+                String state = sqlException.getSQLState();
+                int code = sqlException.getErrorCode();
+                if ("40001".equals(state))
+                    return (true);
+                if (dbType == POSTGRESQL && "40P01".equals(state))
+                    return (true);
+                if (dbType == MYSQL && (code == 1213 || code == 1205))
+                    return (true);
+                if (dbType == ORACLE && (code == 60 || code == 8177))
+                    return (true);
+                t = sqlException.getNextException() != null ? sqlException.getNextException() : t.getCause();
+            } else {
+                t = t.getCause();
+            }
+        }
+        return (false);
+    }
+}
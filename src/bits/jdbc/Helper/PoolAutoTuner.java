@@ -0,0 +1,266 @@
+package bits.jdbc.Helper;
+
+import bits.jdbc.monitor.LatencyHistogram;
+import bits.jdbc.monitor.StatementEvent;
+import bits.jdbc.monitor.StatementListener;
+
+import java.sql.SQLException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Sizes a {@link ConnectionPool} between a minimum and a maximum from its wait-time statistics.
+ * <p>
+ * Every period the tuner compares the pool counters with the previous sample. The pool is grown
+ * by a quarter when checkouts have been waiting for {@link #setGrowTicks(int) several} periods in
+ * a row, and shrunk by a quarter when the peak number of connections in use stayed below
+ * {@link #setShrinkUtilisation(double) a fraction} of the pool for {@link #setShrinkTicks(int) many}
+ * periods. The two thresholds are far apart, so the size does not flap. Surplus connections are
+ * closed once they are released, and connections idle for longer than
+ * {@link #setIdleTimeout(long, TimeUnit) the idle timeout} are closed down to the minimum.
+ * <p>
+ * Registered as the {@link bits.jdbc.database.Database#setStatementListener(StatementListener)
+ * statement listener}, the tuner also watches statement latency and does not grow the pool while
+ * latency is well above its running average: then the database, not the pool, is the bottleneck
+ * and more connections only add contention.
+ */
+public class PoolAutoTuner implements StatementListener {
+    private final ConnectionPool pool;
+    private final int minSize;
+    private final int maxSize;
+    private long periodNanos = TimeUnit.SECONDS.toNanos(1);
+    private double growWaitRatio = 0.01;
+    private long growWaitNanos = TimeUnit.MILLISECONDS.toNanos(1);
+    private int growTicks = 2;
+    private double shrinkUtilisation = 0.5;
+    private int shrinkTicks = 30;
+    private long idleNanos = TimeUnit.MINUTES.toNanos(1);
+    private double latencyTolerance = 2.0;
+
+    /**
+     * Execution times of the statements since the previous tick.
+     */
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private double latencyAverage;
+    private long lastAcquired;
+    private long lastWaits;
+    private long lastWaitNanos;
+    private int growStreak;
+    private int shrinkStreak;
+    private int target;
+    private ScheduledExecutorService executor;
+    /**
+     * Guards the sampling state; not held while the pool opens or closes connections.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * @param pool    The pool to size.
+     * @param minSize The number of connections to keep open, at least 1.
+     * @param maxSize The maximum number of connections.
+     */
+    public PoolAutoTuner(ConnectionPool pool, int minSize, int maxSize) {
+        if (minSize < 1 || maxSize < minSize) {
+            throw new IllegalArgumentException("Need 1 <= minSize <= maxSize");
+        }
+        this.pool = pool;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.target = Math.max(minSize, Math.min(maxSize, pool.getNumConInPool()));
+    }
+
+    /**
+     * Sets how often the pool statistics are sampled. Default 1 second.
+     */
+    public PoolAutoTuner setPeriod(long period, TimeUnit unit) {
+        periodNanos = unit.toNanos(period);
+        return this;
+    }
+
+    /**
+     * Sets the fraction of checkouts which must have waited, and their minimum mean wait, for a
+     * period to count towards growing. Defaults 1% and 1 ms.
+     */
+    public PoolAutoTuner setGrowThreshold(double waitRatio, long meanWait, TimeUnit unit) {
+        growWaitRatio = waitRatio;
+        growWaitNanos = unit.toNanos(meanWait);
+        return this;
+    }
+
+    /**
+     * Sets the number of consecutive waiting periods before the pool grows. Default 2.
+     */
+    public PoolAutoTuner setGrowTicks(int growTicks) {
+        this.growTicks = growTicks;
+        return this;
+    }
+
+    /**
+     * Sets the fraction of the pool the peak usage must stay below for a period to count towards
+     * shrinking. Default 0.5.
+     */
+    public PoolAutoTuner setShrinkUtilisation(double shrinkUtilisation) {
+        this.shrinkUtilisation = shrinkUtilisation;
+        return this;
+    }
+
+    /**
+     * Sets the number of consecutive underused periods before the pool shrinks. Default 30.
+     */
+    public PoolAutoTuner setShrinkTicks(int shrinkTicks) {
+        this.shrinkTicks = shrinkTicks;
+        return this;
+    }
+
+    /**
+     * Sets how long a connection may stay unused before it is closed, as long as the pool keeps its
+     * minimum size. Default 1 minute.
+     */
+    public PoolAutoTuner setIdleTimeout(long idleTime, TimeUnit unit) {
+        idleNanos = unit.toNanos(idleTime);
+        return this;
+    }
+
+    /**
+     * Sets how many times its running average the statement latency of a period may be before
+     * growing is held back. Default 2.
+     */
+    public PoolAutoTuner setLatencyTolerance(double latencyTolerance) {
+        this.latencyTolerance = latencyTolerance;
+        return this;
+    }
+
+    /**
+     * Get the current maximum size chosen for the pool.
+     */
+    public int getTarget() {
+        lock.lock();
+        try {
+            return target;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Opens the minimum number of connections, caps the pool at the current target and starts
+     * sampling on a daemon thread.
+     */
+    public PoolAutoTuner start() throws SQLException {
+        lock.lock();
+        try {
+            if (executor != null) {
+                return this;
+            }
+            pool.setMaxPoolSize(target);
+        } finally {
+            lock.unlock();
+        }
+        if (pool.getNumConInPool() < minSize) {
+            pool.resizeConnectionPool(minSize);
+        }
+        lock.lock();
+        try {
+            if (executor != null) {
+                return this;
+            }
+            PoolStatistics stats = pool.getStatistics();
+            lastAcquired = stats.getNumAcquired();
+            lastWaits = stats.getNumWaits();
+            lastWaitNanos = stats.getWaitNanos();
+            executor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "pool-autotuner");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.scheduleAtFixedRate(this::tick, periodNanos, periodNanos, TimeUnit.NANOSECONDS);
+            return this;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops sampling. The pool keeps its current size and maximum.
+     */
+    public void stop() {
+        lock.lock();
+        try {
+            if (executor != null) {
+                executor.shutdownNow();
+                executor = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void onStatement(StatementEvent event) {
+        latency.record(event.getExecuteNanos());
+    }
+
+    /**
+     * Samples the pool and adjusts its size. Called every period once started; may also be called
+     * directly to drive the tuner from another scheduler.
+     */
+    public void tick() {
+        try {
+            int retainTarget;
+            lock.lock();
+            try {
+                PoolStatistics stats = pool.getStatistics();
+                int peak = pool.takePeakInUse();
+                long acquired = stats.getNumAcquired() - lastAcquired;
+                long waits = stats.getNumWaits() - lastWaits;
+                long waitNanos = stats.getWaitNanos() - lastWaitNanos;
+                lastAcquired = stats.getNumAcquired();
+                lastWaits = stats.getNumWaits();
+                lastWaitNanos = stats.getWaitNanos();
+
+                boolean latencyNormal = true;
+                if (latency.getCount() > 0) {
+                    long mean = latency.getMean();
+                    latency.reset();
+                    latencyNormal = latencyAverage == 0 || mean <= latencyAverage * latencyTolerance;
+                    latencyAverage = latencyAverage == 0 ? mean : latencyAverage * 0.8 + mean * 0.2;
+                }
+
+                boolean starved = stats.getNumWaiting() > 0
+                        || (waits > 0 && waits >= acquired * growWaitRatio && waitNanos / waits >= growWaitNanos);
+                if (starved) {
+                    shrinkStreak = 0;
+                    if (++growStreak >= growTicks && target < maxSize && latencyNormal) {
+                        growStreak = 0;
+                        target = Math.min(maxSize, target + Math.max(1, target / 4));
+                        pool.setMaxPoolSize(target);
+                    }
+                } else if (peak < target * shrinkUtilisation) {
+                    growStreak = 0;
+                    if (++shrinkStreak >= shrinkTicks && target > minSize) {
+                        shrinkStreak = 0;
+                        target = Math.max(minSize, target - Math.max(1, target / 4));
+                        pool.setMaxPoolSize(target);
+                    }
+                } else {
+                    growStreak = 0;
+                    shrinkStreak = 0;
+                }
+                retainTarget = stats.getNumCon() > target ? target : -1;
+            } finally {
+                lock.unlock();
+            }
+
+            //closing connections happens outside the tuner's lock
+            if (retainTarget >= 0) {
+                pool.retireIdleConnections(0L, TimeUnit.NANOSECONDS, retainTarget);
+            }
+            pool.retireIdleConnections(idleNanos, TimeUnit.NANOSECONDS, minSize);
+        } catch (RuntimeException e) {
+            System.err.println("Exception: pool autotuner tick");
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package bits.jdbc.Helper;
+
+/**
+ * A named share of a {@link ConnectionPool} for one kind of workload, e.g. user requests or batch
+ * jobs. Add lanes with {@link ConnectionPool#addLane(PoolLane)} and check out connections with
+ * {@link ConnectionPool#getConnection(String)}.
+ * <p>
+ * Up to minConnections of the pool's maximum size are kept free for the lane while it uses fewer,
+ * the lane never holds more than maxConnections, and when several lanes wait for connections the
+ * one with the highest priority is served first. Connections checked out without a lane have
+ * priority 0 and no minimum or maximum.
+ */
+public class PoolLane {
+    /**
+     * Name used to check out connections.
+     */
+    private final String name;
+    /**
+     * Number of connections reserved for this lane.
+     */
+    private final int minConnections;
+    /**
+     * Maximum number of connections this lane may hold at once.
+     */
+    private final int maxConnections;
+    /**
+     * Waiters of lanes with a higher priority are served first.
+     */
+    private final int priority;
+
+    public PoolLane(String name, int minConnections, int maxConnections, int priority) {
+        if (name == null) {
+            throw new IllegalArgumentException("Lane name must not be null");
+        }
+        if (minConnections < 0 || maxConnections < 1 || maxConnections < minConnections) {
+            throw new IllegalArgumentException("Need 0 <= minConnections <= maxConnections and maxConnections >= 1");
+        }
+        this.name = name;
+        this.minConnections = minConnections;
+        this.maxConnections = maxConnections;
+        this.priority = priority;
+    }
+
+    /**
+     * Gets the name used to check out connections.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the number of connections reserved for this lane.
+     */
+    public int getMinConnections() {
+        return minConnections;
+    }
+
+    /**
+     * Gets the maximum number of connections this lane may hold at once.
+     */
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * Gets the wait priority; higher is served first.
+     */
+    public int getPriority() {
+        return priority;
+    }
+
+    @Override
+    public String toString() {
+        return "PoolLane{" + name + ", min=" + minConnections + ", max=" + maxConnections + ", priority="
+                + priority + '}';
+    }
+}
@@ -0,0 +1,147 @@
+package bits.jdbc.Helper;
+
+/**
+ * Immutable snapshot of the usage counters of a {@link ConnectionPool}.
+ */
+public class PoolStatistics {
+    /**
+     * Number of connections in the pool.
+     */
+    private final int numCon;
+    /**
+     * Number of connections currently handed out.
+     */
+    private final int numInUse;
+    /**
+     * Number of connections handed out since the pool was created.
+     */
+    private final long numAcquired;
+    /**
+     * Upper bound on the number of connections in the pool.
+     */
+    private final int maxCon;
+    /**
+     * Number of threads currently waiting for a connection.
+     */
+    private final int numWaiting;
+    /**
+     * Number of checkouts since the pool was created which had to wait for a connection.
+     */
+    private final long numWaits;
+    /**
+     * Total time spent waiting by those checkouts.
+     */
+    private final long waitNanos;
+    /**
+     * Is the circuit breaker open because the database could not be reached?
+     */
+    private final boolean circuitOpen;
+    /**
+     * Number of failed attempts to open a connection since the pool was created.
+     */
+    private final long numConnectFailures;
+    /**
+     * Number of released connections whose session state had to be reset.
+     */
+    private final long numSessionResets;
+
+    PoolStatistics(int numCon, int numInUse, long numAcquired, int maxCon, int numWaiting, long numWaits,
+                   long waitNanos, boolean circuitOpen, long numConnectFailures, long numSessionResets) {
+        this.numCon = numCon;
+        this.numInUse = numInUse;
+        this.numAcquired = numAcquired;
+        this.maxCon = maxCon;
+        this.numWaiting = numWaiting;
+        this.numWaits = numWaits;
+        this.waitNanos = waitNanos;
+        this.circuitOpen = circuitOpen;
+        this.numConnectFailures = numConnectFailures;
+        this.numSessionResets = numSessionResets;
+    }
+
+    /**
+     * Gets the number of connections in the pool.
+     */
+    public int getNumCon() {
+        return numCon;
+    }
+
+    /**
+     * Gets the number of connections currently in use.
+     */
+    public int getNumInUse() {
+        return numInUse;
+    }
+
+    /**
+     * Gets the number of connections currently available.
+     */
+    public int getNumAvailable() {
+        return numCon - numInUse;
+    }
+
+    /**
+     * Gets the number of connections handed out since the pool was created.
+     */
+    public long getNumAcquired() {
+        return numAcquired;
+    }
+
+    /**
+     * Gets the upper bound on the number of connections in the pool.
+     */
+    public int getMaxCon() {
+        return maxCon;
+    }
+
+    /**
+     * Gets the number of threads currently waiting for a connection.
+     */
+    public int getNumWaiting() {
+        return numWaiting;
+    }
+
+    /**
+     * Gets the number of checkouts since the pool was created which had to wait for a connection.
+     */
+    public long getNumWaits() {
+        return numWaits;
+    }
+
+    /**
+     * Gets the total time in nanoseconds spent waiting for a connection since the pool was created.
+     */
+    public long getWaitNanos() {
+        return waitNanos;
+    }
+
+    /**
+     * Returns true if the circuit breaker was open because the database could not be reached.
+     */
+    public boolean isCircuitOpen() {
+        return circuitOpen;
+    }
+
+    /**
+     * Gets the number of failed attempts to open a connection since the pool was created.
+     */
+    public long getNumConnectFailures() {
+        return numConnectFailures;
+    }
+
+    /**
+     * Gets the number of released connections whose session state had to be reset since the pool
+     * was created. Releases of connections whose session state was left unchanged are not counted.
+     */
+    public long getNumSessionResets() {
+        return numSessionResets;
+    }
+
+    @Override
+    public String toString() {
+        return "PoolStatistics{con=" + numCon + ", inUse=" + numInUse + ", acquired=" + numAcquired
+                + ", max=" + maxCon + ", waiting=" + numWaiting + ", waits=" + numWaits
+                + ", waitMs=" + waitNanos / 1000000 + ", circuitOpen=" + circuitOpen
+                + ", connectFailures=" + numConnectFailures + ", sessionResets=" + numSessionResets + '}';
+    }
+}
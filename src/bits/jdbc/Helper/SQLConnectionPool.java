@@ -3,7 +3,7 @@ package bits.jdbc.Helper;
 public class SQLConnectionPool extends ConnectionPool {
     private static final String DRIVER_NAME = "com.mysql.jdbc.Driver";
     private static final String CONNECTION_URL_BASE = "jdbc:mysql://localhost:3306/%s";
-    private static final int DEFAULT_CONNECTION_NUM = 5;
+    static final int DEFAULT_CONNECTION_NUM = 5;
 
     public SQLConnectionPool(String name) {
 
@@ -15,6 +15,10 @@ public class SQLConnectionPool extends ConnectionPool {
     }
 
     public SQLConnectionPool(String name, String username, String password) {
-        super(DEFAULT_CONNECTION_NUM, DRIVER_NAME, String.format(CONNECTION_URL_BASE, name), username, password);
+        this(name, username, password, DEFAULT_CONNECTION_NUM);
+    }
+
+    public SQLConnectionPool(String name, String username, String password, int numPooledCon) {
+        super(numPooledCon, DRIVER_NAME, String.format(CONNECTION_URL_BASE, name), username, password);
     }
 }
\ No newline at end of file
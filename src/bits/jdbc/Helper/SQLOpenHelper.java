@@ -2,18 +2,53 @@ package bits.jdbc.Helper;
 
 import bits.jdbc.database.Database;
 
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A helper class to manage database creation and version management.
+ * <p>
+ * Nothing is opened until the first call to {@link #getWritableDatabase()}. That call opens a
+ * single connection, starts opening the rest of the pool in the background, and meanwhile brings
+ * the schema to the version given to the constructor: {@link #onCreate(Database)} for a new
+ * database, {@link #onUpgrade(Database, int, int)} or {@link #onDowngrade(Database, int, int)}
+ * for an older or newer one. The version is stored in the table {@link #VERSION_TABLE} and is
+ * only written once the callback has returned, so a failed migration runs again on the next
+ * start.
+ */
 public abstract class SQLOpenHelper {
+    /**
+     * Table holding the schema version in its single row.
+     */
+    public static final String VERSION_TABLE = "schema_version";
+
     private final String mName;
     private String mUsername;
     private String mPassword;
-    private Database mDatabase;
-    private SQLConnectionPool mConnectionPool;
+    private final int mNewVersion;
+    private volatile Database mDatabase;
+    /**
+     * Serialises opening and closing. A lock rather than a monitor, so virtual threads waiting
+     * for the migration to finish do not pin their carrier thread.
+     */
+    private final ReentrantLock mLock = new ReentrantLock();
 
     public SQLOpenHelper(String name, String username, String password) {
+        this(name, username, password, 1);
+    }
+
+    /**
+     * @param version The schema version the application expects, starting at 1.
+     */
+    public SQLOpenHelper(String name, String username, String password, int version) {
+        if (version < 1) {
+            throw new IllegalArgumentException("Version must be >= 1, was " + version);
+        }
         this.mName = name;
         this.mUsername = username;
         this.mPassword = password;
-        mConnectionPool = new SQLConnectionPool(mName, username, password);
+        this.mNewVersion = version;
     }
 
     /**
@@ -24,33 +59,116 @@ public abstract class SQLOpenHelper {
         return mName;
     }
 
-    public Database getWritableDatabase() {
-        Database db = mDatabase;
-        if (db == null) {
-            if (mConnectionPool != null)
-                mConnectionPool = new SQLConnectionPool(mName, mUsername, mPassword);
-            db = new Database(mConnectionPool);
-            onCreate(db);
-        } else {
-            onDowngrade(db);
-        }
+    /**
+     * Return the schema version the application expects, as given to the constructor.
+     */
+    public int getVersion() {
+        return mNewVersion;
+    }
 
-        db = mDatabase;
+    /**
+     * Create and/or open the database, running the schema callbacks the first time. The database
+     * is cached until {@link #close()}.
+     *
+     * @throws SQLException if the database cannot be opened or a callback fails.
+     */
+    public Database getWritableDatabase() throws SQLException {
+        Database opened = mDatabase;
+        if (opened != null) {
+            return opened;
+        }
+        mLock.lock();
+        try {
+            if (mDatabase == null) {
+                mDatabase = open();
+            }
+            return mDatabase;
+        } finally {
+            mLock.unlock();
+        }
+    }
 
+    private Database open() throws SQLException {
+        ConnectionPool pool = createConnectionPool();
+        // connecting the rest of the pool overlaps with the migration on the first connection
+        pool.warmUpAsync(getPoolSize());
+        Database db = new Database(pool);
+        try {
+            int version = readVersion(db);
+            if (version != mNewVersion) {
+                if (version == 0) {
+                    onCreate(db);
+                } else if (version < mNewVersion) {
+                    onUpgrade(db, version, mNewVersion);
+                } else {
+                    onDowngrade(db, version, mNewVersion);
+                }
+                writeVersion(db, version);
+            }
+            onOpen(db);
+        } catch (SQLException | RuntimeException e) {
+            db.close();
+            throw e;
+        }
         return db;
     }
 
+    /**
+     * Creates the connection pool with the single connection needed to migrate the schema.
+     * Override to connect to another database than MySQL.
+     */
+    protected ConnectionPool createConnectionPool() {
+        return new SQLConnectionPool(mName, mUsername, mPassword, 1);
+    }
+
+    /**
+     * Get the number of connections to open in the background while the schema is migrated.
+     */
+    protected int getPoolSize() {
+        return SQLConnectionPool.DEFAULT_CONNECTION_NUM;
+    }
+
+    /**
+     * Reads the stored schema version.
+     *
+     * @return The version, or 0 if none has been stored.
+     */
+    private static int readVersion(Database db) throws SQLException {
+        if (db.getTableMetadata(VERSION_TABLE) == null) {
+            return 0;
+        }
+        List<Integer> versions = db.rawQuery("SELECT version FROM " + VERSION_TABLE, null, 1,
+                rs -> rs.getInt(1));
+        return versions.isEmpty() ? 0 : versions.get(0);
+    }
+
+    private void writeVersion(Database db, int oldVersion) throws SQLException {
+        if (db.getTableMetadata(VERSION_TABLE) == null) {
+            db.execSQL("CREATE TABLE " + VERSION_TABLE + " (version INTEGER NOT NULL)");
+        }
+        Object[] bindArgs = {mNewVersion};
+        if (oldVersion == 0 || db.executeUpdate("UPDATE " + VERSION_TABLE + " SET version = ?", bindArgs) == 0) {
+            db.executeUpdate("INSERT INTO " + VERSION_TABLE + " (version) VALUES (?)", bindArgs);
+        }
+    }
+
     /**
      * Close any open database object.
      */
     public void close() {
-        if (mDatabase != null) {
-            mDatabase.close();
+        Database db;
+        mLock.lock();
+        try {
+            db = mDatabase;
             mDatabase = null;
+        } finally {
+            mLock.unlock();
+        }
+        if (db != null) {
+            db.close();
         }
     }
 
-
     /**
      * Called when the database is created for the first time. This is where the
      * creation of tables and the initial population of the tables should happen.
@@ -59,10 +177,41 @@ public abstract class SQLOpenHelper {
      */
     public abstract void onCreate(Database db);
 
+    /**
+     * Called when the stored schema version is newer than the one given to the constructor.
+     * The default implementation calls {@link #onDowngrade(Database)}.
+     *
+     * @param db         The database.
+     * @param oldVersion The stored version.
+     * @param newVersion The version given to the constructor.
+     */
+    public void onDowngrade(Database db, int oldVersion, int newVersion) throws SQLException {
+        onDowngrade(db);
+    }
+
     public abstract void onDowngrade(Database db);
 
+    /**
+     * Called when the stored schema version is older than the one given to the constructor.
+     * The default implementation calls {@link #onUpgrade(Database)}.
+     *
+     * @param db         The database.
+     * @param oldVersion The stored version.
+     * @param newVersion The version given to the constructor.
+     */
+    public void onUpgrade(Database db, int oldVersion, int newVersion) throws SQLException {
+        onUpgrade(db);
+    }
+
     public void onUpgrade(Database db) {
 
     }
 
+    /**
+     * Called every time the database has been opened, after the schema is up to date.
+     *
+     * @param db The database.
+     */
+    public void onOpen(Database db) throws SQLException {
+    }
 }
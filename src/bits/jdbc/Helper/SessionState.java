@@ -0,0 +1,133 @@
+package bits.jdbc.Helper;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Objects;
+
+/**
+ * Tracks the session properties a borrower of a pooled connection changes, so that
+ * {@link ConnectionPool#releaseConnection(Connection)} can restore just those. The pool hands out
+ * this connection, which records, for auto-commit, transaction isolation, read-only, catalog and
+ * schema, the value the connection had before the first change, and marks the property dirty
+ * while it differs from that value. Setting a property back clears its mark, so a borrower which
+ * tidies up after itself costs no reset at all.
+ * <p>
+ * Every other call goes straight to the driver's connection. Statements and metadata report this
+ * connection as theirs, so changes made through {@link java.sql.Statement#getConnection()} are
+ * tracked as well.
+ */
+final class SessionState extends DelegatingConnection {
+    private static final int AUTO_COMMIT = 1;
+    private static final int ISOLATION = 1 << 1;
+    private static final int READ_ONLY = 1 << 2;
+    private static final int CATALOG = 1 << 3;
+    private static final int SCHEMA = 1 << 4;
+
+    /**
+     * Bits of the properties which differ from their value at checkout. Only the borrower
+     * changes them, and the pool reads them after the borrower released the connection.
+     */
+    private int dirty;
+    /**
+     * Values of the properties before the borrower changed them, valid while the bit is dirty.
+     */
+    private boolean autoCommit;
+    private int isolation;
+    private boolean readOnly;
+    private String catalog;
+    private String schema;
+
+    SessionState(Connection connection) {
+        super(connection);
+    }
+
+    /**
+     * Returns true if a session property differs from its value before the connection was
+     * checked out.
+     */
+    boolean isDirty() {
+        return dirty != 0;
+    }
+
+    /**
+     * Restores the changed session properties. A transaction left open by turning auto-commit
+     * off is rolled back rather than committed by turning it on again.
+     */
+    void reset() throws SQLException {
+        try {
+            if ((dirty & AUTO_COMMIT) != 0) {
+                if (!delegate.getAutoCommit()) {
+                    delegate.rollback();
+                }
+                delegate.setAutoCommit(autoCommit);
+            }
+            if ((dirty & ISOLATION) != 0) {
+                delegate.setTransactionIsolation(isolation);
+            }
+            if ((dirty & READ_ONLY) != 0) {
+                delegate.setReadOnly(readOnly);
+            }
+            if ((dirty & CATALOG) != 0) {
+                delegate.setCatalog(catalog);
+            }
+            if ((dirty & SCHEMA) != 0) {
+                delegate.setSchema(schema);
+            }
+        } finally {
+            dirty = 0;
+        }
+    }
+
+    @Override
+    public void setAutoCommit(boolean value) throws SQLException {
+        if ((dirty & AUTO_COMMIT) == 0) {
+            autoCommit = delegate.getAutoCommit();
+        }
+        delegate.setAutoCommit(value);
+        mark(AUTO_COMMIT, value == autoCommit);
+    }
+
+    @Override
+    public void setTransactionIsolation(int value) throws SQLException {
+        if ((dirty & ISOLATION) == 0) {
+            isolation = delegate.getTransactionIsolation();
+        }
+        delegate.setTransactionIsolation(value);
+        mark(ISOLATION, value == isolation);
+    }
+
+    @Override
+    public void setReadOnly(boolean value) throws SQLException {
+        if ((dirty & READ_ONLY) == 0) {
+            readOnly = delegate.isReadOnly();
+        }
+        delegate.setReadOnly(value);
+        mark(READ_ONLY, value == readOnly);
+    }
+
+    @Override
+    public void setCatalog(String value) throws SQLException {
+        if ((dirty & CATALOG) == 0) {
+            catalog = delegate.getCatalog();
+        }
+        delegate.setCatalog(value);
+        mark(CATALOG, Objects.equals(value, catalog));
+    }
+
+    @Override
+    public void setSchema(String value) throws SQLException {
+        if ((dirty & SCHEMA) == 0) {
+            schema = delegate.getSchema();
+        }
+        delegate.setSchema(value);
+        mark(SCHEMA, Objects.equals(value, schema));
+    }
+
+    private void mark(int property, boolean restored) {
+        if (restored) {
+            dirty &= ~property;
+        } else {
+            dirty |= property;
+        }
+    }
+}
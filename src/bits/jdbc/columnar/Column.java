@@ -0,0 +1,113 @@
+package bits.jdbc.columnar;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * One column of a {@link ColumnBatch}. Values are stored in fixed size chunks of primitive
+ * arrays, so a growing column never copies the values it already holds. Nulls are tracked in a
+ * bitmap which is only allocated once the first null is seen.
+ */
+public abstract class Column {
+    static final int CHUNK_SHIFT = 12;
+    static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private final String mName;
+    private final int mJdbcType;
+    int mSize;
+    private long[][] mNulls;
+    private int mNullCount;
+
+    Column(String name, int jdbcType) {
+        mName = name;
+        mJdbcType = jdbcType;
+    }
+
+    /**
+     * Returns the outer array of a chunked column with room for the given chunk index.
+     */
+    static <T> T[] ensureChunks(T[] chunks, int chunk) {
+        if (chunk < chunks.length) {
+            return chunks;
+        }
+        return Arrays.copyOf(chunks, Math.max(chunks.length * 2, chunk + 1));
+    }
+
+    /**
+     * Get the column label.
+     */
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * Get the {@link java.sql.Types} constant of the source column.
+     */
+    public int getJdbcType() {
+        return mJdbcType;
+    }
+
+    /**
+     * Get the number of values in this column.
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Get the number of null values in this column.
+     */
+    public int getNullCount() {
+        return mNullCount;
+    }
+
+    /**
+     * Returns true if the value at the given row is null.
+     */
+    public boolean isNull(int row) {
+        checkRow(row);
+        long[][] nulls = mNulls;
+        if (nulls == null) {
+            return false;
+        }
+        long[] words = nulls[row >>> CHUNK_SHIFT];
+        int bit = row & CHUNK_MASK;
+        return words != null && (words[bit >>> 6] & (1L << bit)) != 0;
+    }
+
+    void checkRow(int row) {
+        if (row < 0 || row >= mSize) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + mSize);
+        }
+    }
+
+    /**
+     * Marks the value about to be appended at row {@link #mSize} as null.
+     */
+    void markNull() {
+        int row = mSize;
+        if (mNulls == null) {
+            mNulls = new long[4][];
+        }
+        int chunk = row >>> CHUNK_SHIFT;
+        mNulls = ensureChunks(mNulls, chunk);
+        if (mNulls[chunk] == null) {
+            mNulls[chunk] = new long[CHUNK_SIZE >>> 6];
+        }
+        int bit = row & CHUNK_MASK;
+        mNulls[chunk][bit >>> 6] |= 1L << bit;
+        mNullCount++;
+    }
+
+    /**
+     * Appends the value of the given column of the current row.
+     */
+    abstract void read(ResultSet resultSet, int index) throws SQLException;
+
+    /**
+     * Gets the value at the given row as an object, or null.
+     */
+    public abstract Object getObject(int row);
+}
@@ -0,0 +1,139 @@
+package bits.jdbc.columnar;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ * A query result held column by column in primitive arrays, instead of one object per row.
+ * <p>
+ * BIGINT, DATE and TIMESTAMP columns become a {@link LongColumn} (dates as epoch milliseconds),
+ * INTEGER, SMALLINT, TINYINT, BIT and BOOLEAN an {@link IntColumn}, DOUBLE, FLOAT, REAL and
+ * fractional DECIMAL or NUMERIC a {@link DoubleColumn}, and everything else a dictionary encoded
+ * {@link StringColumn}. DECIMAL and NUMERIC columns without a fraction and with up to 18 digits
+ * become a {@link LongColumn}.
+ */
+public class ColumnBatch {
+    private final Column[] mColumns;
+    private final int mRowCount;
+
+    private ColumnBatch(Column[] columns, int rowCount) {
+        mColumns = columns;
+        mRowCount = rowCount;
+    }
+
+    private static Column newColumn(ResultSetMetaData metaData, int index) throws SQLException {
+        String name = metaData.getColumnLabel(index);
+        int type = metaData.getColumnType(index);
+        switch (type) {
+            case Types.BIGINT:
+            case Types.DATE:
+            case Types.TIMESTAMP:
+                return new LongColumn(name, type);
+            case Types.INTEGER:
+            case Types.SMALLINT:
+            case Types.TINYINT:
+            case Types.BIT:
+            case Types.BOOLEAN:
+                return new IntColumn(name, type);
+            case Types.DOUBLE:
+            case Types.FLOAT:
+            case Types.REAL:
+                return new DoubleColumn(name, type);
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                if (metaData.getScale(index) == 0 && metaData.getPrecision(index) > 0
+                        && metaData.getPrecision(index) <= 18) {
+                    return new LongColumn(name, type);
+                }
+                return new DoubleColumn(name, type);
+            default:
+                return new StringColumn(name, type);
+        }
+    }
+
+    /**
+     * Reads all remaining rows of the result set.
+     *
+     * @param resultSet The result set, positioned before the first row to read.
+     * @return The rows, column by column.
+     * @throws SQLException
+     */
+    public static ColumnBatch read(ResultSet resultSet) throws SQLException {
+        ResultSetMetaData metaData = resultSet.getMetaData();
+        int columnCount = metaData.getColumnCount();
+        Column[] columns = new Column[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            columns[i] = newColumn(metaData, i + 1);
+        }
+        int rows = 0;
+        while (resultSet.next()) {
+            for (int i = 0; i < columnCount; i++) {
+                columns[i].read(resultSet, i + 1);
+            }
+            rows++;
+        }
+        return new ColumnBatch(columns, rows);
+    }
+
+    /**
+     * Get the number of rows.
+     */
+    public int getRowCount() {
+        return mRowCount;
+    }
+
+    /**
+     * Get the number of columns.
+     */
+    public int getColumnCount() {
+        return mColumns.length;
+    }
+
+    /**
+     * Gets a column by its 0-based position.
+     */
+    public Column getColumn(int index) {
+        return mColumns[index];
+    }
+
+    /**
+     * Gets a column by its label, ignoring case.
+     *
+     * @throws IllegalArgumentException if there is no such column.
+     */
+    public Column getColumn(String name) {
+        for (Column column : mColumns) {
+            if (column.getName().equalsIgnoreCase(name)) {
+                return column;
+            }
+        }
+        throw new IllegalArgumentException("No column " + name);
+    }
+
+    private <T extends Column> T getColumn(String name, Class<T> type) {
+        Column column = getColumn(name);
+        if (!type.isInstance(column)) {
+            throw new IllegalArgumentException("Column " + name + " is a " + column.getClass().getSimpleName()
+                    + ", not a " + type.getSimpleName());
+        }
+        return type.cast(column);
+    }
+
+    public LongColumn getLongColumn(String name) {
+        return getColumn(name, LongColumn.class);
+    }
+
+    public IntColumn getIntColumn(String name) {
+        return getColumn(name, IntColumn.class);
+    }
+
+    public DoubleColumn getDoubleColumn(String name) {
+        return getColumn(name, DoubleColumn.class);
+    }
+
+    public StringColumn getStringColumn(String name) {
+        return getColumn(name, StringColumn.class);
+    }
+}
@@ -0,0 +1,99 @@
+package bits.jdbc.columnar;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Column of {@code double} values. Also holds DECIMAL and NUMERIC columns with a fraction.
+ */
+public class DoubleColumn extends Column {
+    private double[][] mChunks = new double[4][];
+
+    DoubleColumn(String name, int jdbcType) {
+        super(name, jdbcType);
+    }
+
+    void append(double value) {
+        int chunk = mSize >>> CHUNK_SHIFT;
+        mChunks = ensureChunks(mChunks, chunk);
+        if (mChunks[chunk] == null) {
+            mChunks[chunk] = new double[CHUNK_SIZE];
+        }
+        mChunks[chunk][mSize & CHUNK_MASK] = value;
+        mSize++;
+    }
+
+    @Override
+    void read(ResultSet resultSet, int index) throws SQLException {
+        double value = resultSet.getDouble(index);
+        if (resultSet.wasNull()) {
+            markNull();
+        }
+        append(value);
+    }
+
+    /**
+     * Gets the value at the given row; 0 if it is null.
+     */
+    public double get(int row) {
+        checkRow(row);
+        return mChunks[row >>> CHUNK_SHIFT][row & CHUNK_MASK];
+    }
+
+    @Override
+    public Object getObject(int row) {
+        return isNull(row) ? null : get(row);
+    }
+
+    /**
+     * Get the sum of all non-null values.
+     */
+    public double sum() {
+        double sum = 0;
+        for (int chunk = 0; chunk * CHUNK_SIZE < mSize; chunk++) {
+            double[] values = mChunks[chunk];
+            int n = Math.min(CHUNK_SIZE, mSize - chunk * CHUNK_SIZE);
+            for (int i = 0; i < n; i++) {
+                sum += values[i];
+            }
+        }
+        // nulls are stored as 0 and do not change the sum
+        return sum;
+    }
+
+    /**
+     * Get the mean of all non-null values, or NaN if there are none.
+     */
+    public double mean() {
+        int count = mSize - getNullCount();
+        return count == 0 ? Double.NaN : sum() / count;
+    }
+
+    /**
+     * Get the smallest non-null value, or NaN if there is none.
+     */
+    public double min() {
+        double min = Double.NaN;
+        for (int row = 0; row < mSize; row++) {
+            if (getNullCount() == 0 || !isNull(row)) {
+                double value = get(row);
+                min = Double.isNaN(min) ? value : Math.min(min, value);
+            }
+        }
+        return min;
+    }
+
+    /**
+     * Get the largest non-null value, or NaN if there is none.
+     */
+    public double max() {
+        double max = Double.NaN;
+        for (int row = 0; row < mSize; row++) {
+            if (getNullCount() == 0 || !isNull(row)) {
+                double value = get(row);
+                max = Double.isNaN(max) ? value : Math.max(max, value);
+            }
+        }
+        return max;
+    }
+}
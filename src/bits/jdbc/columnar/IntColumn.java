@@ -0,0 +1,95 @@
+package bits.jdbc.columnar;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ * Column of {@code int} values. Also holds BIT and BOOLEAN columns as 0 and 1.
+ */
+public class IntColumn extends Column {
+    private int[][] mChunks = new int[4][];
+
+    IntColumn(String name, int jdbcType) {
+        super(name, jdbcType);
+    }
+
+    void append(int value) {
+        int chunk = mSize >>> CHUNK_SHIFT;
+        mChunks = ensureChunks(mChunks, chunk);
+        if (mChunks[chunk] == null) {
+            mChunks[chunk] = new int[CHUNK_SIZE];
+        }
+        mChunks[chunk][mSize & CHUNK_MASK] = value;
+        mSize++;
+    }
+
+    @Override
+    void read(ResultSet resultSet, int index) throws SQLException {
+        int value;
+        if (getJdbcType() == Types.BOOLEAN || getJdbcType() == Types.BIT) {
+            value = resultSet.getBoolean(index) ? 1 : 0;
+        } else {
+            value = resultSet.getInt(index);
+        }
+        if (resultSet.wasNull()) {
+            markNull();
+        }
+        append(value);
+    }
+
+    /**
+     * Gets the value at the given row; 0 if it is null.
+     */
+    public int get(int row) {
+        checkRow(row);
+        return mChunks[row >>> CHUNK_SHIFT][row & CHUNK_MASK];
+    }
+
+    @Override
+    public Object getObject(int row) {
+        return isNull(row) ? null : get(row);
+    }
+
+    /**
+     * Get the sum of all non-null values.
+     */
+    public long sum() {
+        long sum = 0;
+        for (int chunk = 0; chunk * CHUNK_SIZE < mSize; chunk++) {
+            int[] values = mChunks[chunk];
+            int n = Math.min(CHUNK_SIZE, mSize - chunk * CHUNK_SIZE);
+            for (int i = 0; i < n; i++) {
+                sum += values[i];
+            }
+        }
+        // nulls are stored as 0 and do not change the sum
+        return sum;
+    }
+
+    /**
+     * Get the smallest non-null value, or {@link Integer#MAX_VALUE} if there is none.
+     */
+    public int min() {
+        int min = Integer.MAX_VALUE;
+        for (int row = 0; row < mSize; row++) {
+            if (getNullCount() == 0 || !isNull(row)) {
+                min = Math.min(min, get(row));
+            }
+        }
+        return min;
+    }
+
+    /**
+     * Get the largest non-null value, or {@link Integer#MIN_VALUE} if there is none.
+     */
+    public int max() {
+        int max = Integer.MIN_VALUE;
+        for (int row = 0; row < mSize; row++) {
+            if (getNullCount() == 0 || !isNull(row)) {
+                max = Math.max(max, get(row));
+            }
+        }
+        return max;
+    }
+}
@@ -0,0 +1,100 @@
+package bits.jdbc.columnar;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+
+/**
+ * Column of {@code long} values. Also holds DATE and TIMESTAMP columns as epoch milliseconds.
+ */
+public class LongColumn extends Column {
+    private long[][] mChunks = new long[4][];
+
+    LongColumn(String name, int jdbcType) {
+        super(name, jdbcType);
+    }
+
+    void append(long value) {
+        int chunk = mSize >>> CHUNK_SHIFT;
+        mChunks = ensureChunks(mChunks, chunk);
+        if (mChunks[chunk] == null) {
+            mChunks[chunk] = new long[CHUNK_SIZE];
+        }
+        mChunks[chunk][mSize & CHUNK_MASK] = value;
+        mSize++;
+    }
+
+    @Override
+    void read(ResultSet resultSet, int index) throws SQLException {
+        long value;
+        boolean isNull;
+        if (getJdbcType() == Types.TIMESTAMP || getJdbcType() == Types.DATE) {
+            Timestamp timestamp = resultSet.getTimestamp(index);
+            isNull = timestamp == null;
+            value = isNull ? 0 : timestamp.getTime();
+        } else {
+            value = resultSet.getLong(index);
+            isNull = resultSet.wasNull();
+        }
+        if (isNull) {
+            markNull();
+        }
+        append(value);
+    }
+
+    /**
+     * Gets the value at the given row; 0 if it is null.
+     */
+    public long get(int row) {
+        checkRow(row);
+        return mChunks[row >>> CHUNK_SHIFT][row & CHUNK_MASK];
+    }
+
+    @Override
+    public Object getObject(int row) {
+        return isNull(row) ? null : get(row);
+    }
+
+    /**
+     * Get the sum of all non-null values.
+     */
+    public long sum() {
+        long sum = 0;
+        for (int chunk = 0; chunk * CHUNK_SIZE < mSize; chunk++) {
+            long[] values = mChunks[chunk];
+            int n = Math.min(CHUNK_SIZE, mSize - chunk * CHUNK_SIZE);
+            for (int i = 0; i < n; i++) {
+                sum += values[i];
+            }
+        }
+        // nulls are stored as 0 and do not change the sum
+        return sum;
+    }
+
+    /**
+     * Get the smallest non-null value, or {@link Long#MAX_VALUE} if there is none.
+     */
+    public long min() {
+        long min = Long.MAX_VALUE;
+        for (int row = 0; row < mSize; row++) {
+            if (getNullCount() == 0 || !isNull(row)) {
+                min = Math.min(min, get(row));
+            }
+        }
+        return min;
+    }
+
+    /**
+     * Get the largest non-null value, or {@link Long#MIN_VALUE} if there is none.
+     */
+    public long max() {
+        long max = Long.MIN_VALUE;
+        for (int row = 0; row < mSize; row++) {
+            if (getNullCount() == 0 || !isNull(row)) {
+                max = Math.max(max, get(row));
+            }
+        }
+        return max;
+    }
+}
@@ -0,0 +1,112 @@
+package bits.jdbc.columnar;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Dictionary encoded column of Strings. Every distinct value is stored once; rows hold an
+ * {@code int} code into the dictionary. Any column type without a primitive representation is
+ * read as a String.
+ */
+public class StringColumn extends Column {
+    private int[][] mChunks = new int[4][];
+    private final HashMap<String, Integer> mCodes = new HashMap<>();
+    private final List<String> mDictionary = new ArrayList<>();
+
+    StringColumn(String name, int jdbcType) {
+        super(name, jdbcType);
+    }
+
+    private void append(int code) {
+        int chunk = mSize >>> CHUNK_SHIFT;
+        mChunks = ensureChunks(mChunks, chunk);
+        if (mChunks[chunk] == null) {
+            mChunks[chunk] = new int[CHUNK_SIZE];
+        }
+        mChunks[chunk][mSize & CHUNK_MASK] = code;
+        mSize++;
+    }
+
+    @Override
+    void read(ResultSet resultSet, int index) throws SQLException {
+        String value = resultSet.getString(index);
+        if (value == null) {
+            markNull();
+            append(-1);
+            return;
+        }
+        Integer code = mCodes.get(value);
+        if (code == null) {
+            code = mDictionary.size();
+            mCodes.put(value, code);
+            mDictionary.add(value);
+        }
+        append(code);
+    }
+
+    /**
+     * Gets the dictionary code at the given row, or -1 if the value is null.
+     */
+    public int getCode(int row) {
+        checkRow(row);
+        return mChunks[row >>> CHUNK_SHIFT][row & CHUNK_MASK];
+    }
+
+    /**
+     * Gets the value at the given row, or null.
+     */
+    public String get(int row) {
+        int code = getCode(row);
+        return code < 0 ? null : mDictionary.get(code);
+    }
+
+    @Override
+    public Object getObject(int row) {
+        return get(row);
+    }
+
+    /**
+     * Get the number of distinct non-null values.
+     */
+    public int getCardinality() {
+        return mDictionary.size();
+    }
+
+    /**
+     * Gets the value of a dictionary code.
+     */
+    public String decode(int code) {
+        return mDictionary.get(code);
+    }
+
+    /**
+     * Gets the code of a value, or -1 if no row holds it. Comparing codes is much cheaper than
+     * comparing Strings when filtering.
+     */
+    public int encode(String value) {
+        Integer code = mCodes.get(value);
+        return code != null ? code : -1;
+    }
+
+    /**
+     * Counts the rows per dictionary code.
+     *
+     * @return The number of rows holding each code, indexed by code.
+     */
+    public int[] countByCode() {
+        int[] counts = new int[mDictionary.size()];
+        for (int chunk = 0; chunk * CHUNK_SIZE < mSize; chunk++) {
+            int[] codes = mChunks[chunk];
+            int n = Math.min(CHUNK_SIZE, mSize - chunk * CHUNK_SIZE);
+            for (int i = 0; i < n; i++) {
+                if (codes[i] >= 0) {
+                    counts[codes[i]]++;
+                }
+            }
+        }
+        return counts;
+    }
+}
@@ -42,13 +42,13 @@ public final class ContentValues implements Serializable {
     }
 
     /**
-     * Creates a set of values copied from the given HashMap. This is used
-     * by the Parcel unmarshalling code.
+     * Creates a set of values backed by the given HashMap. This is used
+     * by the {@link ContentValuesCodec} decoder.
      *
      * @param values the values to start with
      *               {@hide}
      */
-    private ContentValues(HashMap<String, Object> values) {
+    ContentValues(HashMap<String, Object> values) {
         mValues = values;
     }
 
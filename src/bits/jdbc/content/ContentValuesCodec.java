@@ -0,0 +1,402 @@
+package bits.jdbc.content;
+
+import bits.jdbc.utils.VarInts;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compact binary encoding of {@link ContentValues}, used instead of Java serialization to queue
+ * and cache rows.
+ * <p>
+ * A record is the variable length number of entries followed by the entries. Every entry is a
+ * key reference, a one byte type tag and the value. Key references are variable length:
+ * {@code 0} is followed by a new key which is added to the column-name dictionary, {@code 1} by a
+ * key which is not (once the dictionary is full), and {@code n >= 2} refers to dictionary entry
+ * {@code n - 2}. Integers are zigzag variable length, floating point values fixed width big
+ * endian, and Strings and byte arrays are prefixed with their length in bytes.
+ * <p>
+ * An {@link Encoder} and {@link Decoder} pair shares the dictionary over a stream of records, so
+ * every column name is sent once per stream. Both sides may be seeded with the same well known
+ * column names. The one-shot {@link #encode(ContentValues)} and {@link #decode(byte[])} use a
+ * fresh dictionary per record.
+ */
+public final class ContentValuesCodec {
+    static final byte TAG_NULL = 0;
+    static final byte TAG_STRING = 1;
+    static final byte TAG_BYTE = 2;
+    static final byte TAG_SHORT = 3;
+    static final byte TAG_INTEGER = 4;
+    static final byte TAG_LONG = 5;
+    static final byte TAG_FLOAT = 6;
+    static final byte TAG_DOUBLE = 7;
+    static final byte TAG_TRUE = 8;
+    static final byte TAG_FALSE = 9;
+    static final byte TAG_BYTES = 10;
+    static final byte TAG_STRING_LIST = 11;
+
+    /**
+     * Default upper bound on the number of column names remembered per stream.
+     */
+    public static final int DEFAULT_MAX_DICTIONARY_SIZE = 4096;
+
+    private static final int REF_NEW = 0;
+    private static final int REF_LITERAL = 1;
+    private static final int REF_FIRST_ID = 2;
+
+    private ContentValuesCodec() {
+    }
+
+    /**
+     * Encodes a single record with a fresh dictionary.
+     */
+    public static byte[] encode(ContentValues values) {
+        Encoder encoder = new Encoder();
+        ByteBuffer buffer = ByteBuffer.allocate(64 + values.size() * 24);
+        while (!encoder.write(values, buffer)) {
+            buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+        }
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    /**
+     * Decodes a record encoded by {@link #encode(ContentValues)}.
+     *
+     * @throws IllegalArgumentException if the bytes are not a complete record.
+     */
+    public static ContentValues decode(byte[] bytes) {
+        ContentValues values = new Decoder().read(ByteBuffer.wrap(bytes));
+        if (values == null) {
+            throw new IllegalArgumentException("Truncated ContentValues record");
+        }
+        return values;
+    }
+
+    private static int utf8Length(String s) {
+        int length = s.length();
+        int bytes = length;
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (c >= 0x80) {
+                if (c < 0x800) {
+                    bytes++;
+                } else if (Character.isHighSurrogate(c) && i + 1 < length
+                        && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    bytes += 2;
+                    i++;
+                } else {
+                    bytes += 2;
+                }
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Writes the UTF-8 length and bytes of the String without an intermediate byte array.
+     * Unpaired surrogates are written as '?'.
+     */
+    static void writeString(ByteBuffer out, String s) {
+        int length = s.length();
+        VarInts.writeVarInt(out, utf8Length(s));
+        if (out.remaining() < length) {
+            throw new BufferOverflowException();
+        }
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                out.put((byte) c);
+            } else if (c < 0x800) {
+                out.put((byte) (0xC0 | (c >> 6)));
+                out.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                out.put((byte) (0xF0 | (cp >> 18)));
+                out.put((byte) (0x80 | ((cp >> 12) & 0x3F)));
+                out.put((byte) (0x80 | ((cp >> 6) & 0x3F)));
+                out.put((byte) (0x80 | (cp & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                // keep the byte count computed by utf8Length: 3 bytes for an unpaired surrogate
+                out.put((byte) 0xEF);
+                out.put((byte) 0xBF);
+                out.put((byte) 0xBD);
+            } else {
+                out.put((byte) (0xE0 | (c >> 12)));
+                out.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                out.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    static String readString(ByteBuffer in) {
+        int length = readLength(in);
+        if (in.hasArray()) {
+            String s = new String(in.array(), in.arrayOffset() + in.position(), length,
+                    StandardCharsets.UTF_8);
+            in.position(in.position() + length);
+            return s;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads a length prefix and checks the buffer holds that many bytes.
+     */
+    private static int readLength(ByteBuffer in) {
+        int length = VarInts.readVarInt(in);
+        if (length < 0) {
+            throw new IllegalArgumentException("Negative length " + length);
+        }
+        if (in.remaining() < length) {
+            throw new BufferUnderflowException();
+        }
+        return length;
+    }
+
+    /**
+     * Writes records to buffers, remembering the column names already sent on this stream.
+     * Not thread safe.
+     */
+    public static final class Encoder {
+        private final HashMap<String, Integer> mDictionary = new HashMap<>();
+        private final ArrayList<String> mAdded = new ArrayList<>();
+        private final int mMaxDictionarySize;
+
+        public Encoder() {
+            this(DEFAULT_MAX_DICTIONARY_SIZE);
+        }
+
+        /**
+         * @param maxDictionarySize Upper bound on the number of column names remembered.
+         * @param seed              Column names known to both sides up front, in the same order
+         *                          as given to the {@link Decoder}.
+         */
+        public Encoder(int maxDictionarySize, String... seed) {
+            mMaxDictionarySize = maxDictionarySize;
+            for (String key : seed) {
+                if (!mDictionary.containsKey(key)) {
+                    mDictionary.put(key, mDictionary.size());
+                }
+            }
+        }
+
+        /**
+         * Appends one record at the buffer's position.
+         *
+         * @return true if the record was written; false, with the buffer and dictionary left
+         * unchanged, if it did not fit.
+         * @throws IllegalArgumentException if a value has a type ContentValues does not support.
+         */
+        public boolean write(ContentValues values, ByteBuffer out) {
+            int start = out.position();
+            mAdded.clear();
+            try {
+                VarInts.writeVarInt(out, values.size());
+                for (Map.Entry<String, Object> entry : values.valueSet()) {
+                    writeKey(out, entry.getKey());
+                    writeValue(out, entry.getKey(), entry.getValue());
+                }
+                return true;
+            } catch (BufferOverflowException e) {
+                out.position(start);
+                for (String key : mAdded) {
+                    mDictionary.remove(key);
+                }
+                return false;
+            }
+        }
+
+        private void writeKey(ByteBuffer out, String key) {
+            Integer id = mDictionary.get(key);
+            if (id != null) {
+                VarInts.writeVarInt(out, id + REF_FIRST_ID);
+            } else if (mDictionary.size() < mMaxDictionarySize) {
+                VarInts.writeVarInt(out, REF_NEW);
+                writeString(out, key);
+                mDictionary.put(key, mDictionary.size());
+                mAdded.add(key);
+            } else {
+                VarInts.writeVarInt(out, REF_LITERAL);
+                writeString(out, key);
+            }
+        }
+
+        private static void writeValue(ByteBuffer out, String key, Object value) {
+            if (value == null) {
+                out.put(TAG_NULL);
+            } else if (value instanceof String) {
+                out.put(TAG_STRING);
+                writeString(out, (String) value);
+            } else if (value instanceof Long) {
+                out.put(TAG_LONG);
+                VarInts.writeVarLong(out, VarInts.zigZag((Long) value));
+            } else if (value instanceof Integer) {
+                out.put(TAG_INTEGER);
+                VarInts.writeVarLong(out, VarInts.zigZag((Integer) value));
+            } else if (value instanceof Double) {
+                out.put(TAG_DOUBLE);
+                out.putDouble((Double) value);
+            } else if (value instanceof Boolean) {
+                out.put((Boolean) value ? TAG_TRUE : TAG_FALSE);
+            } else if (value instanceof byte[]) {
+                byte[] bytes = (byte[]) value;
+                out.put(TAG_BYTES);
+                VarInts.writeVarInt(out, bytes.length);
+                out.put(bytes);
+            } else if (value instanceof Float) {
+                out.put(TAG_FLOAT);
+                out.putFloat((Float) value);
+            } else if (value instanceof Short) {
+                out.put(TAG_SHORT);
+                VarInts.writeVarLong(out, VarInts.zigZag((Short) value));
+            } else if (value instanceof Byte) {
+                out.put(TAG_BYTE);
+                out.put((Byte) value);
+            } else if (value instanceof ArrayList) {
+                ArrayList<?> list = (ArrayList<?>) value;
+                out.put(TAG_STRING_LIST);
+                VarInts.writeVarInt(out, list.size());
+                for (Object item : list) {
+                    if (item == null) {
+                        out.put(TAG_NULL);
+                    } else {
+                        out.put(TAG_STRING);
+                        writeString(out, item.toString());
+                    }
+                }
+            } else {
+                throw new IllegalArgumentException("Unsupported type " + value.getClass().getName()
+                        + " for key " + key);
+            }
+        }
+    }
+
+    /**
+     * Reads records written by an {@link Encoder}, remembering the column names received on this
+     * stream. Decoded keys are shared String instances. Not thread safe.
+     */
+    public static final class Decoder {
+        private String[] mDictionary;
+        private int mSize;
+
+        public Decoder() {
+            this(new String[0]);
+        }
+
+        /**
+         * @param seed Column names known to both sides up front, in the same order as given to
+         *             the {@link Encoder}.
+         */
+        public Decoder(String... seed) {
+            mDictionary = new String[Math.max(16, seed.length)];
+            for (String key : seed) {
+                boolean known = false;
+                for (int i = 0; i < mSize; i++) {
+                    if (mDictionary[i].equals(key)) {
+                        known = true;
+                        break;
+                    }
+                }
+                if (!known) {
+                    mDictionary[mSize++] = key;
+                }
+            }
+        }
+
+        /**
+         * Reads one record at the buffer's position.
+         *
+         * @return The values; or null, with the buffer and dictionary left unchanged, if the
+         * buffer does not hold the complete record yet.
+         * @throws IllegalArgumentException if the data is malformed.
+         */
+        public ContentValues read(ByteBuffer in) {
+            int start = in.position();
+            int size = mSize;
+            try {
+                int count = VarInts.readVarInt(in);
+                HashMap<String, Object> values = new HashMap<>(
+                        Math.max(2, (int) (Math.min(count, in.remaining()) / 0.75f) + 1));
+                for (int i = 0; i < count; i++) {
+                    String key = readKey(in);
+                    values.put(key, readValue(in));
+                }
+                return new ContentValues(values);
+            } catch (BufferUnderflowException e) {
+                in.position(start);
+                Arrays.fill(mDictionary, size, mSize, null);
+                mSize = size;
+                return null;
+            }
+        }
+
+        private String readKey(ByteBuffer in) {
+            int ref = VarInts.readVarInt(in);
+            if (ref == REF_NEW) {
+                String key = readString(in).intern();
+                if (mSize == mDictionary.length) {
+                    mDictionary = Arrays.copyOf(mDictionary, mSize * 2);
+                }
+                mDictionary[mSize++] = key;
+                return key;
+            } else if (ref == REF_LITERAL) {
+                return readString(in);
+            }
+            int id = ref - REF_FIRST_ID;
+            if (id >= mSize) {
+                throw new IllegalArgumentException("Unknown column name reference " + id);
+            }
+            return mDictionary[id];
+        }
+
+        private static Object readValue(ByteBuffer in) {
+            byte tag = in.get();
+            switch (tag) {
+                case TAG_NULL:
+                    return null;
+                case TAG_STRING:
+                    return readString(in);
+                case TAG_LONG:
+                    return VarInts.unZigZag(VarInts.readVarLong(in));
+                case TAG_INTEGER:
+                    return (int) VarInts.unZigZag(VarInts.readVarLong(in));
+                case TAG_DOUBLE:
+                    return in.getDouble();
+                case TAG_TRUE:
+                    return Boolean.TRUE;
+                case TAG_FALSE:
+                    return Boolean.FALSE;
+                case TAG_BYTES: {
+                    int length = readLength(in);
+                    byte[] bytes = new byte[length];
+                    in.get(bytes);
+                    return bytes;
+                }
+                case TAG_FLOAT:
+                    return in.getFloat();
+                case TAG_SHORT:
+                    return (short) VarInts.unZigZag(VarInts.readVarLong(in));
+                case TAG_BYTE:
+                    return in.get();
+                case TAG_STRING_LIST: {
+                    int count = VarInts.readVarInt(in);
+                    ArrayList<String> list = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++) {
+                        list.add(in.get() == TAG_NULL ? null : readString(in));
+                    }
+                    return list;
+                }
+                default:
+                    throw new IllegalArgumentException("Unknown type tag " + tag);
+            }
+        }
+    }
+}
@@ -0,0 +1,399 @@
+package bits.jdbc.database;
+
+import bits.jdbc.utils.TextUtils;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Delivers the rows added to or changed in a table since the last poll. Obtain one with
+ * {@link Database#changeFeed(String, RowMapper)}.
+ * <p>
+ * The feed remembers the position of the last delivered row, its {@link Watermark}, and asks only
+ * for the rows after it, ordered and in batches of at most {@link #setBatchSize(int) batch size}.
+ * By default the position is the {@link BaseColumns#_ID id}, which finds inserted rows. With a
+ * {@link #setVersionColumn(String) version column}, e.g. a timestamp or counter set on every write,
+ * the position is the version and the id together, which finds updated rows as well and stays
+ * exact when many rows share a version. Either column should be indexed.
+ * <p>
+ * The watermark is saved to the {@link #setWatermarkStore(WatermarkStore) watermark store} after
+ * every batch the listeners accepted, so a restarted feed continues where it stopped. Delivery is
+ * at least once: a batch a listener fails on is delivered again on the next poll. A row committed
+ * after a row with a higher id or version has been delivered is missed, so the column should be
+ * assigned in commit order, or the feed run on rows older than the longest transaction.
+ */
+public class ChangeFeed<T> {
+    private final Database mDatabase;
+    private final String mTable;
+    private final RowMapper<T> mMapper;
+    private final List<Listener<? super T>> mListeners = new CopyOnWriteArrayList<>();
+    /**
+     * Serialises polls and guards the settings; a lock rather than a monitor, as {@link #poll()}
+     * holds it across queries and would otherwise pin a virtual thread to its carrier.
+     */
+    private final ReentrantLock mLock = new ReentrantLock();
+    private String mName;
+    private String mVersionColumn;
+    private String[] mColumns;
+    private int mBatchSize = 500;
+    private int mMaxBatchesPerPoll = 100;
+    private WatermarkStore mStore;
+    private Watermark mWatermark;
+    private ScheduledExecutorService mExecutor;
+
+    ChangeFeed(Database database, String table, RowMapper<T> mapper) {
+        mDatabase = database;
+        mTable = table;
+        mMapper = mapper;
+    }
+
+    public String getTable() {
+        return mTable;
+    }
+
+    /**
+     * Get the name the watermark is stored under; the table name, followed by the version column
+     * if one is set, unless {@link #setName(String) set}.
+     */
+    public String getName() {
+        if (mName != null) {
+            return mName;
+        }
+        return mVersionColumn == null ? mTable : mTable + '.' + mVersionColumn;
+    }
+
+    /**
+     * Set the name the watermark is stored under, to run several feeds on one table.
+     */
+    public ChangeFeed<T> setName(String name) {
+        mLock.lock();
+        try {
+            mName = name;
+            return this;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Set the column that is increased on every write of a row, or null to follow the id only.
+     */
+    public ChangeFeed<T> setVersionColumn(String versionColumn) {
+        mLock.lock();
+        try {
+            mVersionColumn = versionColumn;
+            mWatermark = null;
+            return this;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Set which columns to read; the id and version columns are added if missing. Passing null,
+     * the default, reads all columns.
+     */
+    public ChangeFeed<T> setColumns(String... columns) {
+        mLock.lock();
+        try {
+            mColumns = columns;
+            return this;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Set the most rows read and delivered at once. Default 500.
+     */
+    public ChangeFeed<T> setBatchSize(int batchSize) {
+        mLock.lock();
+        try {
+            if (batchSize < 1) {
+                throw new IllegalArgumentException("Batch size must be >= 1, was " + batchSize);
+            }
+            mBatchSize = batchSize;
+            return this;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Set the most batches one poll reads before leaving the rest to the next poll. Default 100.
+     */
+    public ChangeFeed<T> setMaxBatchesPerPoll(int maxBatches) {
+        mLock.lock();
+        try {
+            mMaxBatchesPerPoll = maxBatches;
+            return this;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Set where the watermark is loaded from and saved to. Without a store the feed starts at the
+     * beginning of the table every time it is created.
+     */
+    public ChangeFeed<T> setWatermarkStore(WatermarkStore store) {
+        mLock.lock();
+        try {
+            mStore = store;
+            mWatermark = null;
+            return this;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    public ChangeFeed<T> addListener(Listener<? super T> listener) {
+        mListeners.add(listener);
+        return this;
+    }
+
+    public void removeListener(Listener<? super T> listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * Get the position of the last delivered row, loading it from the store on first use.
+     *
+     * @return The watermark, or null if no row has been delivered yet.
+     */
+    public Watermark getWatermark() throws SQLException {
+        mLock.lock();
+        try {
+            if (mWatermark == null && mStore != null) {
+                mWatermark = mStore.load(getName());
+            }
+            return mWatermark;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Move the feed to the given position, e.g. null to deliver the whole table again.
+     */
+    public void setWatermark(Watermark watermark) throws SQLException {
+        mLock.lock();
+        try {
+            if (mStore != null) {
+                mStore.save(getName(), watermark);
+            }
+            mWatermark = watermark;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Polls every period on a daemon thread until {@link #stop()}.
+     */
+    public ChangeFeed<T> start(long period, TimeUnit unit) {
+        mLock.lock();
+        try {
+            if (mExecutor != null) {
+                return this;
+            }
+            mExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "change-feed-" + getName());
+                thread.setDaemon(true);
+                return thread;
+            });
+            mExecutor.scheduleWithFixedDelay(() -> {
+                try {
+                    poll();
+                } catch (SQLException | RuntimeException e) {
+                    System.err.println("Exception: change feed " + getName());
+                    e.printStackTrace();
+                }
+            }, 0L, period, unit);
+            return this;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    public void stop() {
+        mLock.lock();
+        try {
+            if (mExecutor != null) {
+                mExecutor.shutdownNow();
+                mExecutor = null;
+            }
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Reads the rows after the watermark and hands them to the listeners, a batch at a time,
+     * until a batch is not full. Called on schedule once started; may also be called directly.
+     *
+     * @return The number of rows delivered.
+     * @throws SQLException if a query, a listener or the watermark store fails. The batches
+     *                      delivered before are not delivered again.
+     */
+    public int poll() throws SQLException {
+        mLock.lock();
+        try {
+            Watermark watermark = getWatermark();
+            String sql = buildQueryString(watermark);
+            int delivered = 0;
+            for (int batch = 0; batch < mMaxBatchesPerPoll; batch++) {
+                final Watermark[] last = {watermark};
+                List<T> rows = mDatabase.rawQuery(sql, bindArgs(watermark), mBatchSize, new RowMapper<T>() {
+                    private int mIdIndex;
+                    private int mVersionIndex;
+
+                    @Override
+                    public T mapRow(ResultSet resultSet) throws SQLException {
+                        if (mIdIndex == 0) {
+                            mIdIndex = resultSet.findColumn(BaseColumns._ID);
+                            mVersionIndex = mVersionColumn != null ? resultSet.findColumn(mVersionColumn) : 0;
+                        }
+                        last[0] = new Watermark(mVersionIndex != 0 ? resultSet.getObject(mVersionIndex) : null,
+                                resultSet.getLong(mIdIndex));
+                        return mMapper.mapRow(resultSet);
+                    }
+                });
+                if (rows.isEmpty()) {
+                    break;
+                }
+                for (Listener<? super T> listener : mListeners) {
+                    listener.onChanges(this, rows);
+                }
+                delivered += rows.size();
+                setWatermark(last[0]);
+                if (watermark == null) {
+                    sql = buildQueryString(last[0]);
+                }
+                watermark = last[0];
+                if (rows.size() < mBatchSize) {
+                    break;
+                }
+            }
+            return delivered;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    private String buildQueryString(Watermark after) {
+        String where;
+        String orderBy;
+        if (mVersionColumn == null) {
+            where = after == null ? null : BaseColumns._ID + " > ?";
+            orderBy = BaseColumns._ID;
+        } else {
+            where = after == null ? mVersionColumn + " IS NOT NULL"
+                    : mVersionColumn + " > ? OR (" + mVersionColumn + " = ? AND " + BaseColumns._ID + " > ?)";
+            orderBy = mVersionColumn + ", " + BaseColumns._ID;
+        }
+        return Database.buildQueryString(mTable, columns(), where, orderBy);
+    }
+
+    private Object[] bindArgs(Watermark after) {
+        if (after == null) {
+            return null;
+        } else if (mVersionColumn == null) {
+            return new Object[]{after.getId()};
+        }
+        return new Object[]{after.getValue(), after.getValue(), after.getId()};
+    }
+
+    private String[] columns() {
+        if (mColumns == null || mColumns.length == 0) {
+            return null;
+        }
+        List<String> columns = new ArrayList<>(Arrays.asList(mColumns));
+        if (!containsIgnoreCase(columns, BaseColumns._ID)) {
+            columns.add(BaseColumns._ID);
+        }
+        if (!TextUtils.isEmpty(mVersionColumn) && !containsIgnoreCase(columns, mVersionColumn)) {
+            columns.add(mVersionColumn);
+        }
+        return columns.toArray(new String[0]);
+    }
+
+    private static boolean containsIgnoreCase(List<String> columns, String column) {
+        for (String c : columns) {
+            if (c.equalsIgnoreCase(column)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Receives the rows of a {@link ChangeFeed}.
+     */
+    public interface Listener<T> {
+        /**
+         * Called with each batch of new or changed rows, in watermark order. Throwing stops the
+         * poll; the batch is then delivered again on the next one.
+         *
+         * @param feed The feed.
+         * @param rows The mapped rows.
+         */
+        void onChanges(ChangeFeed<? extends T> feed, List<? extends T> rows) throws SQLException;
+    }
+
+    /**
+     * The position of a row in a {@link ChangeFeed}: the value of its version column, if the feed
+     * has one, and its id.
+     */
+    public static final class Watermark {
+        private final Object mValue;
+        private final long mId;
+
+        /**
+         * @param value The version, or null if the feed follows the id only.
+         * @param id    The id.
+         */
+        public Watermark(Object value, long id) {
+            mValue = value;
+            mId = id;
+        }
+
+        /**
+         * Get the version, or null if the feed follows the id only.
+         */
+        public Object getValue() {
+            return mValue;
+        }
+
+        public long getId() {
+            return mId;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (!(object instanceof Watermark)) {
+                return false;
+            }
+            Watermark other = (Watermark) object;
+            return mId == other.mId && (mValue == null ? other.mValue == null : mValue.equals(other.mValue));
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(mId) * 31 + (mValue == null ? 0 : mValue.hashCode());
+        }
+
+        @Override
+        public String toString() {
+            return mValue == null ? "Watermark{id=" + mId + '}' : "Watermark{" + mValue + ", id=" + mId + '}';
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package bits.jdbc.database;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A statement parsed once and executed many times with new bind arguments. Obtain one with
+ * {@link Database#compileQuery(String)}; it is immutable and may be shared between threads.
+ * <p>
+ * Besides plain {@code ?} parameters the SQL may contain {@link #LIST_MARKER ?*} list parameters,
+ * e.g. {@code SELECT * FROM person WHERE _id IN (?*) AND active = ?}. A list parameter takes a
+ * {@link Collection}, an Object array, a long[] or an int[] and expands to as many {@code ?}s as
+ * the next power of two, padding the binds by repeating the last value. Lists of 5 to 8 values
+ * thus share one SQL text, which keeps the statement and plan caches of driver and database
+ * small. An empty list binds a single NULL, so {@code IN (?*)} matches nothing.
+ */
+public class CompiledQuery {
+    /**
+     * Placeholder for a list parameter.
+     */
+    public static final String LIST_MARKER = "?*";
+
+    /**
+     * Most list parameters whose expanded SQL texts are cached; each takes 5 bits of the key.
+     */
+    private static final int MAX_CACHED_LISTS = 12;
+
+    private final Database mDatabase;
+    private final String mSql;
+    /**
+     * The SQL between the parameters; one more than there are parameters.
+     */
+    private final String[] mSegments;
+    private final boolean[] mIsList;
+    private final int mListCount;
+    /**
+     * Expanded SQL by the bucket exponents of the list parameters.
+     */
+    private final ConcurrentHashMap<Long, String> mExpanded = new ConcurrentHashMap<>();
+
+    CompiledQuery(Database database, String sql) {
+        mDatabase = database;
+        mSql = sql;
+        List<String> segments = new ArrayList<>();
+        List<Boolean> isList = new ArrayList<>();
+        int start = 0;
+        char quote = 0;
+        for (int i = 0; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+            } else if (c == '?') {
+                segments.add(sql.substring(start, i));
+                boolean list = i + 1 < sql.length() && sql.charAt(i + 1) == '*';
+                isList.add(list);
+                if (list) {
+                    i++;
+                }
+                start = i + 1;
+            }
+        }
+        segments.add(sql.substring(start));
+        mSegments = segments.toArray(new String[0]);
+        mIsList = new boolean[isList.size()];
+        int lists = 0;
+        for (int i = 0; i < mIsList.length; i++) {
+            mIsList[i] = isList.get(i);
+            lists += mIsList[i] ? 1 : 0;
+        }
+        mListCount = lists;
+    }
+
+    /**
+     * Get the SQL as compiled, with list markers.
+     */
+    public String getSql() {
+        return mSql;
+    }
+
+    /**
+     * Get the number of parameters, list parameters counting as one.
+     */
+    public int getParameterCount() {
+        return mIsList.length;
+    }
+
+    /**
+     * Get the number of binds a list of the given size is padded to.
+     */
+    public static int bucketSize(int size) {
+        return size <= 1 ? 1 : Integer.highestOneBit(size - 1) << 1;
+    }
+
+    /**
+     * Get the SQL which runs for the given arguments.
+     */
+    public String getSql(Object... args) {
+        checkArgs(args);
+        return expandSql(args);
+    }
+
+    /**
+     * Runs the query and maps every row of the result.
+     *
+     * @param mapper Maps each row of the result.
+     * @param args   One argument per parameter; a collection or array for list parameters.
+     * @return The mapped rows, in result order.
+     * @throws SQLException
+     */
+    public <T> List<T> query(RowMapper<T> mapper, Object... args) throws SQLException {
+        checkArgs(args);
+        return mDatabase.rawQuery(expandSql(args), expandArgs(args), 0, mapper);
+    }
+
+    /**
+     * Runs the statement, which is NOT a SELECT.
+     *
+     * @param args One argument per parameter; a collection or array for list parameters.
+     * @return The row count.
+     * @throws SQLException
+     */
+    public int executeUpdate(Object... args) throws SQLException {
+        checkArgs(args);
+        return mDatabase.executeUpdate(expandSql(args), expandArgs(args));
+    }
+
+    private void checkArgs(Object[] args) {
+        if (args.length != mIsList.length) {
+            throw new IllegalArgumentException("Expected " + mIsList.length + " arguments but got " + args.length
+                    + " for " + mSql);
+        }
+    }
+
+    String expandSql(Object[] args) {
+        if (mListCount == 0) {
+            return mSql;
+        }
+        if (mListCount > MAX_CACHED_LISTS) {
+            return buildSql(args);
+        }
+        long key = 0;
+        for (int i = 0; i < mIsList.length; i++) {
+            if (mIsList[i]) {
+                key = (key << 5) | Integer.numberOfTrailingZeros(bucketSize(listSize(args[i])));
+            }
+        }
+        String sql = mExpanded.get(key);
+        if (sql == null) {
+            sql = buildSql(args);
+            mExpanded.putIfAbsent(key, sql);
+        }
+        return sql;
+    }
+
+    private String buildSql(Object[] args) {
+        StringBuilder sql = new StringBuilder(mSql.length() + 16);
+        sql.append(mSegments[0]);
+        for (int i = 0; i < mIsList.length; i++) {
+            if (mIsList[i]) {
+                int bucket = bucketSize(listSize(args[i]));
+                for (int j = 0; j < bucket; j++) {
+                    sql.append(j > 0 ? ",?" : "?");
+                }
+            } else {
+                sql.append('?');
+            }
+            sql.append(mSegments[i + 1]);
+        }
+        return sql.toString();
+    }
+
+    Object[] expandArgs(Object[] args) {
+        if (mListCount == 0) {
+            return args;
+        }
+        int count = 0;
+        for (int i = 0; i < mIsList.length; i++) {
+            count += mIsList[i] ? bucketSize(listSize(args[i])) : 1;
+        }
+        Object[] binds = new Object[count];
+        int offset = 0;
+        for (int i = 0; i < mIsList.length; i++) {
+            if (mIsList[i]) {
+                offset = copyList(args[i], binds, offset);
+            } else {
+                binds[offset++] = args[i];
+            }
+        }
+        return binds;
+    }
+
+    private static int listSize(Object list) {
+        if (list instanceof Collection) {
+            return ((Collection<?>) list).size();
+        } else if (list instanceof Object[]) {
+            return ((Object[]) list).length;
+        } else if (list instanceof long[]) {
+            return ((long[]) list).length;
+        } else if (list instanceof int[]) {
+            return ((int[]) list).length;
+        }
+        throw new IllegalArgumentException("List parameter must be a Collection, Object[], long[] or int[], not "
+                + (list == null ? "null" : list.getClass().getName()));
+    }
+
+    /**
+     * Copies a list to binds at offset, padded to its bucket size with its last value.
+     *
+     * @return The offset after the list.
+     */
+    private static int copyList(Object list, Object[] binds, int offset) {
+        int size = listSize(list);
+        int end = offset + bucketSize(size);
+        if (list instanceof Collection) {
+            Iterator<?> it = ((Collection<?>) list).iterator();
+            while (it.hasNext()) {
+                binds[offset++] = it.next();
+            }
+        } else if (list instanceof Object[]) {
+            Object[] values = (Object[]) list;
+            System.arraycopy(values, 0, binds, offset, size);
+            offset += size;
+        } else if (list instanceof long[]) {
+            for (long value : (long[]) list) {
+                binds[offset++] = value;
+            }
+        } else {
+            for (int value : (int[]) list) {
+                binds[offset++] = value;
+            }
+        }
+        Object last = size > 0 ? binds[offset - 1] : null;
+        while (offset < end) {
+            binds[offset++] = last;
+        }
+        return end;
+    }
+}
@@ -0,0 +1,607 @@
+package bits.jdbc.database;
+
+import bits.jdbc.monitor.StatementListener;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Loads a CSV file into a table. Obtain one with {@link Database#csvImporter(String)}.
+ * <p>
+ * The file is memory-mapped and split at line breaks into chunks, which several workers parse and
+ * insert in parallel, each in JDBC batches on a pooled connection of its own, committing every
+ * {@link #setCommitInterval(int) commit interval} rows. The file is read as written by
+ * {@link Database#export(String, Object[], bits.jdbc.export.ExportFormat, java.nio.channels.WritableByteChannel)}:
+ * UTF-8, RFC 4180 quoting, an empty field is NULL and an empty quoted field the empty string.
+ * Values are bound as strings with the JDBC types of the table's columns, so the driver converts
+ * them.
+ * <p>
+ * A record which cannot be parsed or inserted does not stop the import; it is reported in the
+ * {@link ImportReport} with its byte offset, and the import only fails once there are more than
+ * {@link #setMaxErrors(long) max errors}. When a batch fails, the rows since the last commit are
+ * rolled back and inserted again one by one to find the failing ones. Rows committed before a
+ * failure stay in the table.
+ * <p>
+ * Splitting at line breaks assumes no quoted field contains one; enable
+ * {@link #setMultilineRecords(boolean) multiline records} to read the file in one piece instead.
+ */
+public class CsvImporter {
+    private static final int MIN_CHUNK_SIZE = 1 << 20;
+    private static final int MAX_CHUNK_SIZE = 1 << 30;
+    private static final int MAX_ERROR_TEXT = 200;
+
+    private final Database mDatabase;
+    private final String mTable;
+    private String[] mColumns;
+    private boolean mHeader = true;
+    private boolean mMultilineRecords;
+    private int mParallelism = Math.min(4, Runtime.getRuntime().availableProcessors());
+    private int mBatchSize = 1000;
+    private int mCommitInterval = 10000;
+    private long mMaxErrors = Long.MAX_VALUE;
+    private int mMaxReportedErrors = 100;
+
+    CsvImporter(Database database, String table) {
+        mDatabase = database;
+        mTable = table;
+    }
+
+    /**
+     * Set the columns of the fields, in file order. By default they are read from the header.
+     */
+    public CsvImporter setColumns(String... columns) {
+        mColumns = columns;
+        return this;
+    }
+
+    /**
+     * Set whether the first line is a header, which is skipped if the columns are set. Default
+     * true.
+     */
+    public CsvImporter setHeader(boolean header) {
+        mHeader = header;
+        return this;
+    }
+
+    /**
+     * Set whether quoted fields may contain line breaks, which keeps the file from being split.
+     * Default false.
+     */
+    public CsvImporter setMultilineRecords(boolean multilineRecords) {
+        mMultilineRecords = multilineRecords;
+        return this;
+    }
+
+    /**
+     * Set the number of workers, and so of connections used at once. Default the number of
+     * processors, at most 4.
+     */
+    public CsvImporter setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be >= 1, was " + parallelism);
+        }
+        mParallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * Set the number of rows per JDBC batch. Default 1000.
+     */
+    public CsvImporter setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be >= 1, was " + batchSize);
+        }
+        mBatchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * Set the number of rows each worker inserts per transaction, rounded up to whole batches.
+     * These rows are kept in memory until committed. Default 10000.
+     */
+    public CsvImporter setCommitInterval(int commitInterval) {
+        if (commitInterval < 1) {
+            throw new IllegalArgumentException("Commit interval must be >= 1, was " + commitInterval);
+        }
+        mCommitInterval = commitInterval;
+        return this;
+    }
+
+    /**
+     * Set the number of failed records after which the import is aborted. Default no limit.
+     */
+    public CsvImporter setMaxErrors(long maxErrors) {
+        mMaxErrors = maxErrors;
+        return this;
+    }
+
+    /**
+     * Set the number of failed records listed in the report. Default 100.
+     */
+    public CsvImporter setMaxReportedErrors(int maxReportedErrors) {
+        mMaxReportedErrors = maxReportedErrors;
+        return this;
+    }
+
+    /**
+     * Imports the file.
+     *
+     * @return What was imported.
+     * @throws SQLException if the file cannot be read, a connection fails or there are too many
+     *                      errors.
+     */
+    public ImportReport importFile(File file) throws SQLException {
+        long start = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long dataStart = 0;
+            String[] columns = mColumns;
+            if (mHeader && size > 0) {
+                dataStart = lineEnd(channel, 0, size);
+                if (columns == null) {
+                    List<String> header = new ArrayList<>();
+                    String error = new Parser(channel.map(FileChannel.MapMode.READ_ONLY, 0, dataStart), 0, false)
+                            .next(header);
+                    if (error != null) {
+                        throw new SQLException("Unable to parse the header of " + file + ": " + error);
+                    }
+                    columns = header.toArray(new String[0]);
+                }
+            }
+            if (columns == null || columns.length == 0) {
+                throw new IllegalArgumentException("No columns for " + file);
+            }
+
+            Run run = new Run(channel, columns);
+            long chunkSize = mMultilineRecords ? Long.MAX_VALUE
+                    : Math.max(MIN_CHUNK_SIZE, Math.min(MAX_CHUNK_SIZE, (size - dataStart) / (mParallelism * 4L) + 1));
+            long chunkStart = dataStart;
+            while (chunkStart < size) {
+                long chunkEnd = size - chunkStart <= chunkSize ? size : lineEnd(channel, chunkStart + chunkSize, size);
+                run.chunks.add(new long[]{chunkStart, chunkEnd});
+                chunkStart = chunkEnd;
+            }
+            if (mMultilineRecords && size - dataStart > Integer.MAX_VALUE) {
+                throw new SQLException("File too large to import with multiline records: " + file);
+            }
+
+            int workers = Math.min(mParallelism, run.chunks.size());
+            Thread[] threads = new Thread[Math.max(0, workers - 1)];
+            for (int i = 0; i < threads.length; i++) {
+                threads[i] = new Thread(run, "csv-import-" + (i + 1));
+                threads[i].setDaemon(true);
+                threads[i].start();
+            }
+            run.run();
+            for (Thread thread : threads) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    run.abort(new SQLException("Interrupted while importing " + file, e));
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (run.failure != null) {
+                throw run.failure;
+            }
+            return new ImportReport(size, run.rowsRead.get(), run.rowsInserted.get(), run.errorCount.get(),
+                    run.errors, System.nanoTime() - start);
+        } catch (IOException e) {
+            throw new SQLException("Unable to read " + file, e);
+        }
+    }
+
+    /**
+     * Get the offset after the first line break at or after the position, or the size if there is
+     * none.
+     */
+    private static long lineEnd(FileChannel channel, long position, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    /**
+     * The state shared by the workers of one import; each worker runs it.
+     */
+    private final class Run implements Runnable {
+        final FileChannel channel;
+        final String[] columns;
+        final String sql;
+        final ConcurrentLinkedQueue<long[]> chunks = new ConcurrentLinkedQueue<>();
+        final AtomicLong rowsRead = new AtomicLong();
+        final AtomicLong rowsInserted = new AtomicLong();
+        final AtomicLong errorCount = new AtomicLong();
+        /**
+         * Guards the errors and the first failure.
+         */
+        final ReentrantLock lock = new ReentrantLock();
+        final List<ImportReport.ErrorRow> errors = new ArrayList<>();
+        volatile SQLException failure;
+
+        Run(FileChannel channel, String[] columns) {
+            this.channel = channel;
+            this.columns = columns;
+            this.sql = Database.buildInsertString(mTable, columns);
+        }
+
+        void abort(SQLException e) {
+            lock.lock();
+            try {
+                if (failure == null) {
+                    failure = e;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void error(long offset, String text, String message) {
+            lock.lock();
+            try {
+                if (errors.size() < mMaxReportedErrors) {
+                    if (text.length() > MAX_ERROR_TEXT) {
+                        text = text.substring(0, MAX_ERROR_TEXT) + "...";
+                    }
+                    errors.add(new ImportReport.ErrorRow(offset, text, message));
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (errorCount.incrementAndGet() > mMaxErrors) {
+                abort(new SQLException("Import aborted after " + mMaxErrors + " errors, the last at offset "
+                        + offset + ": " + message));
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                new Worker(this).run();
+            } catch (SQLException e) {
+                abort(e);
+            } catch (IOException e) {
+                abort(new SQLException("Unable to read the import file", e));
+            } catch (RuntimeException e) {
+                abort(new SQLException("Import failed", e));
+            }
+        }
+    }
+
+    /**
+     * Parses chunks and inserts their rows on one connection.
+     */
+    private final class Worker {
+        private final Run mRun;
+        private final int[] mTypes;
+        private final int mRowsPerCommit;
+        /**
+         * The rows since the last commit, to insert again one by one if a batch fails.
+         */
+        private final List<Object[]> mUncommitted = new ArrayList<>();
+        private final List<Long> mUncommittedOffsets = new ArrayList<>();
+        private int mBatched;
+        private Connection mConnection;
+        private PreparedStatement mStatement;
+
+        Worker(Run run) throws SQLException {
+            mRun = run;
+            TableMetadata metadata = mDatabase.getTableMetadata(mTable);
+            if (metadata != null) {
+                mTypes = metadata.getBindTypes(Arrays.asList(run.columns));
+            } else {
+                mTypes = new int[run.columns.length];
+                Arrays.fill(mTypes, TableMetadata.UNKNOWN_TYPE);
+            }
+            mRowsPerCommit = (mCommitInterval + mBatchSize - 1) / mBatchSize * mBatchSize;
+        }
+
+        void run() throws SQLException, IOException {
+            long[] chunk = mRun.chunks.poll();
+            if (chunk == null) {
+                return;
+            }
+            mConnection = mDatabase.acquireConnection();
+            boolean autoCommit = true;
+            try {
+                autoCommit = mConnection.getAutoCommit();
+                mConnection.setAutoCommit(false);
+                mStatement = mConnection.prepareStatement(mRun.sql);
+                List<String> fields = new ArrayList<>(mRun.columns.length);
+                for (; chunk != null && mRun.failure == null; chunk = mRun.chunks.poll()) {
+                    MappedByteBuffer buffer = mRun.channel.map(FileChannel.MapMode.READ_ONLY, chunk[0],
+                            chunk[1] - chunk[0]);
+                    Parser parser = new Parser(buffer, chunk[0], mMultilineRecords);
+                    while (parser.hasNext() && mRun.failure == null) {
+                        long offset = parser.getOffset();
+                        String error = parser.next(fields);
+                        if (fields.isEmpty() && error == null) {
+                            continue;  // blank line
+                        }
+                        mRun.rowsRead.incrementAndGet();
+                        if (error == null && fields.size() != mRun.columns.length) {
+                            error = "Expected " + mRun.columns.length + " fields but got " + fields.size();
+                        }
+                        if (error != null) {
+                            mRun.error(offset, parser.getText(offset), error);
+                            continue;
+                        }
+                        add(fields.toArray(), offset);
+                    }
+                }
+                if (mRun.failure == null) {
+                    executeBatch();
+                    commit();
+                }
+            } finally {
+                try {
+                    if (mStatement != null) {
+                        mStatement.close();
+                    }
+                    if (!mUncommitted.isEmpty() || mBatched > 0) {
+                        mConnection.rollback();
+                    }
+                    mConnection.setAutoCommit(autoCommit);
+                } catch (SQLException e) {
+                    System.err.println("Exception: resetting import connection");
+                    e.printStackTrace();
+                } finally {
+                    mDatabase.releaseConnection(mConnection);
+                }
+            }
+        }
+
+        private void add(Object[] row, long offset) throws SQLException {
+            try {
+                bind(row);
+            } catch (SQLException e) {
+                // The driver could not convert a value
+                mRun.error(offset, toText(row), e.getMessage());
+                return;
+            }
+            mStatement.addBatch();
+            mBatched++;
+            mUncommitted.add(row);
+            mUncommittedOffsets.add(offset);
+            if (mBatched >= mBatchSize) {
+                executeBatch();
+                if (mUncommitted.size() >= mRowsPerCommit) {
+                    commit();
+                }
+            }
+        }
+
+        private void bind(Object[] row) throws SQLException {
+            for (int i = 0; i < row.length; i++) {
+                Database.setObject(mStatement, i + 1, row[i], mTypes[i]);
+            }
+        }
+
+        private void executeBatch() throws SQLException {
+            if (mBatched == 0) {
+                return;
+            }
+            StatementListener listener = mDatabase.getStatementListener();
+            long start = Database.startStatement(listener);
+            int batched = mBatched;
+            mBatched = 0;
+            try {
+                mStatement.executeBatch();
+                if (listener != null) {
+                    long end = System.nanoTime();
+                    Database.fireStatement(listener, mRun.sql, batched * mRun.columns.length, batched, start, start,
+                            end, end, null);
+                }
+            } catch (SQLException e) {
+                if (listener != null) {
+                    long end = System.nanoTime();
+                    Database.fireStatement(listener, mRun.sql, batched * mRun.columns.length,
+                            -1, start, start, end, end, e);
+                }
+                mStatement.clearBatch();
+                mConnection.rollback();
+                insertOneByOne();
+            } catch (RuntimeException e) {
+                if (listener != null) {
+                    long end = System.nanoTime();
+                    Database.fireStatement(listener, mRun.sql, batched * mRun.columns.length,
+                            -1, start, start, end, end, e);
+                }
+                throw e;
+            }
+        }
+
+        /**
+         * Inserts the uncommitted rows each in a transaction of its own, reporting the failing ones.
+         */
+        private void insertOneByOne() throws SQLException {
+            mConnection.setAutoCommit(true);
+            try {
+                for (int i = 0; i < mUncommitted.size() && mRun.failure == null; i++) {
+                    Object[] row = mUncommitted.get(i);
+                    try {
+                        bind(row);
+                        mStatement.executeUpdate();
+                        mRun.rowsInserted.incrementAndGet();
+                    } catch (SQLException e) {
+                        mRun.error(mUncommittedOffsets.get(i), toText(row), e.getMessage());
+                    }
+                }
+            } finally {
+                mUncommitted.clear();
+                mUncommittedOffsets.clear();
+                mConnection.setAutoCommit(false);
+            }
+        }
+
+        private void commit() throws SQLException {
+            if (mUncommitted.isEmpty()) {
+                return;
+            }
+            mConnection.commit();
+            mRun.rowsInserted.addAndGet(mUncommitted.size());
+            mUncommitted.clear();
+            mUncommittedOffsets.clear();
+        }
+    }
+
+    private static String toText(Object[] row) {
+        StringBuilder s = new StringBuilder();
+        for (int i = 0; i < row.length && s.length() <= MAX_ERROR_TEXT; i++) {
+            s.append(i > 0 ? "," : "").append(row[i] == null ? "" : row[i]);
+        }
+        return s.toString();
+    }
+
+    /**
+     * Reads the records of a mapped chunk.
+     */
+    private static final class Parser {
+        private final ByteBuffer mBuffer;
+        private final ByteBuffer mView;
+        private final long mBase;
+        private final boolean mMultiline;
+        private int mPosition;
+        private byte[] mScratch = new byte[256];
+
+        Parser(ByteBuffer buffer, long base, boolean multiline) {
+            mBuffer = buffer;
+            mView = buffer.duplicate();
+            mBase = base;
+            mMultiline = multiline;
+        }
+
+        boolean hasNext() {
+            return mPosition < mBuffer.limit();
+        }
+
+        /**
+         * Get the file offset of the next record.
+         */
+        long getOffset() {
+            return mBase + mPosition;
+        }
+
+        /**
+         * Get the text from the offset to the end of its line, for error reports.
+         */
+        String getText(long offset) {
+            int start = (int) (offset - mBase);
+            int end = start;
+            while (end < mBuffer.limit() && end - start < MAX_ERROR_TEXT && mBuffer.get(end) != '\n') {
+                end++;
+            }
+            return decode(start, end).trim();
+        }
+
+        /**
+         * Reads the next record into fields, or skips it.
+         *
+         * @return null, or why the record could not be read; the rest of its line is then skipped.
+         */
+        String next(List<String> fields) {
+            fields.clear();
+            int limit = mBuffer.limit();
+            if (mBuffer.get(mPosition) == '\n'
+                    || (mBuffer.get(mPosition) == '\r' && mPosition + 1 < limit && mBuffer.get(mPosition + 1) == '\n')) {
+                mPosition += mBuffer.get(mPosition) == '\n' ? 1 : 2;
+                return null;
+            }
+            while (true) {
+                if (mPosition < limit && mBuffer.get(mPosition) == '"') {
+                    int length = 0;
+                    int position = mPosition + 1;
+                    while (true) {
+                        if (position >= limit) {
+                            mPosition = limit;
+                            return "Unterminated quoted field";
+                        }
+                        byte b = mBuffer.get(position++);
+                        if (b == '\n' && !mMultiline) {
+                            mPosition = position;
+                            return "Unterminated quoted field";
+                        }
+                        if (b == '"') {
+                            if (position < limit && mBuffer.get(position) == '"') {
+                                position++;
+                            } else {
+                                break;
+                            }
+                        }
+                        if (length == mScratch.length) {
+                            mScratch = Arrays.copyOf(mScratch, length * 2);
+                        }
+                        mScratch[length++] = b;
+                    }
+                    fields.add(new String(mScratch, 0, length, StandardCharsets.UTF_8));
+                    mPosition = position;
+                    if (mPosition < limit && mBuffer.get(mPosition) == '\r') {
+                        mPosition++;
+                    }
+                    if (mPosition < limit && mBuffer.get(mPosition) != ',' && mBuffer.get(mPosition) != '\n') {
+                        skipLine();
+                        return "Unexpected character after quoted field";
+                    }
+                } else {
+                    int start = mPosition;
+                    while (mPosition < limit && mBuffer.get(mPosition) != ',' && mBuffer.get(mPosition) != '\n') {
+                        mPosition++;
+                    }
+                    int end = mPosition;
+                    if (end > start && mBuffer.get(end - 1) == '\r' && (end == limit || mBuffer.get(end) == '\n')) {
+                        end--;
+                    }
+                    fields.add(end == start ? null : decode(start, end));
+                }
+                if (mPosition >= limit) {
+                    return null;
+                }
+                if (mBuffer.get(mPosition++) == '\n') {
+                    return null;
+                }
+            }
+        }
+
+        private void skipLine() {
+            while (mPosition < mBuffer.limit() && mBuffer.get(mPosition++) != '\n') {
+                // skip
+            }
+        }
+
+        private String decode(int start, int end) {
+            int length = end - start;
+            if (length > mScratch.length) {
+                mScratch = new byte[Math.max(length, mScratch.length * 2)];
+            }
+            mView.position(start);
+            mView.get(mScratch, 0, length);
+            return new String(mScratch, 0, length, StandardCharsets.UTF_8);
+        }
+    }
+}
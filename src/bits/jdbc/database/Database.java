@@ -1,16 +1,270 @@
 package bits.jdbc.database;
 
 import bits.jdbc.Helper.ConnectionPool;
+import bits.jdbc.Helper.DatabaseType;
+import bits.jdbc.columnar.ColumnBatch;
 import bits.jdbc.content.ContentValues;
+import bits.jdbc.export.ExportFormat;
+import bits.jdbc.export.ResultExporter;
+import bits.jdbc.monitor.CompositeStatementListener;
+import bits.jdbc.monitor.StatementEvent;
+import bits.jdbc.monitor.StatementListener;
+import bits.jdbc.spill.SpilledResult;
+import bits.jdbc.utils.LongHashMap;
 import bits.jdbc.utils.TextUtils;
 
+import java.io.File;
+import java.nio.channels.WritableByteChannel;
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 public class Database {
     private ConnectionPool mConnectionPool;
+    private volatile StatementListener mStatementListener;
+    private volatile File mSpillDirectory;
+    private String mLane;
+    private long mQueryTimeoutNanos;
+    private MetadataCache mMetadataCache;
+    private boolean mUseTableMetadata;
+    private CopyOnWriteArrayList<TableChangeListener> mTableChangeListeners;
+    private volatile RetryPolicy mRetryPolicy;
+    /**
+     * Set in the views handed to a {@link Transaction}: the connection of the transaction, null
+     * once it has ended, and the table changes to report once it commits.
+     */
+    private boolean mTransactionView;
+    private Connection mTransactionConnection;
+    private List<Object[]> mPendingChanges;
 
     public Database(ConnectionPool connPool) {
         this.mConnectionPool = connPool;
+        this.mMetadataCache = new MetadataCache(this);
+        this.mTableChangeListeners = new CopyOnWriteArrayList<>();
+        this.mRetryPolicy = new RetryPolicy();
+    }
+
+    /**
+     * Creates a view of the given database with its own settings.
+     */
+    private Database(Database from) {
+        this.mConnectionPool = from.mConnectionPool;
+        this.mStatementListener = from.mStatementListener;
+        this.mSpillDirectory = from.mSpillDirectory;
+        this.mLane = from.mLane;
+        this.mQueryTimeoutNanos = from.mQueryTimeoutNanos;
+        this.mMetadataCache = from.mMetadataCache;
+        this.mUseTableMetadata = from.mUseTableMetadata;
+        this.mTableChangeListeners = from.mTableChangeListeners;
+        this.mRetryPolicy = from.mRetryPolicy;
+    }
+
+    /**
+     * Get a view of this database which checks out its connections from the given lane of the
+     * connection pool. The view shares the connection pool and starts with this database's
+     * statement listener and spill directory; closing it closes the shared pool.
+     *
+     * @param lane Name of a lane added with {@link ConnectionPool#addLane(bits.jdbc.Helper.PoolLane)},
+     *             or null for no lane.
+     * @return A database using the lane.
+     */
+    public Database withLane(String lane) {
+        if (lane != null && !mConnectionPool.hasLane(lane)) {
+            throw new IllegalArgumentException("Unknown pool lane: " + lane);
+        }
+        Database view = new Database(this);
+        view.mLane = lane;
+        return view;
+    }
+
+    /**
+     * Get the connection pool lane this database checks out its connections from.
+     *
+     * @return The lane name, or null for none.
+     */
+    public String getLane() {
+        return mLane;
+    }
+
+    /**
+     * Get a view of this database which runs its statements with the given query timeout. The
+     * view shares the connection pool and starts with this database's other settings.
+     *
+     * @param timeout The timeout, or 0 for none.
+     * @return A database using the timeout.
+     * @see #setQueryTimeout(long, TimeUnit)
+     */
+    public Database withTimeout(long timeout, TimeUnit unit) {
+        Database view = new Database(this);
+        view.setQueryTimeout(timeout, unit);
+        return view;
+    }
+
+    /**
+     * Set the longest time a statement may run before it is cancelled with a
+     * {@link SQLTimeoutException}. A {@link Deadline} entered on the calling thread may shorten it.
+     * Reading the {@link ResultSet} returned by {@link #rawQuery(String, String[])} is not covered.
+     *
+     * @param timeout The timeout, or 0 for none.
+     */
+    public void setQueryTimeout(long timeout, TimeUnit unit) {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("Negative timeout");
+        }
+        mQueryTimeoutNanos = unit.toNanos(timeout);
+    }
+
+    /**
+     * Get the query timeout in the given unit, 0 if there is none.
+     */
+    public long getQueryTimeout(TimeUnit unit) {
+        return unit.convert(mQueryTimeoutNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Get the policy for retrying deadlocks and serialization failures.
+     *
+     * @return The policy, or null if failures are not retried.
+     */
+    public RetryPolicy getRetryPolicy() {
+        return mRetryPolicy;
+    }
+
+    /**
+     * Set the policy for retrying deadlocks and serialization failures. It applies to
+     * {@link #executeUpdate(String, Object[])}, {@link #insert(String, String, ContentValues)},
+     * {@link #update(String, ContentValues, String, String[])},
+     * {@link #delete(String, String, String[])} and to whole transactions run by
+     * {@link #runInTransaction(Transaction)}; statements within a transaction are not retried on
+     * their own. By default a {@link RetryPolicy} with its default settings is used, shared with
+     * the views of this database created afterwards.
+     *
+     * @param retryPolicy The policy, or null to not retry.
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        mRetryPolicy = retryPolicy;
+    }
+
+    /**
+     * Checks out a connection from the pool lane of this database, waiting no longer than the
+     * {@link Deadline} entered on the calling thread. In a transaction view, returns the
+     * connection of the transaction.
+     */
+    Connection acquireConnection() throws SQLException {
+        if (mTransactionView) {
+            if (mTransactionConnection == null) {
+                throw new IllegalStateException("Transaction has ended");
+            }
+            return mTransactionConnection;
+        }
+        Deadline deadline = Deadline.current();
+        if (deadline == null) {
+            return mConnectionPool.getConnection(mLane);
+        }
+        deadline.check();
+        if (!deadline.isBounded()) {
+            return mConnectionPool.getConnection(mLane);
+        }
+        return mConnectionPool.getConnection(mLane, Math.max(0L, deadline.remainingNanos()), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns a connection from {@link #acquireConnection()} to the pool, unless it is the
+     * connection of a transaction, which is released when the transaction ends.
+     */
+    void releaseConnection(Connection connection) {
+        if (connection != mTransactionConnection) {
+            mConnectionPool.releaseConnection(connection);
+        }
+    }
+
+    /**
+     * Get the cache of table metadata of this database, shared with its views.
+     */
+    public MetadataCache getMetadataCache() {
+        return mMetadataCache;
+    }
+
+    /**
+     * Get the metadata of a table from the {@link #getMetadataCache() metadata cache}.
+     *
+     * @return The metadata, or null if the driver reports no columns for the table.
+     */
+    public TableMetadata getTableMetadata(String table) throws SQLException {
+        return mMetadataCache.getTable(table);
+    }
+
+    /**
+     * Set whether {@link #insert(String, String, ContentValues)},
+     * {@link #update(String, ContentValues, String, String[])} and
+     * {@link #bulkInsert(String, ContentValues[])} look up the table in the metadata cache. If
+     * they do, values are bound with the JDBC type of their column and values for columns the
+     * table does not have are rejected with an {@link IllegalArgumentException} before anything
+     * is sent. Tables the driver reports no metadata for are written as before. Off by default.
+     */
+    public void setUseTableMetadata(boolean useTableMetadata) {
+        mUseTableMetadata = useTableMetadata;
+    }
+
+    public boolean isUseTableMetadata() {
+        return mUseTableMetadata;
+    }
+
+    /**
+     * Get the JDBC types to bind the given columns of a table with, followed by unknown types up
+     * to size.
+     *
+     * @return The types, or null if table metadata is not used or not available.
+     */
+    private int[] getBindTypes(String table, Collection<String> columns, int size) throws SQLException {
+        if (!mUseTableMetadata) {
+            return null;
+        }
+        TableMetadata metadata = mMetadataCache.getTable(table);
+        if (metadata == null) {
+            return null;
+        }
+        int[] types = metadata.getBindTypes(columns);
+        if (size > types.length) {
+            int length = types.length;
+            types = Arrays.copyOf(types, size);
+            Arrays.fill(types, length, size, TableMetadata.UNKNOWN_TYPE);
+        }
+        return types;
+    }
+
+    /**
+     * Binds args to the statement, with the given JDBC types if there are any.
+     */
+    private static void bind(PreparedStatement statement, Object[] args, int[] sqlTypes) throws SQLException {
+        for (int i = 0; i < args.length; i++) {
+            setObject(statement, i + 1, args[i], sqlTypes != null ? sqlTypes[i] : TableMetadata.UNKNOWN_TYPE);
+        }
+    }
+
+    static void setObject(PreparedStatement statement, int index, Object value, int sqlType)
+            throws SQLException {
+        if (sqlType == TableMetadata.UNKNOWN_TYPE) {
+            statement.setObject(index, value);
+        } else if (value == null) {
+            statement.setNull(index, sqlType);
+        } else {
+            statement.setObject(index, value, sqlType);
+        }
+    }
+
+    /**
+     * Get the query timeout for the statements of a {@link Pipeline}.
+     */
+    long getQueryTimeoutNanos() {
+        return mQueryTimeoutNanos;
     }
 
     /**
@@ -42,6 +296,134 @@ public class Database {
         }
     }
 
+    /**
+     * Build an SQL query string from the given clauses.
+     */
+    static String buildQueryString(String table, String[] columns, String whereClause,
+                                   String orderBy) {
+        StringBuilder query = new StringBuilder(120);
+
+        query.append("SELECT ");
+        if (columns != null && columns.length != 0) {
+            appendColumns(query, columns);
+        } else {
+            query.append("* ");
+        }
+        query.append("FROM ")
+                .append(table);
+        appendClause(query, whereClause);
+        if (!TextUtils.isEmpty(orderBy)) {
+            query.append(" ORDER BY ")
+                    .append(orderBy);
+        }
+
+        return query.toString();
+    }
+
+    /**
+     * Reports the start of a statement to the listener, if there is one.
+     *
+     * @return The System.nanoTime() of the start, or 0 without a listener.
+     */
+    static long startStatement(StatementListener listener) {
+        if (listener == null) {
+            return 0L;
+        }
+        try {
+            listener.onStatementStart();
+        } catch (RuntimeException e) {
+            System.err.println("Exception: statement listener");
+            e.printStackTrace();
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * Reports a completed statement, never letting a listener failure escape to the caller.
+     */
+    static void fireStatement(StatementListener listener, String sql, int bindCount, long rows,
+                                      long start, long acquired, long executed, long end, Throwable failure) {
+        try {
+            listener.onStatement(StatementEvent.fromTimestamps(sql, bindCount, rows, start, acquired, executed,
+                    end, failure));
+        } catch (RuntimeException e) {
+            System.err.println("Exception: statement listener");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Start collecting independent write statements to be sent together on one connection.
+     *
+     * @return A new, empty pipeline.
+     * @see Pipeline
+     */
+    public Pipeline pipeline() {
+        return new Pipeline(this);
+    }
+
+    /**
+     * Parse a statement once to run it many times with new bind arguments.
+     *
+     * @param sql The SQL, with {@code ?} parameters and {@link CompiledQuery#LIST_MARKER ?*} list
+     *            parameters.
+     * @return The compiled query, running on this database.
+     * @see CompiledQuery
+     */
+    public CompiledQuery compileQuery(String sql) {
+        if (TextUtils.isEmpty(sql)) {
+            throw new IllegalArgumentException("Empty sql");
+        }
+        return new CompiledQuery(this, sql);
+    }
+
+    /**
+     * Compile a query of the given table.
+     *
+     * @param table       The table name to compile the query against.
+     * @param columns     A list of which columns to return. Passing null will return all columns.
+     * @param whereClause A filter declaring which rows to return, with {@code ?} and {@code ?*}
+     *                    parameters. Passing null will return all rows.
+     * @param orderBy     How to order the rows, or null for the default sort order.
+     * @return The compiled query, running on this database.
+     * @see #compileQuery(String)
+     */
+    public CompiledQuery compileQuery(String table, String[] columns, String whereClause, String orderBy) {
+        return compileQuery(buildQueryString(table, columns, whereClause, orderBy));
+    }
+
+    /**
+     * Follow the rows added to or changed in a table, as {@link ContentValues}.
+     *
+     * @see #changeFeed(String, RowMapper)
+     */
+    public ChangeFeed<ContentValues> changeFeed(String table) {
+        return changeFeed(table, DatabaseUtils.CONTENT_VALUES_MAPPER);
+    }
+
+    /**
+     * Follow the rows added to or changed in a table.
+     *
+     * @param table  The table to follow.
+     * @param mapper Maps each row, e.g. to a {@link BaseModel}.
+     * @return A new feed, not yet started.
+     * @see ChangeFeed
+     */
+    public <T> ChangeFeed<T> changeFeed(String table, RowMapper<T> mapper) {
+        return new ChangeFeed<>(this, table, mapper);
+    }
+
+    /**
+     * Load CSV files into a table.
+     *
+     * @param table The table to insert into.
+     * @return A new importer.
+     * @see CsvImporter
+     */
+    public CsvImporter csvImporter(String table) {
+        return new CsvImporter(this, table);
+    }
+
     /**
      * Get JDBC connection pool.
      *
@@ -51,6 +433,78 @@ public class Database {
         return mConnectionPool;
     }
 
+    /**
+     * Get the listener which is told about every executed statement.
+     *
+     * @return The listener, or null if statements are not instrumented.
+     */
+    public StatementListener getStatementListener() {
+        return mStatementListener;
+    }
+
+    /**
+     * Set a listener to be told about every executed statement. Use a
+     * {@link CompositeStatementListener} to install several. Without a listener no timings are
+     * taken at all.
+     *
+     * @param listener The listener, or null to turn instrumentation off.
+     */
+    public void setStatementListener(StatementListener listener) {
+        mStatementListener = listener;
+    }
+
+    /**
+     * Add a listener for the rows changed by {@link #update(String, ContentValues, String, String[])}
+     * and {@link #delete(String, String, String[])}, shared with the views of this database.
+     */
+    public void addTableChangeListener(TableChangeListener listener) {
+        mTableChangeListeners.add(listener);
+    }
+
+    public void removeTableChangeListener(TableChangeListener listener) {
+        mTableChangeListeners.remove(listener);
+    }
+
+    /**
+     * Tells the {@link TableChangeListener}s about changed rows, or defers that to the commit if
+     * this is the database of a transaction.
+     */
+    void fireRowsChanged(String table, String whereClause, String[] whereArgs) {
+        if (mTransactionView) {
+            if (mPendingChanges == null) {
+                mPendingChanges = new ArrayList<>();
+            }
+            mPendingChanges.add(new Object[]{table, whereClause, whereArgs});
+            return;
+        }
+        for (TableChangeListener listener : mTableChangeListeners) {
+            try {
+                listener.onRowsChanged(table, whereClause, whereArgs);
+            } catch (RuntimeException e) {
+                System.err.println("Exception: table change listener");
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Get the directory {@link #querySpilled(String, Object[])} writes its temp files to.
+     *
+     * @return The directory, or null for the default temp directory.
+     */
+    public File getSpillDirectory() {
+        return mSpillDirectory;
+    }
+
+    /**
+     * Set the directory {@link #querySpilled(String, Object[])} writes its temp files to.
+     *
+     * @param directory The directory, or null for the default temp directory.
+     */
+    public void setSpillDirectory(File directory) {
+        mSpillDirectory = directory;
+    }
+
     /**
      * Close the database.
      */
@@ -58,6 +512,65 @@ public class Database {
         mConnectionPool.closeAllConnections();
     }
 
+    /**
+     * Runs work in a single transaction on one connection, and commits it if the work returns.
+     * If the work throws, the transaction is rolled back. A deadlock or serialization failure
+     * rolls it back and runs the whole work again as the {@link #setRetryPolicy(RetryPolicy)
+     * retry policy} allows. {@link TableChangeListener}s are told about the changes once the
+     * transaction has committed.
+     * <p>
+     * Called on the database given to a transaction, the work joins that transaction.
+     *
+     * @param transaction The work, given a view of this database whose statements run in the
+     *                    transaction. The view must not be used after the work has returned.
+     * @return The result of the work.
+     * @throws SQLException if the work or the commit fails.
+     */
+    public <T> T runInTransaction(final Transaction<T> transaction) throws SQLException {
+        if (mTransactionView) {
+            return transaction.run(this);
+        }
+        RetryPolicy policy = mRetryPolicy;
+        if (policy == null) {
+            return runTransactionOnce(transaction);
+        }
+        return policy.execute(mConnectionPool.getDbType(), () -> runTransactionOnce(transaction));
+    }
+
+    private <T> T runTransactionOnce(Transaction<T> transaction) throws SQLException {
+        Connection connection = acquireConnection();
+        Database view = new Database(this);
+        view.mTransactionView = true;
+        view.mTransactionConnection = connection;
+        boolean begun = false;
+        boolean committed = false;
+        try {
+            connection.setAutoCommit(false);
+            begun = true;
+            T result = transaction.run(view);
+            connection.commit();
+            committed = true;
+            return result;
+        } finally {
+            view.mTransactionConnection = null;
+            if (begun && !committed) {
+                try {
+                    connection.rollback();
+                } catch (SQLException e) {
+                    System.err.println("Exception: roll back transaction");
+                    e.printStackTrace();
+                }
+            }
+            //the pool turns auto-commit back on
+            mConnectionPool.releaseConnection(connection);
+            if (committed && view.mPendingChanges != null) {
+                for (Object[] change : view.mPendingChanges) {
+                    fireRowsChanged((String) change[0], (String) change[1], (String[]) change[2]);
+                }
+            }
+        }
+    }
+
     /**
      * Execute a single SQL statement that is NOT a SELECT or any other SQL statement that returns data.
      *
@@ -66,17 +579,39 @@ public class Database {
      * @throws SQLException
      */
     public void execSQL(String sql) throws SQLException {
+        StatementListener listener = mStatementListener;
+        long start = startStatement(listener);
+        long acquired = 0L;
+        Throwable failure = null;
         Connection connection = null;
         Statement statement = null;
+        StatementGuard guard = StatementGuard.NONE;
         try {
-            connection = mConnectionPool.getConnection();
+            connection = acquireConnection();
+            if (listener != null) {
+                acquired = System.nanoTime();
+            }
             statement = connection.createStatement();
+            guard = StatementGuard.arm(statement, mQueryTimeoutNanos);
             statement.execute(sql);
+        } catch (SQLException e) {
+            SQLException translated = guard.translate(e);
+            failure = translated;
+            throw translated;
+        } catch (RuntimeException e) {
+            failure = e;
+            throw e;
         } finally {
+            guard.close();
             if (statement != null) {
                 statement.closeOnCompletion();
             }
-            mConnectionPool.releaseConnection(connection);
+            releaseConnection(connection);
+            mMetadataCache.onStatement(sql);
+            if (listener != null) {
+                long end = System.nanoTime();
+                fireStatement(listener, sql, 0, StatementEvent.UNKNOWN_ROWS, start, acquired, end, end, failure);
+            }
         }
     }
 
@@ -90,20 +625,43 @@ public class Database {
      * @throws SQLException
      */
     public void execSQL(String sql, Object[] bindArgs) throws SQLException {
+        StatementListener listener = mStatementListener;
+        long start = startStatement(listener);
+        long acquired = 0L;
+        Throwable failure = null;
         Connection connection = null;
         PreparedStatement statement = null;
+        StatementGuard guard = StatementGuard.NONE;
         try {
-            connection = mConnectionPool.getConnection();
+            connection = acquireConnection();
+            if (listener != null) {
+                acquired = System.nanoTime();
+            }
             statement = connection.prepareStatement(sql);
+            guard = StatementGuard.arm(statement, mQueryTimeoutNanos);
             for (int i = 0; i < bindArgs.length; i++) {
                 statement.setObject(i + 1, bindArgs[i]);
             }
             statement.execute();
+        } catch (SQLException e) {
+            SQLException translated = guard.translate(e);
+            failure = translated;
+            throw translated;
+        } catch (RuntimeException e) {
+            failure = e;
+            throw e;
         } finally {
+            guard.close();
             if (statement != null) {
                 statement.closeOnCompletion();
             }
-            mConnectionPool.releaseConnection(connection);
+            releaseConnection(connection);
+            mMetadataCache.onStatement(sql);
+            if (listener != null) {
+                long end = System.nanoTime();
+                fireStatement(listener, sql, bindArgs.length, StatementEvent.UNKNOWN_ROWS, start, acquired, end,
+                        end, failure);
+            }
         }
     }
 
@@ -119,27 +677,70 @@ public class Database {
      * @throws SQLException
      */
     public int executeUpdate(String sql, Object[] bindArgs) throws SQLException {
+        return executeUpdate(sql, bindArgs, null);
+    }
+
+    /**
+     * Execute a statement binding each argument with the given JDBC type.
+     *
+     * @param sqlTypes The types of bindArgs, or null to let the driver choose.
+     * @see #bind(PreparedStatement, Object[], int[])
+     */
+    private int executeUpdate(final String sql, final Object[] bindArgs, final int[] sqlTypes) throws SQLException {
+        RetryPolicy policy = mRetryPolicy;
+        if (policy == null || mTransactionView) {
+            return executeUpdateOnce(sql, bindArgs, sqlTypes);
+        }
+        return policy.execute(mConnectionPool.getDbType(), () -> executeUpdateOnce(sql, bindArgs, sqlTypes));
+    }
+
+    private int executeUpdateOnce(String sql, Object[] bindArgs, int[] sqlTypes) throws SQLException {
+        StatementListener listener = mStatementListener;
+        long start = startStatement(listener);
+        long acquired = 0L;
+        long rows = StatementEvent.UNKNOWN_ROWS;
+        Throwable failure = null;
         Connection connection = null;
         PreparedStatement statement = null;
+        StatementGuard guard = StatementGuard.NONE;
         try {
-            connection = mConnectionPool.getConnection();
+            connection = acquireConnection();
+            if (listener != null) {
+                acquired = System.nanoTime();
+            }
             statement = connection.prepareStatement(sql);
+            guard = StatementGuard.arm(statement, mQueryTimeoutNanos);
             if (bindArgs != null) {
-                for (int i = 0; i < bindArgs.length; i++) {
-                    statement.setObject(i + 1, bindArgs[i]);
-                }
+                bind(statement, bindArgs, sqlTypes);
             }
-            return statement.executeUpdate();
+            int count = statement.executeUpdate();
+            rows = count;
+            return count;
+        } catch (SQLException e) {
+            SQLException translated = guard.translate(e);
+            failure = translated;
+            throw translated;
+        } catch (RuntimeException e) {
+            failure = e;
+            throw e;
         } finally {
+            guard.close();
             if (statement != null) {
                 statement.closeOnCompletion();
             }
-            mConnectionPool.releaseConnection(connection);
+            releaseConnection(connection);
+            mMetadataCache.onStatement(sql);
+            if (listener != null) {
+                long end = System.nanoTime();
+                fireStatement(listener, sql, bindArgs != null ? bindArgs.length : 0, rows, start, acquired, end,
+                        end, failure);
+            }
         }
     }
 
     /**
-     * Runs the provided SQL and return a {@link ResultSet} over the result set.
+     * Runs the provided SQL and return a {@link ResultSet} over the result set. The rows are read
+     * by the caller, so a {@link StatementListener} sees no fetch time and no row count.
      *
      * @param sql       The SQL query.
      * @param whereArgs You may include ?s in where clause in the query,
@@ -149,22 +750,44 @@ public class Database {
      * @throws SQLException
      */
     public ResultSet rawQuery(String sql, String[] whereArgs) throws SQLException {
+        StatementListener listener = mStatementListener;
+        long start = startStatement(listener);
+        long acquired = 0L;
+        Throwable failure = null;
         Connection connection = null;
         PreparedStatement statement = null;
+        StatementGuard guard = StatementGuard.NONE;
         try {
-            connection = mConnectionPool.getConnection();
+            connection = acquireConnection();
+            if (listener != null) {
+                acquired = System.nanoTime();
+            }
             statement = connection.prepareStatement(sql);
+            guard = StatementGuard.arm(statement, mQueryTimeoutNanos);
             if (whereArgs != null) {
                 for (int i = 0; i < whereArgs.length; i++) {
                     statement.setString(i + 1, whereArgs[i]);
                 }
             }
             return statement.executeQuery();
+        } catch (SQLException e) {
+            SQLException translated = guard.translate(e);
+            failure = translated;
+            throw translated;
+        } catch (RuntimeException e) {
+            failure = e;
+            throw e;
         } finally {
+            guard.close();
             if (statement != null) {
                 statement.closeOnCompletion();
             }
-            mConnectionPool.releaseConnection(connection);
+            releaseConnection(connection);
+            if (listener != null) {
+                long end = System.nanoTime();
+                fireStatement(listener, sql, whereArgs != null ? whereArgs.length : 0, StatementEvent.UNKNOWN_ROWS,
+                        start, acquired, end, end, failure);
+            }
         }
     }
 
@@ -184,19 +807,453 @@ public class Database {
      */
     public ResultSet query(String table, String[] columns, String whereClause, String[] whereArgs)
             throws SQLException {
-        StringBuilder query = new StringBuilder(120);
+        return rawQuery(buildQueryString(table, columns, whereClause, null), whereArgs);
+    }
 
-        query.append("SELECT ");
-        if (columns != null && columns.length != 0) {
-            appendColumns(query, columns);
-        } else {
-            query.append("* ");
+    /**
+     * Query the given table, mapping every row of the result with the given mapper. The
+     * connection is held until all rows have been read.
+     *
+     * @param table       The table name to compile the query against.
+     * @param columns     A list of which columns to return. Passing null will return all columns.
+     * @param whereClause A filter declaring which rows to return, formatted as an SQL WHERE clause
+     *                    (excluding the WHERE ifself). Passing null will return all rows for the given table.
+     * @param whereArgs   You may include ?s in selection, which will be replaced by the values from
+     *                    selectionArgs. The values will be bound as Strings.
+     * @param orderBy     How to order the rows, formatted as an SQL ORDER BY clause (excluding the
+     *                    ORDER BY itself). Passing null will use the default sort order.
+     * @param limit       The maximum number of rows to return, or 0 for no limit.
+     * @param mapper      Maps each row of the result.
+     * @return The mapped rows, in result order.
+     * @throws SQLException
+     */
+    public <T> List<T> query(String table, String[] columns, String whereClause, String[] whereArgs,
+                             String orderBy, int limit, RowMapper<T> mapper) throws SQLException {
+        return rawQuery(buildQueryString(table, columns, whereClause, orderBy), whereArgs, limit, mapper);
+    }
+
+    /**
+     * Runs the provided SQL and maps every row of the result with the given mapper. The
+     * connection is held until all rows have been read.
+     *
+     * @param sql      The SQL query.
+     * @param bindArgs You may include ?s in the query, which will be replaced by the values from
+     *                 bindArgs.
+     * @param maxRows  The maximum number of rows to return, or 0 for no limit.
+     * @param mapper   Maps each row of the result.
+     * @return The mapped rows, in result order.
+     * @throws SQLException
+     */
+    public <T> List<T> rawQuery(String sql, Object[] bindArgs, int maxRows, final RowMapper<T> mapper)
+            throws SQLException {
+        return query(sql, bindArgs, maxRows, 0, new ResultHandler<List<T>>() {
+            @Override
+            List<T> handle(ResultSet resultSet) throws SQLException {
+                List<T> rows = new ArrayList<>();
+                while (resultSet.next()) {
+                    rows.add(mapper.mapRow(resultSet));
+                }
+                return rows;
+            }
+
+            @Override
+            long rowCount(List<T> rows) {
+                return rows.size();
+            }
+        });
+    }
+
+    /**
+     * Get the rows of the given table with the given {@link BaseColumns#_ID ids}. Duplicate ids
+     * are looked up once, and the ids are split into IN lists no longer than the database accepts.
+     *
+     * @param table   The table name to compile the query against.
+     * @param columns A list of which columns to return; the id column is added if missing. Passing
+     *                null will return all columns.
+     * @param ids     The ids of the rows to return.
+     * @param mapper  Maps each row of the result.
+     * @return The mapped rows by id; ids without a row, or whose row was mapped to null, are
+     * missing.
+     * @throws SQLException
+     */
+    public <T> LongHashMap<T> getByIds(String table, String[] columns, long[] ids, RowMapper<T> mapper)
+            throws SQLException {
+        return getByIds(table, columns, ids, mapper, null);
+    }
+
+    /**
+     * Get the rows of the given table with the given {@link BaseColumns#_ID ids}, running the IN
+     * lists concurrently on the executor. Every list holds its own pooled connection, so a pool
+     * {@link bits.jdbc.Helper.PoolLane lane} is a good way to bound how many a large lookup takes.
+     * The {@link Deadline} of the calling thread applies to all lists.
+     *
+     * @param executor Runs the IN lists, or null to run them one after another on this thread.
+     * @see #getByIds(String, String[], long[], RowMapper)
+     */
+    public <T> LongHashMap<T> getByIds(String table, String[] columns, long[] ids, final RowMapper<T> mapper,
+                                       Executor executor) throws SQLException {
+        long[] distinct = distinct(ids);
+        if (distinct.length == 0) {
+            return new LongHashMap<>();
         }
-        query.append("FROM ")
-                .append(table);
-        appendClause(query, whereClause);
+        final CompiledQuery query = compileQuery(table, withIdColumn(columns), BaseColumns._ID + " IN (?*)", null);
+        // a power of two, so the bucketed IN lists of the compiled query stay within the limit
+        int chunkSize = Integer.highestOneBit(DatabaseType.getMaxInListSize(mConnectionPool.getDbType()));
+        if (executor == null || distinct.length <= chunkSize) {
+            LongHashMap<T> rows = new LongHashMap<>(distinct.length);
+            for (int from = 0; from < distinct.length; from += chunkSize) {
+                getChunk(query, Arrays.copyOfRange(distinct, from, Math.min(from + chunkSize, distinct.length)),
+                        mapper, rows);
+            }
+            return rows;
+        }
+
+        final Deadline deadline = Deadline.current();
+        List<CompletableFuture<LongHashMap<T>>> futures = new ArrayList<>();
+        for (int from = 0; from < distinct.length; from += chunkSize) {
+            final long[] chunk = Arrays.copyOfRange(distinct, from, Math.min(from + chunkSize, distinct.length));
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                Deadline.Scope scope = deadline != null ? deadline.enter() : null;
+                try {
+                    return getChunk(query, chunk, mapper, new LongHashMap<T>(chunk.length));
+                } catch (SQLException e) {
+                    throw new CompletionException(e);
+                } finally {
+                    if (scope != null) {
+                        scope.close();
+                    }
+                }
+            }, executor));
+        }
+        LongHashMap<T> rows = new LongHashMap<>(distinct.length);
+        Throwable failure = null;
+        for (CompletableFuture<LongHashMap<T>> future : futures) {
+            try {
+                LongHashMap<T> chunkRows = future.join();
+                if (failure == null) {
+                    rows.putAll(chunkRows);
+                }
+            } catch (CompletionException e) {
+                // keep joining, so no connection is still in use when this throws
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                if (failure == null) {
+                    failure = cause;
+                } else if (failure != cause) {
+                    failure.addSuppressed(cause);
+                }
+            }
+        }
+        if (failure instanceof SQLException) {
+            throw (SQLException) failure;
+        } else if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure instanceof Error) {
+            throw (Error) failure;
+        } else if (failure != null) {
+            throw new SQLException(failure);
+        }
+        return rows;
+    }
+
+    /**
+     * Runs the query for one IN list and puts the mapped rows into rows by id.
+     */
+    private <T> LongHashMap<T> getChunk(CompiledQuery query, long[] ids, final RowMapper<T> mapper,
+                                        final LongHashMap<T> rows) throws SQLException {
+        Object[] args = {ids};
+        return query(query.expandSql(args), query.expandArgs(args), 0, 0, new ResultHandler<LongHashMap<T>>() {
+            @Override
+            LongHashMap<T> handle(ResultSet resultSet) throws SQLException {
+                int idColumn = resultSet.findColumn(BaseColumns._ID);
+                while (resultSet.next()) {
+                    long id = resultSet.getLong(idColumn);
+                    T row = mapper.mapRow(resultSet);
+                    // the map holds no nulls; a row mapped to null is left out like a missing one
+                    if (row != null) {
+                        rows.put(id, row);
+                    }
+                }
+                return rows;
+            }
+
+            @Override
+            long rowCount(LongHashMap<T> result) {
+                return result.size();
+            }
+        });
+    }
+
+    /**
+     * Get the ids sorted and without duplicates.
+     */
+    private static long[] distinct(long[] ids) {
+        long[] sorted = ids.clone();
+        Arrays.sort(sorted);
+        int n = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[n - 1]) {
+                sorted[n++] = sorted[i];
+            }
+        }
+        return n == sorted.length ? sorted : Arrays.copyOf(sorted, n);
+    }
+
+    private static String[] withIdColumn(String[] columns) {
+        if (columns == null) {
+            return null;
+        }
+        for (String column : columns) {
+            if (BaseColumns._ID.equalsIgnoreCase(column)) {
+                return columns;
+            }
+        }
+        String[] withId = Arrays.copyOf(columns, columns.length + 1);
+        withId[columns.length] = BaseColumns._ID;
+        return withId;
+    }
+
+    /**
+     * Runs the provided SQL and reads the whole result into per-column primitive arrays. Use this
+     * instead of mapping every row to an object when scanning or aggregating many rows.
+     *
+     * @param sql      The SQL query.
+     * @param bindArgs You may include ?s in the query, which will be replaced by the values from
+     *                 bindArgs.
+     * @return The result, column by column.
+     * @throws SQLException
+     * @see ColumnBatch
+     */
+    public ColumnBatch queryColumnar(String sql, Object[] bindArgs) throws SQLException {
+        return query(sql, bindArgs, 0, DatabaseType.getStreamingFetchSize(mConnectionPool.getDbType()),
+                new ResultHandler<ColumnBatch>() {
+                    @Override
+                    ColumnBatch handle(ResultSet resultSet) throws SQLException {
+                        return ColumnBatch.read(resultSet);
+                    }
+
+                    @Override
+                    long rowCount(ColumnBatch batch) {
+                        return batch.getRowCount();
+                    }
+                });
+    }
+
+    /**
+     * Query the given table and read the whole result into per-column primitive arrays.
+     *
+     * @param table       The table name to compile the query against.
+     * @param columns     A list of which columns to return. Passing null will return all columns.
+     * @param whereClause A filter declaring which rows to return. Passing null will return all rows.
+     * @param whereArgs   The values for the ?s in whereClause, bound as Strings.
+     * @return The result, column by column.
+     * @throws SQLException
+     * @see #queryColumnar(String, Object[])
+     */
+    public ColumnBatch queryColumnar(String table, String[] columns, String whereClause, String[] whereArgs)
+            throws SQLException {
+        return queryColumnar(buildQueryString(table, columns, whereClause, null), whereArgs);
+    }
+
+    /**
+     * Runs the provided SQL and copies the rows without decoding them; each column is decoded
+     * the first time it is read. Use this for wide rows of which callers read only a few
+     * columns, such as large text or JSON fields.
+     *
+     * @param sql      The SQL query.
+     * @param bindArgs You may include ?s in the query, which will be replaced by the values from
+     *                 bindArgs.
+     * @return The rows.
+     * @throws SQLException
+     * @see LazyRow
+     */
+    public List<LazyRow> queryLazy(String sql, Object[] bindArgs) throws SQLException {
+        return query(sql, bindArgs, 0, 0, new ResultHandler<List<LazyRow>>() {
+            @Override
+            List<LazyRow> handle(ResultSet resultSet) throws SQLException {
+                LazyRow.Columns columns = new LazyRow.Columns(resultSet.getMetaData());
+                List<LazyRow> rows = new ArrayList<>();
+                while (resultSet.next()) {
+                    rows.add(LazyRow.read(resultSet, columns));
+                }
+                return rows;
+            }
+
+            @Override
+            long rowCount(List<LazyRow> rows) {
+                return rows.size();
+            }
+        });
+    }
+
+    /**
+     * Query the given table, copying the rows without decoding them.
+     *
+     * @see #queryLazy(String, Object[])
+     */
+    public List<LazyRow> queryLazy(String table, String[] columns, String whereClause, String[] whereArgs)
+            throws SQLException {
+        return queryLazy(buildQueryString(table, columns, whereClause, null), whereArgs);
+    }
+
+    /**
+     * Runs the provided SQL and drains the whole result into a memory-mapped temp file in the
+     * {@link #setSpillDirectory(File) spill directory}. The connection is returned to the pool as
+     * soon as the last row has been read; the rows can then be re-read, in any order, through
+     * {@link SpilledResult#cursor()}. Close the result to delete the file.
+     *
+     * @param sql      The SQL query.
+     * @param bindArgs You may include ?s in the query, which will be replaced by the values from
+     *                 bindArgs.
+     * @return The spilled result.
+     * @throws SQLException
+     */
+    public SpilledResult querySpilled(String sql, Object[] bindArgs) throws SQLException {
+        final File directory = mSpillDirectory;
+        return query(sql, bindArgs, 0, DatabaseType.getStreamingFetchSize(mConnectionPool.getDbType()),
+                new ResultHandler<SpilledResult>() {
+                    @Override
+                    SpilledResult handle(ResultSet resultSet) throws SQLException {
+                        return SpilledResult.spill(resultSet, directory);
+                    }
+
+                    @Override
+                    long rowCount(SpilledResult result) {
+                        return result.getRowCount();
+                    }
+                });
+    }
+
+    /**
+     * Query the given table and drain the whole result into a memory-mapped temp file.
+     *
+     * @see #querySpilled(String, Object[])
+     */
+    public SpilledResult querySpilled(String table, String[] columns, String whereClause, String[] whereArgs)
+            throws SQLException {
+        return querySpilled(buildQueryString(table, columns, whereClause, null), whereArgs);
+    }
+
+    /**
+     * Runs the provided SQL and streams the result to a channel as CSV or NDJSON. The rows are
+     * fetched forward only with a streaming fetch size and encoded into a few pooled direct
+     * buffers, so memory use does not grow with the number of rows. On PostgreSQL, which only
+     * streams inside a transaction, the rows are read in a read-only transaction unless this is
+     * already a transaction's database.
+     *
+     * @param sql      The SQL query.
+     * @param bindArgs You may include ?s in the query, which will be replaced by the values from
+     *                 bindArgs.
+     * @param format   The format to write.
+     * @param channel  A blocking channel to write to, e.g. a {@link java.nio.channels.FileChannel};
+     *                 it is not closed.
+     * @return The number of rows written.
+     * @throws SQLException if the query or writing to the channel fails.
+     * @see ResultExporter
+     */
+    public long export(String sql, Object[] bindArgs, final ExportFormat format, final WritableByteChannel channel)
+            throws SQLException {
+        return query(sql, bindArgs, 0, DatabaseType.getStreamingFetchSize(mConnectionPool.getDbType()),
+                new ResultHandler<Long>() {
+                    @Override
+                    Long handle(ResultSet resultSet) throws SQLException {
+                        return ResultExporter.export(resultSet, format, channel);
+                    }
 
-        return rawQuery(query.toString(), whereArgs);
+                    @Override
+                    long rowCount(Long rows) {
+                        return rows;
+                    }
+                });
+    }
+
+    /**
+     * Runs a query and hands its result to the handler while the connection is held.
+     * <p>
+     * Outside a transaction a streaming fetch size also turns auto-commit off on databases which
+     * only stream inside a transaction, see {@link DatabaseType#isStreamingTransactional(int)}.
+     * The connection is made read-only for that transaction, which is committed once the result
+     * has been read, or rolled back if reading fails; the pool restores read-only and auto-commit
+     * when the connection is released.
+     *
+     * @param fetchSize The fetch size hint for the driver, or 0 for the driver default.
+     */
+    private <T> T query(String sql, Object[] bindArgs, int maxRows, int fetchSize, ResultHandler<T> handler)
+            throws SQLException {
+        StatementListener listener = mStatementListener;
+        long start = startStatement(listener);
+        long acquired = 0L;
+        long executed = 0L;
+        long rows = StatementEvent.UNKNOWN_ROWS;
+        Throwable failure = null;
+        Connection connection = null;
+        PreparedStatement statement = null;
+        StatementGuard guard = StatementGuard.NONE;
+        boolean streamingTransaction = false;
+        try {
+            connection = acquireConnection();
+            if (listener != null) {
+                acquired = System.nanoTime();
+            }
+            if (fetchSize != 0 && !mTransactionView
+                    && DatabaseType.isStreamingTransactional(mConnectionPool.getDbType())
+                    && connection.getAutoCommit()) {
+                //read-only has to be set before the transaction begins
+                connection.setReadOnly(true);
+                connection.setAutoCommit(false);
+                streamingTransaction = true;
+            }
+            statement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            guard = StatementGuard.arm(statement, mQueryTimeoutNanos);
+            if (bindArgs != null) {
+                for (int i = 0; i < bindArgs.length; i++) {
+                    statement.setObject(i + 1, bindArgs[i]);
+                }
+            }
+            if (maxRows > 0) {
+                statement.setMaxRows(maxRows);
+            }
+            if (fetchSize != 0) {
+                statement.setFetchSize(fetchSize);
+            }
+            T result;
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (listener != null) {
+                    executed = System.nanoTime();
+                }
+                result = handler.handle(resultSet);
+                rows = handler.rowCount(result);
+            }
+            if (streamingTransaction) {
+                connection.commit();
+                streamingTransaction = false;
+            }
+            return result;
+        } catch (SQLException e) {
+            SQLException translated = guard.translate(e);
+            failure = translated;
+            throw translated;
+        } catch (RuntimeException e) {
+            failure = e;
+            throw e;
+        } finally {
+            guard.close();
+            if (statement != null) {
+                statement.close();
+            }
+            if (streamingTransaction) {
+                try {
+                    connection.rollback();
+                } catch (SQLException e) {
+                    System.err.println("Exception: roll back streaming query");
+                    e.printStackTrace();
+                }
+            }
+            releaseConnection(connection);
+            if (listener != null) {
+                fireStatement(listener, sql, bindArgs != null ? bindArgs.length : 0, rows, start, acquired,
+                        executed, System.nanoTime(), failure);
+            }
+        }
     }
 
     /**
@@ -209,16 +1266,110 @@ public class Database {
      * 0 for SQL statements that return nothing.
      */
     public long insert(String table, String nullColumnHack, ContentValues initialValues) throws SQLException {
+        int size = (initialValues != null && initialValues.size() > 0) ? initialValues.size() : 0;
+        Object[] bindArgs = (size > 0) ? new Object[size] : null;
+        String sql = buildInsertString(table, nullColumnHack, initialValues, bindArgs);
+        int[] sqlTypes = (size > 0) ? getBindTypes(table, initialValues.keySet(), size) : null;
+
+        return executeUpdate(sql, bindArgs, sqlTypes);
+    }
+
+    /**
+     * Inserts many rows with JDBC batches on a single connection. Consecutive rows with the same
+     * set of columns share one prepared statement and are sent as one batch.
+     *
+     * @param table  The table to insert the rows into.
+     * @param values The rows to insert. Every row must contain at least one column.
+     * @return The number of rows inserted, as far as the driver reports it.
+     * @throws SQLException
+     */
+    public int bulkInsert(String table, ContentValues[] values) throws SQLException {
+        if (values == null || values.length == 0) {
+            return 0;
+        }
+        int count = 0;
+        Connection connection = acquireConnection();
+        try {
+            int first = 0;
+            while (first < values.length) {
+                ContentValues head = values[first];
+                if (head == null || head.isEmpty()) {
+                    throw new IllegalArgumentException("Empty values at row " + first);
+                }
+                String[] columns = head.keySet().toArray(new String[head.size()]);
+                int last = first + 1;
+                while (last < values.length && values[last] != null
+                        && values[last].keySet().equals(head.keySet())) {
+                    last++;
+                }
+                count += executeInsertBatch(connection, table, columns, values, first, last);
+                first = last;
+            }
+        } finally {
+            releaseConnection(connection);
+        }
+        return count;
+    }
+
+    /**
+     * Inserts values[first..last) which all have the given columns as one batch.
+     */
+    private int executeInsertBatch(Connection connection, String table, String[] columns,
+                                   ContentValues[] values, int first, int last) throws SQLException {
+        String sql = buildInsertString(table, columns);
+        int[] sqlTypes = getBindTypes(table, Arrays.asList(columns), columns.length);
+        StatementListener listener = mStatementListener;
+        long start = startStatement(listener);
+        int count = 0;
+        Throwable failure = null;
+        StatementGuard guard = StatementGuard.NONE;
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            guard = StatementGuard.arm(statement, mQueryTimeoutNanos);
+            for (int row = first; row < last; row++) {
+                for (int i = 0; i < columns.length; i++) {
+                    setObject(statement, i + 1, values[row].get(columns[i]),
+                            sqlTypes != null ? sqlTypes[i] : TableMetadata.UNKNOWN_TYPE);
+                }
+                statement.addBatch();
+            }
+            for (int rows : statement.executeBatch()) {
+                count += (rows == Statement.SUCCESS_NO_INFO) ? 1 : Math.max(rows, 0);
+            }
+            return count;
+        } catch (SQLException e) {
+            SQLException translated = guard.translate(e);
+            failure = translated;
+            throw translated;
+        } catch (RuntimeException e) {
+            failure = e;
+            throw e;
+        } finally {
+            guard.close();
+            if (listener != null) {
+                long end = System.nanoTime();
+                fireStatement(listener, sql, columns.length * (last - first), count, start, start, end, end,
+                        failure);
+            }
+        }
+    }
+
+    /**
+     * Build an INSERT statement for the given values, copying the values in column order to
+     * bindArgs.
+     *
+     * @param bindArgs Receives the column values; must have the size of initialValues, or be null
+     *                 if there are none.
+     */
+    static String buildInsertString(String table, String nullColumnHack, ContentValues initialValues,
+                                    Object[] bindArgs) {
         StringBuilder sql = new StringBuilder();
         sql.append("INSERT ")
                 .append("INTO ")
                 .append(table)
                 .append('(');
 
-        Object[] bindArgs = null;
-        int size = (initialValues != null && initialValues.size() > 0) ? initialValues.size() : 0;
+        int size = (bindArgs != null) ? bindArgs.length : 0;
         if (size > 0) {
-            bindArgs = new Object[size];
             int i = 0;
             for (String colName : initialValues.keySet()) {
                 sql.append((i > 0) ? "," : "");
@@ -235,8 +1386,27 @@ public class Database {
         }
 
         sql.append(')');
+        return sql.toString();
+    }
 
-        return executeUpdate(sql.toString(), bindArgs);
+    /**
+     * Build an INSERT statement with a placeholder for each of the given columns.
+     */
+    static String buildInsertString(String table, String[] columns) {
+        StringBuilder sql = new StringBuilder();
+        sql.append("INSERT INTO ")
+                .append(table)
+                .append('(');
+        for (int i = 0; i < columns.length; i++) {
+            sql.append((i > 0) ? "," : "")
+                    .append(columns[i]);
+        }
+        sql.append(") VALUES (");
+        for (int i = 0; i < columns.length; i++) {
+            sql.append((i > 0) ? ",?" : "?");
+        }
+        sql.append(')');
+        return sql.toString();
     }
 
     /**
@@ -259,14 +1429,33 @@ public class Database {
             throw new IllegalArgumentException("Empty values");
         }
 
+        int bindArgsSize = (whereArgs == null) ? values.size() : (values.size() + whereArgs.length);
+        Object[] bindArgs = new Object[bindArgsSize];
+        String sql = buildUpdateString(table, values, whereClause, whereArgs, bindArgs);
+        int[] sqlTypes = getBindTypes(table, values.keySet(), bindArgsSize);
+
+        int rows = executeUpdate(sql, bindArgs, sqlTypes);
+        if (rows > 0) {
+            fireRowsChanged(table, whereClause, whereArgs);
+        }
+        return rows;
+    }
+
+    /**
+     * Build an UPDATE statement, copying the new values followed by the where arguments to
+     * bindArgs.
+     *
+     * @param bindArgs Receives the bind arguments; must have the size of values plus whereArgs.
+     */
+    static String buildUpdateString(String table, ContentValues values, String whereClause, String[] whereArgs,
+                                    Object[] bindArgs) {
         StringBuilder sql = new StringBuilder();
         sql.append("UPDATE ")
                 .append(table)
                 .append(" SET ");
         // Move all bind args to one array.
         int setValuesSize = values.size();
-        int bindArgsSize = (whereArgs == null) ? setValuesSize : (setValuesSize + whereArgs.length);
-        Object[] bindArgs = new Object[bindArgsSize];
+        int bindArgsSize = bindArgs.length;
         int i = 0;
         for (String colName : values.keySet()) {
             sql.append((i > 0) ? "," : "")
@@ -284,8 +1473,7 @@ public class Database {
             sql.append(" WHERE ");
             sql.append(whereClause);
         }
-
-        return executeUpdate(sql.toString(), bindArgs);
+        return sql.toString();
     }
 
     /**
@@ -309,6 +1497,24 @@ public class Database {
                     .append(whereClause);
         }
 
-        return executeUpdate(sql.toString(), whereArgs);
+        int rows = executeUpdate(sql.toString(), whereArgs);
+        if (rows > 0) {
+            fireRowsChanged(table, whereClause, whereArgs);
+        }
+        return rows;
+    }
+
+    /**
+     * Reads a query result while the connection is held.
+     */
+    private abstract static class ResultHandler<T> {
+        abstract T handle(ResultSet resultSet) throws SQLException;
+
+        /**
+         * Gets the number of rows read, for the {@link StatementListener}.
+         */
+        long rowCount(T result) {
+            return StatementEvent.UNKNOWN_ROWS;
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,128 @@
+package bits.jdbc.database;
+
+import bits.jdbc.content.ContentValues;
+
+import java.lang.ref.WeakReference;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+/**
+ * Static utility methods for dealing with databases and {@link ResultSet}s.
+ */
+public class DatabaseUtils {
+    /**
+     * Maps each row to a new {@link ContentValues}.
+     */
+    public static final RowMapper<ContentValues> CONTENT_VALUES_MAPPER = new RowMapper<ContentValues>() {
+        @Override
+        public ContentValues mapRow(ResultSet resultSet) throws SQLException {
+            return resultSetRowToContentValues(resultSet);
+        }
+    };
+
+    private DatabaseUtils() {
+    }
+
+    /**
+     * Creates a mapper of each row to a {@link LazyRow}. The mapper reads the column labels once
+     * per result set and shares them with the rows of that result; given another result set, it
+     * reads them again. It can so be kept in a constant, e.g. for {@link QueryCoalescer}, and be
+     * used by several threads at once.
+     *
+     * @return The mapper.
+     */
+    public static RowMapper<LazyRow> newLazyRowMapper() {
+        return new RowMapper<LazyRow>() {
+            private volatile BoundColumns mBound;
+
+            @Override
+            public LazyRow mapRow(ResultSet resultSet) throws SQLException {
+                BoundColumns bound = mBound;
+                if (bound == null || bound.mResultSet.get() != resultSet) {
+                    bound = new BoundColumns(resultSet);
+                    mBound = bound;
+                }
+                return LazyRow.read(resultSet, bound.mColumns);
+            }
+        };
+    }
+
+    /**
+     * The columns of a result set, held with the result set they were read from. The reference is
+     * weak so that a mapper kept in a constant does not keep a closed result set reachable.
+     */
+    private static final class BoundColumns {
+        final WeakReference<ResultSet> mResultSet;
+        final LazyRow.Columns mColumns;
+
+        BoundColumns(ResultSet resultSet) throws SQLException {
+            mResultSet = new WeakReference<>(resultSet);
+            mColumns = new LazyRow.Columns(resultSet.getMetaData());
+        }
+    }
+
+    /**
+     * Reads the row the result set is currently positioned on into a new {@link ContentValues}.
+     *
+     * @param resultSet The result set to read from.
+     * @return The values of the current row, keyed by column label.
+     * @throws SQLException
+     */
+    public static ContentValues resultSetRowToContentValues(ResultSet resultSet) throws SQLException {
+        ResultSetMetaData metaData = resultSet.getMetaData();
+        ContentValues values = new ContentValues(metaData.getColumnCount());
+        resultSetRowToContentValues(resultSet, metaData, values);
+        return values;
+    }
+
+    /**
+     * Reads the row the result set is currently positioned on into the given values.
+     *
+     * @param resultSet The result set to read from.
+     * @param metaData  The meta data of the result set.
+     * @param values    The {@link ContentValues} to put the column values into.
+     * @throws SQLException
+     */
+    public static void resultSetRowToContentValues(ResultSet resultSet, ResultSetMetaData metaData,
+                                                   ContentValues values) throws SQLException {
+        int columnCount = metaData.getColumnCount();
+        for (int i = 1; i <= columnCount; i++) {
+            putObject(values, metaData.getColumnLabel(i), resultSet.getObject(i));
+        }
+    }
+
+    /**
+     * Puts a value of any type into the given values. Types which {@link ContentValues} cannot
+     * hold are stored as their String representation.
+     *
+     * @param values the values to put into
+     * @param key    the name of the value to put
+     * @param value  the data for the value to put
+     */
+    public static void putObject(ContentValues values, String key, Object value) {
+        if (value == null) {
+            values.putNull(key);
+        } else if (value instanceof String) {
+            values.put(key, (String) value);
+        } else if (value instanceof Long) {
+            values.put(key, (Long) value);
+        } else if (value instanceof Integer) {
+            values.put(key, (Integer) value);
+        } else if (value instanceof Short) {
+            values.put(key, (Short) value);
+        } else if (value instanceof Byte) {
+            values.put(key, (Byte) value);
+        } else if (value instanceof Double) {
+            values.put(key, (Double) value);
+        } else if (value instanceof Float) {
+            values.put(key, (Float) value);
+        } else if (value instanceof Boolean) {
+            values.put(key, (Boolean) value);
+        } else if (value instanceof byte[]) {
+            values.put(key, (byte[]) value);
+        } else {
+            values.put(key, value.toString());
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package bits.jdbc.database;
+
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A point in time by which a unit of work must be done, covering both the wait for a pooled
+ * connection and the execution of every statement a {@link Database} runs on the thread while the
+ * deadline is {@link #enter() entered}:
+ * <pre>
+ * Deadline deadline = Deadline.after(2, TimeUnit.SECONDS);
+ * try (Deadline.Scope scope = deadline.enter()) {
+ *     database.execSQL(...);
+ *     database.rawQuery(..., mapper);
+ * }
+ * </pre>
+ * Another thread may {@link #cancel()} the deadline, which cancels the running statement through
+ * {@link Statement#cancel()} and makes every following statement in the scope fail. Connections
+ * are returned to the pool as usual once the cancelled statement has failed.
+ * <p>
+ * A scope entered inside another one replaces the outer deadline until it is closed.
+ */
+public final class Deadline {
+    private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<>();
+
+    /**
+     * System.nanoTime() of the deadline, or Long.MAX_VALUE for none.
+     */
+    private final long mDeadlineNanos;
+    private final boolean mBounded;
+    private volatile boolean mCancelled;
+    /**
+     * The guards of the statements currently running under this deadline.
+     */
+    private final Set<StatementGuard> mStatements = ConcurrentHashMap.newKeySet();
+
+    private Deadline(long deadlineNanos, boolean bounded) {
+        mDeadlineNanos = deadlineNanos;
+        mBounded = bounded;
+    }
+
+    /**
+     * Creates a deadline the given time from now.
+     */
+    public static Deadline after(long timeout, TimeUnit unit) {
+        return new Deadline(System.nanoTime() + unit.toNanos(timeout), true);
+    }
+
+    /**
+     * Creates a deadline which never expires, for work that should only be cancellable.
+     */
+    public static Deadline none() {
+        return new Deadline(Long.MAX_VALUE, false);
+    }
+
+    /**
+     * Get the deadline entered on the calling thread.
+     *
+     * @return The deadline, or null if none has been entered.
+     */
+    public static Deadline current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Makes this the deadline of the calling thread until the returned scope is closed.
+     */
+    public Scope enter() {
+        Scope scope = new Scope(CURRENT.get());
+        CURRENT.set(this);
+        return scope;
+    }
+
+    /**
+     * Returns true if this deadline expires at all.
+     */
+    public boolean isBounded() {
+        return mBounded;
+    }
+
+    /**
+     * Get the time left, which is negative once the deadline has passed, or Long.MAX_VALUE if the
+     * deadline does not expire.
+     */
+    public long remainingNanos() {
+        return mBounded ? mDeadlineNanos - System.nanoTime() : Long.MAX_VALUE;
+    }
+
+    /**
+     * Returns true if the deadline has passed.
+     */
+    public boolean isExpired() {
+        return remainingNanos() <= 0;
+    }
+
+    /**
+     * Returns true if {@link #cancel()} has been called.
+     */
+    public boolean isCancelled() {
+        return mCancelled;
+    }
+
+    /**
+     * Cancels the work under this deadline. The statements running right now are cancelled through
+     * {@link Statement#cancel()}; the ones started later fail before they are sent. May be called
+     * from any thread.
+     */
+    public void cancel() {
+        mCancelled = true;
+        for (StatementGuard guard : mStatements) {
+            guard.cancel();
+        }
+    }
+
+    /**
+     * Cancels a running statement, ignoring drivers which cannot.
+     */
+    static void cancel(Statement statement) {
+        try {
+            statement.cancel();
+        } catch (SQLException e) {
+            System.err.println("Exception: cancel statement");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Throws if the work under this deadline must not go on.
+     *
+     * @throws SQLTimeoutException if the deadline has passed.
+     * @throws SQLException        with SQLState 57014 if it has been cancelled.
+     */
+    void check() throws SQLException {
+        if (mCancelled) {
+            throw new SQLException("Cancelled", "57014");
+        }
+        if (isExpired()) {
+            throw new SQLTimeoutException("Deadline exceeded");
+        }
+    }
+
+    void register(StatementGuard guard) throws SQLException {
+        mStatements.add(guard);
+        if (mCancelled) {
+            // cancelled between check() and add(): the loop in cancel() may have missed it
+            mStatements.remove(guard);
+            check();
+        }
+    }
+
+    void unregister(StatementGuard guard) {
+        mStatements.remove(guard);
+    }
+
+    /**
+     * The span during which a deadline is entered on a thread. Close it on the same thread.
+     */
+    public static final class Scope implements AutoCloseable {
+        private final Deadline mPrevious;
+
+        private Scope(Deadline previous) {
+            mPrevious = previous;
+        }
+
+        @Override
+        public void close() {
+            if (mPrevious != null) {
+                CURRENT.set(mPrevious);
+            } else {
+                CURRENT.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,646 @@
+package bits.jdbc.database;
+
+import bits.jdbc.utils.LongHashMap;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps the most frequently read rows of a table in memory, by {@link BaseColumns#_ID id}.
+ * <p>
+ * The cache is bounded by the total weight of its rows, 1 per row unless a {@link Weigher} is
+ * given, and chooses what to keep with W-TinyLFU: new rows enter a small LRU window, and a row
+ * pushed out of the window only displaces a row of the main area if it has been asked for more
+ * often, as estimated by a count-min sketch of recent reads which also counts the misses. The main
+ * area is a segmented LRU in which rows read twice are protected from rows read once. A scan of
+ * many rows, each read once, thus cannot flush the hot rows. The cache is split into stripes by id,
+ * each with its own lock, so readers of different rows rarely contend.
+ * <p>
+ * The cache registers as a {@link TableChangeListener} of the database: a
+ * {@link Database#update(String, bits.jdbc.content.ContentValues, String, String[]) update} or
+ * {@link Database#delete(String, String, String[]) delete}, directly or through a
+ * {@link Pipeline}, with the where clause {@code id = ?} invalidates that row, one with any other
+ * where clause the whole cache. Writes through {@link #update(long, BaseModel)} put the new row in
+ * the cache. Rows changed by raw SQL or by other processes stay stale until
+ * {@link #invalidate(long) invalidated}. {@link #close()} the
+ * cache to unregister it.
+ */
+public class EntityCache<T extends BaseModel> implements TableChangeListener {
+    private final Database mDatabase;
+    private final String mTable;
+    private final RowMapper<T> mMapper;
+    private final Weigher<? super T> mWeigher;
+    private final CompiledQuery mQuery;
+    private final Pattern mIdFilter;
+    private final Stripe<T>[] mStripes;
+    private final int mStripeMask;
+
+    private final AtomicLong mHits = new AtomicLong();
+    private final AtomicLong mMisses = new AtomicLong();
+    private final AtomicLong mLoads = new AtomicLong();
+    private final AtomicLong mEvictions = new AtomicLong();
+
+    /**
+     * Creates a cache holding at most the given number of rows.
+     */
+    public EntityCache(Database database, String table, RowMapper<T> mapper, long maximumSize) {
+        this(database, table, mapper, maximumSize, null);
+    }
+
+    /**
+     * Creates a cache holding rows up to the given total weight.
+     *
+     * @param database      The database to read from and to listen to.
+     * @param table         The table of the rows.
+     * @param mapper        Maps a row of the table.
+     * @param maximumWeight The maximum total weight.
+     * @param weigher       Weighs the rows, or null to weigh every row 1.
+     */
+    @SuppressWarnings("unchecked")
+    public EntityCache(Database database, String table, RowMapper<T> mapper, long maximumWeight,
+                       Weigher<? super T> weigher) {
+        if (maximumWeight < 1) {
+            throw new IllegalArgumentException("Maximum weight must be >= 1, was " + maximumWeight);
+        }
+        mDatabase = database;
+        mTable = table;
+        mMapper = mapper;
+        mWeigher = weigher;
+        mQuery = database.compileQuery(table, null, BaseColumns._ID + " = ?", null);
+        mIdFilter = Pattern.compile("\\s*(\\w+\\.)?" + Pattern.quote(BaseColumns._ID) + "\\s*=\\s*\\?\\s*",
+                Pattern.CASE_INSENSITIVE);
+
+        // enough stripes to spread the processors, while each still holds a useful number of rows
+        int stripes = 1;
+        while (stripes < Runtime.getRuntime().availableProcessors() * 2 && maximumWeight / (stripes * 2) >= 64) {
+            stripes <<= 1;
+        }
+        mStripes = (Stripe<T>[]) new Stripe<?>[stripes];
+        for (int i = 0; i < stripes; i++) {
+            long stripeWeight = maximumWeight / stripes + (i < maximumWeight % stripes ? 1 : 0);
+            mStripes[i] = new Stripe<>(stripeWeight);
+        }
+        mStripeMask = stripes - 1;
+        database.addTableChangeListener(this);
+    }
+
+    private static long spread(long id) {
+        id ^= id >>> 33;
+        id *= 0xff51afd7ed558ccdL;
+        id ^= id >>> 33;
+        id *= 0xc4ceb9fe1a85ec53L;
+        id ^= id >>> 33;
+        return id;
+    }
+
+    private Stripe<T> stripe(long id) {
+        return mStripes[(int) (spread(id) >>> 40) & mStripeMask];
+    }
+
+    public String getTable() {
+        return mTable;
+    }
+
+    /**
+     * Get a row from the cache, reading it from the database on a miss.
+     *
+     * @return The row, or null if the table has no row with the id.
+     * @throws SQLException
+     */
+    public T get(long id) throws SQLException {
+        Stripe<T> stripe = stripe(id);
+        long stamp;
+        stripe.lock.lock();
+        try {
+            Node<T> node = stripe.nodes.get(id);
+            if (node != null) {
+                stripe.onHit(node);
+                mHits.incrementAndGet();
+                return node.value;
+            }
+            stripe.sketch.increment(id);
+            stamp = stripe.invalidations;
+        } finally {
+            stripe.lock.unlock();
+        }
+        mMisses.incrementAndGet();
+        // read without the lock, so other rows of the stripe can be served meanwhile
+        List<T> rows = mQuery.query(mMapper, id);
+        mLoads.incrementAndGet();
+        T value = rows.isEmpty() ? null : rows.get(0);
+        if (value != null) {
+            put(stripe, id, value, stamp);
+        }
+        return value;
+    }
+
+    /**
+     * Get rows from the cache, reading all misses from the database in one
+     * {@link Database#getByIds(String, String[], long[], RowMapper) multi-get}.
+     *
+     * @return The rows by id; ids without a row are missing.
+     * @throws SQLException
+     */
+    public LongHashMap<T> getAll(long[] ids) throws SQLException {
+        LongHashMap<T> rows = new LongHashMap<>(ids.length);
+        long[] misses = new long[ids.length];
+        long[] stamps = new long[ids.length];
+        int missCount = 0;
+        for (long id : ids) {
+            if (rows.containsKey(id)) {
+                continue;
+            }
+            Stripe<T> stripe = stripe(id);
+            stripe.lock.lock();
+            try {
+                Node<T> node = stripe.nodes.get(id);
+                if (node != null) {
+                    stripe.onHit(node);
+                    rows.put(id, node.value);
+                    continue;
+                }
+                stripe.sketch.increment(id);
+                stamps[missCount] = stripe.invalidations;
+                misses[missCount++] = id;
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        mHits.addAndGet(rows.size());
+        if (missCount == 0) {
+            return rows;
+        }
+        mMisses.addAndGet(missCount);
+        LongHashMap<T> loaded = mDatabase.getByIds(mTable, null, Arrays.copyOf(misses, missCount), mMapper);
+        mLoads.incrementAndGet();
+        for (int i = 0; i < missCount; i++) {
+            T value = loaded.get(misses[i]);
+            if (value != null) {
+                rows.put(misses[i], value);
+                put(stripe(misses[i]), misses[i], value, stamps[i]);
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Get a row if it is cached.
+     *
+     * @return The row, or null on a miss.
+     */
+    public T getIfPresent(long id) {
+        Stripe<T> stripe = stripe(id);
+        stripe.lock.lock();
+        try {
+            Node<T> node = stripe.nodes.get(id);
+            if (node == null) {
+                stripe.sketch.increment(id);
+                mMisses.incrementAndGet();
+                return null;
+            }
+            stripe.onHit(node);
+            mHits.incrementAndGet();
+            return node.value;
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * Puts a row into the cache, e.g. after inserting it.
+     */
+    public void put(long id, T value) {
+        Stripe<T> stripe = stripe(id);
+        put(stripe, id, value, Long.MIN_VALUE);
+    }
+
+    /**
+     * Puts a read row into the stripe unless the stripe has been invalidated since the read began.
+     *
+     * @param stamp The invalidation count of the stripe when the read began, or Long.MIN_VALUE to
+     *              put unconditionally.
+     */
+    private void put(Stripe<T> stripe, long id, T value, long stamp) {
+        int weight = mWeigher != null ? mWeigher.weigh(value) : 1;
+        if (weight < 0) {
+            throw new IllegalArgumentException("Negative weight " + weight + " for id " + id);
+        }
+        stripe.lock.lock();
+        try {
+            if (stamp != Long.MIN_VALUE && stamp != stripe.invalidations) {
+                return;  // the row may have changed after it was read
+            }
+            if (weight > stripe.maxWeight) {
+                stripe.remove(id);
+                return;
+            }
+            mEvictions.addAndGet(stripe.put(id, value, weight));
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * Writes a row to the database and, if it exists, puts it into the cache.
+     *
+     * @return The number of rows updated, 0 or 1.
+     * @throws SQLException
+     */
+    public int update(long id, T value) throws SQLException {
+        // the update invalidates the id first, so a read racing with it cannot cache the old row
+        int rows = mDatabase.update(mTable, value.assemble(), BaseColumns._ID + " = ?",
+                new String[]{Long.toString(id)});
+        if (rows > 0) {
+            put(id, value);
+        }
+        return rows;
+    }
+
+    /**
+     * Deletes a row from the database and the cache.
+     *
+     * @return The number of rows deleted, 0 or 1.
+     * @throws SQLException
+     */
+    public int delete(long id) throws SQLException {
+        int rows = mDatabase.delete(mTable, BaseColumns._ID + " = ?", new String[]{Long.toString(id)});
+        invalidate(id);
+        return rows;
+    }
+
+    /**
+     * Removes a row from the cache.
+     */
+    public void invalidate(long id) {
+        Stripe<T> stripe = stripe(id);
+        stripe.lock.lock();
+        try {
+            stripe.invalidations++;
+            stripe.remove(id);
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * Removes all rows from the cache.
+     */
+    public void invalidateAll() {
+        for (Stripe<T> stripe : mStripes) {
+            stripe.lock.lock();
+            try {
+                stripe.invalidations++;
+                stripe.clear();
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public void onRowsChanged(String table, String whereClause, String[] whereArgs) {
+        if (!mTable.equalsIgnoreCase(table)) {
+            return;
+        }
+        if (whereClause != null && whereArgs != null && whereArgs.length == 1
+                && mIdFilter.matcher(whereClause).matches()) {
+            try {
+                invalidate(Long.parseLong(whereArgs[0].trim()));
+                return;
+            } catch (NumberFormatException e) {
+                // not an id; fall through
+            }
+        }
+        invalidateAll();
+    }
+
+    /**
+     * Stops listening to the changes of the database and empties the cache.
+     */
+    public void close() {
+        mDatabase.removeTableChangeListener(this);
+        invalidateAll();
+    }
+
+    /**
+     * Get the number of cached rows.
+     */
+    public long size() {
+        long size = 0;
+        for (Stripe<T> stripe : mStripes) {
+            stripe.lock.lock();
+            try {
+                size += stripe.nodes.size();
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Get the total weight of the cached rows.
+     */
+    public long getWeightedSize() {
+        long weight = 0;
+        for (Stripe<T> stripe : mStripes) {
+            stripe.lock.lock();
+            try {
+                weight += stripe.weight;
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return weight;
+    }
+
+    public long getHitCount() {
+        return mHits.get();
+    }
+
+    public long getMissCount() {
+        return mMisses.get();
+    }
+
+    /**
+     * Get the fraction of reads served from the cache, or 1 before the first read.
+     */
+    public double getHitRate() {
+        long hits = mHits.get();
+        long requests = hits + mMisses.get();
+        return requests == 0 ? 1.0 : (double) hits / requests;
+    }
+
+    /**
+     * Get the number of queries run to load missing rows.
+     */
+    public long getLoadCount() {
+        return mLoads.get();
+    }
+
+    /**
+     * Get the number of rows removed to keep within the maximum weight.
+     */
+    public long getEvictionCount() {
+        return mEvictions.get();
+    }
+
+    @Override
+    public String toString() {
+        return "EntityCache{" + mTable + ", size=" + size() + ", hits=" + mHits.get() + ", misses=" + mMisses.get()
+                + ", evictions=" + mEvictions.get() + '}';
+    }
+
+    /**
+     * Weighs the rows of an {@link EntityCache}, e.g. by their approximate size in bytes.
+     */
+    public interface Weigher<T> {
+        /**
+         * @return The weight of the row, at least 0.
+         */
+        int weigh(T value);
+    }
+
+    private static final class Node<T> {
+        final long id;
+        T value;
+        int weight;
+        AccessQueue<T> queue;
+        Node<T> prev;
+        Node<T> next;
+
+        Node(long id, T value, int weight) {
+            this.id = id;
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * Nodes from least to most recently used, with their total weight.
+     */
+    private static final class AccessQueue<T> {
+        private final Node<T> head = new Node<>(0L, null, 0);
+        long weight;
+
+        AccessQueue() {
+            head.prev = head;
+            head.next = head;
+        }
+
+        Node<T> first() {
+            return head.next != head ? head.next : null;
+        }
+
+        Node<T> last() {
+            return head.prev != head ? head.prev : null;
+        }
+
+        void add(Node<T> node) {
+            node.prev = head.prev;
+            node.next = head;
+            head.prev.next = node;
+            head.prev = node;
+            node.queue = this;
+            weight += node.weight;
+        }
+
+        void remove(Node<T> node) {
+            node.prev.next = node.next;
+            node.next.prev = node.prev;
+            node.prev = null;
+            node.next = null;
+            node.queue = null;
+            weight -= node.weight;
+        }
+
+        void moveToBack(Node<T> node) {
+            remove(node);
+            add(node);
+        }
+
+        void clear() {
+            head.prev = head;
+            head.next = head;
+            weight = 0;
+        }
+    }
+
+    /**
+     * A share of the cache with its own lock, sketch and queues.
+     */
+    private static final class Stripe<T> {
+        final ReentrantLock lock = new ReentrantLock();
+        final LongHashMap<Node<T>> nodes = new LongHashMap<>();
+        final FrequencySketch sketch;
+        final AccessQueue<T> window = new AccessQueue<>();
+        final AccessQueue<T> probation = new AccessQueue<>();
+        final AccessQueue<T> protectedQueue = new AccessQueue<>();
+        final long maxWeight;
+        final long windowMaxWeight;
+        final long protectedMaxWeight;
+        long weight;
+        /**
+         * Incremented on every invalidation, so reads begun before it do not cache their row.
+         */
+        long invalidations;
+
+        Stripe(long maxWeight) {
+            this.maxWeight = maxWeight;
+            this.windowMaxWeight = Math.max(1, maxWeight / 100);
+            this.protectedMaxWeight = (maxWeight - windowMaxWeight) * 4 / 5;
+            this.sketch = new FrequencySketch(maxWeight);
+        }
+
+        void onHit(Node<T> node) {
+            sketch.increment(node.id);
+            if (node.queue == probation) {
+                probation.remove(node);
+                protectedQueue.add(node);
+                while (protectedQueue.weight > protectedMaxWeight) {
+                    Node<T> demoted = protectedQueue.first();
+                    protectedQueue.remove(demoted);
+                    probation.add(demoted);
+                }
+            } else {
+                node.queue.moveToBack(node);
+            }
+        }
+
+        /**
+         * @return The number of evicted nodes.
+         */
+        int put(long id, T value, int nodeWeight) {
+            Node<T> node = nodes.get(id);
+            if (node != null) {
+                AccessQueue<T> queue = node.queue;
+                queue.remove(node);
+                weight -= node.weight;
+                node.value = value;
+                node.weight = nodeWeight;
+                queue.add(node);
+            } else {
+                node = new Node<>(id, value, nodeWeight);
+                nodes.put(id, node);
+                window.add(node);
+            }
+            weight += nodeWeight;
+            return evict();
+        }
+
+        /**
+         * Moves the overflow of the window to probation, then evicts from the main area until the
+         * stripe is within its weight, admitting a newcomer only if it is more frequent.
+         */
+        private int evict() {
+            while (window.weight > windowMaxWeight) {
+                Node<T> candidate = window.first();
+                window.remove(candidate);
+                probation.add(candidate);
+            }
+            int evicted = 0;
+            while (weight > maxWeight) {
+                Node<T> victim = probation.first();
+                Node<T> candidate = probation.last();
+                if (victim == null) {
+                    victim = protectedQueue.first() != null ? protectedQueue.first() : window.first();
+                    candidate = victim;
+                }
+                Node<T> evict = candidate == victim
+                        || sketch.frequency(candidate.id) <= sketch.frequency(victim.id) ? candidate : victim;
+                remove(evict.id);
+                evicted++;
+            }
+            return evicted;
+        }
+
+        void remove(long id) {
+            Node<T> node = nodes.remove(id);
+            if (node != null) {
+                node.queue.remove(node);
+                weight -= node.weight;
+            }
+        }
+
+        void clear() {
+            nodes.clear();
+            window.clear();
+            probation.clear();
+            protectedQueue.clear();
+            weight = 0;
+        }
+    }
+
+    /**
+     * Count-min sketch of 4-bit counters estimating how often each id has been read recently.
+     * All counters are halved once the number of reads reaches ten times the capacity, so the
+     * estimate follows a changing workload.
+     */
+    private static final class FrequencySketch {
+        private static final long[] SEEDS = {
+                0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+        private static final long RESET_MASK = 0x7777777777777777L;
+
+        private final long[] mTable;
+        private final int mMask;
+        private final long mSampleSize;
+        private long mAdditions;
+
+        FrequencySketch(long capacity) {
+            int size = (int) Math.min(1 << 20, Math.max(8, capacity));
+            size = Integer.highestOneBit(size - 1) << 1;
+            mTable = new long[size];
+            mMask = size - 1;
+            mSampleSize = 10L * Math.max(1, capacity);
+        }
+
+        private int indexOf(long hash, int i) {
+            long h = (hash + SEEDS[i]) * SEEDS[i];
+            h += h >>> 32;
+            return (int) h & mMask;
+        }
+
+        /**
+         * Get the bit offset of the counter of row i within its long.
+         */
+        private static int offsetOf(long hash, int i) {
+            return ((int) (hash >>> (i << 3)) & 15) << 2;
+        }
+
+        int frequency(long id) {
+            long hash = spread(id);
+            int frequency = 15;
+            for (int i = 0; i < 4; i++) {
+                frequency = Math.min(frequency, (int) (mTable[indexOf(hash, i)] >>> offsetOf(hash, i)) & 15);
+            }
+            return frequency;
+        }
+
+        void increment(long id) {
+            long hash = spread(id);
+            int min = frequency(id);
+            if (min == 15) {
+                return;
+            }
+            // conservative update: only the counters at the minimum, which bound the estimate; each
+            // is read again, as two rows may share a counter
+            for (int i = 0; i < 4; i++) {
+                int index = indexOf(hash, i);
+                int offset = offsetOf(hash, i);
+                if (((int) (mTable[index] >>> offset) & 15) == min) {
+                    mTable[index] += 1L << offset;
+                }
+            }
+            if (++mAdditions >= mSampleSize) {
+                for (int i = 0; i < mTable.length; i++) {
+                    mTable[i] = (mTable[i] >>> 1) & RESET_MASK;
+                }
+                mAdditions /= 2;
+            }
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package bits.jdbc.database;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The outcome of a {@link CsvImporter} run: how many rows were read and inserted, the rows that
+ * failed, and the throughput.
+ */
+public final class ImportReport {
+    private final long mBytes;
+    private final long mRowsRead;
+    private final long mRowsInserted;
+    private final long mErrorCount;
+    private final List<ErrorRow> mErrors;
+    private final long mElapsedNanos;
+
+    ImportReport(long bytes, long rowsRead, long rowsInserted, long errorCount, List<ErrorRow> errors,
+                 long elapsedNanos) {
+        mBytes = bytes;
+        mRowsRead = rowsRead;
+        mRowsInserted = rowsInserted;
+        mErrorCount = errorCount;
+        mErrors = Collections.unmodifiableList(errors);
+        mElapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Get the size of the imported file.
+     */
+    public long getBytes() {
+        return mBytes;
+    }
+
+    /**
+     * Get the number of records read, not counting the header.
+     */
+    public long getRowsRead() {
+        return mRowsRead;
+    }
+
+    public long getRowsInserted() {
+        return mRowsInserted;
+    }
+
+    /**
+     * Get the number of records which could not be parsed or inserted.
+     */
+    public long getErrorCount() {
+        return mErrorCount;
+    }
+
+    /**
+     * Get the first failed records, up to {@link CsvImporter#setMaxReportedErrors(int)}, in no
+     * particular order.
+     */
+    public List<ErrorRow> getErrors() {
+        return mErrors;
+    }
+
+    public long getElapsed(TimeUnit unit) {
+        return unit.convert(mElapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public double getRowsPerSecond() {
+        return mElapsedNanos == 0 ? 0 : mRowsInserted * 1e9 / mElapsedNanos;
+    }
+
+    public double getMegabytesPerSecond() {
+        return mElapsedNanos == 0 ? 0 : mBytes * 1e9 / mElapsedNanos / (1024 * 1024);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ImportReport{%d rows read, %d inserted, %d errors, %d bytes in %d ms,"
+                        + " %.0f rows/s, %.1f MB/s}", mRowsRead, mRowsInserted, mErrorCount, mBytes,
+                getElapsed(TimeUnit.MILLISECONDS), getRowsPerSecond(), getMegabytesPerSecond());
+    }
+
+    /**
+     * A record which could not be parsed or inserted.
+     */
+    public static final class ErrorRow {
+        private final long mOffset;
+        private final String mText;
+        private final String mMessage;
+
+        ErrorRow(long offset, String text, String message) {
+            mOffset = offset;
+            mText = text;
+            mMessage = message;
+        }
+
+        /**
+         * Get the byte offset of the record in the file.
+         */
+        public long getOffset() {
+            return mOffset;
+        }
+
+        /**
+         * Get the text of the record, shortened if it is long.
+         */
+        public String getText() {
+            return mText;
+        }
+
+        /**
+         * Get why the record failed.
+         */
+        public String getMessage() {
+            return mMessage;
+        }
+
+        @Override
+        public String toString() {
+            return "@" + mOffset + ": " + mMessage + " [" + mText + ']';
+        }
+    }
+}
@@ -0,0 +1,423 @@
+package bits.jdbc.database;
+
+import bits.jdbc.content.ContentValues;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.SQLXML;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A row whose columns are decoded on first access. Reading the row only copies the driver's
+ * objects out of the {@link ResultSet}; LOBs, SQLXML and arrays are materialised, as they become
+ * invalid once the cursor moves on. A column is converted to the requested type, or run through
+ * a {@link Decoder} such as a JSON parser, the first time it is read, and the result is kept for
+ * later reads. A {@link BaseModel} can hold on to the row and decode in its getters instead of
+ * decoding every column in {@link BaseModel#resolve(ResultSet)}.
+ * <p>
+ * Rows of one result share the column labels. Columns are found by label, case-insensitively,
+ * or by 1-based index. Like {@link ResultSet}, the primitive getters return 0 or false for NULL;
+ * use {@link #isNull(int)} to tell. A row is not thread-safe.
+ *
+ * @see Database#queryLazy(String, Object[])
+ * @see DatabaseUtils#newLazyRowMapper()
+ */
+public final class LazyRow {
+    /**
+     * Converts the raw value of a column, which is never null.
+     *
+     * @param <T> the decoded type
+     */
+    public interface Decoder<T> {
+        T decode(Object raw) throws SQLException;
+    }
+
+    public static final Decoder<String> STRING = new Decoder<String>() {
+        @Override
+        public String decode(Object raw) {
+            if (raw instanceof byte[]) {
+                return new String((byte[]) raw, StandardCharsets.UTF_8);
+            }
+            return raw.toString();
+        }
+    };
+
+    public static final Decoder<Long> LONG = new Decoder<Long>() {
+        @Override
+        public Long decode(Object raw) throws SQLException {
+            if (raw instanceof Long) {
+                return (Long) raw;
+            } else if (raw instanceof Number) {
+                return ((Number) raw).longValue();
+            } else if (raw instanceof Boolean) {
+                return (Boolean) raw ? 1L : 0L;
+            }
+            try {
+                return Long.parseLong(raw.toString().trim());
+            } catch (NumberFormatException e) {
+                throw cannotConvert(raw, "long", e);
+            }
+        }
+    };
+
+    public static final Decoder<Double> DOUBLE = new Decoder<Double>() {
+        @Override
+        public Double decode(Object raw) throws SQLException {
+            if (raw instanceof Double) {
+                return (Double) raw;
+            } else if (raw instanceof Number) {
+                return ((Number) raw).doubleValue();
+            } else if (raw instanceof Boolean) {
+                return (Boolean) raw ? 1d : 0d;
+            }
+            try {
+                return Double.parseDouble(raw.toString().trim());
+            } catch (NumberFormatException e) {
+                throw cannotConvert(raw, "double", e);
+            }
+        }
+    };
+
+    public static final Decoder<Boolean> BOOLEAN = new Decoder<Boolean>() {
+        @Override
+        public Boolean decode(Object raw) throws SQLException {
+            if (raw instanceof Boolean) {
+                return (Boolean) raw;
+            } else if (raw instanceof Number) {
+                return ((Number) raw).doubleValue() != 0;
+            }
+            String s = raw.toString().trim();
+            if (s.equalsIgnoreCase("true") || s.equals("1")) {
+                return true;
+            } else if (s.equalsIgnoreCase("false") || s.equals("0")) {
+                return false;
+            }
+            throw cannotConvert(raw, "boolean", null);
+        }
+    };
+
+    public static final Decoder<BigDecimal> BIG_DECIMAL = new Decoder<BigDecimal>() {
+        @Override
+        public BigDecimal decode(Object raw) throws SQLException {
+            if (raw instanceof BigDecimal) {
+                return (BigDecimal) raw;
+            } else if (raw instanceof Long || raw instanceof Integer || raw instanceof Short || raw instanceof Byte) {
+                return BigDecimal.valueOf(((Number) raw).longValue());
+            }
+            try {
+                return new BigDecimal(raw.toString().trim());
+            } catch (NumberFormatException e) {
+                throw cannotConvert(raw, "BigDecimal", e);
+            }
+        }
+    };
+
+    public static final Decoder<byte[]> BYTES = new Decoder<byte[]>() {
+        @Override
+        public byte[] decode(Object raw) {
+            if (raw instanceof byte[]) {
+                return (byte[]) raw;
+            }
+            return raw.toString().getBytes(StandardCharsets.UTF_8);
+        }
+    };
+
+    public static final Decoder<Timestamp> TIMESTAMP = new Decoder<Timestamp>() {
+        @Override
+        public Timestamp decode(Object raw) throws SQLException {
+            if (raw instanceof Timestamp) {
+                return (Timestamp) raw;
+            } else if (raw instanceof java.util.Date) {
+                return new Timestamp(((java.util.Date) raw).getTime());
+            } else if (raw instanceof LocalDateTime) {
+                return Timestamp.valueOf((LocalDateTime) raw);
+            } else if (raw instanceof LocalDate) {
+                return Timestamp.valueOf(((LocalDate) raw).atStartOfDay());
+            }
+            try {
+                return Timestamp.valueOf(raw.toString().trim());
+            } catch (IllegalArgumentException e) {
+                throw cannotConvert(raw, "Timestamp", e);
+            }
+        }
+    };
+
+    private final Columns mColumns;
+    private final Object[] mRaw;
+    /**
+     * Decoded values and the decoder which produced each; a column read as another type is
+     * decoded again and replaces the cached value.
+     */
+    private Object[] mDecoded;
+    private Decoder<?>[] mDecodedBy;
+
+    private LazyRow(Columns columns, Object[] raw) {
+        mColumns = columns;
+        mRaw = raw;
+    }
+
+    /**
+     * Copies the row the result set is positioned on.
+     */
+    static LazyRow read(ResultSet resultSet, Columns columns) throws SQLException {
+        int[] types = columns.mTypes;
+        Object[] raw = new Object[types.length];
+        for (int i = 0; i < types.length; i++) {
+            raw[i] = readRaw(resultSet, i + 1, types[i]);
+        }
+        return new LazyRow(columns, raw);
+    }
+
+    private static Object readRaw(ResultSet resultSet, int index, int type) throws SQLException {
+        switch (type) {
+            case Types.CLOB:
+            case Types.NCLOB:
+            case Types.SQLXML:
+                return resultSet.getString(index);
+            case Types.BLOB:
+            case Types.BINARY:
+            case Types.VARBINARY:
+            case Types.LONGVARBINARY:
+                return resultSet.getBytes(index);
+        }
+        Object value = resultSet.getObject(index);
+        if (value instanceof Clob) {
+            Clob clob = (Clob) value;
+            value = clob.getSubString(1, (int) clob.length());
+            clob.free();
+        } else if (value instanceof Blob) {
+            Blob blob = (Blob) value;
+            value = blob.getBytes(1, (int) blob.length());
+            blob.free();
+        } else if (value instanceof SQLXML) {
+            SQLXML xml = (SQLXML) value;
+            value = xml.getString();
+            xml.free();
+        } else if (value instanceof Array) {
+            Array array = (Array) value;
+            value = array.getArray();
+            array.free();
+        }
+        return value;
+    }
+
+    public int getColumnCount() {
+        return mRaw.length;
+    }
+
+    /**
+     * Get the label of a column.
+     *
+     * @param index The column index, starting at 1.
+     */
+    public String getColumnLabel(int index) {
+        return mColumns.mLabels[index - 1];
+    }
+
+    /**
+     * Get the index of a column, starting at 1.
+     *
+     * @throws IllegalArgumentException if the row has no column of the label.
+     */
+    public int getColumnIndex(String label) {
+        return mColumns.indexOf(label);
+    }
+
+    public boolean isNull(int index) {
+        return mRaw[index - 1] == null;
+    }
+
+    public boolean isNull(String label) {
+        return isNull(getColumnIndex(label));
+    }
+
+    /**
+     * Get a column as the driver returned it, with LOBs as String or byte[].
+     */
+    public Object getObject(int index) {
+        return mRaw[index - 1];
+    }
+
+    public Object getObject(String label) {
+        return getObject(getColumnIndex(label));
+    }
+
+    /**
+     * Get a column decoded by the given decoder, decoding it on the first call.
+     *
+     * @return The decoded value, or null if the column is NULL.
+     * @throws SQLException if the decoder fails.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(int index, Decoder<T> decoder) throws SQLException {
+        int i = index - 1;
+        Object raw = mRaw[i];
+        if (raw == null) {
+            return null;
+        }
+        if (mDecoded == null) {
+            mDecoded = new Object[mRaw.length];
+            mDecodedBy = new Decoder<?>[mRaw.length];
+        } else if (mDecodedBy[i] == decoder) {
+            return (T) mDecoded[i];
+        }
+        T value = decoder.decode(raw);
+        mDecoded[i] = value;
+        mDecodedBy[i] = decoder;
+        return value;
+    }
+
+    public <T> T get(String label, Decoder<T> decoder) throws SQLException {
+        return get(getColumnIndex(label), decoder);
+    }
+
+    public String getString(int index) throws SQLException {
+        return get(index, STRING);
+    }
+
+    public String getString(String label) throws SQLException {
+        return get(label, STRING);
+    }
+
+    public long getLong(int index) throws SQLException {
+        Long value = get(index, LONG);
+        return value == null ? 0L : value;
+    }
+
+    public long getLong(String label) throws SQLException {
+        return getLong(getColumnIndex(label));
+    }
+
+    public int getInt(int index) throws SQLException {
+        long value = getLong(index);
+        if (value != (int) value) {
+            throw cannotConvert(value, "int", null);
+        }
+        return (int) value;
+    }
+
+    public int getInt(String label) throws SQLException {
+        return getInt(getColumnIndex(label));
+    }
+
+    public double getDouble(int index) throws SQLException {
+        Double value = get(index, DOUBLE);
+        return value == null ? 0d : value;
+    }
+
+    public double getDouble(String label) throws SQLException {
+        return getDouble(getColumnIndex(label));
+    }
+
+    public boolean getBoolean(int index) throws SQLException {
+        Boolean value = get(index, BOOLEAN);
+        return value != null && value;
+    }
+
+    public boolean getBoolean(String label) throws SQLException {
+        return getBoolean(getColumnIndex(label));
+    }
+
+    public BigDecimal getBigDecimal(int index) throws SQLException {
+        return get(index, BIG_DECIMAL);
+    }
+
+    public BigDecimal getBigDecimal(String label) throws SQLException {
+        return get(label, BIG_DECIMAL);
+    }
+
+    /**
+     * Get a column as bytes; text is encoded as UTF-8.
+     */
+    public byte[] getBytes(int index) throws SQLException {
+        return get(index, BYTES);
+    }
+
+    public byte[] getBytes(String label) throws SQLException {
+        return get(label, BYTES);
+    }
+
+    public Timestamp getTimestamp(int index) throws SQLException {
+        return get(index, TIMESTAMP);
+    }
+
+    public Timestamp getTimestamp(String label) throws SQLException {
+        return get(label, TIMESTAMP);
+    }
+
+    /**
+     * Decodes every column into a new {@link ContentValues}, keyed by column label.
+     */
+    public ContentValues toContentValues() {
+        ContentValues values = new ContentValues(mRaw.length);
+        for (int i = 0; i < mRaw.length; i++) {
+            DatabaseUtils.putObject(values, mColumns.mLabels[i], mRaw[i]);
+        }
+        return values;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder s = new StringBuilder("LazyRow{");
+        for (int i = 0; i < mRaw.length; i++) {
+            s.append(i > 0 ? ", " : "").append(mColumns.mLabels[i]).append('=');
+            Object raw = mRaw[i];
+            s.append(raw instanceof byte[] ? "byte[" + ((byte[]) raw).length + "]" : raw);
+        }
+        return s.append('}').toString();
+    }
+
+    private static SQLException cannotConvert(Object value, String type, Exception cause) {
+        String text = String.valueOf(value);
+        if (text.length() > 50) {
+            text = text.substring(0, 50) + "...";
+        }
+        return new SQLException("Cannot convert " + value.getClass().getSimpleName() + " '" + text + "' to "
+                + type, "22018", cause);
+    }
+
+    /**
+     * The column labels and types shared by the rows of one result.
+     */
+    static final class Columns {
+        final String[] mLabels;
+        final int[] mTypes;
+        private final Map<String, Integer> mIndexes;
+
+        Columns(ResultSetMetaData metaData) throws SQLException {
+            int count = metaData.getColumnCount();
+            mLabels = new String[count];
+            mTypes = new int[count];
+            mIndexes = new HashMap<>(count * 4);
+            for (int i = 0; i < count; i++) {
+                mLabels[i] = metaData.getColumnLabel(i + 1);
+                mTypes[i] = metaData.getColumnType(i + 1);
+                mIndexes.putIfAbsent(mLabels[i], i + 1);
+                mIndexes.putIfAbsent(mLabels[i].toLowerCase(Locale.ROOT), i + 1);
+            }
+        }
+
+        int indexOf(String label) {
+            Integer index = mIndexes.get(label);
+            if (index == null) {
+                index = mIndexes.get(label.toLowerCase(Locale.ROOT));
+                if (index == null) {
+                    throw new IllegalArgumentException("No column " + label);
+                }
+            }
+            return index;
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package bits.jdbc.database;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches the {@link TableMetadata} of the tables a {@link Database} uses. A table is loaded
+ * through {@link DatabaseMetaData} on first use and kept until it is invalidated; the whole cache
+ * is invalidated whenever the database runs DDL through
+ * {@link Database#execSQL(String)}, {@link Database#execSQL(String, Object[])} or
+ * {@link Database#executeUpdate(String, Object[])}. Call {@link #invalidateAll()} after changing
+ * the schema by other means.
+ */
+public class MetadataCache {
+    private final Database mDatabase;
+    /**
+     * Loaded tables by lower case name. Tables the driver knows nothing about are cached as empty
+     * metadata, so they are not looked up again.
+     */
+    private final ConcurrentHashMap<String, TableMetadata> mTables = new ConcurrentHashMap<>();
+    /**
+     * Increased by every invalidation, so a load which overlapped one does not keep its result.
+     */
+    private final AtomicLong mGeneration = new AtomicLong();
+
+    MetadataCache(Database database) {
+        mDatabase = database;
+    }
+
+    /**
+     * Get the metadata of a table, loading it on first use.
+     *
+     * @param table The table name, optionally qualified with its schema as schema.table.
+     * @return The metadata, or null if the driver reports no columns for the table.
+     * @throws SQLException if the metadata could not be read.
+     */
+    public TableMetadata getTable(String table) throws SQLException {
+        String key = table.toLowerCase(Locale.ROOT);
+        TableMetadata metadata = mTables.get(key);
+        if (metadata == null) {
+            // loaded outside the map so concurrent lookups of other tables are not blocked
+            long generation = mGeneration.get();
+            metadata = load(table);
+            TableMetadata existing = mTables.putIfAbsent(key, metadata);
+            if (existing != null) {
+                metadata = existing;
+            } else if (mGeneration.get() != generation) {
+                // invalidated while loading, so possibly read before a schema change
+                mTables.remove(key, metadata);
+            }
+        }
+        return metadata.isEmpty() ? null : metadata;
+    }
+
+    /**
+     * Loads the metadata of a table again.
+     *
+     * @see #getTable(String)
+     */
+    public TableMetadata refresh(String table) throws SQLException {
+        invalidate(table);
+        return getTable(table);
+    }
+
+    /**
+     * Forgets the metadata of a table.
+     */
+    public void invalidate(String table) {
+        mGeneration.incrementAndGet();
+        mTables.remove(table.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Forgets the metadata of all tables.
+     */
+    public void invalidateAll() {
+        mGeneration.incrementAndGet();
+        mTables.clear();
+    }
+
+    /**
+     * Invalidates the cache if the statement is DDL.
+     */
+    void onStatement(String sql) {
+        // not skipped while the map is empty, as a load may be running
+        if (isDdl(sql)) {
+            invalidateAll();
+        }
+    }
+
+    /**
+     * Returns true if the first keyword of the statement, after whitespace and comments, is
+     * CREATE, ALTER, DROP or RENAME.
+     */
+    static boolean isDdl(String sql) {
+        int i = 0;
+        int length = sql.length();
+        while (i < length) {
+            char c = sql.charAt(i);
+            if (Character.isWhitespace(c) || c == '(') {
+                i++;
+            } else if (sql.startsWith("--", i)) {
+                int end = sql.indexOf('\n', i);
+                i = end < 0 ? length : end + 1;
+            } else if (sql.startsWith("/*", i)) {
+                int end = sql.indexOf("*/", i + 2);
+                i = end < 0 ? length : end + 2;
+            } else {
+                break;
+            }
+        }
+        return sql.regionMatches(true, i, "CREATE", 0, 6)
+                || sql.regionMatches(true, i, "ALTER", 0, 5)
+                || sql.regionMatches(true, i, "DROP", 0, 4)
+                || sql.regionMatches(true, i, "RENAME", 0, 6);
+    }
+
+    private TableMetadata load(String table) throws SQLException {
+        String schema = null;
+        String name = table;
+        int dot = table.lastIndexOf('.');
+        if (dot >= 0) {
+            schema = table.substring(0, dot);
+            name = table.substring(dot + 1);
+        }
+        Connection connection = mDatabase.acquireConnection();
+        try {
+            DatabaseMetaData metaData = connection.getMetaData();
+            if (metaData == null) {
+                return empty(table);
+            }
+            String catalog = connection.getCatalog();
+            // unquoted identifiers are stored upper case by some databases and lower case by others
+            String[] names = {name, name.toUpperCase(Locale.ROOT), name.toLowerCase(Locale.ROOT)};
+            for (int i = 0; i < names.length; i++) {
+                if (i > 0 && (names[i].equals(names[0]) || names[i].equals(names[i - 1]))) {
+                    continue;
+                }
+                String candidateSchema = schema == null || i == 0 ? schema
+                        : i == 1 ? schema.toUpperCase(Locale.ROOT) : schema.toLowerCase(Locale.ROOT);
+                TableMetadata metadata = load(metaData, catalog, candidateSchema, names[i]);
+                if (metadata != null) {
+                    return metadata;
+                }
+            }
+            return empty(table);
+        } finally {
+            mDatabase.getConnectionPool().releaseConnection(connection);
+        }
+    }
+
+    private static TableMetadata empty(String table) {
+        return new TableMetadata(table, Collections.<TableMetadata.Column>emptyList(),
+                Collections.<String>emptyList(), Collections.<TableMetadata.Index>emptyList());
+    }
+
+    /**
+     * Loads the metadata of exactly the given table name.
+     *
+     * @return The metadata, or null if the driver reports no columns.
+     */
+    private static TableMetadata load(DatabaseMetaData metaData, String catalog, String schema, String table)
+            throws SQLException {
+        List<TableMetadata.Column> columns = new ArrayList<>();
+        String tableSchema = null;
+        try (ResultSet rs = metaData.getColumns(catalog, schema, table, null)) {
+            if (rs == null) {
+                return null;
+            }
+            while (rs.next()) {
+                // the table name is a pattern in which '_' matches any character
+                if (!table.equals(rs.getString("TABLE_NAME"))) {
+                    continue;
+                }
+                String rowSchema = rs.getString("TABLE_SCHEM");
+                if (columns.isEmpty()) {
+                    tableSchema = rowSchema;
+                } else if (tableSchema != null && !tableSchema.equals(rowSchema)) {
+                    continue;  // the same table name in another schema
+                }
+                columns.add(new TableMetadata.Column(rs.getString("COLUMN_NAME"), rs.getInt("DATA_TYPE"),
+                        rs.getString("TYPE_NAME"), rs.getInt("COLUMN_SIZE"),
+                        rs.getInt("NULLABLE") != DatabaseMetaData.columnNoNulls));
+            }
+        }
+        if (columns.isEmpty()) {
+            return null;
+        }
+
+        TreeMap<Integer, String> primaryKey = new TreeMap<>();
+        try (ResultSet rs = metaData.getPrimaryKeys(catalog, tableSchema, table)) {
+            while (rs != null && rs.next()) {
+                primaryKey.put((int) rs.getShort("KEY_SEQ"), rs.getString("COLUMN_NAME"));
+            }
+        }
+
+        Map<String, TreeMap<Integer, String>> indexColumns = new LinkedHashMap<>();
+        Map<String, Boolean> indexUnique = new LinkedHashMap<>();
+        try (ResultSet rs = metaData.getIndexInfo(catalog, tableSchema, table, false, true)) {
+            while (rs != null && rs.next()) {
+                String indexName = rs.getString("INDEX_NAME");
+                String columnName = rs.getString("COLUMN_NAME");
+                if (indexName == null || columnName == null) {
+                    continue;  // table statistics row
+                }
+                TreeMap<Integer, String> indexed = indexColumns.get(indexName);
+                if (indexed == null) {
+                    indexed = new TreeMap<>();
+                    indexColumns.put(indexName, indexed);
+                    indexUnique.put(indexName, !rs.getBoolean("NON_UNIQUE"));
+                }
+                indexed.put((int) rs.getShort("ORDINAL_POSITION"), columnName);
+            }
+        }
+        List<TableMetadata.Index> indexes = new ArrayList<>();
+        for (Map.Entry<String, TreeMap<Integer, String>> entry : indexColumns.entrySet()) {
+            indexes.add(new TableMetadata.Index(entry.getKey(), indexUnique.get(entry.getKey()),
+                    new ArrayList<>(entry.getValue().values())));
+        }
+        return new TableMetadata(table, columns, new ArrayList<>(primaryKey.values()), indexes);
+    }
+}
@@ -0,0 +1,392 @@
+package bits.jdbc.database;
+
+import bits.jdbc.Helper.DatabaseType;
+import bits.jdbc.content.ContentValues;
+import bits.jdbc.monitor.StatementListener;
+import bits.jdbc.utils.TextUtils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects independent write statements and sends them together on one pooled connection.
+ * Obtain one with {@link Database#pipeline()}.
+ * <p>
+ * The statements are sent in as few round trips as the driver allows:
+ * <ul>
+ * <li>consecutive statements without bind arguments share one {@link Statement#addBatch(String)}
+ * batch, even if their SQL differs;</li>
+ * <li>consecutive statements with the same SQL share one {@link PreparedStatement} batch;</li>
+ * <li>with {@link #setMultiStatements(boolean) multi statements} enabled, consecutive statements
+ * with differing SQL are joined with semicolons into one prepared statement. PostgreSQL supports
+ * this out of the box, MySQL only with {@code allowMultiQueries=true} in the connection URL.</li>
+ * </ul>
+ * The statements are not run in a transaction of their own; a failing statement leaves the
+ * earlier ones applied unless the connection is in a transaction.
+ * <p>
+ * Once sent, updates and deletes are reported to the {@link TableChangeListener}s of the database
+ * as if run through {@link Database#update(String, ContentValues, String, String[])} and
+ * {@link Database#delete(String, String, String[])}, and DDL statements invalidate the
+ * {@link MetadataCache}.
+ */
+public class Pipeline {
+    private final Database mDatabase;
+    private final List<Entry> mEntries = new ArrayList<>();
+    private boolean mMultiStatements;
+
+    Pipeline(Database database) {
+        mDatabase = database;
+        mMultiStatements = database.getConnectionPool().getDbType() == DatabaseType.POSTGRESQL;
+    }
+
+    /**
+     * Set whether statements with differing SQL may be joined into one multi-statement round trip.
+     * Enabled by default for PostgreSQL only.
+     */
+    public Pipeline setMultiStatements(boolean multiStatements) {
+        mMultiStatements = multiStatements;
+        return this;
+    }
+
+    /**
+     * Get the number of statements collected so far.
+     */
+    public int size() {
+        return mEntries.size();
+    }
+
+    /**
+     * Adds a statement that is NOT a SELECT.
+     *
+     * @param sql      The SQL statement, without a trailing semicolon.
+     * @param bindArgs The values for the ?s in sql, may be null.
+     */
+    public Pipeline add(String sql, Object[] bindArgs) {
+        if (TextUtils.isEmpty(sql)) {
+            throw new IllegalArgumentException("Empty sql");
+        }
+        return add(new Entry(sql, (bindArgs != null && bindArgs.length > 0) ? bindArgs : null, null, null, null));
+    }
+
+    private Pipeline add(Entry entry) {
+        mEntries.add(entry);
+        return this;
+    }
+
+    /**
+     * Adds a statement without bind arguments.
+     *
+     * @see #add(String, Object[])
+     */
+    public Pipeline execSQL(String sql) {
+        return add(sql, null);
+    }
+
+    /**
+     * Adds an insert.
+     *
+     * @see Database#insert(String, String, ContentValues)
+     */
+    public Pipeline insert(String table, String nullColumnHack, ContentValues initialValues) {
+        int size = (initialValues != null && initialValues.size() > 0) ? initialValues.size() : 0;
+        Object[] bindArgs = (size > 0) ? new Object[size] : null;
+        return add(Database.buildInsertString(table, nullColumnHack, initialValues, bindArgs), bindArgs);
+    }
+
+    /**
+     * Adds an update.
+     *
+     * @see Database#update(String, ContentValues, String, String[])
+     */
+    public Pipeline update(String table, ContentValues values, String whereClause, String[] whereArgs) {
+        if (values == null || values.isEmpty()) {
+            throw new IllegalArgumentException("Empty values");
+        }
+        Object[] bindArgs = new Object[values.size() + (whereArgs != null ? whereArgs.length : 0)];
+        return add(new Entry(Database.buildUpdateString(table, values, whereClause, whereArgs, bindArgs), bindArgs,
+                table, whereClause, whereArgs));
+    }
+
+    /**
+     * Adds a delete.
+     *
+     * @see Database#delete(String, String, String[])
+     */
+    public Pipeline delete(String table, String whereClause, String[] whereArgs) {
+        StringBuilder sql = new StringBuilder();
+        sql.append("DELETE FROM ")
+                .append(table);
+        if (!TextUtils.isEmpty(whereClause)) {
+            sql.append(" WHERE ")
+                    .append(whereClause);
+        }
+        Object[] bindArgs = (whereArgs != null && whereArgs.length > 0) ? whereArgs : null;
+        return add(new Entry(sql.toString(), bindArgs, table, whereClause, whereArgs));
+    }
+
+    /**
+     * Sends all collected statements on one connection and clears the pipeline.
+     *
+     * @return The row count of every statement, in the order they were added. An entry may be
+     * {@link Statement#SUCCESS_NO_INFO} if the driver does not report counts for batches.
+     * @throws SQLException if any statement fails; statements before it may have been applied.
+     */
+    public int[] execute() throws SQLException {
+        int[] counts = new int[mEntries.size()];
+        if (counts.length == 0) {
+            return counts;
+        }
+        Connection connection;
+        try {
+            connection = mDatabase.acquireConnection();
+        } catch (SQLException | RuntimeException e) {
+            mEntries.clear();
+            throw e;
+        }
+        boolean completed = false;
+        try {
+            int first = 0;
+            while (first < mEntries.size()) {
+                first = executeGroup(connection, first, counts);
+            }
+            completed = true;
+        } finally {
+            mDatabase.releaseConnection(connection);
+            try {
+                fireChanges(counts, completed);
+            } finally {
+                mEntries.clear();
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Tells the database about the changes of the sent statements, the way its own update, delete
+     * and execSQL would. If a statement failed it is unknown which ones were applied, so every
+     * update and delete counts as changing rows.
+     */
+    private void fireChanges(int[] counts, boolean completed) {
+        MetadataCache metadataCache = mDatabase.getMetadataCache();
+        for (int i = 0; i < mEntries.size(); i++) {
+            Entry entry = mEntries.get(i);
+            if (entry.table != null) {
+                if (!completed || counts[i] != 0) {
+                    mDatabase.fireRowsChanged(entry.table, entry.whereClause, entry.whereArgs);
+                }
+            } else {
+                metadataCache.onStatement(entry.sql);
+            }
+        }
+    }
+
+    /**
+     * Sends the longest run of statements starting at first which fits in one round trip.
+     *
+     * @return The index of the first statement not sent.
+     */
+    private int executeGroup(Connection connection, int first, int[] counts) throws SQLException {
+        Entry head = mEntries.get(first);
+        int last = first + 1;
+        if (head.bindArgs == null) {
+            while (last < mEntries.size() && mEntries.get(last).bindArgs == null) {
+                last++;
+            }
+            return executeStatementBatch(connection, first, last, counts);
+        }
+        while (last < mEntries.size() && mEntries.get(last).bindArgs != null
+                && mEntries.get(last).sql.equals(head.sql)) {
+            last++;
+        }
+        if (last - first > 1 || !mMultiStatements) {
+            return executePreparedBatch(connection, first, last, counts);
+        }
+        while (last < mEntries.size() && mEntries.get(last).bindArgs != null
+                && (last + 1 == mEntries.size() || !mEntries.get(last + 1).sql.equals(mEntries.get(last).sql))) {
+            last++;
+        }
+        return last - first > 1
+                ? executeMultiStatement(connection, first, last, counts)
+                : executePreparedBatch(connection, first, last, counts);
+    }
+
+    private int executeStatementBatch(Connection connection, int first, int last, int[] counts)
+            throws SQLException {
+        StringBuilder sql = new StringBuilder();
+        for (int i = first; i < last; i++) {
+            sql.append(i > first ? "; " : "").append(mEntries.get(i).sql);
+        }
+        StatementListener listener = mDatabase.getStatementListener();
+        long start = Database.startStatement(listener);
+        long rows = 0;
+        Throwable failure = null;
+        StatementGuard guard = StatementGuard.NONE;
+        try (Statement statement = connection.createStatement()) {
+            guard = StatementGuard.arm(statement, mDatabase.getQueryTimeoutNanos());
+            for (int i = first; i < last; i++) {
+                statement.addBatch(mEntries.get(i).sql);
+            }
+            rows = copyCounts(statement.executeBatch(), counts, first);
+        } catch (SQLException e) {
+            SQLException translated = guard.translate(e);
+            failure = translated;
+            throw translated;
+        } catch (RuntimeException e) {
+            failure = e;
+            throw e;
+        } finally {
+            guard.close();
+            if (listener != null) {
+                long end = System.nanoTime();
+                Database.fireStatement(listener, sql.toString(), 0, rows, start, start, end, end, failure);
+            }
+        }
+        return last;
+    }
+
+    private int executePreparedBatch(Connection connection, int first, int last, int[] counts)
+            throws SQLException {
+        String sql = mEntries.get(first).sql;
+        StatementListener listener = mDatabase.getStatementListener();
+        long start = Database.startStatement(listener);
+        int bindCount = 0;
+        long rows = 0;
+        Throwable failure = null;
+        StatementGuard guard = StatementGuard.NONE;
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            guard = StatementGuard.arm(statement, mDatabase.getQueryTimeoutNanos());
+            if (last - first == 1) {
+                bindCount = bind(statement, mEntries.get(first).bindArgs, 0);
+                counts[first] = statement.executeUpdate();
+                rows = counts[first];
+            } else {
+                for (int i = first; i < last; i++) {
+                    bindCount += bind(statement, mEntries.get(i).bindArgs, 0);
+                    statement.addBatch();
+                }
+                rows = copyCounts(statement.executeBatch(), counts, first);
+            }
+        } catch (SQLException e) {
+            SQLException translated = guard.translate(e);
+            failure = translated;
+            throw translated;
+        } catch (RuntimeException e) {
+            failure = e;
+            throw e;
+        } finally {
+            guard.close();
+            if (listener != null) {
+                long end = System.nanoTime();
+                Database.fireStatement(listener, sql, bindCount, rows, start, start, end, end, failure);
+            }
+        }
+        return last;
+    }
+
+    private int executeMultiStatement(Connection connection, int first, int last, int[] counts)
+            throws SQLException {
+        StringBuilder sql = new StringBuilder();
+        for (int i = first; i < last; i++) {
+            sql.append(i > first ? "; " : "").append(mEntries.get(i).sql);
+        }
+        StatementListener listener = mDatabase.getStatementListener();
+        long start = Database.startStatement(listener);
+        int bindCount = 0;
+        long rows = 0;
+        Throwable failure = null;
+        StatementGuard guard = StatementGuard.NONE;
+        try (PreparedStatement statement = connection.prepareStatement(sql.toString())) {
+            guard = StatementGuard.arm(statement, mDatabase.getQueryTimeoutNanos());
+            for (int i = first; i < last; i++) {
+                bindCount = bind(statement, mEntries.get(i).bindArgs, bindCount);
+            }
+            boolean isResultSet = statement.execute();
+            int i = first;
+            while (true) {
+                if (!isResultSet) {
+                    int updateCount = statement.getUpdateCount();
+                    if (updateCount == -1) {
+                        break;
+                    }
+                    if (i < last) {
+                        counts[i++] = updateCount;
+                        rows += updateCount;
+                    }
+                } else if (i < last) {
+                    counts[i++] = 0;
+                }
+                isResultSet = statement.getMoreResults();
+            }
+            if (i != last) {
+                throw new SQLException("Expected " + (last - first) + " results from multi-statement but got "
+                        + (i - first));
+            }
+        } catch (SQLException e) {
+            SQLException translated = guard.translate(e);
+            failure = translated;
+            throw translated;
+        } catch (RuntimeException e) {
+            failure = e;
+            throw e;
+        } finally {
+            guard.close();
+            if (listener != null) {
+                long end = System.nanoTime();
+                Database.fireStatement(listener, sql.toString(), bindCount, rows, start, start, end, end, failure);
+            }
+        }
+        return last;
+    }
+
+    /**
+     * Binds args starting after the given number of already bound parameters.
+     *
+     * @return The number of parameters bound in total.
+     */
+    private static int bind(PreparedStatement statement, Object[] args, int offset) throws SQLException {
+        for (int i = 0; i < args.length; i++) {
+            statement.setObject(offset + i + 1, args[i]);
+        }
+        return offset + args.length;
+    }
+
+    /**
+     * Copies batch results to counts starting at first.
+     *
+     * @return The sum of the known row counts.
+     */
+    private static long copyCounts(int[] batch, int[] counts, int first) {
+        long rows = 0;
+        for (int i = 0; i < batch.length; i++) {
+            counts[first + i] = batch[i];
+            rows += Math.max(batch[i], 0);
+        }
+        return rows;
+    }
+
+    /**
+     * A collected statement.
+     */
+    private static class Entry {
+        final String sql;
+        final Object[] bindArgs;
+        /**
+         * The table, where clause and arguments of an update or delete, or null for other statements.
+         */
+        final String table;
+        final String whereClause;
+        final String[] whereArgs;
+
+        Entry(String sql, Object[] bindArgs, String table, String whereClause, String[] whereArgs) {
+            this.sql = sql;
+            this.bindArgs = bindArgs;
+            this.table = table;
+            this.whereClause = whereClause;
+            this.whereArgs = whereArgs;
+        }
+    }
+}
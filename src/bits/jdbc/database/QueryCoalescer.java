@@ -0,0 +1,308 @@
+package bits.jdbc.database;
+
+import bits.jdbc.utils.LongHashMap;
+
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Lets concurrent identical reads of a {@link Database} share one round trip. Create one per
+ * database and share it between the threads whose reads should be merged.
+ * <ul>
+ * <li>{@link #query(String, Object[], RowMapper)} is single-flight: while a query runs, callers
+ * with the same SQL, bind arguments and mapper wait for it and get its result instead of running
+ * it again.</li>
+ * <li>{@link #getById(String, String[], long, RowMapper)} collects the point lookups of a table
+ * arriving within the {@link #setBatchWindow(long, TimeUnit) batch window} and runs them as one
+ * {@link Database#getByIds(String, String[], long[], RowMapper) IN query}.</li>
+ * </ul>
+ * Results are shared between the callers, so mappers should return immutable rows, and they are
+ * not cached: a call after the shared query has finished runs a new one. Mappers are compared with
+ * equals, which for lambdas means the same instance; keep them in constants.
+ */
+public class QueryCoalescer {
+    private final Database mDatabase;
+    private final ConcurrentHashMap<List<Object>, CompletableFuture<List<?>>> mInFlight = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<List<Object>, Batch> mBatches = new ConcurrentHashMap<>();
+    private volatile long mBatchWindowNanos = TimeUnit.MILLISECONDS.toNanos(2);
+    private volatile int mMaxBatchSize = 256;
+
+    private final AtomicLong mQueries = new AtomicLong();
+    private final AtomicLong mCoalesced = new AtomicLong();
+    private final AtomicLong mBatchQueries = new AtomicLong();
+    private final AtomicLong mLookups = new AtomicLong();
+
+    public QueryCoalescer(Database database) {
+        mDatabase = database;
+    }
+
+    public Database getDatabase() {
+        return mDatabase;
+    }
+
+    /**
+     * Set how long the first lookup of a batch waits for others to join it. Default 2 ms.
+     */
+    public QueryCoalescer setBatchWindow(long window, TimeUnit unit) {
+        mBatchWindowNanos = unit.toNanos(window);
+        return this;
+    }
+
+    /**
+     * Set the number of distinct ids at which a batch is run without waiting for the rest of its
+     * window. Default 256.
+     */
+    public QueryCoalescer setMaxBatchSize(int maxBatchSize) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("Max batch size must be >= 1, was " + maxBatchSize);
+        }
+        mMaxBatchSize = maxBatchSize;
+        return this;
+    }
+
+    /**
+     * Runs the provided SQL, or waits for the same query already running on another thread, and
+     * maps every row of the result.
+     *
+     * @param sql      The SQL query.
+     * @param bindArgs You may include ?s in the query, which will be replaced by the values from
+     *                 bindArgs.
+     * @param mapper   Maps each row of the result.
+     * @return The mapped rows, in result order; unmodifiable, as they may be shared.
+     * @throws SQLException
+     * @see Database#rawQuery(String, Object[], int, RowMapper)
+     */
+    @SuppressWarnings("unchecked")
+    public <T> List<T> query(String sql, Object[] bindArgs, RowMapper<T> mapper) throws SQLException {
+        List<Object> key = Arrays.<Object>asList(sql, bindArgs != null ? Arrays.asList(bindArgs) : null, mapper);
+        CompletableFuture<List<?>> flight = new CompletableFuture<>();
+        CompletableFuture<List<?>> running = mInFlight.putIfAbsent(key, flight);
+        if (running != null) {
+            mCoalesced.incrementAndGet();
+            return (List<T>) await(running);
+        }
+        mQueries.incrementAndGet();
+        try {
+            List<T> rows = Collections.unmodifiableList(mDatabase.rawQuery(sql, bindArgs, 0, mapper));
+            mInFlight.remove(key, flight);
+            flight.complete(rows);
+            return rows;
+        } catch (SQLException | RuntimeException | Error e) {
+            mInFlight.remove(key, flight);
+            flight.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Get the row of the given table with the given {@link BaseColumns#_ID id}, looked up together
+     * with the other lookups of the same table, columns and mapper arriving within the batch
+     * window.
+     *
+     * @param table   The table name to compile the query against.
+     * @param columns A list of which columns to return. Passing null will return all columns.
+     * @param id      The id of the row.
+     * @param mapper  Maps the row.
+     * @return The mapped row, or null if the table has no row with the id.
+     * @throws SQLException
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T getById(String table, String[] columns, long id, RowMapper<T> mapper) throws SQLException {
+        mLookups.incrementAndGet();
+        List<Object> key = Arrays.<Object>asList(table, columns != null ? Arrays.asList(columns) : null, mapper);
+        while (true) {
+            Batch batch = mBatches.get(key);
+            boolean leader = false;
+            if (batch == null) {
+                batch = new Batch(table, columns, mapper, Thread.currentThread());
+                Batch existing = mBatches.putIfAbsent(key, batch);
+                if (existing != null) {
+                    batch = existing;
+                } else {
+                    leader = true;
+                }
+            }
+            CompletableFuture<Object> row;
+            boolean full;
+            batch.lock.lock();
+            try {
+                if (batch.closed) {
+                    continue;  // being run; join the next one
+                }
+                row = batch.rows.get(id);
+                if (row == null) {
+                    row = new CompletableFuture<>();
+                    batch.rows.put(id, row);
+                }
+                full = batch.rows.size() >= mMaxBatchSize;
+            } finally {
+                batch.lock.unlock();
+            }
+            if (full) {
+                run(key, batch);
+            } else if (leader) {
+                long end = System.nanoTime() + mBatchWindowNanos;
+                long remaining;
+                // parkNanos returns at once while interrupted, so an interrupt ends the window
+                boolean interrupted = false;
+                while (!batch.isClosed() && (remaining = end - System.nanoTime()) > 0) {
+                    if (Thread.interrupted()) {
+                        interrupted = true;
+                        break;
+                    }
+                    LockSupport.parkNanos(this, remaining);
+                }
+                run(key, batch);
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return (T) await(row);
+        }
+    }
+
+    /**
+     * Runs a batch unless another thread already does.
+     */
+    private void run(List<Object> key, Batch batch) {
+        LongHashMap<CompletableFuture<Object>> rows;
+        batch.lock.lock();
+        try {
+            if (batch.closed) {
+                return;
+            }
+            batch.closed = true;
+            rows = batch.rows;
+        } finally {
+            batch.lock.unlock();
+        }
+        mBatches.remove(key, batch);
+        LockSupport.unpark(batch.leader);
+        long[] ids = rows.keys();
+        mBatchQueries.incrementAndGet();
+        try {
+            final LongHashMap<?> found = mDatabase.getByIds(batch.table, batch.columns, ids, batch.mapper);
+            rows.forEach(new LongHashMap.Visitor<CompletableFuture<Object>>() {
+                @Override
+                public void visit(long id, CompletableFuture<Object> row) {
+                    row.complete(found.get(id));
+                }
+            });
+        } catch (final Throwable e) {
+            rows.forEach(new LongHashMap.Visitor<CompletableFuture<Object>>() {
+                @Override
+                public void visit(long id, CompletableFuture<Object> row) {
+                    row.completeExceptionally(e);
+                }
+            });
+        }
+    }
+
+    /**
+     * Waits for a result of another thread, within the {@link Deadline} of the calling thread.
+     */
+    private static Object await(CompletableFuture<?> result) throws SQLException {
+        Deadline deadline = Deadline.current();
+        try {
+            if (deadline != null && deadline.isBounded()) {
+                return result.get(Math.max(0L, deadline.remainingNanos()), TimeUnit.NANOSECONDS);
+            }
+            return result.get();
+        } catch (TimeoutException e) {
+            throw new SQLTimeoutException("Deadline exceeded while waiting for a coalesced query", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a coalesced query", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException) {
+                // a copy, as the original is thrown on the thread which ran the query
+                SQLException failure = (SQLException) cause;
+                throw new SQLException(failure.getMessage(), failure.getSQLState(), failure.getErrorCode(), failure);
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new SQLException(cause);
+        }
+    }
+
+    /**
+     * Get the number of queries run by {@link #query(String, Object[], RowMapper)}.
+     */
+    public long getQueryCount() {
+        return mQueries.get();
+    }
+
+    /**
+     * Get the number of {@link #query(String, Object[], RowMapper)} calls which shared the result
+     * of a running query.
+     */
+    public long getCoalescedCount() {
+        return mCoalesced.get();
+    }
+
+    /**
+     * Get the number of IN queries run for {@link #getById(String, String[], long, RowMapper)}.
+     */
+    public long getBatchQueryCount() {
+        return mBatchQueries.get();
+    }
+
+    /**
+     * Get the number of {@link #getById(String, String[], long, RowMapper)} calls.
+     */
+    public long getLookupCount() {
+        return mLookups.get();
+    }
+
+    /**
+     * The point lookups of one table collected within a window.
+     */
+    private static final class Batch {
+        final String table;
+        final String[] columns;
+        final RowMapper<?> mapper;
+        /**
+         * The thread waiting out the window.
+         */
+        final Thread leader;
+        /**
+         * Guards the rows and the closed flag.
+         */
+        final ReentrantLock lock = new ReentrantLock();
+        /**
+         * The pending rows by id; guarded by the lock.
+         */
+        final LongHashMap<CompletableFuture<Object>> rows = new LongHashMap<>();
+        boolean closed;
+
+        Batch(String table, String[] columns, RowMapper<?> mapper, Thread leader) {
+            this.table = table;
+            this.columns = columns;
+            this.mapper = mapper;
+            this.leader = leader;
+        }
+
+        boolean isClosed() {
+            lock.lock();
+            try {
+                return closed;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
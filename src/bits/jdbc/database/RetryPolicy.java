@@ -0,0 +1,195 @@
+package bits.jdbc.database;
+
+import bits.jdbc.Helper.DatabaseType;
+
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides whether and when a {@link Database} runs a statement or transaction again after a
+ * deadlock or serialization failure, as classified by
+ * {@link DatabaseType#isTransientFailure(int, SQLException)}.
+ * <p>
+ * Attempts are spaced by an exponential backoff, each delay drawn between half and all of its
+ * nominal value so that the contending transactions do not collide again in lockstep. The
+ * number of attempts per operation is capped, and a retry budget caps retries across operations:
+ * every operation earns a fraction of a retry token, every retry spends one, and once the
+ * tokens are used up failures reach the caller at once. A sustained storm of conflicts so adds
+ * at most that fraction of extra load. No retry sleeps past the {@link Deadline} entered on the
+ * calling thread.
+ * <p>
+ * A policy may be shared by several databases; its counters then add up.
+ */
+public class RetryPolicy {
+    /**
+     * Retry tokens are counted in thousandths.
+     */
+    private static final long TOKEN = 1000;
+
+    private volatile int mMaxAttempts = 5;
+    private volatile long mInitialBackoffNanos = TimeUnit.MILLISECONDS.toNanos(10);
+    private volatile long mMaxBackoffNanos = TimeUnit.SECONDS.toNanos(1);
+    private volatile long mBudgetDeposit = TOKEN / 10;
+    private volatile long mBudgetCapacity = 100 * TOKEN;
+    private final AtomicLong mBudget = new AtomicLong(100 * TOKEN);
+
+    private final LongAdder mRetries = new LongAdder();
+    private final LongAdder mRecovered = new LongAdder();
+    private final LongAdder mExhausted = new LongAdder();
+    private final LongAdder mBudgetRejections = new LongAdder();
+
+    /**
+     * An operation to run under the policy.
+     */
+    interface Operation<T> {
+        T run() throws SQLException;
+    }
+
+    /**
+     * Set the most times an operation is run, including the first. Default 5.
+     */
+    public RetryPolicy setMaxAttempts(int maxAttempts) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("Max attempts must be >= 1, was " + maxAttempts);
+        }
+        mMaxAttempts = maxAttempts;
+        return this;
+    }
+
+    public int getMaxAttempts() {
+        return mMaxAttempts;
+    }
+
+    /**
+     * Set the delay before the first retry and the longest delay it doubles up to. Defaults
+     * 10 ms and 1 second.
+     */
+    public RetryPolicy setBackoff(long initialDelay, long maxDelay, TimeUnit unit) {
+        if (initialDelay <= 0 || maxDelay < initialDelay) {
+            throw new IllegalArgumentException("Need 0 < initialDelay <= maxDelay");
+        }
+        mInitialBackoffNanos = unit.toNanos(initialDelay);
+        mMaxBackoffNanos = unit.toNanos(maxDelay);
+        return this;
+    }
+
+    /**
+     * Set the retry budget: each operation earns ratio retries, up to capacity saved. Defaults 0.1
+     * and 100; the budget starts full.
+     */
+    public RetryPolicy setBudget(double ratio, int capacity) {
+        if (ratio < 0 || capacity < 0) {
+            throw new IllegalArgumentException("Negative retry budget");
+        }
+        mBudgetDeposit = Math.round(ratio * TOKEN);
+        mBudgetCapacity = capacity * TOKEN;
+        mBudget.set(mBudgetCapacity);
+        return this;
+    }
+
+    /**
+     * Get the number of retries since the policy was created.
+     */
+    public long getRetryCount() {
+        return mRetries.sum();
+    }
+
+    /**
+     * Get the number of operations which succeeded after at least one retry.
+     */
+    public long getRecoveredCount() {
+        return mRecovered.sum();
+    }
+
+    /**
+     * Get the number of operations which failed transiently on every attempt, or ran out of time
+     * before the next.
+     */
+    public long getExhaustedCount() {
+        return mExhausted.sum();
+    }
+
+    /**
+     * Get the number of transient failures not retried because the retry budget was used up.
+     */
+    public long getBudgetRejectionCount() {
+        return mBudgetRejections.sum();
+    }
+
+    /**
+     * Runs the operation, running it again after transient failures.
+     *
+     * @param dbType The {@link DatabaseType} to classify failures for.
+     * @throws SQLException the last failure, if the operation did not succeed.
+     */
+    <T> T execute(int dbType, Operation<T> operation) throws SQLException {
+        deposit();
+        long backoffNanos = mInitialBackoffNanos;
+        for (int attempt = 1; ; attempt++) {
+            SQLException failure;
+            try {
+                T result = operation.run();
+                if (attempt > 1) {
+                    mRecovered.increment();
+                }
+                return result;
+            } catch (SQLException e) {
+                failure = e;
+            }
+            if (!DatabaseType.isTransientFailure(dbType, failure)) {
+                throw failure;
+            }
+            long delayNanos = ThreadLocalRandom.current().nextLong(backoffNanos / 2, backoffNanos + 1);
+            Deadline deadline = Deadline.current();
+            if (attempt >= mMaxAttempts
+                    || (deadline != null && deadline.isBounded() && deadline.remainingNanos() <= delayNanos)) {
+                mExhausted.increment();
+                throw failure;
+            }
+            if (!withdraw()) {
+                mBudgetRejections.increment();
+                throw failure;
+            }
+            try {
+                TimeUnit.NANOSECONDS.sleep(delayNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw failure;
+            }
+            mRetries.increment();
+            backoffNanos = Math.min(mMaxBackoffNanos, backoffNanos * 2);
+        }
+    }
+
+    private void deposit() {
+        long deposit = mBudgetDeposit;
+        long capacity = mBudgetCapacity;
+        long budget;
+        do {
+            budget = mBudget.get();
+            if (budget >= capacity) {
+                return;
+            }
+        } while (!mBudget.compareAndSet(budget, Math.min(capacity, budget + deposit)));
+    }
+
+    private boolean withdraw() {
+        long budget;
+        do {
+            budget = mBudget.get();
+            if (budget < TOKEN) {
+                return false;
+            }
+        } while (!mBudget.compareAndSet(budget, budget - TOKEN));
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "RetryPolicy{retries=" + getRetryCount() + ", recovered=" + getRecoveredCount() + ", exhausted="
+                + getExhaustedCount() + ", budgetRejections=" + getBudgetRejectionCount() + '}';
+    }
+}
@@ -0,0 +1,21 @@
+package bits.jdbc.database;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Maps the current row of a {@link ResultSet} to an object.
+ *
+ * @param <T> the type of the mapped row
+ */
+public interface RowMapper<T> {
+    /**
+     * Maps the row the result set is currently positioned on. Implementations must not move
+     * the cursor.
+     *
+     * @param resultSet The result set, positioned on a row.
+     * @return The mapped row.
+     * @throws SQLException
+     */
+    T mapRow(ResultSet resultSet) throws SQLException;
+}
@@ -0,0 +1,592 @@
+package bits.jdbc.database;
+
+import bits.jdbc.Helper.ConnectionPool;
+import bits.jdbc.Helper.DatabaseType;
+import bits.jdbc.Helper.PoolStatistics;
+import bits.jdbc.content.ContentValues;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Spreads the rows of every table over several databases, one {@link ConnectionPool} per shard.
+ * <p>
+ * Single-row operations are routed by the value of the shard key column (by default
+ * {@link BaseColumns#_ID}). Operations without a key are run on all shards in parallel and their
+ * results combined.
+ */
+public class ShardedDatabase {
+    private final Database[] mShards;
+    private final String mShardKey;
+    private final ExecutorService mExecutor;
+
+    /**
+     * Creates a sharded database keyed on {@link BaseColumns#_ID}.
+     *
+     * @param pools One connection pool per shard. The order of the pools defines the shard
+     *              numbers and must not change between runs.
+     */
+    public ShardedDatabase(List<? extends ConnectionPool> pools) {
+        this(pools, BaseColumns._ID);
+    }
+
+    /**
+     * Creates a sharded database.
+     *
+     * @param pools    One connection pool per shard. The order of the pools defines the shard
+     *                 numbers and must not change between runs.
+     * @param shardKey The column whose value selects the shard of a row.
+     */
+    public ShardedDatabase(List<? extends ConnectionPool> pools, String shardKey) {
+        if (pools == null || pools.isEmpty()) {
+            throw new IllegalArgumentException("At least one shard is required");
+        }
+        mShards = new Database[pools.size()];
+        for (int i = 0; i < mShards.length; i++) {
+            mShards[i] = new Database(pools.get(i));
+        }
+        mShardKey = shardKey;
+        mExecutor = Executors.newFixedThreadPool(mShards.length, new ShardThreadFactory());
+    }
+
+    /**
+     * Spreads the bits of the hash over the whole word so that sequential keys do not all land
+     * on neighbouring shards.
+     */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Get the name of the shard key column.
+     */
+    public String getShardKey() {
+        return mShardKey;
+    }
+
+    /**
+     * Get the number of shards.
+     */
+    public int getShardCount() {
+        return mShards.length;
+    }
+
+    /**
+     * Get the database of a single shard.
+     *
+     * @param index The shard number.
+     */
+    public Database getShard(int index) {
+        return mShards[index];
+    }
+
+    /**
+     * Gets the shard number a key is stored on. Integral numbers hash by value, so that
+     * {@code 42}, {@code 42L} and {@code "42"} all land on the same shard.
+     *
+     * @param key The value of the shard key column.
+     * @return The shard number.
+     */
+    public int shardFor(Object key) {
+        if (key == null) {
+            throw new IllegalArgumentException("Shard key " + mShardKey + " must not be null");
+        }
+        long hash;
+        if (key instanceof Long || key instanceof Integer || key instanceof Short || key instanceof Byte) {
+            hash = ((Number) key).longValue();
+        } else if (key instanceof byte[]) {
+            hash = Arrays.hashCode((byte[]) key);
+        } else {
+            String s = key.toString();
+            try {
+                hash = Long.parseLong(s);
+            } catch (NumberFormatException e) {
+                hash = s.hashCode();
+            }
+        }
+        return (int) Math.floorMod(mix(hash), (long) mShards.length);
+    }
+
+    /**
+     * Gets the database of the shard a key is stored on.
+     *
+     * @param key The value of the shard key column.
+     */
+    public Database getShardFor(Object key) {
+        return mShards[shardFor(key)];
+    }
+
+    /**
+     * Inserts a row into the shard selected by its shard key value.
+     *
+     * @param table  The table to insert the row into.
+     * @param values The column values of the row. Must contain the shard key.
+     * @return The row count.
+     * @see Database#insert(String, String, ContentValues)
+     */
+    public long insert(String table, String nullColumnHack, ContentValues values) throws SQLException {
+        if (values == null || !values.containsKey(mShardKey)) {
+            throw new IllegalArgumentException("Values must contain the shard key " + mShardKey);
+        }
+        return getShardFor(values.get(mShardKey)).insert(table, nullColumnHack, values);
+    }
+
+    /**
+     * Updates the row with the given shard key value.
+     *
+     * @param table  The table to update in.
+     * @param values A map from column names to new column values. The shard key cannot be changed.
+     * @param key    The value of the shard key column of the row.
+     * @return The number of rows affected.
+     */
+    public int update(String table, ContentValues values, Object key) throws SQLException {
+        if (values != null && values.containsKey(mShardKey)
+                && !String.valueOf(values.get(mShardKey)).equals(String.valueOf(key))) {
+            throw new IllegalArgumentException("The shard key " + mShardKey + " cannot be changed");
+        }
+        return getShardFor(key).update(table, values, mShardKey + "=?", new String[]{key.toString()});
+    }
+
+    /**
+     * Updates the matching rows on every shard.
+     *
+     * @return The number of rows affected on all shards.
+     * @see Database#update(String, ContentValues, String, String[])
+     */
+    public int update(final String table, final ContentValues values, final String whereClause,
+                      final String[] whereArgs) throws SQLException {
+        int count = 0;
+        for (Integer rows : scatter(new ShardTask<Integer>() {
+            @Override
+            public Integer run(Database db) throws SQLException {
+                return db.update(table, values, whereClause, whereArgs);
+            }
+        })) {
+            count += rows;
+        }
+        return count;
+    }
+
+    /**
+     * Deletes the row with the given shard key value.
+     *
+     * @param table The table to delete from.
+     * @param key   The value of the shard key column of the row.
+     * @return The number of rows affected.
+     */
+    public int delete(String table, Object key) throws SQLException {
+        return getShardFor(key).delete(table, mShardKey + "=?", new String[]{key.toString()});
+    }
+
+    /**
+     * Deletes the matching rows on every shard.
+     *
+     * @return The number of rows affected on all shards.
+     * @see Database#delete(String, String, String[])
+     */
+    public int delete(final String table, final String whereClause, final String[] whereArgs)
+            throws SQLException {
+        int count = 0;
+        for (Integer rows : scatter(new ShardTask<Integer>() {
+            @Override
+            public Integer run(Database db) throws SQLException {
+                return db.delete(table, whereClause, whereArgs);
+            }
+        })) {
+            count += rows;
+        }
+        return count;
+    }
+
+    /**
+     * Queries the row with the given shard key value.
+     *
+     * @param table   The table name to compile the query against.
+     * @param columns A list of which columns to return. Passing null will return all columns.
+     * @param key     The value of the shard key column of the row.
+     * @return The matching rows.
+     */
+    public List<ContentValues> query(String table, String[] columns, Object key) throws SQLException {
+        return getShardFor(key).query(table, columns, mShardKey + "=?", new String[]{key.toString()},
+                null, 0, DatabaseUtils.CONTENT_VALUES_MAPPER);
+    }
+
+    /**
+     * Runs the query on every shard in parallel and merges the results.
+     * <p>
+     * Each shard sorts and limits its own rows; the sorted partial results are then merged and
+     * limited again. The merge compares the values as the driver returns them (numbers by value,
+     * dates and times chronologically, everything else by its natural order), which can differ
+     * from a database collation for text columns. Nulls sort low unless a term says NULLS FIRST
+     * or NULLS LAST, except on PostgreSQL and Oracle, which sort them high.
+     *
+     * @param table       The table name to compile the query against.
+     * @param columns     A list of which columns to return. Passing null will return all columns.
+     *                    The columns named in orderBy must be part of the result.
+     * @param whereClause A filter declaring which rows to return. Passing null will return all rows.
+     * @param whereArgs   The values for the ?s in whereClause.
+     * @param orderBy     Comma separated column names, each optionally followed by ASC or DESC and
+     *                    NULLS FIRST or NULLS LAST. Expressions, positions and functions are
+     *                    rejected since the merge cannot reproduce them. Passing null returns the
+     *                    rows in shard order.
+     * @param limit       The maximum number of rows to return, or 0 for no limit.
+     * @return The merged rows.
+     * @throws IllegalArgumentException if orderBy is not a list of plain columns, or names a column
+     *                                  which is not part of the result.
+     */
+    public List<ContentValues> query(final String table, final String[] columns, final String whereClause,
+                                     final String[] whereArgs, final String orderBy, final int limit)
+            throws SQLException {
+        int max = limit > 0 ? limit : Integer.MAX_VALUE;
+        if (orderBy == null || orderBy.trim().isEmpty()) {
+            List<List<ContentValues>> partials = scatter(new ShardTask<List<ContentValues>>() {
+                @Override
+                public List<ContentValues> run(Database db) throws SQLException {
+                    return db.query(table, columns, whereClause, whereArgs, null, limit,
+                            DatabaseUtils.CONTENT_VALUES_MAPPER);
+                }
+            });
+            List<ContentValues> rows = new ArrayList<>();
+            for (List<ContentValues> partial : partials) {
+                for (ContentValues row : partial) {
+                    if (rows.size() == max) {
+                        return rows;
+                    }
+                    rows.add(row);
+                }
+            }
+            return rows;
+        }
+        int dbType = mShards[0].getConnectionPool().getDbType();
+        final OrderBy order = new OrderBy(orderBy,
+                dbType != DatabaseType.POSTGRESQL && dbType != DatabaseType.ORACLE);
+        List<List<SortedRow>> partials = scatter(new ShardTask<List<SortedRow>>() {
+            @Override
+            public List<SortedRow> run(Database db) throws SQLException {
+                return db.query(table, columns, whereClause, whereArgs, orderBy, limit, order.newMapper());
+            }
+        });
+        return merge(partials, order, max);
+    }
+
+    /**
+     * Merges the sorted partial results into one sorted list of at most max rows.
+     */
+    private static List<ContentValues> merge(List<List<SortedRow>> partials, final Comparator<SortedRow> order,
+                                             int max) {
+        PriorityQueue<MergeCursor> heap = new PriorityQueue<>(partials.size(), new Comparator<MergeCursor>() {
+            @Override
+            public int compare(MergeCursor a, MergeCursor b) {
+                return order.compare(a.current(), b.current());
+            }
+        });
+        for (List<SortedRow> partial : partials) {
+            if (!partial.isEmpty()) {
+                heap.add(new MergeCursor(partial));
+            }
+        }
+        List<ContentValues> rows = new ArrayList<>();
+        while (!heap.isEmpty() && rows.size() < max) {
+            MergeCursor cursor = heap.poll();
+            rows.add(cursor.current().values);
+            if (cursor.advance()) {
+                heap.add(cursor);
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Gets the pool statistics of every shard, in shard order.
+     */
+    public List<PoolStatistics> getShardStatistics() {
+        List<PoolStatistics> statistics = new ArrayList<>(mShards.length);
+        for (Database shard : mShards) {
+            statistics.add(shard.getConnectionPool().getStatistics());
+        }
+        return statistics;
+    }
+
+    /**
+     * Close all shards and stop the scatter-gather threads.
+     */
+    public void close() {
+        mExecutor.shutdown();
+        for (Database shard : mShards) {
+            shard.close();
+        }
+    }
+
+    /**
+     * Runs the task on every shard in parallel and returns the results in shard order.
+     */
+    private <T> List<T> scatter(final ShardTask<T> task) throws SQLException {
+        if (mShards.length == 1) {
+            return Collections.singletonList(task.run(mShards[0]));
+        }
+        List<Future<T>> futures = new ArrayList<>(mShards.length);
+        for (final Database shard : mShards) {
+            futures.add(mExecutor.submit(new Callable<T>() {
+                @Override
+                public T call() throws SQLException {
+                    return task.run(shard);
+                }
+            }));
+        }
+        List<T> results = new ArrayList<>(mShards.length);
+        SQLException failure = null;
+        for (Future<T> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (failure == null) {
+                    failure = cause instanceof SQLException
+                            ? (SQLException) cause : new SQLException("Shard query failed", cause);
+                } else {
+                    failure.addSuppressed(cause);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for shards", e);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return results;
+    }
+
+    /**
+     * Work to run against a single shard.
+     */
+    private interface ShardTask<T> {
+        T run(Database db) throws SQLException;
+    }
+
+    /**
+     * Position in one sorted partial result.
+     */
+    private static class MergeCursor {
+        private final List<SortedRow> rows;
+        private int position;
+
+        MergeCursor(List<SortedRow> rows) {
+            this.rows = rows;
+        }
+
+        SortedRow current() {
+            return rows.get(position);
+        }
+
+        boolean advance() {
+            return ++position < rows.size();
+        }
+    }
+
+    /**
+     * A row of a shard's result together with the values of its ORDER BY columns as the driver
+     * returned them, before {@link DatabaseUtils#putObject} turns decimals and dates into text.
+     */
+    static final class SortedRow {
+        final ContentValues values;
+        final Object[] keys;
+
+        SortedRow(ContentValues values, Object[] keys) {
+            this.values = values;
+            this.keys = keys;
+        }
+    }
+
+    /**
+     * Compares rows the way an SQL ORDER BY clause of plain column names would.
+     */
+    static final class OrderBy implements Comparator<SortedRow> {
+        private static final Pattern TERM = Pattern.compile(
+                "(?:(?:\\w+|\"[^\"]+\")\\.)*(\\w+|\"[^\"]+\")(?:\\s+(ASC|DESC))?(?:\\s+NULLS\\s+(FIRST|LAST))?",
+                Pattern.CASE_INSENSITIVE);
+
+        private final String[] columns;
+        private final boolean[] descending;
+        private final boolean[] nullsFirst;
+
+        /**
+         * Parses an ORDER BY clause.
+         *
+         * @param orderBy  Comma separated column names, each optionally followed by ASC or DESC
+         *                 and NULLS FIRST or NULLS LAST.
+         * @param nullsLow Whether the database sorts nulls below every other value by default.
+         * @throws IllegalArgumentException if a term is not a plain column name.
+         */
+        OrderBy(String orderBy, boolean nullsLow) {
+            String[] terms = orderBy.split(",");
+            columns = new String[terms.length];
+            descending = new boolean[terms.length];
+            nullsFirst = new boolean[terms.length];
+            for (int i = 0; i < terms.length; i++) {
+                Matcher matcher = TERM.matcher(terms[i].trim());
+                if (!matcher.matches() || matcher.group(1).chars().allMatch(Character::isDigit)) {
+                    throw new IllegalArgumentException("Cannot merge shard results ordered by \"" + terms[i].trim()
+                            + "\", only plain column names are supported");
+                }
+                String column = matcher.group(1);
+                columns[i] = column.charAt(0) == '"' ? column.substring(1, column.length() - 1) : column;
+                descending[i] = "DESC".equalsIgnoreCase(matcher.group(2));
+                nullsFirst[i] = matcher.group(3) != null
+                        ? "FIRST".equalsIgnoreCase(matcher.group(3)) : nullsLow != descending[i];
+            }
+        }
+
+        /**
+         * Creates a mapper for the result of one shard, which reads each row into
+         * {@link ContentValues} and keeps the values of the ORDER BY columns.
+         */
+        RowMapper<SortedRow> newMapper() {
+            return new RowMapper<SortedRow>() {
+                private int[] mIndexes;
+
+                @Override
+                public SortedRow mapRow(ResultSet resultSet) throws SQLException {
+                    ResultSetMetaData metaData = resultSet.getMetaData();
+                    if (mIndexes == null) {
+                        mIndexes = resolve(metaData);
+                    }
+                    ContentValues values = new ContentValues(metaData.getColumnCount());
+                    DatabaseUtils.resultSetRowToContentValues(resultSet, metaData, values);
+                    Object[] keys = new Object[mIndexes.length];
+                    for (int i = 0; i < keys.length; i++) {
+                        keys[i] = resultSet.getObject(mIndexes[i]);
+                    }
+                    return new SortedRow(values, keys);
+                }
+            };
+        }
+
+        /**
+         * Finds the ORDER BY columns in the result, matching their labels without regard to case.
+         */
+        int[] resolve(ResultSetMetaData metaData) throws SQLException {
+            int count = metaData.getColumnCount();
+            int[] indexes = new int[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                for (int column = 1; column <= count && indexes[i] == 0; column++) {
+                    if (columns[i].equalsIgnoreCase(metaData.getColumnLabel(column))) {
+                        indexes[i] = column;
+                    }
+                }
+                if (indexes[i] == 0) {
+                    throw new IllegalArgumentException("ORDER BY column " + columns[i]
+                            + " must be part of the result to merge shard results");
+                }
+            }
+            return indexes;
+        }
+
+        private static boolean isBig(Object n) {
+            return n instanceof BigDecimal || n instanceof BigInteger;
+        }
+
+        private static boolean isFinite(Number n) {
+            return !(n instanceof Double || n instanceof Float) || Double.isFinite(n.doubleValue());
+        }
+
+        private static BigDecimal toBigDecimal(Number n) {
+            if (n instanceof BigDecimal) {
+                return (BigDecimal) n;
+            } else if (n instanceof BigInteger) {
+                return new BigDecimal((BigInteger) n);
+            } else if (n instanceof Double || n instanceof Float) {
+                return new BigDecimal(n.doubleValue());
+            }
+            return BigDecimal.valueOf(n.longValue());
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        static int compareValues(Object a, Object b) {
+            if (a instanceof Number && b instanceof Number) {
+                Number x = (Number) a;
+                Number y = (Number) b;
+                if ((isBig(x) || isBig(y)) && isFinite(x) && isFinite(y)) {
+                    return toBigDecimal(x).compareTo(toBigDecimal(y));
+                }
+                if (x instanceof Double || x instanceof Float || y instanceof Double || y instanceof Float
+                        || isBig(x) || isBig(y)) {
+                    return Double.compare(x.doubleValue(), y.doubleValue());
+                }
+                return Long.compare(x.longValue(), y.longValue());
+            } else if (a instanceof java.util.Date && b instanceof java.util.Date) {
+                int c = Long.compare(((java.util.Date) a).getTime(), ((java.util.Date) b).getTime());
+                if (c == 0 && a instanceof Timestamp && b instanceof Timestamp) {
+                    c = Integer.compare(((Timestamp) a).getNanos(), ((Timestamp) b).getNanos());
+                }
+                return c;
+            } else if (a instanceof Comparable && a.getClass() == b.getClass()) {
+                return ((Comparable) a).compareTo(b);
+            } else if (a instanceof byte[] && b instanceof byte[]) {
+                return Arrays.compareUnsigned((byte[]) a, (byte[]) b);
+            }
+            return a.toString().compareTo(b.toString());
+        }
+
+        @Override
+        public int compare(SortedRow a, SortedRow b) {
+            for (int i = 0; i < columns.length; i++) {
+                Object x = a.keys[i];
+                Object y = b.keys[i];
+                if (x == null || y == null) {
+                    if (x == y) {
+                        continue;
+                    }
+                    // NULLS FIRST/LAST hold whatever the direction
+                    return (x == null) == nullsFirst[i] ? -1 : 1;
+                }
+                int c = compareValues(x, y);
+                if (c != 0) {
+                    return descending[i] ? -c : c;
+                }
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * Creates the daemon threads used for scatter-gather queries.
+     */
+    private static class ShardThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "sharded-database-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package bits.jdbc.database;
+
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Applies the query timeout and the current {@link Deadline} to one running statement.
+ * <p>
+ * The timeout is passed to the driver with {@link Statement#setQueryTimeout(int)}, which only
+ * has a resolution of seconds and is ignored by some drivers, so a watchdog thread also cancels
+ * the statement once the time is up. Statements without a timeout or deadline get
+ * {@link #NONE} and cost nothing.
+ * <p>
+ * The watchdog and {@link Deadline#cancel()} run on other threads than the statement, so both
+ * cancel through {@link #cancel()}, which shares a lock with {@link #close()}: close waits for a
+ * cancel already in flight, and no cancel reaches the statement once close has returned. Without
+ * that a late cancel could hit the next statement run on the connection after it went back to
+ * the pool.
+ */
+class StatementGuard implements AutoCloseable {
+    static final StatementGuard NONE = new StatementGuard(null, null, 0L);
+
+    private static final ScheduledThreadPoolExecutor WATCHDOG = new ScheduledThreadPoolExecutor(1, r -> {
+        Thread thread = new Thread(r, "statement-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        WATCHDOG.setRemoveOnCancelPolicy(true);
+    }
+
+    private final Statement mStatement;
+    private final Deadline mDeadline;
+    private final long mTimeoutNanos;
+    private final ReentrantLock mLock = new ReentrantLock();
+    private ScheduledFuture<?> mWatchdog;
+    private volatile boolean mTimedOut;
+    /**
+     * Set by {@link #close()}, guarded by mLock.
+     */
+    private boolean mClosed;
+
+    private StatementGuard(Statement statement, Deadline deadline, long timeoutNanos) {
+        mStatement = statement;
+        mDeadline = deadline;
+        mTimeoutNanos = timeoutNanos;
+    }
+
+    /**
+     * Converts a timeout to whole seconds for {@link Statement#setQueryTimeout(int)}, rounding up
+     * to at least 1, as 0 means no timeout, and saturating at {@link Integer#MAX_VALUE}.
+     */
+    static int toQueryTimeout(long nanos) {
+        long seconds = nanos / 1000000000L + (nanos % 1000000000L > 0 ? 1 : 0);
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(1L, seconds));
+    }
+
+    /**
+     * Arms a guard for a statement about to be executed.
+     *
+     * @param timeoutNanos The query timeout, or 0 for none; the current deadline may shorten it.
+     * @throws SQLException if the current deadline has already passed or been cancelled.
+     */
+    static StatementGuard arm(Statement statement, long timeoutNanos) throws SQLException {
+        Deadline deadline = Deadline.current();
+        long nanos = timeoutNanos > 0 ? timeoutNanos : Long.MAX_VALUE;
+        if (deadline != null) {
+            deadline.check();
+            nanos = Math.min(nanos, deadline.remainingNanos());
+        } else if (nanos == Long.MAX_VALUE) {
+            return NONE;
+        }
+        final StatementGuard guard = new StatementGuard(statement, deadline, nanos);
+        if (nanos != Long.MAX_VALUE) {
+            statement.setQueryTimeout(toQueryTimeout(nanos));
+            guard.mWatchdog = WATCHDOG.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    guard.mTimedOut = true;
+                    guard.cancel();
+                }
+            }, nanos, TimeUnit.NANOSECONDS);
+        }
+        if (deadline != null) {
+            try {
+                deadline.register(guard);
+            } catch (SQLException e) {
+                guard.close();
+                throw e;
+            }
+        }
+        return guard;
+    }
+
+    /**
+     * Turns the failure of a statement which timed out or was cancelled into a
+     * {@link SQLTimeoutException} or an SQLException with SQLState 57014, whatever the driver threw.
+     */
+    SQLException translate(SQLException e) {
+        if (this == NONE || e instanceof SQLTimeoutException) {
+            return e;
+        }
+        if (mTimedOut || (mDeadline != null && mDeadline.isExpired() && !mDeadline.isCancelled())) {
+            SQLTimeoutException timeout = new SQLTimeoutException("Statement timed out after "
+                    + TimeUnit.NANOSECONDS.toMillis(mTimeoutNanos) + " ms", "57014");
+            timeout.initCause(e);
+            return timeout;
+        }
+        if (mDeadline != null && mDeadline.isCancelled()) {
+            return new SQLException("Statement cancelled", "57014", e);
+        }
+        return e;
+    }
+
+    /**
+     * Cancels the statement unless the guard has been closed. May be called from any thread.
+     */
+    void cancel() {
+        if (this == NONE) {
+            return;
+        }
+        mLock.lock();
+        try {
+            if (!mClosed) {
+                Deadline.cancel(mStatement);
+            }
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Disarms the guard once the statement has completed. Waits for a cancel which is running
+     * right now, so the statement and its connection may be released as soon as this returns.
+     */
+    @Override
+    public void close() {
+        if (this == NONE) {
+            return;
+        }
+        if (mWatchdog != null) {
+            mWatchdog.cancel(false);
+        }
+        if (mDeadline != null) {
+            mDeadline.unregister(this);
+        }
+        mLock.lock();
+        try {
+            mClosed = true;
+        } finally {
+            mLock.unlock();
+        }
+    }
+}
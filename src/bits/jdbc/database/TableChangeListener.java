@@ -0,0 +1,20 @@
+package bits.jdbc.database;
+
+/**
+ * Receives the row changes made through {@link Database#update(String, bits.jdbc.content.ContentValues,
+ * String, String[])} and {@link Database#delete(String, String, String[])}, e.g. to keep a cache
+ * of the rows current. Changes made with raw SQL are not reported.
+ *
+ * @see Database#addTableChangeListener(TableChangeListener)
+ */
+public interface TableChangeListener {
+    /**
+     * Called after rows of a table have been updated or deleted. Called on the thread which made
+     * the change; must not throw.
+     *
+     * @param table       The table, as passed to the database.
+     * @param whereClause The filter of the changed rows, or null if all rows may have changed.
+     * @param whereArgs   The values for the ?s in whereClause.
+     */
+    void onRowsChanged(String table, String whereClause, String[] whereArgs);
+}
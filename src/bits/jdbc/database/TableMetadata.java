@@ -0,0 +1,249 @@
+package bits.jdbc.database;
+
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Immutable description of a table as reported by {@link java.sql.DatabaseMetaData}: its columns
+ * with their JDBC types, its primary key and its indexes. Column and index names are looked up
+ * case-insensitively. Get one from {@link MetadataCache#getTable(String)}.
+ */
+public final class TableMetadata {
+    /**
+     * Bind type of a value which is bound without a target type.
+     */
+    public static final int UNKNOWN_TYPE = Integer.MIN_VALUE;
+
+    private final String mName;
+    private final Map<String, Column> mColumns;
+    private final List<String> mPrimaryKey;
+    private final Map<String, Index> mIndexes;
+
+    TableMetadata(String name, List<Column> columns, List<String> primaryKey, List<Index> indexes) {
+        mName = name;
+        mColumns = new LinkedHashMap<>();
+        for (Column column : columns) {
+            mColumns.put(key(column.getName()), column);
+        }
+        mPrimaryKey = Collections.unmodifiableList(new ArrayList<>(primaryKey));
+        mIndexes = new LinkedHashMap<>();
+        for (Index index : indexes) {
+            mIndexes.put(key(index.getName()), index);
+        }
+    }
+
+    private static String key(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Get the table name as the database reports it.
+     */
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * Get the columns in table order.
+     */
+    public Collection<Column> getColumns() {
+        return Collections.unmodifiableCollection(mColumns.values());
+    }
+
+    /**
+     * Get a column by name.
+     *
+     * @return The column, or null if the table has no such column.
+     */
+    public Column getColumn(String name) {
+        return mColumns.get(key(name));
+    }
+
+    public boolean hasColumn(String name) {
+        return mColumns.containsKey(key(name));
+    }
+
+    /**
+     * Get the primary key columns in key order; empty if the table has none.
+     */
+    public List<String> getPrimaryKey() {
+        return mPrimaryKey;
+    }
+
+    /**
+     * Get the indexes, including the one of the primary key if the database reports it.
+     */
+    public Collection<Index> getIndexes() {
+        return Collections.unmodifiableCollection(mIndexes.values());
+    }
+
+    /**
+     * Get an index by name.
+     *
+     * @return The index, or null if the table has no such index.
+     */
+    public Index getIndex(String name) {
+        return mIndexes.get(key(name));
+    }
+
+    /**
+     * Get the JDBC types to bind the given columns with.
+     *
+     * @return One type per column; {@link #UNKNOWN_TYPE} for columns whose type is better left to
+     * the driver.
+     * @throws IllegalArgumentException if the table has no column of one of the names.
+     */
+    public int[] getBindTypes(Collection<String> columns) {
+        int[] types = new int[columns.size()];
+        int i = 0;
+        for (String name : columns) {
+            Column column = getColumn(name);
+            if (column == null) {
+                throw new IllegalArgumentException("Table " + mName + " has no column " + name);
+            }
+            types[i++] = column.getBindType();
+        }
+        return types;
+    }
+
+    boolean isEmpty() {
+        return mColumns.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "TableMetadata{" + mName + ", columns=" + mColumns.values() + ", primaryKey=" + mPrimaryKey
+                + ", indexes=" + mIndexes.values() + '}';
+    }
+
+    /**
+     * A column of a table.
+     */
+    public static final class Column {
+        private final String mName;
+        private final int mType;
+        private final String mTypeName;
+        private final int mSize;
+        private final boolean mNullable;
+
+        Column(String name, int type, String typeName, int size, boolean nullable) {
+            mName = name;
+            mType = type;
+            mTypeName = typeName;
+            mSize = size;
+            mNullable = nullable;
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        /**
+         * Get the JDBC type, one of {@link Types}.
+         */
+        public int getType() {
+            return mType;
+        }
+
+        /**
+         * Get the database specific type name.
+         */
+        public String getTypeName() {
+            return mTypeName;
+        }
+
+        /**
+         * Get the column size: the maximum length for character and binary columns, the precision
+         * for numeric ones.
+         */
+        public int getSize() {
+            return mSize;
+        }
+
+        public boolean isNullable() {
+            return mNullable;
+        }
+
+        /**
+         * Get the type to pass to {@link java.sql.PreparedStatement#setObject(int, Object, int)}, or
+         * {@link #UNKNOWN_TYPE} for vendor specific and structured types every driver binds its own
+         * way.
+         */
+        public int getBindType() {
+            switch (mType) {
+                case Types.BIT:
+                case Types.BOOLEAN:
+                case Types.TINYINT:
+                case Types.SMALLINT:
+                case Types.INTEGER:
+                case Types.BIGINT:
+                case Types.REAL:
+                case Types.FLOAT:
+                case Types.DOUBLE:
+                case Types.NUMERIC:
+                case Types.DECIMAL:
+                case Types.CHAR:
+                case Types.VARCHAR:
+                case Types.LONGVARCHAR:
+                case Types.NCHAR:
+                case Types.NVARCHAR:
+                case Types.LONGNVARCHAR:
+                case Types.DATE:
+                case Types.TIME:
+                case Types.TIMESTAMP:
+                case Types.BINARY:
+                case Types.VARBINARY:
+                case Types.LONGVARBINARY:
+                    return mType;
+                default:
+                    return UNKNOWN_TYPE;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return mName + ' ' + mTypeName + (mNullable ? "" : " NOT NULL");
+        }
+    }
+
+    /**
+     * An index of a table.
+     */
+    public static final class Index {
+        private final String mName;
+        private final boolean mUnique;
+        private final List<String> mColumns;
+
+        Index(String name, boolean unique, List<String> columns) {
+            mName = name;
+            mUnique = unique;
+            mColumns = Collections.unmodifiableList(new ArrayList<>(columns));
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        public boolean isUnique() {
+            return mUnique;
+        }
+
+        /**
+         * Get the indexed columns in index order.
+         */
+        public List<String> getColumns() {
+            return mColumns;
+        }
+
+        @Override
+        public String toString() {
+            return mName + (mUnique ? " UNIQUE " : " ") + mColumns;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package bits.jdbc.database;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps watermarks in a table of the database itself, created on first use. The version of a
+ * watermark is stored as text with its type, so it is bound with the same type when read back;
+ * versions may be integers, decimals, strings, dates or timestamps.
+ */
+public class TableWatermarkStore implements WatermarkStore {
+    /**
+     * Default name of the table holding the watermarks.
+     */
+    public static final String DEFAULT_TABLE = "change_feed_watermark";
+
+    private static final String TYPE_LONG = "long";
+    private static final String TYPE_DECIMAL = "decimal";
+    private static final String TYPE_STRING = "string";
+    private static final String TYPE_DATE = "date";
+    private static final String TYPE_TIMESTAMP = "timestamp";
+    private static final String TYPE_LOCAL_DATE_TIME = "localdatetime";
+    private static final String TYPE_OFFSET_DATE_TIME = "offsetdatetime";
+
+    private final Database mDatabase;
+    private final String mTable;
+    private final ReentrantLock mCreateLock = new ReentrantLock();
+    private volatile boolean mCreated;
+
+    public TableWatermarkStore(Database database) {
+        this(database, DEFAULT_TABLE);
+    }
+
+    public TableWatermarkStore(Database database, String table) {
+        mDatabase = database;
+        mTable = table;
+    }
+
+    @Override
+    public ChangeFeed.Watermark load(String feed) throws SQLException {
+        if (!mCreated && mDatabase.getTableMetadata(mTable) == null) {
+            return null;
+        }
+        List<ChangeFeed.Watermark> watermarks = mDatabase.rawQuery(
+                "SELECT value_type, value_text, last_id FROM " + mTable + " WHERE feed = ?", new Object[]{feed}, 1,
+                rs -> new ChangeFeed.Watermark(decode(rs.getString(1), rs.getString(2)), rs.getLong(3)));
+        return watermarks.isEmpty() ? null : watermarks.get(0);
+    }
+
+    @Override
+    public void save(String feed, ChangeFeed.Watermark watermark) throws SQLException {
+        createTable();
+        if (watermark == null) {
+            mDatabase.executeUpdate("DELETE FROM " + mTable + " WHERE feed = ?", new Object[]{feed});
+            return;
+        }
+        Object value = watermark.getValue();
+        String type = value == null ? null : typeOf(value);
+        String text = value == null ? null : value.toString();
+        Object[] bindArgs = {type, text, watermark.getId(), feed};
+        if (mDatabase.executeUpdate("UPDATE " + mTable + " SET value_type = ?, value_text = ?, last_id = ?"
+                + " WHERE feed = ?", bindArgs) == 0) {
+            mDatabase.executeUpdate("INSERT INTO " + mTable + " (value_type, value_text, last_id, feed)"
+                    + " VALUES (?, ?, ?, ?)", bindArgs);
+        }
+    }
+
+    private void createTable() throws SQLException {
+        if (mCreated) {
+            return;
+        }
+        mCreateLock.lock();
+        try {
+            if (!mCreated && mDatabase.getTableMetadata(mTable) == null) {
+                mDatabase.execSQL("CREATE TABLE " + mTable + " (feed VARCHAR(255) NOT NULL PRIMARY KEY,"
+                        + " value_type VARCHAR(16), value_text VARCHAR(255), last_id BIGINT NOT NULL)");
+            }
+            mCreated = true;
+        } finally {
+            mCreateLock.unlock();
+        }
+    }
+
+    private static String typeOf(Object value) {
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return TYPE_LONG;
+        } else if (value instanceof BigDecimal) {
+            return TYPE_DECIMAL;
+        } else if (value instanceof String) {
+            return TYPE_STRING;
+        } else if (value instanceof Timestamp) {
+            return TYPE_TIMESTAMP;
+        } else if (value instanceof Date) {
+            return TYPE_DATE;
+        } else if (value instanceof LocalDateTime) {
+            return TYPE_LOCAL_DATE_TIME;
+        } else if (value instanceof OffsetDateTime) {
+            return TYPE_OFFSET_DATE_TIME;
+        }
+        throw new IllegalArgumentException("Cannot store a version of type " + value.getClass().getName());
+    }
+
+    private static Object decode(String type, String text) throws SQLException {
+        if (type == null || text == null) {
+            return null;
+        }
+        switch (type) {
+            case TYPE_LONG:
+                return Long.valueOf(text);
+            case TYPE_DECIMAL:
+                return new BigDecimal(text);
+            case TYPE_STRING:
+                return text;
+            case TYPE_TIMESTAMP:
+                return Timestamp.valueOf(text);
+            case TYPE_DATE:
+                return Date.valueOf(text);
+            case TYPE_LOCAL_DATE_TIME:
+                return LocalDateTime.parse(text);
+            case TYPE_OFFSET_DATE_TIME:
+                return OffsetDateTime.parse(text);
+            default:
+                throw new SQLException("Unknown watermark type " + type);
+        }
+    }
+}
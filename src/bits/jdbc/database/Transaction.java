@@ -0,0 +1,20 @@
+package bits.jdbc.database;
+
+import java.sql.SQLException;
+
+/**
+ * Work run in a single transaction by {@link Database#runInTransaction(Transaction)}.
+ *
+ * @param <T> the type of the result
+ */
+public interface Transaction<T> {
+    /**
+     * Runs the work. May be called more than once if the transaction is retried, so it should
+     * not have side effects outside the database.
+     *
+     * @param db A view of the database whose statements all run in the transaction.
+     * @return The result of the transaction.
+     * @throws SQLException to roll the transaction back.
+     */
+    T run(Database db) throws SQLException;
+}
@@ -0,0 +1,28 @@
+package bits.jdbc.database;
+
+import java.sql.SQLException;
+
+/**
+ * Keeps the {@link ChangeFeed.Watermark watermarks} of change feeds across restarts.
+ *
+ * @see TableWatermarkStore
+ */
+public interface WatermarkStore {
+    /**
+     * Loads the watermark of a feed.
+     *
+     * @param feed The {@link ChangeFeed#getName() name} of the feed.
+     * @return The watermark, or null if none has been saved.
+     * @throws SQLException
+     */
+    ChangeFeed.Watermark load(String feed) throws SQLException;
+
+    /**
+     * Saves the watermark of a feed.
+     *
+     * @param feed      The {@link ChangeFeed#getName() name} of the feed.
+     * @param watermark The watermark, or null to forget it.
+     * @throws SQLException
+     */
+    void save(String feed, ChangeFeed.Watermark watermark) throws SQLException;
+}
@@ -0,0 +1,53 @@
+package bits.jdbc.export;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Recycles direct buffers, whose allocation is expensive and whose memory is only freed by the
+ * garbage collector. At most {@link #getMaxPooled()} buffers are kept; more may be in use.
+ */
+final class ByteBufferPool {
+    private final int mBufferSize;
+    private final int mMaxPooled;
+    private final ConcurrentLinkedQueue<ByteBuffer> mBuffers = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger mPooled = new AtomicInteger();
+
+    ByteBufferPool(int bufferSize, int maxPooled) {
+        mBufferSize = bufferSize;
+        mMaxPooled = maxPooled;
+    }
+
+    int getBufferSize() {
+        return mBufferSize;
+    }
+
+    int getMaxPooled() {
+        return mMaxPooled;
+    }
+
+    /**
+     * Get a cleared buffer of the pool's buffer size.
+     */
+    ByteBuffer acquire() {
+        ByteBuffer buffer = mBuffers.poll();
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(mBufferSize);
+        }
+        mPooled.decrementAndGet();
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Returns a buffer to the pool, or drops it if the pool is full.
+     */
+    void release(ByteBuffer buffer) {
+        if (mPooled.incrementAndGet() <= mMaxPooled) {
+            mBuffers.offer(buffer);
+        } else {
+            mPooled.decrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package bits.jdbc.export;
+
+/**
+ * Text formats a query result can be exported in. Both are UTF-8 and end every line with a
+ * single {@code \n}.
+ */
+public enum ExportFormat {
+    /**
+     * Comma separated values as in RFC 4180, with a header line of column labels. Fields
+     * containing a comma, quote or line break are quoted. NULL is an empty field and the empty
+     * string an empty quoted field, so the two can be told apart. Binary values are Base64.
+     */
+    CSV,
+    /**
+     * Newline delimited JSON: one object per row, keyed by column label. Numbers and booleans are
+     * JSON numbers and booleans, except non-finite floating point values, which are null. Binary
+     * values are Base64 strings, everything else JSON strings.
+     */
+    NDJSON
+}
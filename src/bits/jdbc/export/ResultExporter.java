@@ -0,0 +1,444 @@
+package bits.jdbc.export;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Base64;
+
+/**
+ * Writes a query result to a channel as CSV or NDJSON. The values are encoded straight into a few
+ * pooled direct buffers, numbers digit by digit and text char by char to UTF-8, without building
+ * a String per row, and the buffers are handed to the channel together in one gathering write
+ * when they are full. Memory use is constant however many rows there are, as long as the driver
+ * streams the result too: {@link bits.jdbc.database.Database#export(String, Object[], ExportFormat,
+ * WritableByteChannel) Database.export} sets a streaming fetch size, and on PostgreSQL reads in a
+ * transaction since the driver ignores the fetch size in auto-commit mode.
+ *
+ * @see bits.jdbc.database.Database#export(String, Object[], ExportFormat, WritableByteChannel)
+ */
+public final class ResultExporter {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int GATHER_COUNT = 4;
+    /**
+     * Most bytes a single char can take, escaped as {@code \}{@code u00XX}.
+     */
+    private static final int MAX_CHAR_BYTES = 6;
+    private static final ByteBufferPool POOL = new ByteBufferPool(BUFFER_SIZE, 16 * GATHER_COUNT);
+
+    private static final int KIND_LONG = 0;
+    private static final int KIND_DOUBLE = 1;
+    private static final int KIND_FLOAT = 2;
+    private static final int KIND_DECIMAL = 3;
+    private static final int KIND_BOOLEAN = 4;
+    private static final int KIND_BYTES = 5;
+    private static final int KIND_STRING = 6;
+
+    private static final int MODE_PLAIN = 0;
+    private static final int MODE_CSV_QUOTED = 1;
+    private static final int MODE_JSON = 2;
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    private final WritableByteChannel mChannel;
+    private final ByteBuffer[] mBuffers = new ByteBuffer[GATHER_COUNT];
+    private int mIndex;
+    private ByteBuffer mCurrent;
+    private final byte[] mDigits = new byte[20];
+
+    private ResultExporter(WritableByteChannel channel) {
+        mChannel = channel;
+        for (int i = 0; i < GATHER_COUNT; i++) {
+            mBuffers[i] = POOL.acquire();
+        }
+        mCurrent = mBuffers[0];
+    }
+
+    /**
+     * Writes all remaining rows of the result set to the channel.
+     *
+     * @param resultSet The result set, positioned before the first row to write.
+     * @param format    The format to write.
+     * @param channel   A blocking channel to write to; it is not closed.
+     * @return The number of rows written.
+     * @throws SQLException if reading the result or writing to the channel fails.
+     */
+    public static long export(ResultSet resultSet, ExportFormat format, WritableByteChannel channel)
+            throws SQLException {
+        ResultExporter exporter = new ResultExporter(channel);
+        try {
+            return exporter.write(resultSet, format);
+        } catch (IOException e) {
+            throw new SQLException("Unable to write the exported result", e);
+        } finally {
+            exporter.release();
+        }
+    }
+
+    private long write(ResultSet resultSet, ExportFormat format) throws SQLException, IOException {
+        ResultSetMetaData metaData = resultSet.getMetaData();
+        int columnCount = metaData.getColumnCount();
+        int[] kinds = new int[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            kinds[i] = kindOf(metaData.getColumnType(i + 1));
+        }
+        boolean json = format == ExportFormat.NDJSON;
+        byte[][] prefixes = new byte[columnCount][];
+        if (json) {
+            // '{"label":' and ',"label":' encoded once instead of for every row
+            for (int i = 0; i < columnCount; i++) {
+                prefixes[i] = ((i == 0 ? "{" : ",") + jsonString(metaData.getColumnLabel(i + 1)) + ':')
+                        .getBytes(StandardCharsets.UTF_8);
+            }
+        } else {
+            for (int i = 0; i < columnCount; i++) {
+                if (i > 0) {
+                    put((byte) ',');
+                }
+                putCsv(metaData.getColumnLabel(i + 1));
+            }
+            put((byte) '\n');
+        }
+
+        long rows = 0;
+        while (resultSet.next()) {
+            for (int i = 0; i < columnCount; i++) {
+                if (json) {
+                    put(prefixes[i]);
+                } else if (i > 0) {
+                    put((byte) ',');
+                }
+                writeValue(resultSet, i + 1, kinds[i], json);
+            }
+            if (json) {
+                if (columnCount == 0) {
+                    put((byte) '{');
+                }
+                put((byte) '}');
+            }
+            put((byte) '\n');
+            rows++;
+        }
+        flush();
+        return rows;
+    }
+
+    private static int kindOf(int jdbcType) {
+        switch (jdbcType) {
+            case Types.BIGINT:
+            case Types.INTEGER:
+            case Types.SMALLINT:
+            case Types.TINYINT:
+                return KIND_LONG;
+            case Types.DOUBLE:
+            case Types.FLOAT:
+                return KIND_DOUBLE;
+            case Types.REAL:
+                // single precision; as a double, 0.1 would print as 0.10000000149011612
+                return KIND_FLOAT;
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                return KIND_DECIMAL;
+            case Types.BIT:
+            case Types.BOOLEAN:
+                return KIND_BOOLEAN;
+            case Types.BINARY:
+            case Types.VARBINARY:
+            case Types.LONGVARBINARY:
+            case Types.BLOB:
+                return KIND_BYTES;
+            default:
+                return KIND_STRING;
+        }
+    }
+
+    private void writeValue(ResultSet resultSet, int index, int kind, boolean json) throws SQLException, IOException {
+        switch (kind) {
+            case KIND_LONG: {
+                long value = resultSet.getLong(index);
+                if (resultSet.wasNull()) {
+                    writeNull(json);
+                } else {
+                    putLong(value);
+                }
+                return;
+            }
+            case KIND_DOUBLE: {
+                double value = resultSet.getDouble(index);
+                if (resultSet.wasNull() || (json && (Double.isNaN(value) || Double.isInfinite(value)))) {
+                    writeNull(json);
+                } else if (value == (long) value && Math.abs(value) < 1e15) {
+                    // integral values without the ".0" of Double.toString
+                    putLong((long) value);
+                } else {
+                    putAscii(Double.toString(value));
+                }
+                return;
+            }
+            case KIND_FLOAT: {
+                float value = resultSet.getFloat(index);
+                if (resultSet.wasNull() || (json && (Float.isNaN(value) || Float.isInfinite(value)))) {
+                    writeNull(json);
+                } else if (value == (long) value && Math.abs(value) < 1e7f) {
+                    putLong((long) value);
+                } else {
+                    putAscii(Float.toString(value));
+                }
+                return;
+            }
+            case KIND_DECIMAL: {
+                BigDecimal value = resultSet.getBigDecimal(index);
+                if (value == null) {
+                    writeNull(json);
+                } else {
+                    putAscii(value.toPlainString());
+                }
+                return;
+            }
+            case KIND_BOOLEAN: {
+                boolean value = resultSet.getBoolean(index);
+                if (resultSet.wasNull()) {
+                    writeNull(json);
+                } else {
+                    putAscii(value ? "true" : "false");
+                }
+                return;
+            }
+            case KIND_BYTES: {
+                byte[] value = resultSet.getBytes(index);
+                if (value == null) {
+                    writeNull(json);
+                } else {
+                    // Base64 needs neither CSV quoting nor JSON escaping
+                    if (json) {
+                        put((byte) '"');
+                    }
+                    put(Base64.getEncoder().encode(value));
+                    if (json) {
+                        put((byte) '"');
+                    }
+                }
+                return;
+            }
+            default: {
+                String value = resultSet.getString(index);
+                if (value == null) {
+                    writeNull(json);
+                } else if (json) {
+                    put((byte) '"');
+                    putString(value, MODE_JSON);
+                    put((byte) '"');
+                } else {
+                    putCsv(value);
+                }
+            }
+        }
+    }
+
+    private void writeNull(boolean json) throws IOException {
+        if (json) {
+            putAscii("null");
+        }
+    }
+
+    private void putCsv(String value) throws IOException {
+        boolean quote = value.isEmpty();
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (quote) {
+            put((byte) '"');
+            putString(value, MODE_CSV_QUOTED);
+            put((byte) '"');
+        } else {
+            putString(value, MODE_PLAIN);
+        }
+    }
+
+    /**
+     * Encodes a string to UTF-8, escaping as the mode requires. Unpaired surrogates become '?'.
+     */
+    private void putString(String value, int mode) throws IOException {
+        ByteBuffer out = mCurrent;
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            if (out.remaining() < MAX_CHAR_BYTES) {
+                next();
+                out = mCurrent;
+            }
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                if (mode == MODE_JSON && (c == '"' || c == '\\')) {
+                    out.put((byte) '\\').put((byte) c);
+                } else if (mode == MODE_JSON && c < 0x20) {
+                    putJsonControl(out, c);
+                } else if (mode == MODE_CSV_QUOTED && c == '"') {
+                    out.put((byte) '"').put((byte) '"');
+                } else {
+                    out.put((byte) c);
+                }
+            } else if (c < 0x800) {
+                out.put((byte) (0xc0 | (c >> 6)))
+                        .put((byte) (0x80 | (c & 0x3f)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                out.put((byte) (0xf0 | (codePoint >> 18)))
+                        .put((byte) (0x80 | ((codePoint >> 12) & 0x3f)))
+                        .put((byte) (0x80 | ((codePoint >> 6) & 0x3f)))
+                        .put((byte) (0x80 | (codePoint & 0x3f)));
+            } else if (Character.isSurrogate(c)) {
+                out.put((byte) '?');
+            } else {
+                out.put((byte) (0xe0 | (c >> 12)))
+                        .put((byte) (0x80 | ((c >> 6) & 0x3f)))
+                        .put((byte) (0x80 | (c & 0x3f)));
+            }
+        }
+    }
+
+    private static void putJsonControl(ByteBuffer out, char c) {
+        out.put((byte) '\\');
+        switch (c) {
+            case '\n':
+                out.put((byte) 'n');
+                break;
+            case '\r':
+                out.put((byte) 'r');
+                break;
+            case '\t':
+                out.put((byte) 't');
+                break;
+            case '\b':
+                out.put((byte) 'b');
+                break;
+            case '\f':
+                out.put((byte) 'f');
+                break;
+            default:
+                out.put((byte) 'u').put((byte) '0').put((byte) '0')
+                        .put(HEX[c >> 4]).put(HEX[c & 0xf]);
+        }
+    }
+
+    /**
+     * Quotes and escapes a string as a JSON string.
+     */
+    private static String jsonString(String value) {
+        StringBuilder s = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                s.append('\\').append(c);
+            } else if (c < 0x20) {
+                s.append(String.format("\\u%04x", (int) c));
+            } else {
+                s.append(c);
+            }
+        }
+        return s.append('"').toString();
+    }
+
+    private void putLong(long value) throws IOException {
+        if (mCurrent.remaining() < mDigits.length) {
+            next();
+        }
+        if (value == Long.MIN_VALUE) {
+            putAscii("-9223372036854775808");
+            return;
+        }
+        if (value < 0) {
+            mCurrent.put((byte) '-');
+            value = -value;
+        }
+        int start = mDigits.length;
+        do {
+            mDigits[--start] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        mCurrent.put(mDigits, start, mDigits.length - start);
+    }
+
+    private void putAscii(String value) throws IOException {
+        if (value.length() > mCurrent.remaining()) {
+            if (value.length() > BUFFER_SIZE) {
+                putString(value, MODE_PLAIN);
+                return;
+            }
+            next();
+        }
+        for (int i = 0; i < value.length(); i++) {
+            mCurrent.put((byte) value.charAt(i));
+        }
+    }
+
+    private void put(byte b) throws IOException {
+        if (!mCurrent.hasRemaining()) {
+            next();
+        }
+        mCurrent.put(b);
+    }
+
+    private void put(byte[] bytes) throws IOException {
+        int offset = 0;
+        while (offset < bytes.length) {
+            if (!mCurrent.hasRemaining()) {
+                next();
+            }
+            int count = Math.min(mCurrent.remaining(), bytes.length - offset);
+            mCurrent.put(bytes, offset, count);
+            offset += count;
+        }
+    }
+
+    /**
+     * Moves on to the next buffer, writing all of them out once they are all used.
+     */
+    private void next() throws IOException {
+        if (mIndex + 1 < GATHER_COUNT) {
+            mCurrent = mBuffers[++mIndex];
+        } else {
+            flush();
+        }
+    }
+
+    private void flush() throws IOException {
+        int count = mIndex + 1;
+        long remaining = 0;
+        for (int i = 0; i < count; i++) {
+            mBuffers[i].flip();
+            remaining += mBuffers[i].remaining();
+        }
+        if (mChannel instanceof GatheringByteChannel) {
+            GatheringByteChannel channel = (GatheringByteChannel) mChannel;
+            while (remaining > 0) {
+                remaining -= channel.write(mBuffers, 0, count);
+            }
+        } else {
+            for (int i = 0; i < count; i++) {
+                while (mBuffers[i].hasRemaining()) {
+                    mChannel.write(mBuffers[i]);
+                }
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            mBuffers[i].clear();
+        }
+        mIndex = 0;
+        mCurrent = mBuffers[0];
+    }
+
+    private void release() {
+        for (int i = 0; i < GATHER_COUNT; i++) {
+            POOL.release(mBuffers[i]);
+            mBuffers[i] = null;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package bits.jdbc.fake;
+
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Behaviour of a {@link FakeDriver} database, parsed from the connection URL and properties.
+ * <p>
+ * URLs have the form {@code jdbc:fake:name?key=value&key=value}; connection properties with the
+ * same keys override the URL. Latencies are given in (fractional) milliseconds and rates as
+ * probabilities between 0 and 1.
+ * <ul>
+ * <li>{@code connectLatencyMs} - time to open a connection</li>
+ * <li>{@code statementLatencyMs} - time for one round trip of a statement or batch</li>
+ * <li>{@code jitterMs} - uniformly random extra time added to every latency</li>
+ * <li>{@code connectFailureRate} - share of connects failing with SQLState 08001</li>
+ * <li>{@code statementFailureRate} - share of statements failing with SQLState 08S01</li>
+ * <li>{@code rows} - rows returned by every query</li>
+ * <li>{@code columns} - columns returned by every query, at least 2</li>
+ * <li>{@code updateCount} - rows reported as affected by every update</li>
+ * </ul>
+ */
+public class FakeConfig {
+    public static final String URL_PREFIX = "jdbc:fake:";
+
+    private final String name;
+    private final long connectLatencyNanos;
+    private final long statementLatencyNanos;
+    private final long jitterNanos;
+    private final double connectFailureRate;
+    private final double statementFailureRate;
+    private final int rows;
+    private final int columns;
+    private final int updateCount;
+
+    private FakeConfig(String name, Properties p) {
+        this.name = name;
+        connectLatencyNanos = millisToNanos(p.getProperty("connectLatencyMs", "0"));
+        statementLatencyNanos = millisToNanos(p.getProperty("statementLatencyMs", "0"));
+        jitterNanos = millisToNanos(p.getProperty("jitterMs", "0"));
+        connectFailureRate = Double.parseDouble(p.getProperty("connectFailureRate", "0"));
+        statementFailureRate = Double.parseDouble(p.getProperty("statementFailureRate", "0"));
+        rows = Integer.parseInt(p.getProperty("rows", "1"));
+        columns = Math.max(2, Integer.parseInt(p.getProperty("columns", "4")));
+        updateCount = Integer.parseInt(p.getProperty("updateCount", "1"));
+    }
+
+    private static long millisToNanos(String millis) {
+        return (long) (Double.parseDouble(millis) * TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    /**
+     * Parses the configuration of a fake database.
+     *
+     * @param url  The connection URL, starting with {@link #URL_PREFIX}.
+     * @param info Connection properties overriding the URL parameters, may be null.
+     * @return The configuration.
+     */
+    public static FakeConfig parse(String url, Properties info) {
+        String spec = url.substring(URL_PREFIX.length());
+        int query = spec.indexOf('?');
+        String name = query < 0 ? spec : spec.substring(0, query);
+        Properties p = new Properties();
+        if (query >= 0) {
+            for (String pair : spec.substring(query + 1).split("&")) {
+                int eq = pair.indexOf('=');
+                if (eq > 0) {
+                    p.setProperty(pair.substring(0, eq), pair.substring(eq + 1));
+                }
+            }
+        }
+        if (info != null) {
+            for (Map.Entry<Object, Object> entry : info.entrySet()) {
+                p.setProperty(entry.getKey().toString(), String.valueOf(entry.getValue()));
+            }
+        }
+        try {
+            return new FakeConfig(name, p);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid fake database URL " + url, e);
+        }
+    }
+
+    /**
+     * Draws a latency with jitter.
+     */
+    long jittered(long nanos) {
+        return jitterNanos > 0 ? nanos + ThreadLocalRandom.current().nextLong(jitterNanos + 1) : nanos;
+    }
+
+    /**
+     * Returns true with the given probability.
+     */
+    static boolean chance(double rate) {
+        return rate > 0 && ThreadLocalRandom.current().nextDouble() < rate;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getConnectLatencyNanos() {
+        return connectLatencyNanos;
+    }
+
+    public long getStatementLatencyNanos() {
+        return statementLatencyNanos;
+    }
+
+    public long getJitterNanos() {
+        return jitterNanos;
+    }
+
+    public double getConnectFailureRate() {
+        return connectFailureRate;
+    }
+
+    public double getStatementFailureRate() {
+        return statementFailureRate;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getUpdateCount() {
+        return updateCount;
+    }
+}
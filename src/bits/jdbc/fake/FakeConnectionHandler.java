@@ -0,0 +1,156 @@
+package bits.jdbc.fake;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.Statement;
+
+/**
+ * Behaviour of a fake {@link Connection}: keeps the session state and creates statements.
+ */
+class FakeConnectionHandler extends FakeHandler {
+    private final FakeConfig config;
+    private final String url;
+    private volatile boolean closed;
+    private boolean autoCommit = true;
+    private boolean readOnly;
+    private int isolation = Connection.TRANSACTION_READ_COMMITTED;
+    private String catalog;
+    private String schema;
+    private int holdability;
+
+    FakeConnectionHandler(FakeConfig config, String url) {
+        this.config = config;
+        this.url = url;
+        this.catalog = config.getName();
+    }
+
+    FakeConfig getConfig() {
+        return config;
+    }
+
+    void checkOpen() throws SQLException {
+        if (closed) {
+            throw new SQLNonTransientConnectionException("Connection is closed", "08003");
+        }
+    }
+
+    private Object newStatement(Object connection, Class<?> type, String sql) {
+        return Proxy.newProxyInstance(FakeDriver.class.getClassLoader(), new Class<?>[]{type},
+                new FakeStatementHandler(this, (Connection) connection, sql));
+    }
+
+    @Override
+    Object handle(Object proxy, Method method, String name, Object[] args) throws Throwable {
+        switch (name) {
+            case "close":
+            case "abort":
+                if (!closed) {
+                    closed = true;
+                    FakeDriver.connectionClosed();
+                }
+                return null;
+            case "isClosed":
+                return closed;
+            case "isValid":
+                return !closed;
+        }
+        checkOpen();
+        switch (name) {
+            case "createStatement":
+                return newStatement(proxy, Statement.class, null);
+            case "prepareStatement":
+                return newStatement(proxy, PreparedStatement.class, (String) args[0]);
+            case "prepareCall":
+                return newStatement(proxy, CallableStatement.class, (String) args[0]);
+            case "nativeSQL":
+                return args[0];
+            case "getMetaData":
+                return Proxy.newProxyInstance(FakeDriver.class.getClassLoader(),
+                        new Class<?>[]{DatabaseMetaData.class}, new MetaDataHandler(proxy));
+            case "commit":
+            case "rollback":
+                if (autoCommit && args == null) {
+                    throw new SQLException("Connection is in auto-commit mode", "25000");
+                }
+                FakeDriver.roundTrip();
+                FakeDriver.simulateLatency(config.jittered(config.getStatementLatencyNanos()));
+                return null;
+            case "setAutoCommit":
+                autoCommit = (Boolean) args[0];
+                return null;
+            case "getAutoCommit":
+                return autoCommit;
+            case "setReadOnly":
+                readOnly = (Boolean) args[0];
+                return null;
+            case "isReadOnly":
+                return readOnly;
+            case "setTransactionIsolation":
+                isolation = (Integer) args[0];
+                return null;
+            case "getTransactionIsolation":
+                return isolation;
+            case "setCatalog":
+                catalog = (String) args[0];
+                return null;
+            case "getCatalog":
+                return catalog;
+            case "setSchema":
+                schema = (String) args[0];
+                return null;
+            case "getSchema":
+                return schema;
+            case "setHoldability":
+                holdability = (Integer) args[0];
+                return null;
+            case "getHoldability":
+                return holdability;
+            default:
+                return defaultValue(method.getReturnType());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "FakeConnection[" + url + "]";
+    }
+
+    /**
+     * Behaviour of the fake {@link DatabaseMetaData}.
+     */
+    private class MetaDataHandler extends FakeHandler {
+        private final Object connection;
+
+        MetaDataHandler(Object connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        Object handle(Object proxy, Method method, String name, Object[] args) {
+            switch (name) {
+                case "getConnection":
+                    return connection;
+                case "getDatabaseProductName":
+                    return "FakeDB";
+                case "getDatabaseProductVersion":
+                case "getDriverVersion":
+                    return "1.0";
+                case "getDriverName":
+                    return FakeDriver.class.getName();
+                case "getURL":
+                    return url;
+                case "supportsBatchUpdates":
+                case "supportsTransactions":
+                    return true;
+                default:
+                    return defaultValue(method.getReturnType());
+            }
+        }
+    }
+}
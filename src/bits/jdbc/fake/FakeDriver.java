@@ -0,0 +1,137 @@
+package bits.jdbc.fake;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTransientConnectionException;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * In-process stub JDBC driver which simulates a database server with configurable latency,
+ * failures and result sizes, see {@link FakeConfig}. No SQL is parsed: every query returns the
+ * configured synthetic rows and every update reports the configured update count.
+ * <p>
+ * Use it to measure the overhead of {@link bits.jdbc.Helper.ConnectionPool} and
+ * {@link bits.jdbc.database.Database} without the cost of a real database, e.g.
+ * {@code new ConnectionPool(8, FakeDriver.class.getName(), "jdbc:fake:bench?statementLatencyMs=0.2", "", "")}.
+ */
+public class FakeDriver implements Driver {
+    private static final AtomicLong sConnects = new AtomicLong();
+    private static final AtomicLong sOpenConnections = new AtomicLong();
+    private static final AtomicLong sRoundTrips = new AtomicLong();
+    private static volatile boolean sDown;
+
+    static {
+        try {
+            DriverManager.registerDriver(new FakeDriver());
+        } catch (SQLException e) {
+            System.err.println("Exception: register fake driver");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Gets the number of connections opened since the class was loaded.
+     */
+    public static long getConnectCount() {
+        return sConnects.get();
+    }
+
+    /**
+     * Gets the number of connections currently open.
+     */
+    public static long getOpenConnectionCount() {
+        return sOpenConnections.get();
+    }
+
+    /**
+     * Gets the number of simulated server round trips since the class was loaded.
+     */
+    public static long getRoundTripCount() {
+        return sRoundTrips.get();
+    }
+
+    /**
+     * Simulates an outage of every fake database: while down, all connects fail with SQLState
+     * 08001. Connections already open keep working.
+     */
+    public static void setDown(boolean down) {
+        sDown = down;
+    }
+
+    static void roundTrip() {
+        sRoundTrips.incrementAndGet();
+    }
+
+    static void connectionClosed() {
+        sOpenConnections.decrementAndGet();
+    }
+
+    /**
+     * Sleeps for the given time, giving up early when interrupted.
+     */
+    static void simulateLatency(long nanos) throws SQLException {
+        if (nanos <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted", "08S01", e);
+        }
+    }
+
+    @Override
+    public Connection connect(String url, Properties info) throws SQLException {
+        if (!acceptsURL(url)) {
+            return null;
+        }
+        FakeConfig config = FakeConfig.parse(url, info);
+        simulateLatency(config.jittered(config.getConnectLatencyNanos()));
+        if (sDown || FakeConfig.chance(config.getConnectFailureRate())) {
+            throw new SQLTransientConnectionException("Simulated connect failure to " + config.getName(), "08001");
+        }
+        sConnects.incrementAndGet();
+        sOpenConnections.incrementAndGet();
+        return (Connection) Proxy.newProxyInstance(FakeDriver.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, new FakeConnectionHandler(config, url));
+    }
+
+    @Override
+    public boolean acceptsURL(String url) {
+        return url != null && url.startsWith(FakeConfig.URL_PREFIX);
+    }
+
+    @Override
+    public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+        return new DriverPropertyInfo[0];
+    }
+
+    @Override
+    public int getMajorVersion() {
+        return 1;
+    }
+
+    @Override
+    public int getMinorVersion() {
+        return 0;
+    }
+
+    @Override
+    public boolean jdbcCompliant() {
+        return false;
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+}
@@ -0,0 +1,69 @@
+package bits.jdbc.fake;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.sql.SQLException;
+
+/**
+ * Base of the proxies behind the fake JDBC objects. Methods a subclass does not handle return
+ * the default value of their return type, so the stubs accept any call a caller may make.
+ */
+abstract class FakeHandler implements InvocationHandler {
+
+    static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) {
+            return Boolean.FALSE;
+        } else if (type == int.class) {
+            return 0;
+        } else if (type == long.class) {
+            return 0L;
+        } else if (type == double.class) {
+            return 0d;
+        } else if (type == float.class) {
+            return 0f;
+        } else if (type == short.class) {
+            return (short) 0;
+        } else if (type == byte.class) {
+            return (byte) 0;
+        }
+        return null;
+    }
+
+    @Override
+    public final Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        String name = method.getName();
+        if (method.getDeclaringClass() == Object.class) {
+            switch (name) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    return toString();
+            }
+        }
+        if (name.equals("unwrap")) {
+            Class<?> type = (Class<?>) args[0];
+            if (type.isInstance(proxy)) {
+                return proxy;
+            }
+            throw new SQLException("Not a wrapper for " + type.getName());
+        }
+        if (name.equals("isWrapperFor")) {
+            return ((Class<?>) args[0]).isInstance(proxy);
+        }
+        try {
+            return handle(proxy, method, name, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Handles a JDBC method call.
+     *
+     * @return The result, or {@link #defaultValue(Class)} of the return type if not handled.
+     */
+    abstract Object handle(Object proxy, Method method, String name, Object[] args) throws Throwable;
+}
@@ -0,0 +1,223 @@
+package bits.jdbc.fake;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ * Behaviour of a fake {@link ResultSet} with synthetic, deterministic rows.
+ * <p>
+ * Column 1 is {@code id} (BIGINT, the 1-based row number) and column 2 is {@code name}
+ * (VARCHAR). Further columns cycle through INTEGER, DOUBLE and VARCHAR.
+ */
+class FakeResultSetHandler extends FakeHandler {
+    private final FakeStatementHandler statementHandler;
+    private final Object statement;
+    private final int columns;
+    private final int rows;
+    private int row;
+    private boolean closed;
+    private boolean wasNull;
+
+    FakeResultSetHandler(FakeStatementHandler statementHandler, Object statement, int columns, int rows) {
+        this.statementHandler = statementHandler;
+        this.statement = statement;
+        this.columns = columns;
+        this.rows = rows;
+    }
+
+    static int columnType(int column) {
+        if (column == 1) {
+            return Types.BIGINT;
+        } else if (column == 2) {
+            return Types.VARCHAR;
+        }
+        switch (column % 3) {
+            case 0:
+                return Types.INTEGER;
+            case 1:
+                return Types.DOUBLE;
+            default:
+                return Types.VARCHAR;
+        }
+    }
+
+    static String columnName(int column) {
+        if (column == 1) {
+            return "id";
+        } else if (column == 2) {
+            return "name";
+        }
+        switch (columnType(column)) {
+            case Types.INTEGER:
+                return "int_" + column;
+            case Types.DOUBLE:
+                return "double_" + column;
+            default:
+                return "text_" + column;
+        }
+    }
+
+    private Object value(int column) throws SQLException {
+        if (closed) {
+            throw new SQLException("Result set is closed");
+        }
+        if (row < 1 || row > rows) {
+            throw new SQLException("No current row");
+        }
+        if (column < 1 || column > columns) {
+            throw new SQLException("Invalid column index " + column);
+        }
+        wasNull = false;
+        if (column == 1) {
+            return (long) row;
+        } else if (column == 2) {
+            return "name-" + row;
+        }
+        switch (columnType(column)) {
+            case Types.INTEGER:
+                return row * column;
+            case Types.DOUBLE:
+                return row * 0.5;
+            default:
+                return "value-" + row + "-" + column;
+        }
+    }
+
+    private int findColumn(String label) throws SQLException {
+        for (int i = 1; i <= columns; i++) {
+            if (columnName(i).equalsIgnoreCase(label)) {
+                return i;
+            }
+        }
+        throw new SQLException("Unknown column " + label);
+    }
+
+    private static Number asNumber(Object value) {
+        return value instanceof Number ? (Number) value : Double.valueOf(value.toString());
+    }
+
+    @Override
+    Object handle(Object proxy, Method method, String name, Object[] args) throws Throwable {
+        switch (name) {
+            case "close":
+                if (!closed) {
+                    closed = true;
+                    statementHandler.resultSetClosed();
+                }
+                return null;
+            case "isClosed":
+                return closed;
+            case "next":
+                if (closed) {
+                    throw new SQLException("Result set is closed");
+                }
+                if (row <= rows) {
+                    row++;
+                }
+                return row <= rows;
+            case "getStatement":
+                return statement;
+            case "wasNull":
+                return wasNull;
+            case "getRow":
+                return row <= rows ? row : 0;
+            case "isBeforeFirst":
+                return row == 0 && rows > 0;
+            case "isAfterLast":
+                return row > rows && rows > 0;
+            case "getType":
+                return ResultSet.TYPE_FORWARD_ONLY;
+            case "getConcurrency":
+                return ResultSet.CONCUR_READ_ONLY;
+            case "findColumn":
+                return findColumn((String) args[0]);
+            case "getMetaData":
+                return Proxy.newProxyInstance(FakeDriver.class.getClassLoader(),
+                        new Class<?>[]{ResultSetMetaData.class}, new MetaDataHandler());
+        }
+        if (name.startsWith("get") && args != null && args.length >= 1
+                && (args[0] instanceof Integer || args[0] instanceof String)) {
+            int column = args[0] instanceof Integer ? (Integer) args[0] : findColumn((String) args[0]);
+            Object value = value(column);
+            Class<?> type = method.getReturnType();
+            if (type == String.class) {
+                return value.toString();
+            } else if (type == long.class) {
+                return asNumber(value).longValue();
+            } else if (type == int.class) {
+                return asNumber(value).intValue();
+            } else if (type == double.class) {
+                return asNumber(value).doubleValue();
+            } else if (type == float.class) {
+                return asNumber(value).floatValue();
+            } else if (type == short.class) {
+                return asNumber(value).shortValue();
+            } else if (type == byte.class) {
+                return asNumber(value).byteValue();
+            } else if (type == boolean.class) {
+                return value instanceof Number ? ((Number) value).intValue() != 0 : Boolean.parseBoolean(value.toString());
+            } else if (type == byte[].class) {
+                return value.toString().getBytes(StandardCharsets.UTF_8);
+            } else if (type == Object.class) {
+                return value;
+            } else if (type == java.math.BigDecimal.class) {
+                return new java.math.BigDecimal(value.toString());
+            }
+        }
+        return defaultValue(method.getReturnType());
+    }
+
+    @Override
+    public String toString() {
+        return "FakeResultSet[rows=" + rows + ", columns=" + columns + "]";
+    }
+
+    /**
+     * Behaviour of the fake {@link ResultSetMetaData}.
+     */
+    private class MetaDataHandler extends FakeHandler {
+        @Override
+        Object handle(Object proxy, Method method, String name, Object[] args) {
+            switch (name) {
+                case "getColumnCount":
+                    return columns;
+                case "getColumnLabel":
+                case "getColumnName":
+                    return columnName((Integer) args[0]);
+                case "getColumnType":
+                    return columnType((Integer) args[0]);
+                case "getColumnTypeName":
+                    switch (columnType((Integer) args[0])) {
+                        case Types.BIGINT:
+                            return "BIGINT";
+                        case Types.INTEGER:
+                            return "INTEGER";
+                        case Types.DOUBLE:
+                            return "DOUBLE";
+                        default:
+                            return "VARCHAR";
+                    }
+                case "getColumnClassName":
+                    switch (columnType((Integer) args[0])) {
+                        case Types.BIGINT:
+                            return Long.class.getName();
+                        case Types.INTEGER:
+                            return Integer.class.getName();
+                        case Types.DOUBLE:
+                            return Double.class.getName();
+                        default:
+                            return String.class.getName();
+                    }
+                case "isNullable":
+                    return ResultSetMetaData.columnNoNulls;
+                default:
+                    return defaultValue(method.getReturnType());
+            }
+        }
+    }
+}
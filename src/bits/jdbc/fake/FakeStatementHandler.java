@@ -0,0 +1,211 @@
+package bits.jdbc.fake;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientException;
+import java.sql.SQLTimeoutException;
+import java.sql.SQLTransientConnectionException;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Behaviour of a fake {@link java.sql.Statement}, {@link java.sql.PreparedStatement} or
+ * {@link java.sql.CallableStatement}. Every execution is one simulated round trip, which honours
+ * the query timeout and can be cut short by {@link java.sql.Statement#cancel()}.
+ */
+class FakeStatementHandler extends FakeHandler {
+    private final FakeConnectionHandler connectionHandler;
+    private final Connection connection;
+    private final String sql;
+    private volatile boolean closed;
+    private volatile CountDownLatch running;
+    private boolean closeOnCompletion;
+    private int queryTimeout;
+    private int maxRows;
+    private int fetchSize;
+    private int batchCount;
+    private Object resultSet;
+    private int updateCount = -1;
+
+    FakeStatementHandler(FakeConnectionHandler connectionHandler, Connection connection, String sql) {
+        this.connectionHandler = connectionHandler;
+        this.connection = connection;
+        this.sql = sql;
+    }
+
+    private static boolean isQuery(String sql) {
+        String s = sql.trim();
+        return s.regionMatches(true, 0, "SELECT", 0, 6) || s.regionMatches(true, 0, "WITH", 0, 4);
+    }
+
+    private void checkOpen() throws SQLException {
+        if (closed) {
+            throw new SQLNonTransientException("Statement is closed");
+        }
+        connectionHandler.checkOpen();
+    }
+
+    /**
+     * Simulates one round trip to the server.
+     */
+    private void roundTrip() throws SQLException {
+        checkOpen();
+        FakeDriver.roundTrip();
+        FakeConfig config = connectionHandler.getConfig();
+        long latency = config.jittered(config.getStatementLatencyNanos());
+        long timeout = queryTimeout > 0 ? TimeUnit.SECONDS.toNanos(queryTimeout) : Long.MAX_VALUE;
+        CountDownLatch latch = new CountDownLatch(1);
+        running = latch;
+        try {
+            if (latch.await(Math.min(latency, timeout), TimeUnit.NANOSECONDS)) {
+                throw new SQLException("Statement cancelled", "57014");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted", "08S01", e);
+        } finally {
+            running = null;
+        }
+        if (latency > timeout) {
+            throw new SQLTimeoutException("Query timeout of " + queryTimeout + "s exceeded", "57014");
+        }
+        if (FakeConfig.chance(config.getStatementFailureRate())) {
+            throw new SQLTransientConnectionException("Simulated statement failure", "08S01");
+        }
+    }
+
+    private Object newResultSet(Object statement, int rows) {
+        return Proxy.newProxyInstance(FakeDriver.class.getClassLoader(), new Class<?>[]{ResultSet.class},
+                new FakeResultSetHandler(this, statement, connectionHandler.getConfig().getColumns(), rows));
+    }
+
+    private Object executeQuery(Object proxy) throws SQLException {
+        roundTrip();
+        int rows = connectionHandler.getConfig().getRows();
+        if (maxRows > 0) {
+            rows = Math.min(rows, maxRows);
+        }
+        resultSet = newResultSet(proxy, rows);
+        updateCount = -1;
+        return resultSet;
+    }
+
+    private int executeUpdate() throws SQLException {
+        roundTrip();
+        resultSet = null;
+        updateCount = connectionHandler.getConfig().getUpdateCount();
+        return updateCount;
+    }
+
+    /**
+     * Called by a result set of this statement when it is closed.
+     */
+    void resultSetClosed() {
+        if (closeOnCompletion) {
+            closed = true;
+        }
+    }
+
+    @Override
+    Object handle(Object proxy, Method method, String name, Object[] args) throws Throwable {
+        switch (name) {
+            case "close":
+                closed = true;
+                return null;
+            case "isClosed":
+                return closed;
+            case "cancel":
+                CountDownLatch latch = running;
+                if (latch != null) {
+                    latch.countDown();
+                }
+                return null;
+            case "getConnection":
+                return connection;
+        }
+        checkOpen();
+        String statementSql = (args != null && args.length > 0 && args[0] instanceof String) ? (String) args[0] : sql;
+        switch (name) {
+            case "executeQuery":
+                return executeQuery(proxy);
+            case "executeUpdate":
+                return executeUpdate();
+            case "executeLargeUpdate":
+                return (long) executeUpdate();
+            case "execute":
+                if (statementSql != null && isQuery(statementSql)) {
+                    executeQuery(proxy);
+                    return true;
+                }
+                executeUpdate();
+                return false;
+            case "addBatch":
+                batchCount++;
+                return null;
+            case "clearBatch":
+                batchCount = 0;
+                return null;
+            case "executeBatch":
+            case "executeLargeBatch": {
+                int count = batchCount;
+                batchCount = 0;
+                roundTrip();
+                int updates = connectionHandler.getConfig().getUpdateCount();
+                if (name.equals("executeBatch")) {
+                    int[] counts = new int[count];
+                    Arrays.fill(counts, updates);
+                    return counts;
+                }
+                long[] counts = new long[count];
+                Arrays.fill(counts, updates);
+                return counts;
+            }
+            case "getResultSet":
+                return resultSet;
+            case "getUpdateCount":
+                return updateCount;
+            case "getMoreResults":
+                resultSet = null;
+                updateCount = -1;
+                return false;
+            case "getGeneratedKeys":
+                return newResultSet(proxy, 0);
+            case "closeOnCompletion":
+                closeOnCompletion = true;
+                return null;
+            case "isCloseOnCompletion":
+                return closeOnCompletion;
+            case "setQueryTimeout":
+                queryTimeout = (Integer) args[0];
+                return null;
+            case "getQueryTimeout":
+                return queryTimeout;
+            case "setMaxRows":
+                maxRows = (Integer) args[0];
+                return null;
+            case "getMaxRows":
+                return maxRows;
+            case "setFetchSize":
+                fetchSize = (Integer) args[0];
+                return null;
+            case "getFetchSize":
+                return fetchSize;
+            case "getResultSetType":
+                return ResultSet.TYPE_FORWARD_ONLY;
+            case "getResultSetConcurrency":
+                return ResultSet.CONCUR_READ_ONLY;
+            default:
+                // setters of parameters and everything else are accepted and ignored
+                return defaultValue(method.getReturnType());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "FakeStatement[" + sql + "]";
+    }
+}
@@ -0,0 +1,205 @@
+package bits.jdbc.fake;
+
+import bits.jdbc.Helper.ConnectionPool;
+import bits.jdbc.database.Database;
+import bits.jdbc.database.DatabaseUtils;
+import bits.jdbc.monitor.LatencyHistogram;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drives a {@link Database} from many threads and reports throughput and tail latency. Together
+ * with {@link FakeDriver} it measures pool and library overhead for a given pool configuration
+ * without a database server, e.g.
+ * <pre>
+ * java -cp jdbchelper.jar bits.jdbc.fake.LoadGenerator --pool=8 --threads=64 --seconds=10 \
+ *     --url=jdbc:fake:load?statementLatencyMs=1&amp;jitterMs=0.5
+ * </pre>
+ */
+public class LoadGenerator {
+    /**
+     * The kind of statements every thread runs.
+     */
+    public enum Workload {
+        /**
+         * Point query by id, mapped to ContentValues.
+         */
+        QUERY,
+        /**
+         * Single row update by id.
+         */
+        UPDATE,
+        /**
+         * 80% queries, 20% updates.
+         */
+        MIXED
+    }
+
+    private final Database db;
+    private int threads = 8;
+    private long durationNanos = TimeUnit.SECONDS.toNanos(10);
+    private long warmupNanos = TimeUnit.SECONDS.toNanos(2);
+    private Workload workload = Workload.QUERY;
+    private String table = "bench";
+
+    public LoadGenerator(Database db) {
+        this.db = db;
+    }
+
+    public LoadGenerator(ConnectionPool pool) {
+        this(new Database(pool));
+    }
+
+    public LoadGenerator setThreads(int threads) {
+        this.threads = threads;
+        return this;
+    }
+
+    public LoadGenerator setDuration(long duration, TimeUnit unit) {
+        this.durationNanos = unit.toNanos(duration);
+        return this;
+    }
+
+    public LoadGenerator setWarmup(long warmup, TimeUnit unit) {
+        this.warmupNanos = unit.toNanos(warmup);
+        return this;
+    }
+
+    public LoadGenerator setWorkload(Workload workload) {
+        this.workload = workload;
+        return this;
+    }
+
+    public LoadGenerator setTable(String table) {
+        this.table = table;
+        return this;
+    }
+
+    private void runOperation(ThreadLocalRandom random) throws SQLException {
+        String id = Long.toString(1 + random.nextInt(1_000_000));
+        boolean update = workload == Workload.UPDATE || (workload == Workload.MIXED && random.nextInt(5) == 0);
+        if (update) {
+            db.executeUpdate("UPDATE " + table + " SET name = ? WHERE id = ?", new Object[]{"name-" + id, id});
+        } else {
+            db.rawQuery("SELECT id, name FROM " + table + " WHERE id = ?", new Object[]{id}, 0,
+                    DatabaseUtils.CONTENT_VALUES_MAPPER);
+        }
+    }
+
+    /**
+     * Runs the load and blocks until it has finished.
+     *
+     * @return The measurements taken after the warmup.
+     */
+    public LoadReport run() throws InterruptedException {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final AtomicLong errors = new AtomicLong();
+        final CountDownLatch start = new CountDownLatch(1);
+        final long[] window = new long[2];
+        List<Thread> workers = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            Thread worker = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    long measureFrom = window[0];
+                    long end = window[1];
+                    long now;
+                    while ((now = System.nanoTime()) < end) {
+                        boolean failed = false;
+                        try {
+                            runOperation(random);
+                        } catch (SQLException | RuntimeException e) {
+                            failed = true;
+                        }
+                        if (now >= measureFrom) {
+                            if (failed) {
+                                errors.incrementAndGet();
+                            } else {
+                                latency.record(System.nanoTime() - now);
+                            }
+                        }
+                    }
+                }
+            }, "load-generator-" + i);
+            worker.setDaemon(true);
+            workers.add(worker);
+            worker.start();
+        }
+        window[0] = System.nanoTime() + warmupNanos;
+        window[1] = window[0] + durationNanos;
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return new LoadReport(threads, durationNanos, errors.get(), latency,
+                db.getConnectionPool().getStatistics());
+    }
+
+    /**
+     * Runs a load against a {@link FakeDriver} database and prints the report. Options:
+     * {@code --url}, {@code --pool}, {@code --threads}, {@code --seconds}, {@code --warmup}
+     * and {@code --workload} (QUERY, UPDATE or MIXED).
+     */
+    public static void main(String[] args) throws Exception {
+        String url = FakeConfig.URL_PREFIX + "load?statementLatencyMs=1";
+        int pool = 8;
+        int threads = 32;
+        long seconds = 10;
+        long warmup = 2;
+        Workload workload = Workload.QUERY;
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (!arg.startsWith("--") || eq < 0) {
+                throw new IllegalArgumentException("Expected --option=value but got " + arg);
+            }
+            String value = arg.substring(eq + 1);
+            switch (arg.substring(2, eq)) {
+                case "url":
+                    url = value;
+                    break;
+                case "pool":
+                    pool = Integer.parseInt(value);
+                    break;
+                case "threads":
+                    threads = Integer.parseInt(value);
+                    break;
+                case "seconds":
+                    seconds = Long.parseLong(value);
+                    break;
+                case "warmup":
+                    warmup = Long.parseLong(value);
+                    break;
+                case "workload":
+                    workload = Workload.valueOf(value.toUpperCase());
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + arg);
+            }
+        }
+        ConnectionPool connectionPool = new ConnectionPool(pool, FakeDriver.class.getName(), url, "", "");
+        try {
+            LoadReport report = new LoadGenerator(connectionPool)
+                    .setThreads(threads)
+                    .setDuration(seconds, TimeUnit.SECONDS)
+                    .setWarmup(warmup, TimeUnit.SECONDS)
+                    .setWorkload(workload)
+                    .run();
+            System.out.println("url=" + url + " pool=" + pool + " workload=" + workload);
+            System.out.println(report);
+        } finally {
+            connectionPool.closeAllConnections();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package bits.jdbc.fake;
+
+import bits.jdbc.Helper.PoolStatistics;
+import bits.jdbc.monitor.LatencyHistogram;
+
+/**
+ * Outcome of a {@link LoadGenerator} run.
+ */
+public class LoadReport {
+    private final int threads;
+    private final long elapsedNanos;
+    private final long errors;
+    private final LatencyHistogram latency;
+    private final PoolStatistics poolStatistics;
+
+    LoadReport(int threads, long elapsedNanos, long errors, LatencyHistogram latency,
+               PoolStatistics poolStatistics) {
+        this.threads = threads;
+        this.elapsedNanos = elapsedNanos;
+        this.errors = errors;
+        this.latency = latency;
+        this.poolStatistics = poolStatistics;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Get the length of the measured part of the run in nanoseconds.
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Get the number of successful operations in the measured part of the run.
+     */
+    public long getOperations() {
+        return latency.getCount();
+    }
+
+    /**
+     * Get the number of failed operations in the measured part of the run.
+     */
+    public long getErrors() {
+        return errors;
+    }
+
+    /**
+     * Get the successful operations per second.
+     */
+    public double getThroughput() {
+        return elapsedNanos == 0 ? 0 : latency.getCount() * 1e9 / elapsedNanos;
+    }
+
+    /**
+     * Get the latencies of the successful operations.
+     */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    /**
+     * Get the statistics of the pool at the end of the run.
+     */
+    public PoolStatistics getPoolStatistics() {
+        return poolStatistics;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("threads=%d ops=%d errors=%d throughput=%.1f ops/s%n"
+                        + "latency ms: mean=%.3f p50=%.3f p90=%.3f p99=%.3f p99.9=%.3f max=%.3f%n%s",
+                threads, getOperations(), errors, getThroughput(), latency.getMean() / 1e6,
+                latency.getPercentile(50) / 1e6, latency.getPercentile(90) / 1e6, latency.getPercentile(99) / 1e6,
+                latency.getPercentile(99.9) / 1e6, latency.getMax() / 1e6, poolStatistics);
+    }
+}
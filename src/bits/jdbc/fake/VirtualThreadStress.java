@@ -0,0 +1,193 @@
+package bits.jdbc.fake;
+
+import bits.jdbc.Helper.ConnectionPool;
+import bits.jdbc.Helper.PoolStatistics;
+import bits.jdbc.database.Database;
+import bits.jdbc.database.DatabaseUtils;
+import bits.jdbc.monitor.LatencyHistogram;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs many virtual threads against a small pool on a {@link FakeDriver} database and checks
+ * that every operation completes and the pool ends up consistent. The pool starts empty, so
+ * connections are opened while thousands of threads wait for one. Run with
+ * {@code -Djdk.tracePinnedThreads=full} to have the JVM print any thread that blocks while
+ * pinned to its carrier, e.g.
+ * <pre>
+ * java -Djdk.tracePinnedThreads=full -cp jdbchelper.jar bits.jdbc.fake.VirtualThreadStress \
+ *     --threads=10000 --pool=8 --operations=10
+ * </pre>
+ * Virtual threads need Java 21; on older JVMs the threads fall back to a pool of platform
+ * threads, which cannot show pinning, so a run there says nothing about it. VirtualThreadStressTest
+ * runs a smaller load with the trace enabled and fails on any pinned thread; it is skipped before
+ * Java 21.
+ */
+public class VirtualThreadStress {
+    private final Database db;
+    private int threads = 10000;
+    private int operations = 10;
+
+    public VirtualThreadStress(Database db) {
+        this.db = db;
+    }
+
+    public VirtualThreadStress setThreads(int threads) {
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * Set the number of operations each thread runs. Every fifth is a checkout which changes the
+     * session state, so the release has to reset it; the others are queries through the
+     * {@link Database}.
+     */
+    public VirtualThreadStress setOperations(int operations) {
+        this.operations = operations;
+        return this;
+    }
+
+    /**
+     * Creates an executor starting a virtual thread per task, or null before Java 21. Looked up
+     * reflectively so the library still builds for Java 11.
+     */
+    static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private void runOperation(int i, ThreadLocalRandom random) throws SQLException {
+        if (i % 5 == 4) {
+            ConnectionPool pool = db.getConnectionPool();
+            Connection connection = pool.getConnection();
+            try {
+                connection.setReadOnly(true);
+                connection.setAutoCommit(false);
+            } finally {
+                pool.releaseConnection(connection);
+            }
+        } else {
+            db.rawQuery("SELECT id, name FROM bench WHERE id = ?", new Object[]{1 + random.nextInt(1_000_000)},
+                    0, DatabaseUtils.CONTENT_VALUES_MAPPER);
+        }
+    }
+
+    /**
+     * Runs every thread to completion.
+     *
+     * @return The measurements; the operation count is short of threads * operations if any
+     * failed.
+     */
+    public LoadReport run() throws InterruptedException {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final AtomicLong errors = new AtomicLong();
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        ExecutorService executor = newVirtualThreadExecutor();
+        if (executor == null) {
+            System.err.println("Virtual threads unavailable, falling back to platform threads");
+            executor = Executors.newFixedThreadPool(Math.min(threads, 512), r -> {
+                Thread thread = new Thread(r, "virtual-thread-stress");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        try {
+            for (int t = 0; t < threads; t++) {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            start.await();
+                            ThreadLocalRandom random = ThreadLocalRandom.current();
+                            for (int i = 0; i < operations; i++) {
+                                long begin = System.nanoTime();
+                                try {
+                                    runOperation(i, random);
+                                    latency.record(System.nanoTime() - begin);
+                                } catch (SQLException | RuntimeException e) {
+                                    errors.incrementAndGet();
+                                }
+                            }
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        } finally {
+                            done.countDown();
+                        }
+                    }
+                });
+            }
+            long begin = System.nanoTime();
+            start.countDown();
+            done.await();
+            return new LoadReport(threads, System.nanoTime() - begin, errors.get(), latency,
+                    db.getConnectionPool().getStatistics());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Runs the stress test and prints the report. Options: {@code --url}, {@code --pool},
+     * {@code --threads} and {@code --operations}. Exits with status 1 if an operation failed or
+     * the pool is left inconsistent.
+     */
+    public static void main(String[] args) throws Exception {
+        String url = FakeConfig.URL_PREFIX + "stress?statementLatencyMs=1&connectLatencyMs=20";
+        int pool = 8;
+        int threads = 10000;
+        int operations = 10;
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (!arg.startsWith("--") || eq < 0) {
+                throw new IllegalArgumentException("Expected --option=value but got " + arg);
+            }
+            String value = arg.substring(eq + 1);
+            switch (arg.substring(2, eq)) {
+                case "url":
+                    url = value;
+                    break;
+                case "pool":
+                    pool = Integer.parseInt(value);
+                    break;
+                case "threads":
+                    threads = Integer.parseInt(value);
+                    break;
+                case "operations":
+                    operations = Integer.parseInt(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + arg);
+            }
+        }
+        ConnectionPool connectionPool = new ConnectionPool(0, FakeDriver.class.getName(), url, "", "");
+        connectionPool.setMaxPoolSize(pool);
+        boolean ok;
+        try {
+            LoadReport report = new VirtualThreadStress(new Database(connectionPool))
+                    .setThreads(threads)
+                    .setOperations(operations)
+                    .run();
+            PoolStatistics stats = report.getPoolStatistics();
+            System.out.println("url=" + url + " pool=" + pool + " operations=" + operations);
+            System.out.println(report);
+            ok = report.getErrors() == 0
+                    && report.getOperations() == (long) threads * operations
+                    && stats.getNumInUse() == 0
+                    && stats.getNumCon() <= pool;
+            System.out.println(ok ? "OK" : "FAILED");
+        } finally {
+            connectionPool.closeAllConnections();
+        }
+        System.exit(ok ? 0 : 1);
+    }
+}
@@ -0,0 +1,42 @@
+package bits.jdbc.monitor;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Dispatches every event to a list of listeners, in the order they were added.
+ */
+public class CompositeStatementListener implements StatementListener {
+    private final List<StatementListener> mListeners = new CopyOnWriteArrayList<>();
+
+    public CompositeStatementListener(StatementListener... listeners) {
+        for (StatementListener listener : listeners) {
+            addListener(listener);
+        }
+    }
+
+    public void addListener(StatementListener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("listener == null");
+        }
+        mListeners.add(listener);
+    }
+
+    public void removeListener(StatementListener listener) {
+        mListeners.remove(listener);
+    }
+
+    @Override
+    public void onStatementStart() {
+        for (StatementListener listener : mListeners) {
+            listener.onStatementStart();
+        }
+    }
+
+    @Override
+    public void onStatement(StatementEvent event) {
+        for (StatementListener listener : mListeners) {
+            listener.onStatement(event);
+        }
+    }
+}
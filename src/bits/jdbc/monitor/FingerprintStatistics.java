@@ -0,0 +1,80 @@
+package bits.jdbc.monitor;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency and outcome counters of all statements sharing one {@link SqlFingerprint}.
+ */
+public class FingerprintStatistics {
+    private final String mFingerprint;
+    private final LatencyHistogram mTotal = new LatencyHistogram();
+    private final LatencyHistogram mPoolWait = new LatencyHistogram();
+    private final AtomicLong mRows = new AtomicLong();
+    private final AtomicLong mFailures = new AtomicLong();
+
+    FingerprintStatistics(String fingerprint) {
+        mFingerprint = fingerprint;
+    }
+
+    void record(StatementEvent event) {
+        mTotal.record(event.getTotalNanos());
+        mPoolWait.record(event.getPoolWaitNanos());
+        if (event.getRowCount() > 0) {
+            mRows.addAndGet(event.getRowCount());
+        }
+        if (event.isFailed()) {
+            mFailures.incrementAndGet();
+        }
+    }
+
+    public String getFingerprint() {
+        return mFingerprint;
+    }
+
+    /**
+     * Get the histogram of the total statement time.
+     */
+    public LatencyHistogram getLatency() {
+        return mTotal;
+    }
+
+    /**
+     * Get the histogram of the time spent waiting for a connection.
+     */
+    public LatencyHistogram getPoolWait() {
+        return mPoolWait;
+    }
+
+    public long getCount() {
+        return mTotal.getCount();
+    }
+
+    public long getRows() {
+        return mRows.get();
+    }
+
+    public long getFailures() {
+        return mFailures.get();
+    }
+
+    /**
+     * Get the median total statement time in nanoseconds.
+     */
+    public long getP50() {
+        return mTotal.getPercentile(50);
+    }
+
+    /**
+     * Get the 99th percentile of the total statement time in nanoseconds.
+     */
+    public long getP99() {
+        return mTotal.getPercentile(99);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: count=%d, p50=%.3fms, p99=%.3fms, max=%.3fms, rows=%d, failures=%d",
+                mFingerprint, getCount(), getP50() / 1e6, getP99() / 1e6,
+                mTotal.getMax() / 1e6, getRows(), getFailures());
+    }
+}
@@ -0,0 +1,66 @@
+package bits.jdbc.monitor;
+
+import java.util.ArrayDeque;
+
+/**
+ * Emits a {@code bits.jdbc.Statement} flight recorder event for every statement. The event is
+ * only filled in while a recording with the event enabled is running.
+ * <p>
+ * The event begins in {@link #onStatementStart()} and ends in {@link #onStatement(StatementEvent)},
+ * so its duration is the time of the statement including the pool wait, and the threshold of a
+ * recording drops the quick ones.
+ */
+public class JfrStatementListener implements StatementListener {
+    /**
+     * Most statements a thread may have started without ending, deeper ones are dropped.
+     */
+    private static final int MAX_DEPTH = 32;
+    /**
+     * Stands for a statement started while the event was disabled.
+     */
+    private static final StatementJfrEvent NOT_RECORDED = new StatementJfrEvent();
+
+    private final ThreadLocal<ArrayDeque<StatementJfrEvent>> mRunning = ThreadLocal.withInitial(ArrayDeque::new);
+
+    @Override
+    public void onStatementStart() {
+        ArrayDeque<StatementJfrEvent> running = mRunning.get();
+        if (running.size() == MAX_DEPTH) {
+            // a start without end, e.g. a listener added between the two
+            running.removeLast();
+        }
+        StatementJfrEvent jfrEvent = new StatementJfrEvent();
+        if (jfrEvent.isEnabled()) {
+            jfrEvent.begin();
+            running.push(jfrEvent);
+        } else {
+            running.push(NOT_RECORDED);
+        }
+    }
+
+    @Override
+    public void onStatement(StatementEvent event) {
+        StatementJfrEvent jfrEvent = mRunning.get().poll();
+        if (jfrEvent == null) {
+            // not announced by onStatementStart, record it without a duration
+            jfrEvent = new StatementJfrEvent();
+        }
+        if (jfrEvent == NOT_RECORDED || !jfrEvent.isEnabled()) {
+            return;
+        }
+        jfrEvent.end();
+        if (!jfrEvent.shouldCommit()) {
+            return;
+        }
+        jfrEvent.sql = event.getSql();
+        jfrEvent.fingerprint = event.getFingerprint();
+        jfrEvent.bindCount = event.getBindCount();
+        jfrEvent.rows = event.getRowCount();
+        jfrEvent.poolWait = event.getPoolWaitNanos();
+        jfrEvent.execute = event.getExecuteNanos();
+        jfrEvent.fetch = event.getFetchNanos();
+        jfrEvent.total = event.getTotalNanos();
+        jfrEvent.failure = event.isFailed() ? event.getFailure().toString() : null;
+        jfrEvent.commit();
+    }
+}
@@ -0,0 +1,39 @@
+package bits.jdbc.monitor;
+
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prints every statement whose total time reaches a threshold.
+ */
+public class SlowQueryLog implements StatementListener {
+    private final long mThresholdNanos;
+    private final PrintStream mOut;
+
+    /**
+     * Creates a slow query log printing to {@link System#err}.
+     */
+    public SlowQueryLog(long threshold, TimeUnit unit) {
+        this(threshold, unit, System.err);
+    }
+
+    public SlowQueryLog(long threshold, TimeUnit unit, PrintStream out) {
+        mThresholdNanos = unit.toNanos(threshold);
+        mOut = out;
+    }
+
+    public long getThresholdNanos() {
+        return mThresholdNanos;
+    }
+
+    @Override
+    public void onStatement(StatementEvent event) {
+        if (event.getTotalNanos() < mThresholdNanos) {
+            return;
+        }
+        mOut.println(String.format("Slow statement: %.3f ms (wait %.3f, execute %.3f, fetch %.3f) binds=%d rows=%d%s: %s",
+                event.getTotalNanos() / 1e6, event.getPoolWaitNanos() / 1e6, event.getExecuteNanos() / 1e6,
+                event.getFetchNanos() / 1e6, event.getBindCount(), event.getRowCount(),
+                event.isFailed() ? " failed=" + event.getFailure() : "", event.getSql()));
+    }
+}
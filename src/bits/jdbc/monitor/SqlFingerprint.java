@@ -0,0 +1,145 @@
+package bits.jdbc.monitor;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Normalises SQL text so that statements which differ only in literal values share one
+ * fingerprint.
+ * <p>
+ * String and numeric literals become {@code ?}, comments are dropped, whitespace is collapsed,
+ * everything outside quoted identifiers is lower-cased and lists of placeholders such as
+ * {@code IN (?, ?, ?)} become {@code (?+)}.
+ */
+public final class SqlFingerprint {
+    /**
+     * Upper bound on the number of cached fingerprints; the cache is dropped when it is reached.
+     */
+    private static final int MAX_CACHED = 4096;
+    private static final Pattern PLACEHOLDER_LIST = Pattern.compile("\\(\\?(?: ?, ?\\?)+\\)");
+    private static final ConcurrentHashMap<String, String> sCache = new ConcurrentHashMap<>();
+
+    private SqlFingerprint() {
+    }
+
+    /**
+     * Gets the fingerprint of the given SQL, from the cache if possible.
+     *
+     * @param sql The SQL text.
+     * @return The normalised SQL text.
+     */
+    public static String of(String sql) {
+        if (sql == null) {
+            return null;
+        }
+        String fingerprint = sCache.get(sql);
+        if (fingerprint == null) {
+            fingerprint = normalize(sql);
+            if (sCache.size() >= MAX_CACHED) {
+                sCache.clear();
+            }
+            sCache.put(sql, fingerprint);
+        }
+        return fingerprint;
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+    }
+
+    /**
+     * Normalises the given SQL without consulting the cache.
+     *
+     * @param sql The SQL text.
+     * @return The normalised SQL text.
+     */
+    public static String normalize(String sql) {
+        int n = sql.length();
+        StringBuilder out = new StringBuilder(n);
+        boolean pendingSpace = false;
+        int i = 0;
+        while (i < n) {
+            char c = sql.charAt(i);
+            if (Character.isWhitespace(c)) {
+                pendingSpace = out.length() > 0;
+                i++;
+                continue;
+            }
+            if (c == '-' && i + 1 < n && sql.charAt(i + 1) == '-') {
+                while (i < n && sql.charAt(i) != '\n') {
+                    i++;
+                }
+                pendingSpace = out.length() > 0;
+                continue;
+            }
+            if (c == '/' && i + 1 < n && sql.charAt(i + 1) == '*') {
+                int end = sql.indexOf("*/", i + 2);
+                i = end < 0 ? n : end + 2;
+                pendingSpace = out.length() > 0;
+                continue;
+            }
+            if (pendingSpace) {
+                char last = out.charAt(out.length() - 1);
+                if (last != '(' && last != ' ' && c != ')' && c != ',') {
+                    out.append(' ');
+                }
+                pendingSpace = false;
+            }
+            if (c == '\'') {
+                // string literal, '' is an escaped quote
+                i++;
+                while (i < n) {
+                    if (sql.charAt(i) == '\'') {
+                        if (i + 1 < n && sql.charAt(i + 1) == '\'') {
+                            i += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    i++;
+                }
+                i++;
+                out.append('?');
+            } else if (c == '"' || c == '`') {
+                // quoted identifier, kept verbatim
+                int end = sql.indexOf(c, i + 1);
+                end = end < 0 ? n : end + 1;
+                out.append(sql, i, end);
+                i = end;
+            } else if (Character.isDigit(c)
+                    && (out.length() == 0 || !isIdentifierPart(out.charAt(out.length() - 1)))) {
+                i++;
+                while (i < n) {
+                    char d = sql.charAt(i);
+                    if (Character.isDigit(d) || d == '.' || d == 'x' || d == 'X'
+                            || ((d == 'e' || d == 'E') && i + 1 < n)) {
+                        i++;
+                    } else {
+                        break;
+                    }
+                }
+                if (out.length() > 0 && out.charAt(out.length() - 1) == '-' && out.length() > 1
+                        && !isIdentifierPart(out.charAt(out.length() - 2)) && out.charAt(out.length() - 2) != ')') {
+                    // a negative literal
+                    out.setLength(out.length() - 1);
+                }
+                out.append('?');
+            } else {
+                out.append(Character.toLowerCase(c));
+                i++;
+            }
+            if (c == ',') {
+                out.append(' ');
+                pendingSpace = false;
+                while (i < n && Character.isWhitespace(sql.charAt(i))) {
+                    i++;
+                }
+            }
+        }
+        int len = out.length();
+        if (len > 0 && out.charAt(len - 1) == ' ') {
+            out.setLength(len - 1);
+        }
+        return PLACEHOLDER_LIST.matcher(out).replaceAll("(?+)");
+    }
+}
@@ -0,0 +1,127 @@
+package bits.jdbc.monitor;
+
+/**
+ * Timings and outcome of a single statement.
+ * <p>
+ * The total time is split into the time spent waiting for a pooled connection, the time spent
+ * preparing and executing the statement, and the time spent reading the rows of a result.
+ */
+public final class StatementEvent {
+    /**
+     * Value of {@link #getRowCount()} when the number of rows is not known, e.g. for a
+     * {@link java.sql.ResultSet} handed back to the caller.
+     */
+    public static final long UNKNOWN_ROWS = -1;
+
+    private final String mSql;
+    private final int mBindCount;
+    private final long mRowCount;
+    private final long mPoolWaitNanos;
+    private final long mExecuteNanos;
+    private final long mFetchNanos;
+    private final Throwable mFailure;
+    private String mFingerprint;
+
+    /**
+     * @param sql           The SQL text as executed.
+     * @param bindCount     The number of bind arguments.
+     * @param rowCount      The rows affected by an update, the rows read by a query, or
+     *                      {@link #UNKNOWN_ROWS}.
+     * @param poolWaitNanos Time spent waiting for a connection.
+     * @param executeNanos  Time spent preparing and executing the statement.
+     * @param fetchNanos    Time spent reading the result.
+     * @param failure       The exception the statement failed with, or null.
+     */
+    public StatementEvent(String sql, int bindCount, long rowCount, long poolWaitNanos, long executeNanos,
+                          long fetchNanos, Throwable failure) {
+        mSql = sql;
+        mBindCount = bindCount;
+        mRowCount = rowCount;
+        mPoolWaitNanos = poolWaitNanos;
+        mExecuteNanos = executeNanos;
+        mFetchNanos = fetchNanos;
+        mFailure = failure;
+    }
+
+    /**
+     * Creates an event from the {@link System#nanoTime()} readings taken at the phase boundaries.
+     * A reading of 0 means the statement failed before reaching that phase.
+     */
+    public static StatementEvent fromTimestamps(String sql, int bindCount, long rowCount, long start,
+                                                long acquired, long executed, long end, Throwable failure) {
+        if (acquired == 0) {
+            acquired = end;
+        }
+        if (executed == 0) {
+            executed = end;
+        }
+        return new StatementEvent(sql, bindCount, rowCount, acquired - start, executed - acquired,
+                end - executed, failure);
+    }
+
+    /**
+     * Get the SQL text as executed.
+     */
+    public String getSql() {
+        return mSql;
+    }
+
+    /**
+     * Get the normalised SQL text, see {@link SqlFingerprint}.
+     */
+    public String getFingerprint() {
+        String fingerprint = mFingerprint;
+        if (fingerprint == null) {
+            fingerprint = mFingerprint = SqlFingerprint.of(mSql);
+        }
+        return fingerprint;
+    }
+
+    public int getBindCount() {
+        return mBindCount;
+    }
+
+    /**
+     * Get the rows affected by an update, the rows read by a query, or {@link #UNKNOWN_ROWS}.
+     */
+    public long getRowCount() {
+        return mRowCount;
+    }
+
+    public long getPoolWaitNanos() {
+        return mPoolWaitNanos;
+    }
+
+    public long getExecuteNanos() {
+        return mExecuteNanos;
+    }
+
+    public long getFetchNanos() {
+        return mFetchNanos;
+    }
+
+    /**
+     * Get the sum of pool wait, execute and fetch time.
+     */
+    public long getTotalNanos() {
+        return mPoolWaitNanos + mExecuteNanos + mFetchNanos;
+    }
+
+    /**
+     * Get the exception the statement failed with, or null if it succeeded.
+     */
+    public Throwable getFailure() {
+        return mFailure;
+    }
+
+    public boolean isFailed() {
+        return mFailure != null;
+    }
+
+    @Override
+    public String toString() {
+        return "StatementEvent{sql=" + mSql + ", binds=" + mBindCount + ", rows=" + mRowCount
+                + ", wait=" + mPoolWaitNanos + "ns, execute=" + mExecuteNanos + "ns, fetch=" + mFetchNanos
+                + "ns" + (mFailure != null ? ", failure=" + mFailure : "") + '}';
+    }
+}
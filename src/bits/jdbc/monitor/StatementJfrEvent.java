@@ -0,0 +1,50 @@
+package bits.jdbc.monitor;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight recorder event for a completed statement, see {@link JfrStatementListener}.
+ */
+@Name("bits.jdbc.Statement")
+@Label("JDBC Statement")
+@Category({"JDBC Helper"})
+@Description("A statement executed by bits.jdbc.database.Database")
+@StackTrace(false)
+class StatementJfrEvent extends Event {
+    @Label("SQL")
+    String sql;
+
+    @Label("Fingerprint")
+    String fingerprint;
+
+    @Label("Bind Count")
+    int bindCount;
+
+    @Label("Rows")
+    long rows;
+
+    @Label("Pool Wait")
+    @Timespan(Timespan.NANOSECONDS)
+    long poolWait;
+
+    @Label("Execute")
+    @Timespan(Timespan.NANOSECONDS)
+    long execute;
+
+    @Label("Fetch")
+    @Timespan(Timespan.NANOSECONDS)
+    long fetch;
+
+    @Label("Total")
+    @Timespan(Timespan.NANOSECONDS)
+    long total;
+
+    @Label("Failure")
+    String failure;
+}
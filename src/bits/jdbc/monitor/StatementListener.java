@@ -0,0 +1,25 @@
+package bits.jdbc.monitor;
+
+/**
+ * Receives an event after every statement a {@link bits.jdbc.database.Database} has executed.
+ * <p>
+ * Listeners are called on the thread which ran the statement, after the connection has been
+ * returned to the pool, so they should be quick and must not throw.
+ */
+public interface StatementListener {
+    /**
+     * Called on the thread which runs a statement right before it waits for a connection, for
+     * listeners which have to take their own start time. Every call is followed by a call of
+     * {@link #onStatement(StatementEvent)} on the same thread; statements run by a row mapper
+     * nest inside the one reading the rows.
+     */
+    default void onStatementStart() {
+    }
+
+    /**
+     * Called once a statement has completed, successfully or not.
+     *
+     * @param event The timings and outcome of the statement.
+     */
+    void onStatement(StatementEvent event);
+}
@@ -0,0 +1,59 @@
+package bits.jdbc.monitor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps a latency histogram per SQL fingerprint.
+ */
+public class StatementStatistics implements StatementListener {
+    private final ConcurrentHashMap<String, FingerprintStatistics> mStatistics = new ConcurrentHashMap<>();
+
+    @Override
+    public void onStatement(StatementEvent event) {
+        String fingerprint = event.getFingerprint();
+        FingerprintStatistics statistics = mStatistics.get(fingerprint);
+        if (statistics == null) {
+            FingerprintStatistics created = new FingerprintStatistics(fingerprint);
+            statistics = mStatistics.putIfAbsent(fingerprint, created);
+            if (statistics == null) {
+                statistics = created;
+            }
+        }
+        statistics.record(event);
+    }
+
+    /**
+     * Gets the statistics of one fingerprint.
+     *
+     * @param fingerprint The fingerprint, see {@link SqlFingerprint#of(String)}.
+     * @return The statistics, or null if no such statement has run.
+     */
+    public FingerprintStatistics getStatistics(String fingerprint) {
+        return mStatistics.get(fingerprint);
+    }
+
+    /**
+     * Gets the statistics of all fingerprints, slowest 99th percentile first.
+     */
+    public List<FingerprintStatistics> getAllStatistics() {
+        List<FingerprintStatistics> all = new ArrayList<>(mStatistics.values());
+        Collections.sort(all, new Comparator<FingerprintStatistics>() {
+            @Override
+            public int compare(FingerprintStatistics a, FingerprintStatistics b) {
+                return Long.compare(b.getP99(), a.getP99());
+            }
+        });
+        return all;
+    }
+
+    /**
+     * Forgets all recorded statements.
+     */
+    public void reset() {
+        mStatistics.clear();
+    }
+}
@@ -0,0 +1,242 @@
+package bits.jdbc.spill;
+
+import bits.jdbc.utils.VarInts;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Seekable, re-iterable cursor over the rows of a {@link SpilledResult}. Column indexes are
+ * 0-based. Values are decoded straight from the mapped file when they are read.
+ */
+public class SpillCursor {
+    private final SpilledResult mResult;
+    private final int[] mValueOffsets;
+    private ByteBuffer mRow;
+    private int mPosition = -1;
+
+    SpillCursor(SpilledResult result) {
+        mResult = result;
+        mValueOffsets = new int[result.getColumnCount()];
+    }
+
+    /**
+     * Get the number of rows.
+     */
+    public int getCount() {
+        return mResult.getRowCount();
+    }
+
+    /**
+     * Get the current row, -1 before the first row and {@link #getCount()} after the last.
+     */
+    public int getPosition() {
+        return mPosition;
+    }
+
+    /**
+     * Moves the cursor to the given row, which may be -1 or {@link #getCount()} to move before
+     * the first or after the last row.
+     *
+     * @return true if the cursor is on a row.
+     */
+    public boolean moveToPosition(int position) {
+        int count = mResult.getRowCount();
+        if (position < -1 || position > count) {
+            throw new IndexOutOfBoundsException("Position " + position + " of " + count);
+        }
+        mPosition = position;
+        mRow = null;
+        return position >= 0 && position < count;
+    }
+
+    public boolean moveToFirst() {
+        return moveToPosition(0);
+    }
+
+    public boolean moveToNext() {
+        return mPosition < mResult.getRowCount() && moveToPosition(mPosition + 1);
+    }
+
+    public boolean moveToPrevious() {
+        return mPosition >= 0 && moveToPosition(mPosition - 1);
+    }
+
+    public boolean moveToLast() {
+        return moveToPosition(mResult.getRowCount() - 1);
+    }
+
+    /**
+     * Get the result this cursor reads.
+     */
+    public SpilledResult getResult() {
+        return mResult;
+    }
+
+    /**
+     * Positions the row buffer at the tag of the given column.
+     */
+    private ByteBuffer seek(int column) {
+        if (mRow == null) {
+            if (mPosition < 0 || mPosition >= mResult.getRowCount()) {
+                throw new IllegalStateException("Cursor is not on a row");
+            }
+            ByteBuffer row = mResult.rowBuffer(mPosition);
+            for (int i = 0; i < mValueOffsets.length; i++) {
+                mValueOffsets[i] = row.position();
+                skipValue(row);
+            }
+            mRow = row;
+        }
+        mRow.position(mValueOffsets[column]);
+        return mRow;
+    }
+
+    private static void skipValue(ByteBuffer row) {
+        byte tag = row.get();
+        switch (tag) {
+            case SpillFormat.LONG:
+                VarInts.readVarLong(row);
+                break;
+            case SpillFormat.DOUBLE:
+                row.position(row.position() + 8);
+                break;
+            case SpillFormat.STRING:
+            case SpillFormat.BYTES:
+                int length = VarInts.readVarInt(row);
+                row.position(row.position() + length);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Returns true if the value of the column is null.
+     */
+    public boolean isNull(int column) {
+        return seek(column).get() == SpillFormat.NULL;
+    }
+
+    /**
+     * Gets the value of the column as a long; 0 if it is null.
+     */
+    public long getLong(int column) {
+        ByteBuffer row = seek(column);
+        byte tag = row.get();
+        switch (tag) {
+            case SpillFormat.NULL:
+                return 0;
+            case SpillFormat.LONG:
+                return VarInts.unZigZag(VarInts.readVarLong(row));
+            case SpillFormat.DOUBLE:
+                return (long) row.getDouble();
+            case SpillFormat.TRUE:
+                return 1;
+            case SpillFormat.FALSE:
+                return 0;
+            case SpillFormat.STRING:
+                return Long.parseLong(readString(row));
+            default:
+                throw new IllegalStateException("Column " + column + " holds bytes");
+        }
+    }
+
+    public int getInt(int column) {
+        return (int) getLong(column);
+    }
+
+    /**
+     * Gets the value of the column as a double; 0 if it is null.
+     */
+    public double getDouble(int column) {
+        ByteBuffer row = seek(column);
+        byte tag = row.get();
+        switch (tag) {
+            case SpillFormat.DOUBLE:
+                return row.getDouble();
+            case SpillFormat.STRING:
+                return Double.parseDouble(readString(row));
+            default:
+                row.position(row.position() - 1);
+                return getLong(column);
+        }
+    }
+
+    public boolean getBoolean(int column) {
+        return getLong(column) != 0;
+    }
+
+    /**
+     * Gets the value of the column as a String, or null.
+     */
+    public String getString(int column) {
+        ByteBuffer row = seek(column);
+        byte tag = row.get();
+        switch (tag) {
+            case SpillFormat.NULL:
+                return null;
+            case SpillFormat.STRING:
+                return readString(row);
+            case SpillFormat.LONG:
+                return Long.toString(VarInts.unZigZag(VarInts.readVarLong(row)));
+            case SpillFormat.DOUBLE:
+                return Double.toString(row.getDouble());
+            case SpillFormat.TRUE:
+                return "true";
+            case SpillFormat.FALSE:
+                return "false";
+            default:
+                return new String(readBytes(row), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Gets the value of a STRING or BYTES column as bytes, or null.
+     */
+    public byte[] getBytes(int column) {
+        ByteBuffer row = seek(column);
+        byte tag = row.get();
+        if (tag == SpillFormat.NULL) {
+            return null;
+        }
+        if (tag != SpillFormat.STRING && tag != SpillFormat.BYTES) {
+            throw new IllegalStateException("Column " + column + " does not hold bytes");
+        }
+        return readBytes(row);
+    }
+
+    /**
+     * Gets the value of the column as a Long, Double, Boolean, String or byte[], or null.
+     */
+    public Object getObject(int column) {
+        ByteBuffer row = seek(column);
+        byte tag = row.get();
+        switch (tag) {
+            case SpillFormat.NULL:
+                return null;
+            case SpillFormat.LONG:
+                return VarInts.unZigZag(VarInts.readVarLong(row));
+            case SpillFormat.DOUBLE:
+                return row.getDouble();
+            case SpillFormat.TRUE:
+                return Boolean.TRUE;
+            case SpillFormat.FALSE:
+                return Boolean.FALSE;
+            case SpillFormat.STRING:
+                return readString(row);
+            default:
+                return readBytes(row);
+        }
+    }
+
+    private static byte[] readBytes(ByteBuffer row) {
+        byte[] bytes = new byte[VarInts.readVarInt(row)];
+        row.get(bytes);
+        return bytes;
+    }
+
+    private static String readString(ByteBuffer row) {
+        return new String(readBytes(row), StandardCharsets.UTF_8);
+    }
+}
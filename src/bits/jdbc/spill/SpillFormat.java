@@ -0,0 +1,61 @@
+package bits.jdbc.spill;
+
+import java.sql.Types;
+
+/**
+ * Binary row format of a spill file. Every value starts with a type tag:
+ * <ul>
+ * <li>{@link #NULL} - no payload</li>
+ * <li>{@link #LONG} - zigzag variable length long</li>
+ * <li>{@link #DOUBLE} - 8 byte IEEE 754 double</li>
+ * <li>{@link #TRUE}, {@link #FALSE} - no payload</li>
+ * <li>{@link #STRING} - variable length byte count, then UTF-8 bytes</li>
+ * <li>{@link #BYTES} - variable length byte count, then the bytes</li>
+ * </ul>
+ * Rows never straddle a {@link #SEGMENT_SIZE} boundary, so that every row lies in one mapped
+ * segment of the file.
+ */
+final class SpillFormat {
+    static final byte NULL = 0;
+    static final byte LONG = 1;
+    static final byte DOUBLE = 2;
+    static final byte TRUE = 3;
+    static final byte FALSE = 4;
+    static final byte STRING = 5;
+    static final byte BYTES = 6;
+
+    static final int SEGMENT_SHIFT = 30;
+    static final long SEGMENT_SIZE = 1L << SEGMENT_SHIFT;
+
+    private SpillFormat() {
+    }
+
+    /**
+     * Gets the tag used for the non-null values of a column of the given {@link Types} type.
+     */
+    static byte tagFor(int jdbcType) {
+        switch (jdbcType) {
+            case Types.BIGINT:
+            case Types.INTEGER:
+            case Types.SMALLINT:
+            case Types.TINYINT:
+            case Types.DATE:
+            case Types.TIMESTAMP:
+                return LONG;
+            case Types.DOUBLE:
+            case Types.FLOAT:
+            case Types.REAL:
+                return DOUBLE;
+            case Types.BIT:
+            case Types.BOOLEAN:
+                return TRUE;
+            case Types.BINARY:
+            case Types.VARBINARY:
+            case Types.LONGVARBINARY:
+            case Types.BLOB:
+                return BYTES;
+            default:
+                return STRING;
+        }
+    }
+}
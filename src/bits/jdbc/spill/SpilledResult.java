@@ -0,0 +1,323 @@
+package bits.jdbc.spill;
+
+import bits.jdbc.utils.VarInts;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.sql.Blob;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Arrays;
+
+/**
+ * A query result drained into a compact binary temp file and memory-mapped for reading, so the
+ * connection can be released at once and the rows re-read any number of times, in any order,
+ * without holding them on the heap. Open {@link #cursor()}s to read the rows and {@link #close()}
+ * the result to delete the file.
+ * <p>
+ * DATE and TIMESTAMP values are kept as epoch milliseconds; types without a compact
+ * representation are kept as their String value.
+ */
+public class SpilledResult implements Closeable {
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    private final File mFile;
+    private final String[] mColumnNames;
+    private final int[] mColumnTypes;
+    private final long[] mRowOffsets;
+    private final int mRowCount;
+    private final MappedByteBuffer[] mSegments;
+    private volatile boolean mClosed;
+
+    private SpilledResult(File file, String[] columnNames, int[] columnTypes, long[] rowOffsets, int rowCount,
+                          MappedByteBuffer[] segments) {
+        mFile = file;
+        mColumnNames = columnNames;
+        mColumnTypes = columnTypes;
+        mRowOffsets = rowOffsets;
+        mRowCount = rowCount;
+        mSegments = segments;
+    }
+
+    /**
+     * Reads all remaining rows of the result set into a new temp file.
+     *
+     * @param resultSet The result set, positioned before the first row to read.
+     * @param directory The directory for the temp file, or null for the default temp directory.
+     * @return The spilled rows.
+     * @throws SQLException if reading the result or writing the file fails.
+     */
+    public static SpilledResult spill(ResultSet resultSet, File directory) throws SQLException {
+        File file;
+        try {
+            file = File.createTempFile("jdbchelper-spill", ".bin", directory);
+        } catch (IOException e) {
+            throw new SQLException("Unable to create spill file", e);
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            ResultSetMetaData metaData = resultSet.getMetaData();
+            int columnCount = metaData.getColumnCount();
+            String[] names = new String[columnCount];
+            int[] types = new int[columnCount];
+            byte[] tags = new byte[columnCount];
+            for (int i = 0; i < columnCount; i++) {
+                names[i] = metaData.getColumnLabel(i + 1);
+                types[i] = metaData.getColumnType(i + 1);
+                tags[i] = SpillFormat.tagFor(types[i]);
+            }
+
+            ByteBuffer out = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+            ByteBuffer row = ByteBuffer.allocate(1024);
+            long[] offsets = new long[1024];
+            int rowCount = 0;
+            long position = 0;
+            while (resultSet.next()) {
+                row.clear();
+                for (int i = 0; i < columnCount; i++) {
+                    row = writeValue(row, resultSet, i + 1, types[i], tags[i]);
+                }
+                row.flip();
+                int length = row.remaining();
+                if (length > SpillFormat.SEGMENT_SIZE) {
+                    throw new SQLException("Row " + rowCount + " is too large to spill: " + length + " bytes");
+                }
+                long segmentEnd = ((position >>> SpillFormat.SEGMENT_SHIFT) + 1) << SpillFormat.SEGMENT_SHIFT;
+                if (position + length > segmentEnd) {
+                    // pad so the row starts in the next segment
+                    flush(channel, out);
+                    position = segmentEnd;
+                    channel.position(position);
+                }
+                if (rowCount == offsets.length) {
+                    offsets = Arrays.copyOf(offsets, offsets.length * 2);
+                }
+                offsets[rowCount++] = position;
+                position += length;
+                if (out.remaining() < length) {
+                    flush(channel, out);
+                    if (length > out.capacity()) {
+                        while (row.hasRemaining()) {
+                            channel.write(row);
+                        }
+                        continue;
+                    }
+                }
+                out.put(row);
+            }
+            flush(channel, out);
+
+            int segmentCount = (int) ((position + SpillFormat.SEGMENT_SIZE - 1) >>> SpillFormat.SEGMENT_SHIFT);
+            MappedByteBuffer[] segments = new MappedByteBuffer[segmentCount];
+            for (int i = 0; i < segmentCount; i++) {
+                long start = (long) i << SpillFormat.SEGMENT_SHIFT;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                        Math.min(SpillFormat.SEGMENT_SIZE, position - start));
+            }
+            return new SpilledResult(file, names, types, offsets, rowCount, segments);
+        } catch (IOException e) {
+            deleteFile(file);
+            throw new SQLException("Unable to write spill file " + file, e);
+        } catch (SQLException | RuntimeException e) {
+            deleteFile(file);
+            throw e;
+        }
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer out) throws IOException {
+        out.flip();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+        out.clear();
+    }
+
+    private static ByteBuffer ensureRemaining(ByteBuffer buffer, int needed) {
+        if (buffer.remaining() >= needed) {
+            return buffer;
+        }
+        ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + needed));
+        buffer.flip();
+        larger.put(buffer);
+        return larger;
+    }
+
+    private static ByteBuffer writeBytes(ByteBuffer row, byte tag, byte[] bytes) {
+        row = ensureRemaining(row, 1 + 5 + bytes.length);
+        row.put(tag);
+        VarInts.writeVarInt(row, bytes.length);
+        row.put(bytes);
+        return row;
+    }
+
+    /**
+     * Appends the value of one column of the current row.
+     *
+     * @return The row buffer, which may have been replaced by a larger one.
+     */
+    private static ByteBuffer writeValue(ByteBuffer row, ResultSet resultSet, int index, int type, byte tag)
+            throws SQLException {
+        row = ensureRemaining(row, 11);
+        switch (tag) {
+            case SpillFormat.LONG: {
+                long value;
+                boolean isNull;
+                if (type == Types.DATE || type == Types.TIMESTAMP) {
+                    Timestamp timestamp = resultSet.getTimestamp(index);
+                    isNull = timestamp == null;
+                    value = isNull ? 0 : timestamp.getTime();
+                } else {
+                    value = resultSet.getLong(index);
+                    isNull = resultSet.wasNull();
+                }
+                if (isNull) {
+                    row.put(SpillFormat.NULL);
+                } else {
+                    row.put(SpillFormat.LONG);
+                    VarInts.writeVarLong(row, VarInts.zigZag(value));
+                }
+                return row;
+            }
+            case SpillFormat.DOUBLE: {
+                double value = resultSet.getDouble(index);
+                if (resultSet.wasNull()) {
+                    row.put(SpillFormat.NULL);
+                } else {
+                    row.put(SpillFormat.DOUBLE);
+                    row.putDouble(value);
+                }
+                return row;
+            }
+            case SpillFormat.TRUE: {
+                boolean value = resultSet.getBoolean(index);
+                row.put(resultSet.wasNull() ? SpillFormat.NULL : value ? SpillFormat.TRUE : SpillFormat.FALSE);
+                return row;
+            }
+            case SpillFormat.BYTES: {
+                byte[] value;
+                if (type == Types.BLOB) {
+                    Blob blob = resultSet.getBlob(index);
+                    value = blob == null ? null : blob.getBytes(1, (int) blob.length());
+                } else {
+                    value = resultSet.getBytes(index);
+                }
+                if (value == null) {
+                    row.put(SpillFormat.NULL);
+                    return row;
+                }
+                return writeBytes(row, SpillFormat.BYTES, value);
+            }
+            default: {
+                String value = resultSet.getString(index);
+                if (value == null) {
+                    row.put(SpillFormat.NULL);
+                    return row;
+                }
+                return writeBytes(row, SpillFormat.STRING, value.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    private static void deleteFile(File file) {
+        if (!file.delete() && file.exists()) {
+            file.deleteOnExit();
+        }
+    }
+
+    /**
+     * Get the number of rows.
+     */
+    public int getRowCount() {
+        return mRowCount;
+    }
+
+    /**
+     * Get the number of columns.
+     */
+    public int getColumnCount() {
+        return mColumnNames.length;
+    }
+
+    /**
+     * Gets the label of a column.
+     *
+     * @param column The 0-based column index.
+     */
+    public String getColumnName(int column) {
+        return mColumnNames[column];
+    }
+
+    /**
+     * Gets the {@link Types} type of a column.
+     *
+     * @param column The 0-based column index.
+     */
+    public int getColumnType(int column) {
+        return mColumnTypes[column];
+    }
+
+    /**
+     * Gets the 0-based index of a column by its label, ignoring case.
+     *
+     * @return The index, or -1 if there is no such column.
+     */
+    public int getColumnIndex(String name) {
+        for (int i = 0; i < mColumnNames.length; i++) {
+            if (mColumnNames[i].equalsIgnoreCase(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Get the spill file.
+     */
+    public File getFile() {
+        return mFile;
+    }
+
+    /**
+     * Opens a new cursor positioned before the first row. Cursors are independent of each other
+     * but a single cursor must not be shared between threads.
+     */
+    public SpillCursor cursor() {
+        if (mClosed) {
+            throw new IllegalStateException("Spilled result is closed");
+        }
+        return new SpillCursor(this);
+    }
+
+    /**
+     * Gets a private view of the mapped segment holding the given row, positioned at the row.
+     */
+    ByteBuffer rowBuffer(int row) {
+        if (mClosed) {
+            throw new IllegalStateException("Spilled result is closed");
+        }
+        long offset = mRowOffsets[row];
+        ByteBuffer segment = mSegments[(int) (offset >>> SpillFormat.SEGMENT_SHIFT)].duplicate();
+        segment.position((int) (offset & (SpillFormat.SEGMENT_SIZE - 1)));
+        return segment;
+    }
+
+    /**
+     * Deletes the spill file. Open cursors can no longer be used.
+     */
+    @Override
+    public void close() {
+        if (!mClosed) {
+            mClosed = true;
+            deleteFile(mFile);
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package bits.jdbc.utils;
+
+import java.util.Arrays;
+
+/**
+ * Hash map from primitive long keys to non-null values, without boxing the keys or allocating an
+ * entry per mapping. Open addressing with linear probing; the table doubles at 50% load. Not
+ * thread safe.
+ */
+public class LongHashMap<V> {
+    private long[] mKeys;
+    /**
+     * Values by slot; null marks a free slot.
+     */
+    private Object[] mValues;
+    private int mSize;
+    private int mMask;
+
+    public LongHashMap() {
+        this(16);
+    }
+
+    /**
+     * @param expectedSize The number of mappings the map holds without growing.
+     */
+    public LongHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize) * 2 - 1) << 1;
+        mKeys = new long[capacity];
+        mValues = new Object[capacity];
+        mMask = capacity - 1;
+    }
+
+    private static int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+    /**
+     * Get the slot of the key, or of the free slot where it would go.
+     */
+    private int slot(long key) {
+        int i = hash(key) & mMask;
+        while (mValues[i] != null && mKeys[i] != key) {
+            i = (i + 1) & mMask;
+        }
+        return i;
+    }
+
+    /**
+     * Get the value of the key.
+     *
+     * @return The value, or null if the key is not mapped.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        return (V) mValues[slot(key)];
+    }
+
+    public boolean containsKey(long key) {
+        return mValues[slot(key)] != null;
+    }
+
+    /**
+     * Maps the key to the value.
+     *
+     * @return The previous value of the key, or null.
+     * @throws NullPointerException if value is null.
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if (value == null) {
+            throw new NullPointerException("Null value for key " + key);
+        }
+        int i = slot(key);
+        Object previous = mValues[i];
+        mKeys[i] = key;
+        mValues[i] = value;
+        if (previous == null && ++mSize > (mMask + 1) / 2) {
+            grow();
+        }
+        return (V) previous;
+    }
+
+    /**
+     * Copies all mappings of the other map into this one.
+     */
+    @SuppressWarnings("unchecked")
+    public void putAll(LongHashMap<? extends V> other) {
+        for (int i = 0; i < other.mValues.length; i++) {
+            if (other.mValues[i] != null) {
+                put(other.mKeys[i], (V) other.mValues[i]);
+            }
+        }
+    }
+
+    /**
+     * Removes the mapping of the key.
+     *
+     * @return The removed value, or null if the key was not mapped.
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        int i = slot(key);
+        Object removed = mValues[i];
+        if (removed == null) {
+            return null;
+        }
+        mValues[i] = null;
+        mSize--;
+        // shift back the following entries of the probe run which can no longer be reached
+        int free = i;
+        int j = (i + 1) & mMask;
+        while (mValues[j] != null) {
+            int home = hash(mKeys[j]) & mMask;
+            if (((j - home) & mMask) >= ((j - free) & mMask)) {
+                mKeys[free] = mKeys[j];
+                mValues[free] = mValues[j];
+                mValues[j] = null;
+                free = j;
+            }
+            j = (j + 1) & mMask;
+        }
+        return (V) removed;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(mValues, null);
+        mSize = 0;
+    }
+
+    /**
+     * Get the keys, in no particular order.
+     */
+    public long[] keys() {
+        long[] keys = new long[mSize];
+        int n = 0;
+        for (int i = 0; i < mValues.length; i++) {
+            if (mValues[i] != null) {
+                keys[n++] = mKeys[i];
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Calls the visitor for every mapping, in no particular order.
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(Visitor<? super V> visitor) {
+        for (int i = 0; i < mValues.length; i++) {
+            if (mValues[i] != null) {
+                visitor.visit(mKeys[i], (V) mValues[i]);
+            }
+        }
+    }
+
+    private void grow() {
+        long[] keys = mKeys;
+        Object[] values = mValues;
+        mKeys = new long[keys.length * 2];
+        mValues = new Object[values.length * 2];
+        mMask = mKeys.length - 1;
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                int j = slot(keys[i]);
+                mKeys[j] = keys[i];
+                mValues[j] = values[i];
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder s = new StringBuilder("{");
+        forEach(new Visitor<V>() {
+            @Override
+            public void visit(long key, V value) {
+                s.append(s.length() > 1 ? ", " : "").append(key).append('=').append(value);
+            }
+        });
+        return s.append('}').toString();
+    }
+
+    /**
+     * Receives the mappings of {@link #forEach(Visitor)}.
+     */
+    public interface Visitor<V> {
+        void visit(long key, V value);
+    }
+}
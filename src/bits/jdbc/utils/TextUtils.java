@@ -1,8 +1,5 @@
 package bits.jdbc.utils;
 
-import com.sun.istack.internal.Nullable;
-import sun.text.normalizer.UCharacter;
-
 public class TextUtils {
 
     /**
@@ -11,26 +8,26 @@ public class TextUtils {
      * @param str the string to be examined
      * @return true if str is null or zero length
      */
-    public static boolean isEmpty(@Nullable CharSequence str) {
+    public static boolean isEmpty(CharSequence str) {
         return str == null || str.length() == 0;
     }
 
     /**
 
      */
-    public static String nullIfEmpty(@Nullable String str) {
+    public static String nullIfEmpty(String str) {
         return isEmpty(str) ? null : str;
     }
 
 
-    public static String emptyIfNull(@Nullable String str) {
+    public static String emptyIfNull(String str) {
         return str == null ? "" : str;
     }
 
     /**
 
      */
-    public static int length(@Nullable String s) {
+    public static int length(String s) {
         return isEmpty(s) ? 0 : s.length();
     }
 
@@ -0,0 +1,110 @@
+package bits.jdbc.utils;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Variable length encoding of integers, 7 bits per byte with the high bit set on all but the
+ * last byte. Signed values are zigzag encoded first so that small negative numbers stay short.
+ */
+public class VarInts {
+
+    private VarInts() {
+    }
+
+    /**
+     * Maps signed to unsigned values: 0, -1, 1, -2, ... become 0, 1, 2, 3, ...
+     */
+    public static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    /**
+     * Reverses {@link #zigZag(long)}.
+     */
+    public static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Returns the number of bytes {@link #writeVarLong(ByteBuffer, long)} needs for the value.
+     */
+    public static int varLongSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * Writes an unsigned variable length long.
+     */
+    public static void writeVarLong(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * Writes an unsigned variable length int.
+     */
+    public static void writeVarInt(ByteBuffer buffer, int value) {
+        writeVarLong(buffer, value & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Reads an unsigned variable length long.
+     *
+     * @throws IllegalArgumentException if the encoding is longer than 10 bytes.
+     */
+    public static long readVarLong(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed variable length integer");
+    }
+
+    /**
+     * Reads an unsigned variable length int.
+     */
+    public static int readVarInt(ByteBuffer buffer) {
+        long value = readVarLong(buffer);
+        if ((value >>> 32) != 0) {
+            throw new IllegalArgumentException("Variable length integer out of range: " + value);
+        }
+        return (int) value;
+    }
+
+    /**
+     * Returns true if the buffer holds a complete variable length integer at its position.
+     */
+    public static boolean hasVarLong(ByteBuffer buffer) {
+        int limit = Math.min(buffer.limit(), buffer.position() + 10);
+        for (int i = buffer.position(); i < limit; i++) {
+            if (buffer.get(i) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads an unsigned variable length long, failing with {@link BufferUnderflowException} and
+     * leaving the position unchanged if it is incomplete.
+     */
+    public static long readVarLongIfComplete(ByteBuffer buffer) {
+        if (!hasVarLong(buffer)) {
+            throw new BufferUnderflowException();
+        }
+        return readVarLong(buffer);
+    }
+}
@@ -0,0 +1,187 @@
+package bits.jdbc.Helper;
+
+import bits.jdbc.fake.FakeDriver;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConnectionPoolTest {
+
+    /**
+     * A FakeDriver connection whose setReadOnly(false), as run by the session reset, blocks until
+     * released.
+     */
+    private static Connection blockingResetConnection(final CountDownLatch entered, final CountDownLatch release)
+            throws SQLException {
+        return new DelegatingConnection(new FakeDriver().connect("jdbc:fake:reset", new Properties())) {
+            @Override
+            public void setReadOnly(boolean readOnly) throws SQLException {
+                if (!readOnly) {
+                    entered.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        throw new SQLException(e);
+                    }
+                }
+                super.setReadOnly(readOnly);
+            }
+        };
+    }
+
+    @Test
+    void closingPoolDuringSessionResetCountsConnectionOnce() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        final ConnectionPool pool = new ConnectionPool(blockingResetConnection(entered, release));
+        final Connection connection = pool.getConnection();
+        connection.setReadOnly(true);
+
+        Thread releasing = new Thread(() -> pool.releaseConnection(connection));
+        releasing.start();
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+        pool.closeAllConnections();
+        release.countDown();
+        releasing.join(5000);
+
+        PoolStatistics stats = pool.getStatistics();
+        assertEquals(0, stats.getNumInUse());
+        assertEquals(0, pool.getNumInUse(null));
+        assertEquals(0, stats.getNumCon());
+    }
+
+    @Test
+    void warmUpOpensConnectionsInParallel() throws Exception {
+        ConnectionPool pool = new ConnectionPool(0, FakeDriver.class.getName(), "jdbc:fake:warmup", "", "");
+        try {
+            assertEquals(4, (int) pool.warmUpAsync(4).get(5, TimeUnit.SECONDS));
+            assertEquals(4, pool.getNumAvailableCon());
+        } finally {
+            pool.closeAllConnections();
+        }
+    }
+
+    @Test
+    void warmUpOfUnreachableDatabaseConnectsOnceAndTripsBreaker() throws Exception {
+        ConnectionPool pool = new ConnectionPool(0, FakeDriver.class.getName(),
+                "jdbc:fake:warmupdown?connectFailureRate=1", "", "");
+        pool.setReconnectBackoff(1, 1, TimeUnit.HOURS);
+        try {
+            assertEquals(0, (int) pool.warmUpAsync(8).get(5, TimeUnit.SECONDS));
+            assertTrue(pool.isCircuitOpen());
+            assertEquals(1, pool.getStatistics().getNumConnectFailures());
+
+            // skipped while the breaker is open
+            assertEquals(0, (int) pool.warmUpAsync(8).get(5, TimeUnit.SECONDS));
+            assertEquals(1, pool.getStatistics().getNumConnectFailures());
+        } finally {
+            pool.closeAllConnections();
+        }
+    }
+
+    private static void awaitWaiting(ConnectionPool pool, int waiting) throws InterruptedException {
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (pool.getStatistics().getNumWaiting() < waiting) {
+            assertTrue(System.nanoTime() < end, "threads did not start waiting");
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    void laneMinimumIsKeptForItsLane() throws Exception {
+        ConnectionPool pool = new ConnectionPool(0, FakeDriver.class.getName(), "jdbc:fake:lanemin", "", "");
+        pool.setMaxPoolSize(2);
+        pool.addLane(new PoolLane("batch", 0, 2, 0));
+        pool.addLane(new PoolLane("web", 1, 2, 10));
+        try {
+            Connection batch = pool.getConnection("batch");
+            assertThrows(SQLTimeoutException.class, () -> pool.getConnection("batch", 50, TimeUnit.MILLISECONDS));
+            Connection web = pool.getConnection("web", 1, TimeUnit.SECONDS);
+            assertEquals(1, pool.getNumInUse("batch"));
+            assertEquals(1, pool.getNumInUse("web"));
+            pool.releaseConnection(web);
+            pool.releaseConnection(batch);
+        } finally {
+            pool.closeAllConnections();
+        }
+    }
+
+    @Test
+    void higherPriorityLaneIsAdmittedFirst() throws Exception {
+        final ConnectionPool pool = new ConnectionPool(0, FakeDriver.class.getName(), "jdbc:fake:lanepriority", "", "");
+        pool.setMaxPoolSize(1);
+        pool.addLane(new PoolLane("batch", 0, 1, 0));
+        pool.addLane(new PoolLane("web", 0, 1, 10));
+        final List<String> order = new CopyOnWriteArrayList<>();
+        try {
+            Connection holder = pool.getConnection();
+            Thread[] threads = new Thread[2];
+            String[] lanes = {"batch", "web"};
+            for (int i = 0; i < threads.length; i++) {
+                final String lane = lanes[i];
+                threads[i] = new Thread(() -> {
+                    try {
+                        Connection connection = pool.getConnection(lane, 5, TimeUnit.SECONDS);
+                        order.add(lane);
+                        pool.releaseConnection(connection);
+                    } catch (SQLException e) {
+                        order.add(lane + " failed");
+                    }
+                });
+                threads[i].start();
+                // the batch thread waits first
+                awaitWaiting(pool, i + 1);
+            }
+            pool.releaseConnection(holder);
+            for (Thread thread : threads) {
+                thread.join(5000);
+            }
+            assertEquals(Arrays.asList("web", "batch"), order);
+        } finally {
+            pool.closeAllConnections();
+        }
+    }
+
+    @Test
+    void breakerTripsFailsFastAndRecovers() throws Exception {
+        ConnectionPool pool = new ConnectionPool(0, FakeDriver.class.getName(), "jdbc:fake:breaker", "", "");
+        pool.setReconnectBackoff(10, 20, TimeUnit.MILLISECONDS);
+        FakeDriver.setDown(true);
+        try {
+            SQLException first = assertThrows(SQLException.class, pool::getConnection);
+            assertEquals("08001", first.getSQLState());
+            assertTrue(pool.isCircuitOpen());
+            assertTrue(pool.getStatistics().isCircuitOpen());
+
+            // fails at once from the breaker instead of connecting again
+            SQLException fast = assertThrows(SQLException.class, pool::getConnection);
+            assertEquals("08001", fast.getSQLState());
+            assertTrue(fast.getMessage().startsWith("Database unavailable"));
+
+            FakeDriver.setDown(false);
+            long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (pool.isCircuitOpen()) {
+                assertTrue(System.nanoTime() < end, "breaker did not close");
+                Thread.sleep(5);
+            }
+            // the reconnect thread put its connection into the pool
+            assertEquals(1, pool.getNumConInPool());
+            pool.releaseConnection(pool.getConnection());
+        } finally {
+            FakeDriver.setDown(false);
+            pool.closeAllConnections();
+        }
+    }
+}
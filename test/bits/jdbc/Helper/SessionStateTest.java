@@ -0,0 +1,89 @@
+package bits.jdbc.Helper;
+
+import bits.jdbc.fake.FakeDriver;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SessionStateTest {
+    private ConnectionPool pool;
+
+    @BeforeEach
+    void setUp() {
+        pool = new ConnectionPool(1, FakeDriver.class.getName(), "jdbc:fake:session", "", "");
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.closeAllConnections();
+    }
+
+    @Test
+    void restoresChangedProperties() throws SQLException {
+        Connection connection = pool.getConnection();
+        connection.setAutoCommit(false);
+        connection.setReadOnly(true);
+        connection.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
+        pool.releaseConnection(connection);
+
+        connection = pool.getConnection();
+        assertTrue(connection.getAutoCommit());
+        assertFalse(connection.isReadOnly());
+        assertEquals(Connection.TRANSACTION_READ_COMMITTED, connection.getTransactionIsolation());
+        pool.releaseConnection(connection);
+        assertEquals(1, pool.getStatistics().getNumSessionResets());
+    }
+
+    @Test
+    void skipsResetWhenPropertiesAreSetBack() throws SQLException {
+        Connection connection = pool.getConnection();
+        connection.setAutoCommit(false);
+        connection.setAutoCommit(true);
+        connection.setSchema("other");
+        connection.setSchema(null);
+        pool.releaseConnection(connection);
+        assertEquals(0, pool.getStatistics().getNumSessionResets());
+    }
+
+    @Test
+    void tracksChangesThroughStatementsAndMetadata() throws SQLException {
+        Connection connection = pool.getConnection();
+        Statement statement = connection.createStatement();
+        PreparedStatement prepared = connection.prepareStatement("UPDATE t SET a = ?");
+        assertSame(connection, statement.getConnection());
+        assertSame(connection, prepared.getConnection());
+        assertSame(connection, connection.getMetaData().getConnection());
+
+        statement.getConnection().setAutoCommit(false);
+        connection.getMetaData().getConnection().setReadOnly(true);
+        statement.close();
+        prepared.close();
+        pool.releaseConnection(connection);
+
+        connection = pool.getConnection();
+        assertTrue(connection.getAutoCommit());
+        assertFalse(connection.isReadOnly());
+        pool.releaseConnection(connection);
+    }
+
+    @Test
+    void unwrapsToDriverConnection() throws SQLException {
+        Connection connection = pool.getConnection();
+        assertSame(connection, connection.unwrap(Connection.class));
+        assertTrue(connection.isWrapperFor(Connection.class));
+        Statement statement = connection.createStatement();
+        assertSame(statement, statement.unwrap(Statement.class));
+        statement.close();
+        pool.releaseConnection(connection);
+    }
+}
@@ -0,0 +1,146 @@
+package bits.jdbc.database;
+
+import bits.jdbc.Helper.ConnectionPool;
+import bits.jdbc.content.ContentValues;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CsvImporterTest {
+    private static final AtomicInteger sCount = new AtomicInteger();
+    private static final String TABLE = "person";
+
+    @TempDir
+    Path mDir;
+    private Database db;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        db = new Database(new ConnectionPool(1, "org.h2.Driver",
+                "jdbc:h2:mem:csv" + sCount.incrementAndGet() + ";DB_CLOSE_DELAY=-1", "sa", ""));
+        db.getConnectionPool().setMaxPoolSize(4);
+        db.execSQL("CREATE TABLE " + TABLE + " (" + BaseColumns._ID + " BIGINT PRIMARY KEY, name VARCHAR(64),"
+                + " note VARCHAR(64))");
+    }
+
+    @AfterEach
+    void tearDown() {
+        db.close();
+    }
+
+    private File write(String text) throws IOException {
+        Path file = mDir.resolve("import" + sCount.incrementAndGet() + ".csv");
+        Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+        return file.toFile();
+    }
+
+    private List<ContentValues> rows() throws SQLException {
+        return db.rawQuery("SELECT * FROM " + TABLE + " ORDER BY " + BaseColumns._ID, null, 0,
+                DatabaseUtils.CONTENT_VALUES_MAPPER);
+    }
+
+    @Test
+    void quotedCommasAndQuotes() throws Exception {
+        ImportReport report = db.csvImporter(TABLE).importFile(write(
+                "id,name,note\n1,\"Lovelace, Ada\",\"say \"\"hi\"\"\"\n2,\"\"\"\",plain\n"));
+
+        assertEquals(2, report.getRowsInserted());
+        assertEquals(0, report.getErrorCount());
+        List<ContentValues> rows = rows();
+        assertEquals("Lovelace, Ada", rows.get(0).getAsString("NAME"));
+        assertEquals("say \"hi\"", rows.get(0).getAsString("NOTE"));
+        assertEquals("\"", rows.get(1).getAsString("NAME"));
+        assertEquals("plain", rows.get(1).getAsString("NOTE"));
+    }
+
+    @Test
+    void crlfLineEndings() throws Exception {
+        ImportReport report = db.csvImporter(TABLE).importFile(write(
+                "id,name,note\r\n1,Ada,\"quoted\"\r\n2,Grace,plain\r\n\r\n3,Edsger,\r\n"));
+
+        assertEquals(3, report.getRowsInserted());
+        assertEquals(0, report.getErrorCount());
+        List<ContentValues> rows = rows();
+        assertEquals("quoted", rows.get(0).getAsString("NOTE"));
+        assertEquals("plain", rows.get(1).getAsString("NOTE"));
+        assertNull(rows.get(2).getAsString("NOTE"));
+    }
+
+    @Test
+    void emptyFieldIsNullAndEmptyQuotedFieldIsEmptyString() throws Exception {
+        db.csvImporter(TABLE).importFile(write("id,name,note\n1,,\"\"\n2,\"\",\n"));
+
+        List<ContentValues> rows = rows();
+        assertNull(rows.get(0).getAsString("NAME"));
+        assertEquals("", rows.get(0).getAsString("NOTE"));
+        assertEquals("", rows.get(1).getAsString("NAME"));
+        assertNull(rows.get(1).getAsString("NOTE"));
+    }
+
+    @Test
+    void badRowsInsideBatchAreReportedAndTheRestInserted() throws Exception {
+        StringBuilder csv = new StringBuilder("id,name,note\n");
+        long duplicateOffset = 0;
+        long shortOffset = 0;
+        for (int i = 1; i <= 25; i++) {
+            if (i == 13) {
+                duplicateOffset = csv.length();
+                csv.append("7,duplicate,x\n");
+            } else if (i == 20) {
+                shortOffset = csv.length();
+                csv.append("20,too few\n");
+            } else {
+                csv.append(i).append(",p").append(i).append(",x\n");
+            }
+        }
+        ImportReport report = db.csvImporter(TABLE).setParallelism(1).setBatchSize(5).setCommitInterval(10)
+                .importFile(write(csv.toString()));
+
+        assertEquals(25, report.getRowsRead());
+        assertEquals(23, report.getRowsInserted());
+        assertEquals(2, report.getErrorCount());
+        assertEquals(duplicateOffset, report.getErrors().get(0).getOffset());
+        assertEquals(shortOffset, report.getErrors().get(1).getOffset());
+        List<ContentValues> rows = rows();
+        assertEquals(23, rows.size());
+        assertEquals("p7", rows.get(6).getAsString("NAME"));
+    }
+
+    @Test
+    void rowsAcrossChunkBoundariesAreImportedOnce() throws Exception {
+        // well over the 1 MB minimum chunk, so the file is split into several chunks
+        StringBuilder csv = new StringBuilder("id,name,note\r\n");
+        int count = 0;
+        while (csv.length() < 3 * (1 << 20) + 12345) {
+            count++;
+            csv.append(count).append(",\"name, ").append(count).append("\",note ").append(count).append("\r\n");
+        }
+        ImportReport report = db.csvImporter(TABLE).setParallelism(3).importFile(write(csv.toString()));
+
+        assertEquals(0, report.getErrorCount());
+        assertEquals(count, report.getRowsInserted());
+        List<ContentValues> rows = rows();
+        assertEquals(count, rows.size());
+        for (int i = 0; i < count; i++) {
+            ContentValues row = rows.get(i);
+            assertEquals(i + 1, (long) row.getAsLong("ID"));
+            assertEquals("name, " + (i + 1), row.getAsString("NAME"));
+            assertEquals("note " + (i + 1), row.getAsString("NOTE"));
+        }
+        assertTrue(report.getBytes() > 3 * (1 << 20));
+    }
+}
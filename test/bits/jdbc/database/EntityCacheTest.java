@@ -0,0 +1,121 @@
+package bits.jdbc.database;
+
+import bits.jdbc.Helper.ConnectionPool;
+import bits.jdbc.content.ContentValues;
+import bits.jdbc.fake.FakeDriver;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class EntityCacheTest {
+    private static final String TABLE = "item";
+
+    private Database db;
+    private EntityCache<Item> cache;
+
+    static class Item extends BaseModel {
+        long id;
+        String name;
+
+        Item(ResultSet resultSet) {
+            super(resultSet);
+        }
+
+        @Override
+        public ContentValues assemble() {
+            ContentValues values = new ContentValues();
+            values.put(BaseColumns._ID, id);
+            values.put("name", name);
+            return values;
+        }
+
+        @Override
+        public void resolve(ResultSet resultSet) {
+            try {
+                id = resultSet.getLong(BaseColumns._ID);
+                name = resultSet.getString("name");
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        db = new Database(new ConnectionPool(1, FakeDriver.class.getName(), "jdbc:fake:cache?rows=1", "", ""));
+        cache = new EntityCache<>(db, TABLE, Item::new, 100);
+    }
+
+    @AfterEach
+    void tearDown() {
+        cache.close();
+        db.close();
+    }
+
+    private static ContentValues name(String name) {
+        ContentValues values = new ContentValues();
+        values.put("name", name);
+        return values;
+    }
+
+    @Test
+    void updateInvalidatesRow() throws SQLException {
+        assertNotNull(cache.get(1));
+        assertNotNull(cache.get(2));
+        assertEquals(2, cache.getLoadCount());
+
+        db.update(TABLE, name("x"), BaseColumns._ID + " = ?", new String[]{"1"});
+        assertNull(cache.getIfPresent(1));
+        assertNotNull(cache.getIfPresent(2));
+    }
+
+    @Test
+    void pipelinedUpdateAndDeleteInvalidate() throws SQLException {
+        cache.get(1);
+        cache.get(2);
+        cache.get(3);
+
+        db.pipeline()
+                .update(TABLE, name("x"), BaseColumns._ID + " = ?", new String[]{"1"})
+                .delete(TABLE, BaseColumns._ID + " = ?", new String[]{"2"})
+                .execute();
+        assertNull(cache.getIfPresent(1));
+        assertNull(cache.getIfPresent(2));
+        assertNotNull(cache.getIfPresent(3));
+
+        db.pipeline().delete(TABLE, "name = ?", new String[]{"y"}).execute();
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void pipelineInTransactionInvalidatesOnCommit() throws SQLException {
+        cache.get(1);
+        db.runInTransaction(new Transaction<Void>() {
+            @Override
+            public Void run(Database database) throws SQLException {
+                database.pipeline().update(TABLE, name("x"), BaseColumns._ID + " = ?", new String[]{"1"}).execute();
+                assertNotNull(cache.getIfPresent(1));
+                return null;
+            }
+        });
+        assertNull(cache.getIfPresent(1));
+    }
+
+    @Test
+    void reloadsAfterInvalidation() throws SQLException {
+        cache.get(1);
+        cache.get(1);
+        assertEquals(1, cache.getLoadCount());
+        assertEquals(1, cache.getHitCount());
+        db.pipeline().update(TABLE, name("x"), BaseColumns._ID + " = ?", new String[]{"1"}).execute();
+        cache.get(1);
+        assertEquals(2, cache.getLoadCount());
+    }
+}
@@ -0,0 +1,39 @@
+package bits.jdbc.database;
+
+import bits.jdbc.Helper.ConnectionPool;
+import bits.jdbc.utils.LongHashMap;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class GetByIdsTest {
+    private Database db;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        db = new Database(new ConnectionPool(1, "org.h2.Driver", "jdbc:h2:mem:byids", "sa", ""));
+        db.execSQL("CREATE TABLE person (" + BaseColumns._ID + " BIGINT PRIMARY KEY, name VARCHAR(32))");
+        db.execSQL("INSERT INTO person VALUES (1, 'Ada'), (2, NULL), (3, 'Grace')");
+    }
+
+    @AfterEach
+    void tearDown() {
+        db.close();
+    }
+
+    @Test
+    void rowsMappedToNullAreLeftOut() throws SQLException {
+        LongHashMap<String> names = db.getByIds("person", new String[]{"name"}, new long[]{1, 2, 3, 3, 4},
+                rs -> rs.getString("name"));
+
+        assertEquals(2, names.size());
+        assertEquals("Ada", names.get(1));
+        assertNull(names.get(2));
+        assertEquals("Grace", names.get(3));
+    }
+}
@@ -0,0 +1,49 @@
+package bits.jdbc.database;
+
+import bits.jdbc.Helper.ConnectionPool;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LazyRowMapperTest {
+    private static final RowMapper<LazyRow> LAZY = DatabaseUtils.newLazyRowMapper();
+
+    private Database db;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        db = new Database(new ConnectionPool(1, "org.h2.Driver", "jdbc:h2:mem:lazy;DB_CLOSE_DELAY=-1", "sa", ""));
+        db.execSQL("CREATE TABLE IF NOT EXISTS person (id BIGINT PRIMARY KEY, name VARCHAR(32), age INT)");
+        db.execSQL("MERGE INTO person VALUES (1, 'Ada', 36)");
+    }
+
+    @AfterEach
+    void tearDown() {
+        db.close();
+    }
+
+    @Test
+    void constantMapperReadsColumnsOfEachQuery() throws SQLException {
+        List<LazyRow> wide = db.rawQuery("SELECT id, name, age FROM person", null, 0, LAZY);
+        List<LazyRow> narrow = db.rawQuery("SELECT age, name FROM person", null, 0, LAZY);
+
+        assertEquals(3, wide.get(0).getColumnCount());
+        assertEquals("Ada", wide.get(0).getString("name"));
+        assertEquals(2, narrow.get(0).getColumnCount());
+        assertEquals(36, narrow.get(0).getInt(1));
+        assertEquals("Ada", narrow.get(0).getString("name"));
+    }
+
+    @Test
+    void constantMapperThroughQueryCoalescer() throws SQLException {
+        QueryCoalescer coalescer = new QueryCoalescer(db);
+
+        assertEquals("Ada", coalescer.query("SELECT name FROM person", null, LAZY).get(0).getString(1));
+        assertEquals(36, coalescer.query("SELECT age FROM person", null, LAZY).get(0).getInt(1));
+    }
+}
@@ -0,0 +1,85 @@
+package bits.jdbc.database;
+
+import bits.jdbc.Helper.ConnectionPool;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.DriverManager;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MetadataCacheTest {
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Wraps a connection so that reading index info, the last step of loading a table's metadata,
+     * blocks until released; the columns have been read by then.
+     */
+    private static Connection blockingIndexInfo(final Connection connection, final CountDownLatch entered,
+                                                final CountDownLatch release) {
+        return (Connection) Proxy.newProxyInstance(MetadataCacheTest.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                    Object result = invoke(connection, method, args);
+                    if (!method.getName().equals("getMetaData")) {
+                        return result;
+                    }
+                    final DatabaseMetaData metaData = (DatabaseMetaData) result;
+                    return Proxy.newProxyInstance(MetadataCacheTest.class.getClassLoader(),
+                            new Class<?>[]{DatabaseMetaData.class}, (p, m, a) -> {
+                                if (m.getName().equals("getIndexInfo") && entered.getCount() > 0) {
+                                    entered.countDown();
+                                    release.await();
+                                }
+                                return invoke(metaData, m, a);
+                            });
+                });
+    }
+
+    @Test
+    void loadOverlappingInvalidationIsNotKept() throws Exception {
+        String url = "jdbc:h2:mem:metadata;DB_CLOSE_DELAY=-1";
+        Database ddl = new Database(new ConnectionPool(1, "org.h2.Driver", url, "sa", ""));
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        final Database db = new Database(new ConnectionPool(
+                blockingIndexInfo(DriverManager.getConnection(url, "sa", ""), entered, release)));
+        try {
+            ddl.execSQL("CREATE TABLE person (id BIGINT PRIMARY KEY)");
+            final MetadataCache cache = db.getMetadataCache();
+
+            CompletableFuture<TableMetadata> loading = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return cache.getTable("person");
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            assertTrue(entered.await(5, TimeUnit.SECONDS));
+            ddl.execSQL("ALTER TABLE person ADD name VARCHAR(32)");
+            cache.invalidateAll();
+            release.countDown();
+
+            assertFalse(loading.get(5, TimeUnit.SECONDS).hasColumn("name"));
+            assertTrue(cache.getTable("person").hasColumn("name"));
+        } finally {
+            release.countDown();
+            db.close();
+            ddl.close();
+        }
+    }
+}
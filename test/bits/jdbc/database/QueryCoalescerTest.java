@@ -0,0 +1,47 @@
+package bits.jdbc.database;
+
+import bits.jdbc.Helper.ConnectionPool;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QueryCoalescerTest {
+    private static final RowMapper<String> NAME = rs -> rs.getString("name");
+
+    private Database db;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        db = new Database(new ConnectionPool(1, "org.h2.Driver", "jdbc:h2:mem:coalesce", "sa", ""));
+        db.execSQL("CREATE TABLE person (" + BaseColumns._ID + " BIGINT PRIMARY KEY, name VARCHAR(32))");
+        db.execSQL("INSERT INTO person VALUES (1, 'Ada')");
+    }
+
+    @AfterEach
+    void tearDown() {
+        db.close();
+    }
+
+    @Test
+    void interruptedLeaderRunsBatchAtOnceAndKeepsInterrupt() throws SQLException {
+        QueryCoalescer coalescer = new QueryCoalescer(db).setBatchWindow(10, TimeUnit.SECONDS);
+        long start = System.nanoTime();
+
+        Thread.currentThread().interrupt();
+        String name;
+        try {
+            name = coalescer.getById("person", new String[]{"name"}, 1, NAME);
+        } finally {
+            assertTrue(Thread.interrupted());
+        }
+        assertEquals("Ada", name);
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        assertEquals(1, coalescer.getBatchQueryCount());
+    }
+}
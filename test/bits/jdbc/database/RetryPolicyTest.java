@@ -0,0 +1,175 @@
+package bits.jdbc.database;
+
+import bits.jdbc.Helper.ConnectionPool;
+import bits.jdbc.Helper.DatabaseType;
+import bits.jdbc.content.ContentValues;
+import bits.jdbc.fake.FakeConfig;
+import bits.jdbc.fake.FakeDriver;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RetryPolicyTest {
+    private static final int DB_TYPE = DatabaseType.POSTGRESQL;
+
+    private static RetryPolicy fastPolicy() {
+        return new RetryPolicy().setBackoff(1, 2, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * An operation failing with the given SQLState on its first failures runs, then returning the
+     * number of runs.
+     */
+    private static RetryPolicy.Operation<Integer> failing(final AtomicInteger runs, final int failures,
+                                                          final String sqlState) {
+        return () -> {
+            int run = runs.incrementAndGet();
+            if (run <= failures) {
+                throw new SQLException("conflict " + run, sqlState);
+            }
+            return run;
+        };
+    }
+
+    @Test
+    void retriesSerializationFailureUntilItSucceeds() throws SQLException {
+        RetryPolicy policy = fastPolicy();
+        AtomicInteger runs = new AtomicInteger();
+
+        assertEquals(3, (int) policy.execute(DB_TYPE, failing(runs, 2, "40001")));
+        assertEquals(2, policy.getRetryCount());
+        assertEquals(1, policy.getRecoveredCount());
+        assertEquals(0, policy.getExhaustedCount());
+    }
+
+    @Test
+    void doesNotRetryOtherFailures() {
+        RetryPolicy policy = fastPolicy();
+        AtomicInteger runs = new AtomicInteger();
+
+        SQLException e = assertThrows(SQLException.class, () -> policy.execute(DB_TYPE, failing(runs, 1, "23505")));
+        assertEquals("23505", e.getSQLState());
+        assertEquals(1, runs.get());
+        assertEquals(0, policy.getRetryCount());
+    }
+
+    @Test
+    void givesUpAfterMaxAttempts() {
+        RetryPolicy policy = fastPolicy().setMaxAttempts(3);
+        AtomicInteger runs = new AtomicInteger();
+
+        SQLException e = assertThrows(SQLException.class,
+                () -> policy.execute(DB_TYPE, failing(runs, Integer.MAX_VALUE, "40P01")));
+        assertEquals("conflict 3", e.getMessage());
+        assertEquals(3, runs.get());
+        assertEquals(2, policy.getRetryCount());
+        assertEquals(1, policy.getExhaustedCount());
+    }
+
+    @Test
+    void budgetCapsRetriesAcrossOperations() {
+        RetryPolicy policy = fastPolicy().setMaxAttempts(10).setBudget(0, 2);
+        AtomicInteger runs = new AtomicInteger();
+
+        assertThrows(SQLException.class, () -> policy.execute(DB_TYPE, failing(runs, Integer.MAX_VALUE, "40001")));
+        assertEquals(3, runs.get());
+        runs.set(0);
+        assertThrows(SQLException.class, () -> policy.execute(DB_TYPE, failing(runs, Integer.MAX_VALUE, "40001")));
+        assertEquals(1, runs.get());
+        assertEquals(2, policy.getRetryCount());
+        assertEquals(2, policy.getBudgetRejectionCount());
+        assertEquals(0, policy.getExhaustedCount());
+    }
+
+    @Test
+    void operationsRefillTheBudget() throws SQLException {
+        RetryPolicy policy = fastPolicy().setBudget(0.5, 1);
+        AtomicInteger runs = new AtomicInteger();
+
+        // spends the one token the budget starts with
+        policy.execute(DB_TYPE, failing(runs, 1, "40001"));
+        // earns half a token, not enough for a retry
+        runs.set(0);
+        assertThrows(SQLException.class, () -> policy.execute(DB_TYPE, failing(runs, 1, "40001")));
+        // earns the other half
+        runs.set(0);
+        assertEquals(2, (int) policy.execute(DB_TYPE, failing(runs, 1, "40001")));
+        assertEquals(2, policy.getRetryCount());
+        assertEquals(1, policy.getBudgetRejectionCount());
+    }
+
+    @Test
+    void doesNotSleepPastTheDeadline() {
+        RetryPolicy policy = new RetryPolicy().setBackoff(10, 10, TimeUnit.SECONDS);
+        AtomicInteger runs = new AtomicInteger();
+        long start = System.nanoTime();
+
+        try (Deadline.Scope ignored = Deadline.after(1, TimeUnit.SECONDS).enter()) {
+            assertThrows(SQLException.class, () -> policy.execute(DB_TYPE, failing(runs, 1, "40001")));
+        }
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+        assertEquals(1, runs.get());
+        assertEquals(1, policy.getExhaustedCount());
+    }
+
+    @Test
+    void fakeDriverLinkFailuresAreNotRetried() {
+        Database db = new Database(new ConnectionPool(1, FakeDriver.class.getName(),
+                FakeConfig.URL_PREFIX + "retry?statementFailureRate=1", "", ""));
+        RetryPolicy policy = fastPolicy();
+        db.setRetryPolicy(policy);
+        try {
+            SQLException e = assertThrows(SQLException.class,
+                    () -> db.executeUpdate("UPDATE person SET name = ?", new Object[]{"a"}));
+            assertEquals("08S01", e.getSQLState());
+            assertEquals(0, policy.getRetryCount());
+        } finally {
+            db.close();
+        }
+    }
+
+    @Test
+    void transactionIsRolledBackAndRunAgainOnH2() throws SQLException {
+        Database db = new Database(new ConnectionPool(1, "org.h2.Driver", "jdbc:h2:mem:retry", "sa", ""));
+        RetryPolicy policy = fastPolicy();
+        db.setRetryPolicy(policy);
+        final List<String> changes = new ArrayList<>();
+        db.addTableChangeListener((table, whereClause, whereArgs) -> changes.add(table));
+        try {
+            db.execSQL("CREATE TABLE person (" + BaseColumns._ID + " BIGINT PRIMARY KEY, name VARCHAR(32),"
+                    + " visits INT)");
+            db.execSQL("INSERT INTO person VALUES (1, 'Ada', 0)");
+            final AtomicInteger runs = new AtomicInteger();
+            final Object result = new Object();
+
+            Object returned = db.runInTransaction(tx -> {
+                ContentValues values = new ContentValues();
+                values.put("name", "Grace");
+                tx.update("person", values, BaseColumns._ID + " = ?", new String[]{"1"});
+                tx.execSQL("UPDATE person SET visits = visits + 1");
+                if (runs.incrementAndGet() == 1) {
+                    throw new SQLException("could not serialize access", "40001");
+                }
+                return result;
+            });
+
+            assertSame(result, returned);
+            assertEquals(2, runs.get());
+            assertEquals(1, policy.getRetryCount());
+            assertEquals(1, policy.getRecoveredCount());
+            assertEquals(1, (int) db.rawQuery("SELECT visits FROM person", null, 0, rs -> rs.getInt(1)).get(0));
+            assertEquals(1, changes.size(), "listeners hear only the committed attempt");
+        } finally {
+            db.close();
+        }
+    }
+}
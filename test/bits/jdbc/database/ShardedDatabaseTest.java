@@ -0,0 +1,101 @@
+package bits.jdbc.database;
+
+import bits.jdbc.Helper.ConnectionPool;
+import bits.jdbc.content.ContentValues;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShardedDatabaseTest {
+    private static final AtomicInteger sCount = new AtomicInteger();
+    private static final String TABLE = "payment";
+
+    private ShardedDatabase db;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        List<ConnectionPool> pools = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            pools.add(new ConnectionPool(1, "org.h2.Driver",
+                    "jdbc:h2:mem:shard" + sCount.incrementAndGet() + ";DB_CLOSE_DELAY=-1", "sa", ""));
+        }
+        db = new ShardedDatabase(pools);
+        for (int i = 0; i < db.getShardCount(); i++) {
+            db.getShard(i).execSQL("CREATE TABLE " + TABLE
+                    + " (" + BaseColumns._ID + " BIGINT PRIMARY KEY, amount DECIMAL(10, 2), name VARCHAR(32))");
+        }
+        String[] amounts = {"10.50", "9.10", "1.50", "1.20", "100.00", null, "9.00", "0.05"};
+        for (int i = 0; i < amounts.length; i++) {
+            ContentValues values = new ContentValues();
+            values.put(BaseColumns._ID, (long) i + 1);
+            values.put("amount", amounts[i]);
+            values.put("name", "p" + i);
+            db.insert(TABLE, null, values);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        db.close();
+    }
+
+    private static List<String> amounts(List<ContentValues> rows) {
+        List<String> amounts = new ArrayList<>();
+        for (ContentValues row : rows) {
+            amounts.add(row.getAsString("AMOUNT"));
+        }
+        return amounts;
+    }
+
+    @Test
+    void mergesDecimalsByValue() throws SQLException {
+        List<ContentValues> rows = db.query(TABLE, null, null, null, "amount DESC", 0);
+        assertEquals(Arrays.asList("100.00", "10.50", "9.10", "9.00", "1.50", "1.20", "0.05", null), amounts(rows));
+    }
+
+    @Test
+    void mergesAscendingWithLimit() throws SQLException {
+        List<ContentValues> rows = db.query(TABLE, null, "amount IS NOT NULL", null, "payment.AMOUNT", 3);
+        assertEquals(Arrays.asList("0.05", "1.20", "1.50"), amounts(rows));
+    }
+
+    @Test
+    void honoursNullsLast() throws SQLException {
+        List<ContentValues> rows = db.query(TABLE, null, null, null, "amount ASC NULLS LAST", 0);
+        assertEquals(8, rows.size());
+        assertEquals(null, rows.get(7).getAsString("AMOUNT"));
+        assertEquals("0.05", rows.get(0).getAsString("AMOUNT"));
+    }
+
+    @Test
+    void rejectsExpressionsAndMissingColumns() {
+        assertThrows(IllegalArgumentException.class,
+                () -> db.query(TABLE, null, null, null, "LOWER(name)", 0));
+        assertThrows(IllegalArgumentException.class,
+                () -> db.query(TABLE, null, null, null, "2 DESC", 0));
+        assertThrows(IllegalArgumentException.class,
+                () -> db.query(TABLE, new String[]{"name"}, null, null, "amount", 0));
+    }
+
+    @Test
+    void comparesBigNumbersExactly() {
+        assertTrue(ShardedDatabase.OrderBy.compareValues(new BigDecimal("1.5"), new BigDecimal("1.2")) > 0);
+        assertTrue(ShardedDatabase.OrderBy.compareValues(new BigDecimal("1.5"), 1L) > 0);
+        assertTrue(ShardedDatabase.OrderBy.compareValues(new BigDecimal("1.5"), 1.75d) < 0);
+        BigInteger huge = BigInteger.valueOf(Long.MAX_VALUE).add(BigInteger.TEN);
+        assertTrue(ShardedDatabase.OrderBy.compareValues(huge, Long.MAX_VALUE) > 0);
+        assertTrue(ShardedDatabase.OrderBy.compareValues(huge.negate(), Long.MIN_VALUE) < 0);
+    }
+}
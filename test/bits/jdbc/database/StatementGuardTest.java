@@ -0,0 +1,121 @@
+package bits.jdbc.database;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.Statement;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StatementGuardTest {
+
+    /**
+     * A statement whose cancel() blocks until released, counting the cancels.
+     */
+    private static Statement blockingStatement(final CountDownLatch entered, final CountDownLatch release,
+                                               final AtomicInteger cancels, final AtomicBoolean cancelDone) {
+        return (Statement) Proxy.newProxyInstance(StatementGuardTest.class.getClassLoader(),
+                new Class<?>[]{Statement.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("cancel")) {
+                        cancels.incrementAndGet();
+                        entered.countDown();
+                        release.await();
+                        cancelDone.set(true);
+                    }
+                    return null;
+                });
+    }
+
+    @Test
+    void closeWaitsForRunningCancel() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger cancels = new AtomicInteger();
+        AtomicBoolean cancelDone = new AtomicBoolean();
+        Statement statement = blockingStatement(entered, release, cancels, cancelDone);
+        final Deadline deadline = Deadline.none();
+        final StatementGuard guard;
+        try (Deadline.Scope ignored = deadline.enter()) {
+            guard = StatementGuard.arm(statement, 0L);
+        }
+
+        Thread canceller = new Thread(deadline::cancel);
+        canceller.start();
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+
+        final CountDownLatch closed = new CountDownLatch(1);
+        final AtomicBoolean cancelDoneAtClose = new AtomicBoolean();
+        Thread closer = new Thread(() -> {
+            guard.close();
+            cancelDoneAtClose.set(cancelDone.get());
+            closed.countDown();
+        });
+        closer.start();
+        assertFalse(closed.await(200, TimeUnit.MILLISECONDS), "close() returned while a cancel was running");
+
+        release.countDown();
+        assertTrue(closed.await(5, TimeUnit.SECONDS));
+        assertTrue(cancelDoneAtClose.get());
+        canceller.join();
+
+        deadline.cancel();
+        assertEquals(1, cancels.get());
+    }
+
+    @Test
+    void noCancelAfterClose() throws Exception {
+        CountDownLatch release = new CountDownLatch(0);
+        AtomicInteger cancels = new AtomicInteger();
+        Statement statement = blockingStatement(new CountDownLatch(1), release, cancels, new AtomicBoolean());
+        Deadline deadline = Deadline.none();
+        StatementGuard guard;
+        try (Deadline.Scope ignored = deadline.enter()) {
+            guard = StatementGuard.arm(statement, TimeUnit.MILLISECONDS.toNanos(50));
+        }
+        guard.close();
+        guard.cancel();
+        deadline.cancel();
+        Thread.sleep(150);
+        assertEquals(0, cancels.get());
+    }
+
+    @Test
+    void watchdogCancelsOverdueStatement() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        AtomicInteger cancels = new AtomicInteger();
+        Statement statement = blockingStatement(entered, new CountDownLatch(0), cancels, new AtomicBoolean());
+        StatementGuard guard = StatementGuard.arm(statement, TimeUnit.MILLISECONDS.toNanos(20));
+        try {
+            assertTrue(entered.await(5, TimeUnit.SECONDS));
+        } finally {
+            guard.close();
+        }
+        assertEquals(1, cancels.get());
+    }
+
+    @Test
+    void queryTimeoutRoundsUpAndSaturates() throws Exception {
+        assertEquals(1, StatementGuard.toQueryTimeout(1));
+        assertEquals(1, StatementGuard.toQueryTimeout(TimeUnit.SECONDS.toNanos(1)));
+        assertEquals(2, StatementGuard.toQueryTimeout(TimeUnit.SECONDS.toNanos(1) + 1));
+        assertEquals(Integer.MAX_VALUE, StatementGuard.toQueryTimeout(Long.MAX_VALUE - 1));
+        assertEquals(Integer.MAX_VALUE, StatementGuard.toQueryTimeout(TimeUnit.SECONDS.toNanos(Integer.MAX_VALUE + 1L)));
+
+        final AtomicInteger timeout = new AtomicInteger();
+        Statement statement = (Statement) Proxy.newProxyInstance(StatementGuardTest.class.getClassLoader(),
+                new Class<?>[]{Statement.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("setQueryTimeout")) {
+                        timeout.set((Integer) args[0]);
+                    }
+                    return null;
+                });
+        StatementGuard.arm(statement, Long.MAX_VALUE - 1).close();
+        assertEquals(Integer.MAX_VALUE, timeout.get());
+    }
+}
@@ -0,0 +1,35 @@
+package bits.jdbc.export;
+
+import bits.jdbc.Helper.ConnectionPool;
+import bits.jdbc.database.Database;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ResultExporterTest {
+
+    private static String export(Database db, String sql, ExportFormat format) throws SQLException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        db.export(sql, null, format, Channels.newChannel(out));
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void realColumnsKeepTheirSinglePrecisionText() throws SQLException {
+        Database db = new Database(new ConnectionPool(1, "org.h2.Driver", "jdbc:h2:mem:export", "sa", ""));
+        try {
+            db.execSQL("CREATE TABLE measure (id INT PRIMARY KEY, r REAL, d DOUBLE PRECISION)");
+            db.execSQL("INSERT INTO measure VALUES (1, 0.1, 0.1), (2, 2, 2), (3, -1.5E-7, 1.0E20), (4, NULL, NULL)");
+
+            assertEquals("ID,R,D\n1,0.1,0.1\n2,2,2\n3,-1.5E-7,1.0E20\n4,,\n",
+                    export(db, "SELECT id, r, d FROM measure ORDER BY id", ExportFormat.CSV));
+        } finally {
+            db.close();
+        }
+    }
+}
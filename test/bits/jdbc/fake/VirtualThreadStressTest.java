@@ -0,0 +1,63 @@
+package bits.jdbc.fake;
+
+import bits.jdbc.Helper.ConnectionPool;
+import bits.jdbc.Helper.PoolStatistics;
+import bits.jdbc.database.Database;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Runs {@link VirtualThreadStress} on virtual threads. Surefire starts the JVM with
+ * {@code -Djdk.tracePinnedThreads=short}, which prints a stack trace to {@link System#out} whenever
+ * a virtual thread blocks while pinned to its carrier, so the output is captured and must stay
+ * empty. Skipped on JVMs without virtual threads, and from Java 24 on, which no longer prints the
+ * trace.
+ */
+class VirtualThreadStressTest {
+    private static final int THREADS = 10000;
+    private static final int OPERATIONS = 5;
+    private static final int POOL = 16;
+
+    @Test
+    void manyVirtualThreadsShareSmallPoolWithoutPinning() throws Exception {
+        ExecutorService probe = VirtualThreadStress.newVirtualThreadExecutor();
+        assumeTrue(probe != null, "virtual threads need Java 21");
+        probe.shutdown();
+        assumeTrue(System.getProperty("jdk.tracePinnedThreads") != null, "run with -Djdk.tracePinnedThreads");
+        // JDK 24 no longer pins on monitors and ignores the property, so an empty trace proves nothing
+        assumeTrue(Runtime.version().feature() < 24, "jdk.tracePinnedThreads is not supported after Java 23");
+
+        ConnectionPool pool = new ConnectionPool(0, FakeDriver.class.getName(),
+                FakeConfig.URL_PREFIX + "vtstress?statementLatencyMs=1&connectLatencyMs=5", "", "");
+        pool.setMaxPoolSize(POOL);
+        PrintStream out = System.out;
+        ByteArrayOutputStream trace = new ByteArrayOutputStream();
+        LoadReport report;
+        try {
+            System.setOut(new PrintStream(trace, true, "UTF-8"));
+            report = new VirtualThreadStress(new Database(pool))
+                    .setThreads(THREADS)
+                    .setOperations(OPERATIONS)
+                    .run();
+        } finally {
+            System.setOut(out);
+            pool.closeAllConnections();
+        }
+
+        PoolStatistics stats = report.getPoolStatistics();
+        assertEquals(0, report.getErrors());
+        assertEquals((long) THREADS * OPERATIONS, report.getOperations());
+        assertEquals(0, stats.getNumInUse());
+        assertTrue(stats.getNumCon() <= POOL);
+        String pinned = new String(trace.toByteArray(), StandardCharsets.UTF_8);
+        assertTrue(pinned.isEmpty(), "virtual threads were pinned:\n" + pinned);
+    }
+}